@@ -0,0 +1,67 @@
+#version 430 core
+
+// Frustum culling of IndirectBatch objects, writes one DrawElementsIndirectCommand per object
+
+layout(local_size_x = 64) in;
+
+struct Object {
+    vec4 boundsMin;
+    vec4 boundsMax;
+    // index count, first index, base vertex
+    ivec4 range;
+};
+
+struct Command {
+    uint count;
+    uint instanceCount;
+    uint firstIndex;
+    int baseVertex;
+    uint baseInstance;
+};
+
+layout(std430, binding = 0) readonly buffer Objects {
+    Object objects[];
+};
+
+layout(std430, binding = 1) readonly buffer Models {
+    mat4 models[];
+};
+
+layout(std430, binding = 2) writeonly buffer Commands {
+    Command commands[];
+};
+
+layout(std430, binding = 3) buffer Counters {
+    uint visibleCount;
+};
+
+uniform vec4 planes[6];
+uniform uint objectCount;
+
+void main(){
+    uint i = gl_GlobalInvocationID.x;
+    if (i >= objectCount) {
+        return;
+    }
+    Object object = objects[i];
+    mat4 model = models[i];
+
+    vec3 center = (object.boundsMin.xyz + object.boundsMax.xyz) * 0.5;
+    vec3 extent = (object.boundsMax.xyz - object.boundsMin.xyz) * 0.5;
+    vec3 worldCenter = (model * vec4(center, 1.0)).xyz;
+    vec3 worldExtent = mat3(abs(model[0].xyz), abs(model[1].xyz), abs(model[2].xyz)) * extent;
+
+    bool visible = true;
+    for (int p = 0; p < 6; p++) {
+        if (dot(planes[p].xyz, worldCenter) + planes[p].w < -dot(abs(planes[p].xyz), worldExtent)) {
+            visible = false;
+            break;
+        }
+    }
+
+    // baseInstance selects model matrix of object in instanced vertex attribute
+    commands[i] = Command(uint(object.range.x), visible ? 1u : 0u, uint(object.range.y), object.range.z, i);
+    if (visible) {
+        atomicAdd(visibleCount, 1u);
+    }
+}
@@ -0,0 +1,15 @@
+#version 330 core
+
+layout(location = 0) in vec3 position;
+layout(location = 4) in mat4 model;
+
+uniform mat4 viewProjection;
+// maps quantized positions onto bounding box of mesh, identity for float positions
+uniform mat4 dequantization;
+
+out vec3 color;
+
+void main(){
+    gl_Position = viewProjection * model * dequantization * vec4(position, 1.0);
+    color = vec3(position.x, position.x - position.y, position.y);
+}
@@ -0,0 +1,79 @@
+package math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transforming points one Vector3f at a time with scalar and vector kernels of {@link BatchTransform}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BatchTransformBenchmark {
+
+    @Param({"1024", "65536"})
+    public int count;
+
+    private final Matrix4f matrix = new Matrix4f().setRotation(15, 30, 45).scale(2, 2, 2).translate(1, 2, 3);
+    private Vector3f[] vectors, results;
+    private float[] x, y, z, outX, outY, outZ;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        vectors = new Vector3f[count];
+        results = new Vector3f[count];
+        x = new float[count];
+        y = new float[count];
+        z = new float[count];
+        outX = new float[count];
+        outY = new float[count];
+        outZ = new float[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextFloat();
+            y[i] = random.nextFloat();
+            z[i] = random.nextFloat();
+            vectors[i] = new Vector3f(x[i], y[i], z[i]);
+            results[i] = new Vector3f(0, 0, 0);
+        }
+    }
+
+    @Benchmark
+    public Vector3f[] perVector3f() {
+        for (int i = 0; i < count; i++) {
+            Vector3f v = vectors[i];
+            float px = v.getX(), py = v.getY(), pz = v.getZ();
+            results[i].set(matrix.getCellValue(0, 0) * px + matrix.getCellValue(0, 1) * py + matrix.getCellValue(0, 2) * pz + matrix.getCellValue(0, 3),
+                    matrix.getCellValue(1, 0) * px + matrix.getCellValue(1, 1) * py + matrix.getCellValue(1, 2) * pz + matrix.getCellValue(1, 3),
+                    matrix.getCellValue(2, 0) * px + matrix.getCellValue(2, 1) * py + matrix.getCellValue(2, 2) * pz + matrix.getCellValue(2, 3));
+        }
+        return results;
+    }
+
+    @Benchmark
+    public float[] scalarKernel() {
+        BatchTransform.transformPoints(matrix, x, y, z, outX, outY, outZ, 0, count);
+        return outX;
+    }
+
+    @Benchmark
+    public float[] batchTransform() {
+        BatchTransform.transformPoints(matrix, x, y, z, outX, outY, outZ, count);
+        return outX;
+    }
+}
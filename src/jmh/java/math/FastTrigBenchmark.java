@@ -0,0 +1,62 @@
+package math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rotation matrix and sine/cosine costs in EXACT and FAST precision of {@link FastTrig}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class FastTrigBenchmark {
+
+    @Param({"EXACT", "FAST"})
+    public FastTrig.Precision precision;
+
+    private final float[] angles = new float[1024];
+    private final float[] sinCos = new float[2];
+    private final Matrix4f result = new Matrix4f();
+
+    @Setup
+    public void setup() {
+        FastTrig.setPrecision(precision);
+        Random random = new Random(42);
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = random.nextFloat() * 720 - 360;
+        }
+    }
+
+    @Benchmark
+    public float sinCos() {
+        float sum = 0;
+        for (float angle : angles) {
+            FastTrig.sinCosDeg(angle, sinCos, 0);
+            sum += sinCos[0] + sinCos[1];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Matrix4f rotationMatrix() {
+        for (int i = 0; i + 2 < angles.length; i += 3) {
+            result.setRotation(angles[i], angles[i + 1], angles[i + 2]);
+        }
+        return result;
+    }
+}
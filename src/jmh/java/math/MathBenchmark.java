@@ -0,0 +1,145 @@
+package math;
+
+import core.Camera;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costs of math package operations for 1, 1k and 100k objects per invocation.
+ * Operations which return new objects are measured next to their allocation-free variants,
+ * run with gc profiler (default of gradle jmh task) to compare allocation rates
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules", "jdk.incubator.vector"})
+public class MathBenchmark {
+
+    @Param({"1", "1000", "100000"})
+    public int count;
+
+    private Matrix4f[] matrices;
+    private Matrix4f other;
+    private Matrix4f result;
+    private Transform[] transforms;
+    private Vector3f[] vectors;
+    private Vector3f axis;
+    private Quaternion[] quaternions;
+    private Quaternion rotation;
+    private Camera[] cameras;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        matrices = new Matrix4f[count];
+        transforms = new Transform[count];
+        vectors = new Vector3f[count];
+        quaternions = new Quaternion[count];
+        cameras = new Camera[count];
+        for (int i = 0; i < count; i++) {
+            matrices[i] = new Matrix4f().setRotation(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            transforms[i] = new Transform(new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+                    new Vector3f(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360),
+                    new Vector3f(1, 1, 1));
+            vectors[i] = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            quaternions[i] = new Quaternion().fromAxisAngle(random.nextFloat() * 360, 0, 1, 0);
+            cameras[i] = new Camera();
+        }
+        other = new Matrix4f().setRotation(10, 20, 30);
+        result = new Matrix4f();
+        axis = new Vector3f(0, 1, 0);
+        rotation = new Quaternion().fromAxisAngle(1, 1, 0, 0);
+        Transform.setCamera(new Camera());
+    }
+
+    /**
+     * Matrix4f.multiply, the API most callers use, multiplies matrices in place. Products of rotations stay
+     * rotations, so values do not drift out of range over iterations
+     */
+    @Benchmark
+    public void matrixMultiply(Blackhole blackhole) {
+        for (Matrix4f matrix : matrices) {
+            blackhole.consume(matrix.multiply(other));
+        }
+    }
+
+    @Benchmark
+    public void matrixMulInto(Blackhole blackhole) {
+        for (Matrix4f matrix : matrices) {
+            blackhole.consume(Matrix4f.mulInto(matrix, other, result));
+        }
+    }
+
+    @Benchmark
+    public void transformGetTransformation(Blackhole blackhole) {
+        for (Transform transform : transforms) {
+            blackhole.consume(transform.getTransformation());
+        }
+    }
+
+    @Benchmark
+    public void transformGetTransformationInto(Blackhole blackhole) {
+        for (Transform transform : transforms) {
+            blackhole.consume(transform.getTransformation(result));
+        }
+    }
+
+    @Benchmark
+    public void transformGetProjectedTransformation(Blackhole blackhole) {
+        for (Transform transform : transforms) {
+            blackhole.consume(transform.getProjectedTransformation());
+        }
+    }
+
+    @Benchmark
+    public void transformGetProjectedTransformationInto(Blackhole blackhole) {
+        Matrix4f viewProjection = Transform.getViewProjectionMatrix();
+        for (Transform transform : transforms) {
+            blackhole.consume(transform.getProjectedTransformation(viewProjection, result));
+        }
+    }
+
+    @Benchmark
+    public void vectorRotate(Blackhole blackhole) {
+        for (Vector3f vector : vectors) {
+            blackhole.consume(vector.rotate(1, axis));
+        }
+    }
+
+    @Benchmark
+    public void quaternionMult(Blackhole blackhole) {
+        for (Quaternion quaternion : quaternions) {
+            blackhole.consume(quaternion.mult(rotation));
+        }
+    }
+
+    @Benchmark
+    public void quaternionMulInPlace(Blackhole blackhole) {
+        for (Quaternion quaternion : quaternions) {
+            blackhole.consume(quaternion.mulInPlace(rotation));
+        }
+    }
+
+    @Benchmark
+    public void cameraRotateX(Blackhole blackhole) {
+        for (Camera camera : cameras) {
+            camera.rotateX(1);
+            blackhole.consume(camera);
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package assets;
+
+import render.Mesh;
+import render.MeshBuilder;
+import render.MipChain;
+import render.ResourceManager;
+import render.Shader;
+import render.Texture;
+import render.TextureStreamer;
+import render.VertexFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * AssetLoader class AssetLoader.java reads and parses assets off the GL thread and hands finished CPU-side data
+ * to the GL thread. Reading and parsing run on virtual threads when the runtime has them (JDK 21+),
+ * otherwise on a pool of daemon threads. GL work is queued and executed by {@link #drain()} which is called
+ * once per frame on the GL thread and stops after the time budget, so loading never stalls a frame for long.
+ * Every load returns a future which completes on the GL thread after GL objects are created.
+ * After {@link #shutdown()} futures of unfinished loads complete exceptionally with CancellationException
+ */
+public class AssetLoader {
+
+    /**
+     * default time GL work may take per frame, -Dengine.assetBudgetMs changes it
+     */
+    public static final long DEFAULT_BUDGET_NANOS = Long.getLong("engine.assetBudgetMs", 2) * 1_000_000;
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final ConcurrentLinkedQueue<Runnable> glTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown;
+    private final AtomicInteger pending = new AtomicInteger();
+    private long budgetNanos = DEFAULT_BUDGET_NANOS;
+    private long lastDrainNanos;
+    private long maxDrainNanos;
+
+    public AssetLoader() {
+        ExecutorService virtual = createVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "asset-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Finds Executors.newVirtualThreadPerTaskExecutor, the build targets JDK 17 so it is looked up reflectively
+     * @return executor or null if virtual threads are not available
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK before 21, or 19 and 20 without --enable-preview
+            return null;
+        }
+    }
+
+    /**
+     * Work on loader thread whose future can be cancelled when the executor drops it
+     */
+    private static final class Work<T> implements Runnable {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Supplier<T> supplier;
+
+        private Work(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void cancel() {
+            result.completeExceptionally(new CancellationException("AssetLoader was shut down"));
+        }
+    }
+
+    /**
+     * GL stage of load, cancelled stages free their payload
+     */
+    private final class GLTask<T, R> implements Runnable {
+        private final CompletableFuture<R> result;
+        private final T value;
+        private final Function<T, R> glStage;
+        private final Consumer<? super T> dispose;
+
+        private GLTask(CompletableFuture<R> result, T value, Function<T, R> glStage, Consumer<? super T> dispose) {
+            this.result = result;
+            this.value = value;
+            this.glStage = glStage;
+            this.dispose = dispose;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result.complete(glStage.apply(value));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+
+        private void cancel() {
+            try {
+                dispose.accept(value);
+            } finally {
+                result.completeExceptionally(new CancellationException("AssetLoader was shut down"));
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Runs work on loader thread
+     * @return future completed on loader thread, or exceptionally when loader is shut down before work runs
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> work) {
+        Work<T> task = new Work<>(work);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.cancel();
+        }
+        return task.result;
+    }
+
+    /**
+     * Runs work on loader thread and passes its result to GL stage which runs on GL thread
+     * @param work reading and parsing, must not call GL
+     * @param glStage creates GL objects from result of work
+     * @return future completed with result of GL stage
+     */
+    public <T, R> CompletableFuture<R> load(Supplier<T> work, Function<T, R> glStage) {
+        return load(work, glStage, value -> {
+        });
+    }
+
+    /**
+     * Runs work on loader thread and passes its result to GL stage which runs on GL thread
+     * @param work reading and parsing, must not call GL
+     * @param glStage creates GL objects from result of work
+     * @param dispose frees off-heap memory of result of work when GL stage is cancelled by {@link #shutdown()}
+     * @return future completed with result of GL stage
+     */
+    public <T, R> CompletableFuture<R> load(Supplier<T> work, Function<T, R> glStage, Consumer<? super T> dispose) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        pending.incrementAndGet();
+        supply(work).whenComplete((value, error) -> {
+            if (error != null) {
+                pending.decrementAndGet();
+                result.completeExceptionally(error);
+                return;
+            }
+            GLTask<T, R> task = new GLTask<>(result, value, glStage, dispose);
+            if (shutdown) {
+                task.cancel();
+                return;
+            }
+            glTasks.add(task);
+            // shutdown may have drained the queue between the check and add
+            if (shutdown && glTasks.remove(task)) {
+                task.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Reads classpath resource or file on loader thread
+     * @param path classpath resource path, or file path if there is no such resource
+     * @return future of buffer with whole content from position to limit. Asset stored uncompressed in default
+     * {@link AssetPack} is a read-only direct slice of the pack mapping which stays valid while the pack is open,
+     * otherwise it is a new heap buffer owned by caller. Callers which write to it or keep it have to copy it
+     */
+    public CompletableFuture<ByteBuffer> read(String path) {
+        return supply(() -> readBytes(path));
+    }
+
+    /**
+     * Reads text on loader thread
+     * @param path classpath resource path or file path
+     * @return future of UTF-8 content
+     */
+    public CompletableFuture<String> loadText(String path) {
+        return supply(() -> text(path));
+    }
+
+    /**
+     * Reads both stages on loader thread and compiles program on GL thread
+     * @param vertexPath path of vertex shader
+     * @param fragmentPath path of fragment shader
+     * @return future of created shader
+     */
+    public CompletableFuture<Shader> loadShader(String vertexPath, String fragmentPath) {
+        return load(() -> new String[] {text(vertexPath), text(fragmentPath)}, sources -> {
+            Shader shader = Shader.fromSource(sources[0], sources[1]);
+            shader.create();
+            return shader;
+        });
+    }
+
+    /**
+     * Parses Wavefront OBJ into off-heap vertex data on loader thread and uploads it on GL thread
+     * @param path path of .obj file
+     * @param format layout of vertices, attributes which OBJ does not have are zero
+     * @return future of created mesh
+     */
+    public CompletableFuture<Mesh> loadMesh(String path, VertexFormat format) {
+        return load(() -> ObjReader.read(readBytes(path), format), MeshBuilder::build, MeshBuilder::free);
+    }
+
+    /**
+     * Maps {@link MeshFile} on loader thread and uploads it straight from the mapping on GL thread
+     * @param path path of .mesh file
+     * @return future of created mesh
+     */
+    public CompletableFuture<Mesh> loadMeshFile(String path) {
+        return load(() -> openMeshFile(path).load(), MeshFile::createMesh);
+    }
+
+    /**
+     * Generates levels of detail of mesh on loader thread
+     * @param mesh mesh with three component positions
+     * @param generator LOD settings, e.g. {@link LodGenerator#DEFAULT}
+     * @return future of mesh with all levels, completed on loader thread
+     */
+    public CompletableFuture<MeshFile> generateLods(MeshFile mesh, LodGenerator generator) {
+        return supply(() -> generator.generate(mesh));
+    }
+
+    /**
+     * Maps {@link MeshFile} on loader thread and uploads it on GL thread unless resources have it already,
+     * the path is the key of the mesh. Concurrent loads of the same path create one mesh
+     * @param path path of .mesh file
+     * @param resources manager which owns the mesh
+     * @return future of handle to the mesh
+     */
+    public CompletableFuture<ResourceManager.Handle<Mesh>> loadMeshFile(String path, ResourceManager resources) {
+        return load(() -> openMeshFile(path).load(), mesh -> resources.acquire(path, Mesh.class, mesh::createMesh));
+    }
+
+    /**
+     * Maps mesh file and generates its levels of detail on loader thread unless the file has them already,
+     * uploads all levels on GL thread
+     * @param path path of .mesh file
+     * @param generator LOD settings, e.g. {@link LodGenerator#DEFAULT}
+     * @return future of created mesh with LODs
+     */
+    public CompletableFuture<Mesh> loadMeshFile(String path, LodGenerator generator) {
+        return load(() -> {
+            MeshFile mesh = openMeshFile(path).load();
+            return mesh.getLodCount() > 1 ? mesh : generator.generate(mesh);
+        }, MeshFile::createMesh);
+    }
+
+    /**
+     * Imports model with quantized {@link SceneImporter#DEFAULT_FORMAT}, see {@link #loadScene(String, VertexFormat)}
+     * @param path path of FBX, glTF, OBJ or other model file
+     * @return future of created meshes, in the order of {@link SceneImporter.Imported#getNames()}
+     */
+    public CompletableFuture<List<Mesh>> loadScene(String path) {
+        return loadScene(path, SceneImporter.DEFAULT_FORMAT);
+    }
+
+    /**
+     * Imports model with Assimp, or maps its cached meshes, on loader thread and uploads meshes on GL thread
+     * @param path path of FBX, glTF, OBJ or other model file, must be a file because Assimp reads referenced files
+     * @param format layout of vertices
+     * @return future of created meshes, in the order of {@link SceneImporter.Imported#getNames()}
+     */
+    public CompletableFuture<List<Mesh>> loadScene(String path, VertexFormat format) {
+        return load(() -> {
+            try {
+                return SceneImporter.getDefault().importFile(file(path), format).load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't import " + path, e);
+            }
+        }, imported -> {
+            List<Mesh> meshes = new ArrayList<>(imported.getMeshes().size());
+            for (MeshFile mesh : imported.getMeshes()) {
+                meshes.add(mesh.createMesh());
+            }
+            return meshes;
+        });
+    }
+
+    /**
+     * Returns file of classpath resource or file path
+     * @throws IllegalArgumentException if path is a resource inside a jar
+     */
+    private static Path file(String path) {
+        try {
+            URL url = AssetLoader.class.getResource(path);
+            if (url == null) {
+                return Paths.get(path);
+            }
+            if ("file".equals(url.getProtocol())) {
+                return Paths.get(url.toURI());
+            }
+            throw new IllegalArgumentException(path + " is inside a jar and can not be imported");
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid asset path " + path, e);
+        }
+    }
+
+    /**
+     * Maps mesh file, stored entries of default {@link AssetPack} are slices of its mapping, resources inside jars
+     * and compressed entries are read into direct memory
+     */
+    static MeshFile openMeshFile(String path) {
+        ByteBuffer packed = AssetPack.findDefault(path);
+        if (packed != null) {
+            return MeshFile.read(packed.isDirect() ? packed
+                    : ByteBuffer.allocateDirect(packed.remaining()).put(packed).flip(), path);
+        }
+        try {
+            URL url = AssetLoader.class.getResource(path);
+            if (url == null) {
+                return MeshFile.open(Paths.get(path));
+            }
+            if ("file".equals(url.getProtocol())) {
+                return MeshFile.open(Paths.get(url.toURI()));
+            }
+            ByteBuffer bytes = readBytes(path);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.remaining()).put(bytes).flip();
+            return MeshFile.read(direct, path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read " + path, e);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid asset path " + path, e);
+        }
+    }
+
+    /**
+     * Decodes image on loader thread, the result stays in CPU memory
+     * @param path path of PNG, JPEG, TGA, BMP or other image stb_image reads
+     * @return future of decoded image completed on loader thread
+     */
+    public CompletableFuture<Image> loadImage(String path) {
+        return supply(() -> Image.decode(readBytes(path), path));
+    }
+
+    /**
+     * Reads and compiles shader unless resources have it already, key is both paths joined by '|'
+     * @param vertexPath path of vertex shader
+     * @param fragmentPath path of fragment shader
+     * @param resources manager which owns the shader
+     * @return future of handle to the shader
+     */
+    public CompletableFuture<ResourceManager.Handle<Shader>> loadShader(String vertexPath, String fragmentPath,
+                                                                        ResourceManager resources) {
+        return load(() -> new String[] {text(vertexPath), text(fragmentPath)},
+                sources -> resources.acquire(vertexPath + "|" + fragmentPath, Shader.class, () -> {
+                    Shader shader = Shader.fromSource(sources[0], sources[1]);
+                    shader.create();
+                    return shader;
+                }));
+    }
+
+    /**
+     * Decodes image and builds its mip levels on loader thread, creates texture on GL thread.
+     * Levels are uploaded later by {@link TextureStreamer#update()}, from the coarsest one, and freed on CPU once
+     * uploaded, the image is decoded again when evicted levels are needed
+     * @param path path of PNG, JPEG, TGA, BMP or other image stb_image reads
+     * @param streamer streamer which uploads levels of the texture
+     * @return future of created texture, it may have no resident levels yet
+     */
+    public CompletableFuture<Texture> loadTexture(String path, TextureStreamer streamer) {
+        return load(() -> mipChain(path), chain -> streamer.add(chain, reloader(path)), MipChain::free);
+    }
+
+    /**
+     * Loads texture like {@link #loadTexture(String, TextureStreamer)} unless resources have it already,
+     * the path is the key of the texture
+     * @param path path of image
+     * @param streamer streamer which uploads levels of the texture
+     * @param resources manager which owns the texture
+     * @return future of handle to the texture
+     */
+    public CompletableFuture<ResourceManager.Handle<Texture>> loadTexture(String path, TextureStreamer streamer,
+                                                                          ResourceManager resources) {
+        return load(() -> mipChain(path), chain -> {
+            boolean[] created = new boolean[1];
+            ResourceManager.Handle<Texture> handle = resources.acquire(path, Texture.class, () -> {
+                created[0] = true;
+                return streamer.add(chain, reloader(path));
+            });
+            if (!created[0]) {
+                chain.free();
+            }
+            return handle;
+        }, MipChain::free);
+    }
+
+    private Supplier<CompletableFuture<MipChain>> reloader(String path) {
+        return () -> supply(() -> mipChain(path));
+    }
+
+    private static MipChain mipChain(String path) {
+        Image image = Image.decode(readBytes(path), path);
+        try {
+            return MipChain.generate(image.getPixels(), image.getWidth(), image.getHeight());
+        } finally {
+            image.free();
+        }
+    }
+
+    /**
+     * Queues GL work, it is executed by the next {@link #drain()}
+     * @param task task which calls GL
+     */
+    public void runOnGLThread(Runnable task) {
+        glTasks.add(task);
+    }
+
+    /**
+     * Runs queued GL work until the queue is empty or the time budget is used, called once per frame on GL thread.
+     * A task is never interrupted, so one long task can exceed the budget
+     * @return number of executed tasks
+     */
+    public int drain() {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int executed = 0;
+        Runnable task;
+        while ((task = glTasks.poll()) != null) {
+            task.run();
+            executed++;
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+        lastDrainNanos = System.nanoTime() - start;
+        maxDrainNanos = Math.max(maxDrainNanos, lastDrainNanos);
+        return executed;
+    }
+
+    /**
+     * Reads asset from default {@link AssetPack}, classpath resource or file, in this order.
+     * Stored pack assets are returned as read-only slices of the mapping without copying, see {@link #read(String)}
+     */
+    static ByteBuffer readBytes(String path) {
+        ByteBuffer packed = AssetPack.findDefault(path);
+        if (packed != null) {
+            return packed;
+        }
+        try {
+            URL url = AssetLoader.class.getResource(path);
+            if (url == null) {
+                return readFile(Paths.get(path));
+            }
+            if ("file".equals(url.getProtocol())) {
+                return readFile(Paths.get(url.toURI()));
+            }
+            try (InputStream input = url.openStream()) {
+                return ByteBuffer.wrap(input.readAllBytes());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read " + path, e);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid asset path " + path, e);
+        }
+    }
+
+    private static ByteBuffer readFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read whole file
+            }
+            return buffer.flip();
+        }
+    }
+
+    private static String text(String path) {
+        return StandardCharsets.UTF_8.decode(readBytes(path)).toString();
+    }
+
+    /**
+     * Stops loader threads. Futures of loads which did not reach GL thread complete exceptionally with
+     * CancellationException and payloads of their GL stages are freed, other work queued by
+     * {@link #runOnGLThread(Runnable)} is dropped
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Runnable dropped : executor.shutdownNow()) {
+            if (dropped instanceof Work) {
+                ((Work<?>) dropped).cancel();
+            }
+        }
+        Runnable task;
+        while ((task = glTasks.poll()) != null) {
+            if (task instanceof GLTask) {
+                ((GLTask<?, ?>) task).cancel();
+            }
+        }
+    }
+
+    /**
+     * @param budgetNanos time GL work may take per frame in nanoseconds
+     */
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * @return number of loads started by {@link #load(Supplier, Function)} which are not finished
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return time the last {@link #drain()} took in nanoseconds
+     */
+    public long getLastDrainNanos() {
+        return lastDrainNanos;
+    }
+
+    /**
+     * @return the longest {@link #drain()} in nanoseconds
+     */
+    public long getMaxDrainNanos() {
+        return maxDrainNanos;
+    }
+
+    /**
+     * @return true if loading runs on virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+}
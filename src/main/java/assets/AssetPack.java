@@ -0,0 +1,392 @@
+package assets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * AssetPack class AssetPack.java reads many assets from one file which is opened and mapped once, so lookups
+ * do not open files, scan jars or inflate zip entries. File is little endian:
+ * <pre>
+ *   0 int    magic "PACK"
+ *   4 int    version
+ *   8 int    entry count
+ *  12 int    name table bytes
+ *  16        index sorted by name hash: long FNV-1a hash of UTF-8 name, long data offset, int size,
+ *            int stored size, int name offset in name table, int name length
+ *            name table of UTF-8 names
+ *            data, stored entries aligned to {@link #ALIGNMENT} bytes, compressed entries packed
+ * </pre>
+ * An entry whose stored size is smaller than its size is compressed with {@link Lz4}. Stored entries are returned
+ * as slices of the mapping without copying, so mesh files keep the page aligned layout they are mapped with.
+ * Names are relative paths with '/' separators, a leading '/' of classpath style names is ignored.
+ * Lookups only read the mapping and can be made from any thread
+ */
+public class AssetPack {
+
+    public static final String EXTENSION = ".pack";
+    public static final int MAGIC = 0x4B434150;
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 4096;
+
+    /**
+     * default pack looked up by {@link #getDefault()}, -Dengine.pack changes it
+     */
+    public static final String DEFAULT_PATH = System.getProperty("engine.pack", "assets" + EXTENSION);
+
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 32;
+    /**
+     * an LZ4 block grows at most 255 times when decompressed, sizes over that are corrupt
+     */
+    private static final int MAX_EXPANSION = 255;
+
+    private final ByteBuffer data;
+    private final String name;
+    private final int entryCount;
+    private final int namesOffset;
+
+    private AssetPack(ByteBuffer data, String name, int entryCount, int namesOffset) {
+        this.data = data;
+        this.name = name;
+        this.entryCount = entryCount;
+        this.namesOffset = namesOffset;
+    }
+
+    /**
+     * default pack is opened by the first lookup
+     */
+    private static final class DefaultPack {
+        private static final AssetPack PACK = openDefault();
+
+        /**
+         * Errors are printed and not thrown, an exception here would make every later lookup fail with
+         * NoClassDefFoundError instead of falling back to classpath
+         */
+        private static AssetPack openDefault() {
+            Path file = Paths.get(DEFAULT_PATH);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try {
+                return open(file);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Couldn't open asset pack " + file + ", assets are read from classpath: " + e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return pack at {@link #DEFAULT_PATH}, null if there is no such file or it can not be opened
+     */
+    public static AssetPack getDefault() {
+        return DefaultPack.PACK;
+    }
+
+    /**
+     * Finds asset in default pack
+     * @param name name of asset
+     * @return asset, or null if there is no default pack or it does not have the asset
+     */
+    public static ByteBuffer findDefault(String name) {
+        AssetPack pack = getDefault();
+        return pack != null ? pack.find(name) : null;
+    }
+
+    /**
+     * Maps whole pack and checks its header and index
+     * @param file path of pack
+     * @return opened pack
+     * @throws IOException if file can not be read
+     * @throws IllegalArgumentException if file is not a valid pack
+     */
+    public static AssetPack open(Path file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + " is larger than 2 GB");
+            }
+            // mapping stays valid after the channel is closed and is released when it is garbage collected
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(data, file.toString());
+    }
+
+    /**
+     * Reads pack from buffer which holds a whole pack file, data is not copied
+     * @param data pack file from position to limit
+     * @param name name used in error messages
+     * @return pack
+     * @throws IllegalArgumentException if data is not a valid pack
+     */
+    public static AssetPack read(ByteBuffer data, String name) {
+        ByteBuffer file = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (file.limit() < HEADER_BYTES || file.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(name + " is not an asset pack");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IllegalArgumentException(name + " has unsupported version " + file.getInt(4));
+        }
+        int entryCount = file.getInt(8);
+        int namesBytes = file.getInt(12);
+        long namesOffset = HEADER_BYTES + (long) entryCount * ENTRY_BYTES;
+        if (entryCount < 0 || namesBytes < 0 || namesOffset + namesBytes > file.limit()) {
+            throw new IllegalArgumentException(name + " is truncated or corrupt");
+        }
+        for (int i = 0, entry = HEADER_BYTES; i < entryCount; i++, entry += ENTRY_BYTES) {
+            long offset = file.getLong(entry + 8);
+            int size = file.getInt(entry + 16), stored = file.getInt(entry + 20);
+            int nameOffset = file.getInt(entry + 24), nameLength = file.getInt(entry + 28);
+            if (size < 0 || stored < 0 || stored > size || offset < 0 || offset > file.limit() - stored
+                    || stored < size && size > (long) stored * MAX_EXPANSION + 16
+                    || nameOffset < 0 || nameLength < 0 || (long) nameOffset + nameLength > namesBytes
+                    || i > 0 && file.getLong(entry) < file.getLong(entry - ENTRY_BYTES)) {
+                throw new IllegalArgumentException(name + " is truncated or corrupt");
+            }
+        }
+        return new AssetPack(file, name, entryCount, (int) namesOffset);
+    }
+
+    /**
+     * Finds asset, stored assets are read-only slices of the mapping and compressed ones are decompressed to new array
+     * @param name name of asset, e.g. "shaders/mainVertex.glsl" or "/shaders/mainVertex.glsl"
+     * @return asset from position to limit, or null if pack does not have it
+     * @throws IllegalArgumentException if compressed asset is corrupt
+     */
+    public ByteBuffer find(String name) {
+        int entry = indexOf(name);
+        if (entry < 0) {
+            return null;
+        }
+        int offset = (int) data.getLong(entry + 8);
+        int size = data.getInt(entry + 16), stored = data.getInt(entry + 20);
+        if (stored == size) {
+            return data.slice(offset, size);
+        }
+        byte[] bytes = new byte[size];
+        Lz4.decompress(data, offset, stored, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @param name name of asset
+     * @return true if pack has asset
+     */
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Binary searches index by hash and compares names of entries with equal hash
+     * @return position of index entry, -1 if name is not found
+     */
+    private int indexOf(String name) {
+        byte[] key = normalize(name).getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        int low = 0, high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleHash = data.getLong(HEADER_BYTES + middle * ENTRY_BYTES);
+            if (middleHash < hash) {
+                low = middle + 1;
+            } else if (middleHash > hash) {
+                high = middle - 1;
+            } else {
+                int first = middle;
+                while (first > 0 && data.getLong(HEADER_BYTES + (first - 1) * ENTRY_BYTES) == hash) {
+                    first--;
+                }
+                for (int i = first; i < entryCount && data.getLong(HEADER_BYTES + i * ENTRY_BYTES) == hash; i++) {
+                    int entry = HEADER_BYTES + i * ENTRY_BYTES;
+                    if (nameEquals(entry, key)) {
+                        return entry;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int entry, byte[] key) {
+        int nameOffset = namesOffset + data.getInt(entry + 24);
+        if (data.getInt(entry + 28) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (data.get(nameOffset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return names of all assets in index order
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(entryCount);
+        for (int i = 0, entry = HEADER_BYTES; i < entryCount; i++, entry += ENTRY_BYTES) {
+            byte[] bytes = new byte[data.getInt(entry + 28)];
+            data.get(namesOffset + data.getInt(entry + 24), bytes);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return size of pack file in bytes
+     */
+    public long getSize() {
+        return data.limit();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return name with '/' separators and without leading '/'
+     */
+    static String normalize(String name) {
+        String normalized = name.replace('\\', '/');
+        int start = 0;
+        while (start < normalized.length() && normalized.charAt(start) == '/') {
+            start++;
+        }
+        return normalized.substring(start);
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of bytes
+     */
+    static long hash(byte[] bytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes pack to temporary file and moves it over target, so readers never see a partial file.
+     * Files are read one at a time, a compressed entry is kept only if it saves at least an eighth of its size
+     * @param file path of pack
+     * @param entries files by asset name
+     * @param compress selects names of assets which may be compressed, the rest is stored aligned
+     * @throws IOException if a file can not be read or pack can not be written
+     * @throws IllegalArgumentException if two names are equal after normalization or pack would be larger than 2 GB
+     */
+    public static void write(Path file, Map<String, Path> entries, Predicate<String> compress) throws IOException {
+        int count = entries.size();
+        String[] names = new String[count];
+        byte[][] nameBytes = new byte[count][];
+        Path[] files = new Path[count];
+        long[] hashes = new long[count];
+        int index = 0;
+        for (Map.Entry<String, Path> entry : entries.entrySet()) {
+            names[index] = normalize(entry.getKey());
+            nameBytes[index] = names[index].getBytes(StandardCharsets.UTF_8);
+            hashes[index] = hash(nameBytes[index]);
+            files[index] = entry.getValue();
+            index++;
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> hashes[i]).thenComparing(i -> names[i]));
+        for (int i = 1; i < count; i++) {
+            if (names[order[i]].equals(names[order[i - 1]])) {
+                throw new IllegalArgumentException("Asset " + names[order[i]] + " is packed twice");
+            }
+        }
+
+        int namesBytes = 0;
+        for (byte[] bytes : nameBytes) {
+            namesBytes += bytes.length;
+        }
+        int namesOffset = HEADER_BYTES + count * ENTRY_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(namesOffset + namesBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, count).putInt(12, namesBytes);
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            if (Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                // temporary files are private, packs are readable like any other asset
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long offset = align(header.capacity());
+                int nameOffset = 0;
+                for (int i = 0; i < count; i++) {
+                    int sorted = order[i];
+                    byte[] bytes = Files.readAllBytes(files[sorted]);
+                    byte[] stored = bytes;
+                    if (compress.test(names[sorted]) && bytes.length > 0) {
+                        byte[] compressed = Lz4.compress(bytes);
+                        if (compressed.length < bytes.length && compressed.length <= bytes.length - bytes.length / 8) {
+                            stored = compressed;
+                        }
+                    }
+                    if (stored == bytes) {
+                        offset = align(offset);
+                    }
+                    writeFully(channel, ByteBuffer.wrap(stored), offset);
+
+                    int entry = HEADER_BYTES + i * ENTRY_BYTES;
+                    header.putLong(entry, hashes[sorted]).putLong(entry + 8, offset).putInt(entry + 16, bytes.length)
+                            .putInt(entry + 20, stored.length).putInt(entry + 24, nameOffset)
+                            .putInt(entry + 28, nameBytes[sorted].length);
+                    header.put(namesOffset + nameOffset, nameBytes[sorted]);
+                    nameOffset += nameBytes[sorted].length;
+                    offset += stored.length;
+                    if (offset > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException(file + " would be larger than 2 GB");
+                    }
+                }
+                writeFully(channel, header.clear(), 0);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,63 @@
+package assets;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * AssetPacker class AssetPacker.java packs asset directories into one {@link AssetPack}, used by gradle packAssets
+ * task. Files are named by their path relative to input directory, directory=prefix puts them under prefix, so
+ * recources=shaders packs recources/mainVertex.glsl as shaders/mainVertex.glsl.
+ * Assets are compressed when it pays off, except {@link MeshFile} files which are stored to be read straight from
+ * the mapping, --store stores everything.
+ * Usage: AssetPacker output-file input-directory[=prefix]... [--store]
+ */
+public final class AssetPacker {
+
+    private AssetPacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> inputs = Stream.of(args).skip(1).filter(arg -> !arg.equals("--store")).collect(Collectors.toList());
+        if (args.length < 2 || inputs.isEmpty() || inputs.stream().anyMatch(arg -> arg.startsWith("--"))) {
+            System.err.println("Usage: AssetPacker <output file> <input directory>[=<prefix>]... [--store]");
+            System.exit(1);
+        }
+        boolean store = List.of(args).contains("--store");
+        Path output = Paths.get(args[0]);
+
+        Map<String, Path> entries = new TreeMap<>();
+        long bytes = 0;
+        for (String input : inputs) {
+            int separator = input.indexOf('=');
+            Path directory = Paths.get(separator < 0 ? input : input.substring(0, separator));
+            String prefix = separator < 0 ? "" : AssetPack.normalize(input.substring(separator + 1));
+            if (!prefix.isEmpty() && !prefix.endsWith("/")) {
+                prefix += "/";
+            }
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(directory)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = prefix + directory.relativize(file).toString().replace('\\', '/');
+                if (entries.put(name, file) != null) {
+                    throw new IllegalArgumentException("Asset " + name + " is in more than one input");
+                }
+                bytes += Files.size(file);
+            }
+        }
+
+        long start = System.nanoTime();
+        AssetPack.write(output, entries, name -> !store && !name.endsWith(MeshFile.EXTENSION));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Packed %d assets, %.1f MB into %.1f MB in %.2f s%n", entries.size(), bytes / 1e6,
+                Files.size(output) / 1e6, seconds);
+    }
+}
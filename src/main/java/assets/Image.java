@@ -0,0 +1,81 @@
+package assets;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Image class Image.java holds decoded 8-bit pixels in off-heap memory allocated by stb_image.
+ * Decoding does not call GL, so it runs on loader threads. Pixels have to be freed with {@link #free()}
+ */
+public class Image {
+
+    private final int width, height, channels;
+    private ByteBuffer pixels;
+
+    private Image(int width, int height, int channels, ByteBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Decodes encoded image to RGBA
+     * @param data encoded image from position to limit
+     * @param name name used in error message
+     * @return decoded image
+     * @throws IllegalArgumentException if stb_image can not decode data
+     */
+    public static Image decode(ByteBuffer data, String name) {
+        ByteBuffer encoded = MemoryUtil.memAlloc(data.remaining());
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            encoded.put(0, data, data.position(), data.remaining());
+            IntBuffer width = stack.mallocInt(1);
+            IntBuffer height = stack.mallocInt(1);
+            IntBuffer components = stack.mallocInt(1);
+            ByteBuffer pixels = STBImage.stbi_load_from_memory(encoded, width, height, components, 4);
+            if (pixels == null) {
+                throw new IllegalArgumentException("Couldn't decode " + name + ": " + STBImage.stbi_failure_reason());
+            }
+            return new Image(width.get(0), height.get(0), 4, pixels);
+        } finally {
+            MemoryUtil.memFree(encoded);
+        }
+    }
+
+    /**
+     * Frees pixels, image can not be used afterwards
+     */
+    public void free() {
+        if (pixels != null) {
+            STBImage.stbi_image_free(pixels);
+            pixels = null;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of 8-bit channels per pixel
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return pixels row by row from the top row, null after {@link #free()}
+     */
+    public ByteBuffer getPixels() {
+        return pixels;
+    }
+}
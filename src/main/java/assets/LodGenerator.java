@@ -0,0 +1,157 @@
+package assets;
+
+import render.MeshSimplifier;
+import render.VertexFormat;
+import render.VertexQuantizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LodGenerator class LodGenerator.java builds a chain of levels of detail for {@link MeshFile} with
+ * {@link MeshSimplifier}. Every level keeps ratio of triangles of the previous one as long as its error stays within
+ * error per level times level number. All levels index the same vertex data.
+ * Screen size of a level is where error of the next level becomes visible: LOD i is drawn while
+ * relative error of LOD i + 1 times screen size is larger than tolerance, e.g. 0.001 is one pixel at 1000 pixels.
+ * Does not call GL, meant to run on loader threads, see {@link AssetLoader#generateLods(MeshFile, LodGenerator)}
+ */
+public class LodGenerator {
+
+    /**
+     * up to 4 levels, each with half of triangles of the previous one and 0.5% more error
+     */
+    public static final LodGenerator DEFAULT = new LodGenerator(4, 0.5f, 0.005f, 0.001f);
+
+    /**
+     * levels are not kept if they remove less than this fraction of triangles of the previous level
+     */
+    private static final float MIN_REDUCTION = 0.1f;
+
+    private final int levels;
+    private final float ratio;
+    private final float errorPerLevel;
+    private final float tolerance;
+
+    /**
+     * Constructor of LOD generator
+     * @param levels largest number of levels including the original one
+     * @param ratio fraction of triangles of previous level each level aims for, in (0, 1)
+     * @param errorPerLevel allowed error relative to the largest side of bounding box added by each level
+     * @param tolerance largest visible error as a fraction of screen height
+     */
+    public LodGenerator(int levels, float ratio, float errorPerLevel, float tolerance) {
+        if (levels < 1 || ratio <= 0 || ratio >= 1 || errorPerLevel <= 0 || tolerance <= 0) {
+            throw new IllegalArgumentException("Invalid LOD settings");
+        }
+        this.levels = levels;
+        this.ratio = ratio;
+        this.errorPerLevel = errorPerLevel;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Generates levels from LOD 0 of mesh, existing other levels are replaced. Result is optimized with
+     * {@link MeshFile#optimize(float[])} like imported meshes, so it has 16-bit indices when vertices fit
+     * @param mesh mesh with three component positions
+     * @return optimized mesh with index data of all levels
+     */
+    public MeshFile generate(MeshFile mesh) {
+        return generate(mesh, null);
+    }
+
+    /**
+     * Generates levels like {@link #generate(MeshFile)}
+     * @param mesh mesh with three component positions
+     * @param acmr null or array which receives ACMR of LOD 0 before and after optimization
+     * @return optimized mesh with index data of all levels
+     */
+    public MeshFile generate(MeshFile mesh, float[] acmr) {
+        float[] positions = positions(mesh);
+        int[] original = mesh.getIndices(0);
+
+        List<int[]> chain = new ArrayList<>();
+        List<Float> errors = new ArrayList<>();
+        chain.add(original);
+        errors.add(0f);
+        float[] error = new float[1];
+        int target = original.length;
+        for (int level = 1; level < levels; level++) {
+            target = (int) (target * ratio) / 3 * 3;
+            if (target < 3) {
+                break;
+            }
+            // every level starts from the original, so its error is measured against the original surface
+            int[] simplified = MeshSimplifier.simplify(positions, original, target, errorPerLevel * level, error);
+            int previous = chain.get(chain.size() - 1).length;
+            if (simplified.length > previous * (1 - MIN_REDUCTION)) {
+                break;
+            }
+            chain.add(simplified);
+            errors.add(Math.max(error[0], errors.get(errors.size() - 1)));
+        }
+
+        int total = 0;
+        for (int[] indices : chain) {
+            total += indices.length;
+        }
+        ByteBuffer indexData = ByteBuffer.allocateDirect(total * Integer.BYTES).order(ByteOrder.nativeOrder());
+        IntBuffer indices = indexData.asIntBuffer();
+        MeshFile.Lod[] lods = new MeshFile.Lod[chain.size()];
+        for (int i = 0; i < lods.length; i++) {
+            float screenSize = 0;
+            if (i + 1 < lods.length) {
+                // with no measurable error the next level is always good enough
+                screenSize = tolerance / Math.max(errors.get(i + 1), 1e-6f);
+            }
+            lods[i] = new MeshFile.Lod(indices.position(), chain.get(i).length, screenSize);
+            indices.put(chain.get(i));
+        }
+        return MeshFile.wrap(mesh.getFormat(), mesh.getVertexCount(), mesh.getVertexData(), indexData,
+                mesh.getBounds(), lods).optimize(acmr);
+    }
+
+    /**
+     * Reads positions of all vertices, quantized positions are decoded
+     * @throws IllegalArgumentException if mesh has no three component positions
+     */
+    private static float[] positions(MeshFile mesh) {
+        VertexFormat format = mesh.getFormat();
+        int element = format.indexOf(VertexFormat.Attribute.POSITION);
+        if (element < 0 || format.getElement(element).getComponents() < 3) {
+            throw new IllegalArgumentException("LODs need three component positions");
+        }
+        ByteBuffer data = mesh.getVertexData();
+        int count = mesh.getVertexCount();
+        float[] positions = new float[count * 3];
+        float[] bounds = mesh.getBounds();
+        float[] position = new float[4];
+        int offset = (int) format.getOffset(element, count);
+        int stride = format.getStride(element);
+        for (int i = 0; i < count; i++, offset += stride) {
+            VertexQuantizer.read(format.getElement(element), data, offset, bounds, position);
+            positions[i * 3] = position[0];
+            positions[i * 3 + 1] = position[1];
+            positions[i * 3 + 2] = position[2];
+        }
+        return positions;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public float getRatio() {
+        return ratio;
+    }
+
+    public float getErrorPerLevel() {
+        return errorPerLevel;
+    }
+
+    public float getTolerance() {
+        return tolerance;
+    }
+}
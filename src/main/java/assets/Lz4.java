@@ -0,0 +1,171 @@
+package assets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lz4 class Lz4.java compresses and decompresses blocks in LZ4 block format: sequences of a token, literals,
+ * 2 byte little endian match offset and match length, the last sequence has literals only.
+ * Compression is a single greedy pass over a hash table of 4 byte sequences, which is fast and good enough for
+ * text assets packed at build time. Decompression is a plain loop without a dictionary or checksum
+ */
+final class Lz4 {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    /**
+     * a match must start at least this many bytes before the end of block
+     */
+    private static final int MATCH_LIMIT = 12;
+    /**
+     * the last bytes of block are always literals
+     */
+    private static final int LAST_LITERALS = 5;
+    private static final int HASH_BITS = 14;
+
+    private Lz4() {
+    }
+
+    /**
+     * @return the largest compressed size of block of given length
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses whole array
+     * @param source uncompressed bytes
+     * @return compressed block, can be larger than source if it does not compress
+     */
+    static byte[] compress(byte[] source) {
+        int length = source.length;
+        byte[] out = new byte[maxCompressedLength(length)];
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int written = 0;
+        int anchor = 0;
+        int position = 0;
+        int matchStartLimit = length - MATCH_LIMIT;
+        int matchEndLimit = length - LAST_LITERALS;
+        while (position < matchStartLimit) {
+            int sequence = readInt(source, position);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int candidate = table[hash];
+            table[hash] = position;
+            if (candidate < 0 || position - candidate > MAX_OFFSET || readInt(source, candidate) != sequence) {
+                position++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < matchEndLimit && source[candidate + matchLength] == source[position + matchLength]) {
+                matchLength++;
+            }
+            written = writeLiterals(source, anchor, position - anchor, matchLength - MIN_MATCH, out, written);
+            int offset = position - candidate;
+            out[written++] = (byte) offset;
+            out[written++] = (byte) (offset >>> 8);
+            if (matchLength - MIN_MATCH >= 15) {
+                written = writeLength(matchLength - MIN_MATCH - 15, out, written);
+            }
+            position += matchLength;
+            anchor = position;
+        }
+        written = writeLiterals(source, anchor, length - anchor, 0, out, written);
+        return Arrays.copyOf(out, written);
+    }
+
+    /**
+     * Writes token with literal length and match length - 4, and the literals
+     */
+    private static int writeLiterals(byte[] source, int start, int count, int matchLength, byte[] out, int written) {
+        out[written++] = (byte) (Math.min(count, 15) << 4 | Math.min(matchLength, 15));
+        if (count >= 15) {
+            written = writeLength(count - 15, out, written);
+        }
+        System.arraycopy(source, start, out, written, count);
+        return written + count;
+    }
+
+    private static int writeLength(int length, byte[] out, int written) {
+        while (length >= 255) {
+            out[written++] = (byte) 255;
+            length -= 255;
+        }
+        out[written++] = (byte) length;
+        return written;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | (bytes[position + 1] & 0xFF) << 8
+                | (bytes[position + 2] & 0xFF) << 16 | (bytes[position + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Decompresses block, source is read with absolute gets so buffer can be shared between threads
+     * @param source buffer holding block
+     * @param offset index of the first byte of block in source
+     * @param length length of block
+     * @param destination array whose length is the exact uncompressed size
+     * @throws IllegalArgumentException if block is corrupt or does not decompress to destination length
+     */
+    static void decompress(ByteBuffer source, int offset, int length, byte[] destination) {
+        int position = offset;
+        int end = offset + length;
+        int written = 0;
+        while (position < end) {
+            int token = source.get(position++) & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int next;
+                do {
+                    if (position >= end) {
+                        throw new IllegalArgumentException("LZ4 block is truncated");
+                    }
+                    next = source.get(position++) & 0xFF;
+                    literals += next;
+                } while (next == 255);
+            }
+            if (literals > end - position || literals > destination.length - written) {
+                throw new IllegalArgumentException("LZ4 literals run past end of block");
+            }
+            source.get(position, destination, written, literals);
+            position += literals;
+            written += literals;
+            if (position == end) {
+                break;
+            }
+
+            if (end - position < 2) {
+                throw new IllegalArgumentException("LZ4 block is truncated");
+            }
+            int matchOffset = (source.get(position) & 0xFF) | (source.get(position + 1) & 0xFF) << 8;
+            position += 2;
+            if (matchOffset == 0 || matchOffset > written) {
+                throw new IllegalArgumentException("LZ4 match offset " + matchOffset + " is out of range");
+            }
+            int matchLength = token & 15;
+            if (matchLength == 15) {
+                int next;
+                do {
+                    if (position >= end) {
+                        throw new IllegalArgumentException("LZ4 block is truncated");
+                    }
+                    next = source.get(position++) & 0xFF;
+                    matchLength += next;
+                } while (next == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > destination.length - written) {
+                throw new IllegalArgumentException("LZ4 match runs past end of output");
+            }
+            // byte by byte, match may overlap bytes it writes
+            for (int from = written - matchOffset, to = written + matchLength; written < to; ) {
+                destination[written++] = destination[from++];
+            }
+        }
+        if (written != destination.length) {
+            throw new IllegalArgumentException("LZ4 block decompressed to " + written + " of " + destination.length + " bytes");
+        }
+    }
+}
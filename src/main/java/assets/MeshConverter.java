@@ -0,0 +1,117 @@
+package assets;
+
+import org.lwjgl.system.MemoryUtil;
+import render.MeshBuilder;
+import render.MeshOptimizer;
+import render.VertexFormat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * MeshConverter class MeshConverter.java converts Wavefront OBJ files to {@link MeshFile} files,
+ * used by gradle convertMeshes task. Files are converted in parallel, vertices use
+ * {@link VertexFormat#POSITION_NORMAL_UV_QUANTIZED}, or {@link VertexFormat#POSITION_NORMAL_UV} with --float.
+ * Meshes are optimized with {@link MeshFile#optimize(float[])}.
+ * With --lods levels of detail are generated by {@link LodGenerator#DEFAULT}.
+ * Usage: MeshConverter input-file-or-directory output-directory [--lods] [--float]
+ */
+public final class MeshConverter {
+
+    private MeshConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> options = args.length > 2 ? List.of(args).subList(2, args.length) : List.of();
+        if (args.length < 2 || !List.of("--lods", "--float").containsAll(options)) {
+            System.err.println("Usage: MeshConverter <input file or directory> <output directory> [--lods] [--float]");
+            System.exit(1);
+        }
+        LodGenerator generator = options.contains("--lods") ? LodGenerator.DEFAULT : null;
+        VertexFormat format = options.contains("--float") ? VertexFormat.POSITION_NORMAL_UV
+                : VertexFormat.POSITION_NORMAL_UV_QUANTIZED;
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(path -> path.toString().toLowerCase().endsWith(".obj")).collect(Collectors.toList());
+        }
+        long start = System.nanoTime();
+        AtomicLong bytes = new AtomicLong();
+        files.parallelStream().forEach(file -> {
+            Path relative = Files.isDirectory(input) ? input.relativize(file) : file.getFileName();
+            String name = relative.toString();
+            Path target = output.resolve(name.substring(0, name.length() - 4) + MeshFile.EXTENSION);
+            try {
+                bytes.addAndGet(convert(file, target, format, generator));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't convert " + file, e);
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Converted %d meshes, %.1f MB in %.2f s%n", files.size(), bytes.get() / 1e6, seconds);
+    }
+
+    /**
+     * Converts one OBJ file
+     * @param source path of .obj file
+     * @param target path of mesh file
+     * @param format layout of vertices
+     * @return number of vertex and index bytes written
+     * @throws IOException if a file can not be read or written
+     */
+    public static long convert(Path source, Path target, VertexFormat format) throws IOException {
+        return convert(source, target, format, null);
+    }
+
+    /**
+     * Converts one OBJ file and generates its levels of detail
+     * @param source path of .obj file
+     * @param target path of mesh file
+     * @param format layout of vertices
+     * @param generator LOD settings or null to write one level
+     * @return number of vertex and index bytes written
+     * @throws IOException if a file can not be read or written
+     */
+    public static long convert(Path source, Path target, VertexFormat format, LodGenerator generator) throws IOException {
+        return write(ObjReader.read(ByteBuffer.wrap(Files.readAllBytes(source)), format), target, generator);
+    }
+
+    /**
+     * Optimizes vertices and indices of builder for vertex cache and fetch, writes them to mesh file and frees builder.
+     * Prints ACMR before and after optimization
+     * @param builder builder with finished vertices and indices
+     * @param target path of mesh file
+     * @param generator LOD settings or null to write one level
+     * @return number of vertex and index bytes written
+     * @throws IOException if file can not be written
+     */
+    static long write(MeshBuilder builder, Path target, LodGenerator generator) throws IOException {
+        VertexFormat format = builder.getFormat();
+        ByteBuffer vertices = MemoryUtil.memAlloc(builder.getVertexCount() * format.getVertexSize());
+        ByteBuffer indices = MemoryUtil.memAlloc(builder.getIndexCount() * Integer.BYTES);
+        try {
+            builder.copyVertexData(vertices);
+            builder.copyIndexData(indices.asIntBuffer());
+            MeshFile mesh = MeshFile.wrap(format, builder.getVertexCount(), vertices, indices, builder.getBounds(new float[6]));
+            float[] acmr = new float[2];
+            mesh = generator != null ? generator.generate(mesh, acmr) : mesh.optimize(acmr);
+            mesh.write(target);
+            System.out.printf("%s: ACMR %.3f -> %.3f, %d vertices, %d-bit indices%n", target.getFileName(), acmr[0], acmr[1],
+                    mesh.getVertexCount(), MeshOptimizer.indexSize(mesh.getIndexType()) * 8);
+            return mesh.getVertexData().remaining() + (long) mesh.getIndexData().remaining();
+        } finally {
+            builder.free();
+            MemoryUtil.memFree(vertices);
+            MemoryUtil.memFree(indices);
+        }
+    }
+}
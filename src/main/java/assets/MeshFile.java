@@ -0,0 +1,499 @@
+package assets;
+
+import org.lwjgl.opengl.GL11;
+import render.Mesh;
+import render.MeshOptimizer;
+import render.VertexFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * MeshFile class MeshFile.java reads and writes binary meshes. File is little endian:
+ * <pre>
+ *   0 int    magic "MESH"
+ *   4 int    version
+ *   8 int    flags, bit 0 interleaved
+ *  12 int    element count
+ *  16 int    vertex count
+ *  20 int    GL index type, GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+ *  24 int    LOD count
+ *  28 int    reserved
+ *  32 float  bounds minX, minY, minZ, maxX, maxY, maxZ
+ *  56 long   vertex data offset, vertex data bytes, index data offset, index data bytes
+ *  88        elements: byte attribute, byte components, byte normalized, byte reserved, int GL type
+ *            LODs: int first index, int index count, float screen size
+ *            vertex data and index data, each aligned to {@link #ALIGNMENT} bytes
+ * </pre>
+ * Vertex data is laid out as in vertex buffer and index data holds index lists of all LODs, so the reader maps
+ * the file once and passes slices of the mapping to glBufferData without copying anything on the Java side
+ */
+public class MeshFile {
+
+    public static final String EXTENSION = ".mesh";
+    public static final int MAGIC = 0x4853454D;
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 64;
+
+    private static final int HEADER_BYTES = 88;
+    private static final int ELEMENT_BYTES = 8;
+    private static final int LOD_BYTES = 12;
+    private static final int FLAG_INTERLEAVED = 1;
+
+    /**
+     * Level of detail, a range of the index data drawn when mesh covers at least screen size
+     */
+    public static class Lod {
+        private final int firstIndex;
+        private final int indexCount;
+        private final float screenSize;
+
+        /**
+         * Constructor of LOD
+         * @param firstIndex index of the first index of LOD in index data
+         * @param indexCount number of indices of LOD
+         * @param screenSize smallest projected size, as fraction of screen height, at which LOD is used
+         */
+        public Lod(int firstIndex, int indexCount, float screenSize) {
+            this.firstIndex = firstIndex;
+            this.indexCount = indexCount;
+            this.screenSize = screenSize;
+        }
+
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public int getIndexCount() {
+            return indexCount;
+        }
+
+        public float getScreenSize() {
+            return screenSize;
+        }
+    }
+
+    private final VertexFormat format;
+    private final int vertexCount;
+    private final int indexType;
+    private final float[] bounds;
+    private final Lod[] lods;
+    private final ByteBuffer vertexData;
+    private final ByteBuffer indexData;
+    private MappedByteBuffer mapping;
+
+    private MeshFile(VertexFormat format, int vertexCount, int indexType, float[] bounds, Lod[] lods,
+                     ByteBuffer vertexData, ByteBuffer indexData) {
+        this.format = format;
+        this.vertexCount = vertexCount;
+        this.indexType = indexType;
+        this.bounds = bounds;
+        this.lods = lods;
+        this.vertexData = vertexData;
+        this.indexData = indexData;
+    }
+
+    /**
+     * Maps file and reads its header, vertex and index data stay in the mapping
+     * @param file path of mesh file
+     * @return opened mesh file
+     * @throws IOException if file can not be read
+     * @throws IllegalArgumentException if file is not a valid mesh file
+     */
+    public static MeshFile open(Path file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // mapping stays valid after the channel is closed and is released when it is garbage collected
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        MeshFile meshFile = read(data, file.toString());
+        meshFile.mapping = (MappedByteBuffer) data;
+        return meshFile;
+    }
+
+    /**
+     * Reads all pages of mapped file into memory, called on loader thread so upload on GL thread does not wait for disk
+     * @return this object
+     */
+    public MeshFile load() {
+        if (mapping != null) {
+            mapping.load();
+        }
+        return this;
+    }
+
+    /**
+     * Reads mesh from buffer which holds a whole mesh file, data is not copied
+     * @param data mesh file from position to limit
+     * @param name name used in error messages
+     * @return mesh file
+     * @throws IllegalArgumentException if data is not a valid mesh file
+     */
+    public static MeshFile read(ByteBuffer data, String name) {
+        ByteBuffer file = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (file.limit() < HEADER_BYTES || file.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(name + " is not a mesh file");
+        }
+        if (file.getInt(4) != VERSION) {
+            throw new IllegalArgumentException(name + " has unsupported version " + file.getInt(4));
+        }
+        boolean interleaved = (file.getInt(8) & FLAG_INTERLEAVED) != 0;
+        int elementCount = file.getInt(12);
+        int vertexCount = file.getInt(16);
+        int indexType = file.getInt(20);
+        int lodCount = file.getInt(24);
+        if (indexType != GL11.GL_UNSIGNED_INT && indexType != GL11.GL_UNSIGNED_SHORT) {
+            throw new IllegalArgumentException(name + " has unsupported index type " + indexType);
+        }
+        float[] bounds = new float[6];
+        for (int i = 0; i < 6; i++) {
+            bounds[i] = file.getFloat(32 + i * 4);
+        }
+        long vertexOffset = file.getLong(56), vertexBytes = file.getLong(64);
+        long indexOffset = file.getLong(72), indexBytes = file.getLong(80);
+        long tableEnd = HEADER_BYTES + (long) elementCount * ELEMENT_BYTES + (long) lodCount * LOD_BYTES;
+        if (elementCount <= 0 || lodCount <= 0 || tableEnd > file.limit()
+                || !inside(vertexOffset, vertexBytes, file.limit()) || !inside(indexOffset, indexBytes, file.limit())) {
+            throw new IllegalArgumentException(name + " is truncated or corrupt");
+        }
+
+        VertexFormat.Attribute[] attributes = VertexFormat.Attribute.values();
+        VertexFormat.Element[] elements = new VertexFormat.Element[elementCount];
+        int position = HEADER_BYTES;
+        for (int i = 0; i < elementCount; i++, position += ELEMENT_BYTES) {
+            int attribute = file.get(position);
+            if (attribute < 0 || attribute >= attributes.length) {
+                throw new IllegalArgumentException(name + " has unknown attribute " + attribute);
+            }
+            elements[i] = new VertexFormat.Element(attributes[attribute], file.get(position + 1),
+                    file.getInt(position + 4), file.get(position + 2) != 0);
+        }
+        VertexFormat format = canonical(new VertexFormat(interleaved, elements));
+        if ((long) vertexCount * format.getVertexSize() != vertexBytes) {
+            throw new IllegalArgumentException(name + " vertex data does not match vertex format");
+        }
+
+        Lod[] lods = new Lod[lodCount];
+        long indexCount = indexBytes / MeshOptimizer.indexSize(indexType);
+        for (int i = 0; i < lodCount; i++, position += LOD_BYTES) {
+            lods[i] = new Lod(file.getInt(position), file.getInt(position + 4), file.getFloat(position + 8));
+            if (lods[i].firstIndex < 0 || lods[i].indexCount < 0 || lods[i].firstIndex + (long) lods[i].indexCount > indexCount) {
+                throw new IllegalArgumentException(name + " LOD " + i + " is outside of index data");
+            }
+        }
+        ByteBuffer vertices = file.slice((int) vertexOffset, (int) vertexBytes).order(ByteOrder.nativeOrder());
+        ByteBuffer indices = file.slice((int) indexOffset, (int) indexBytes).order(ByteOrder.nativeOrder());
+        return new MeshFile(format, vertexCount, indexType, bounds, lods, vertices, indices);
+    }
+
+    private static boolean inside(long offset, long bytes, long limit) {
+        // compared without adding, so huge offsets of corrupt files can not overflow
+        return offset >= 0 && bytes >= 0 && bytes <= limit && offset <= limit - bytes && limit <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns built-in format equal to given one, so meshes read from files can share batches with built meshes
+     */
+    private static VertexFormat canonical(VertexFormat format) {
+        if (format.equals(VertexFormat.POSITION_NORMAL_UV)) {
+            return VertexFormat.POSITION_NORMAL_UV;
+        }
+        if (format.equals(VertexFormat.POSITION_NORMAL_UV_QUANTIZED)) {
+            return VertexFormat.POSITION_NORMAL_UV_QUANTIZED;
+        }
+        if (format.equals(VertexFormat.POSITION)) {
+            return VertexFormat.POSITION;
+        }
+        return format;
+    }
+
+    /**
+     * Creates mesh file from data in memory without writing it, buffers are not copied
+     * @param format layout of vertex data
+     * @param vertexCount number of vertices
+     * @param vertexData direct buffer with vertices from position to limit, laid out as in vertex buffer
+     * @param indexData direct buffer with unsigned int indices of all LODs from position to limit
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions
+     * @param lods LODs from the most detailed, if none are given one LOD covers all indices
+     * @return mesh file
+     */
+    public static MeshFile wrap(VertexFormat format, int vertexCount, ByteBuffer vertexData, ByteBuffer indexData,
+                                float[] bounds, Lod... lods) {
+        return wrap(format, vertexCount, vertexData, GL11.GL_UNSIGNED_INT, indexData, bounds, lods);
+    }
+
+    /**
+     * Creates mesh file from data in memory without writing it, buffers are not copied
+     * @param format layout of vertex data
+     * @param vertexCount number of vertices
+     * @param vertexData direct buffer with vertices from position to limit, laid out as in vertex buffer
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+     * @param indexData direct buffer with indices of all LODs from position to limit
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions
+     * @param lods LODs from the most detailed, if none are given one LOD covers all indices
+     * @return mesh file
+     */
+    public static MeshFile wrap(VertexFormat format, int vertexCount, ByteBuffer vertexData, int indexType,
+                                ByteBuffer indexData, float[] bounds, Lod... lods) {
+        if (vertexData.remaining() != (long) vertexCount * format.getVertexSize()) {
+            throw new IllegalArgumentException("Vertex data does not match vertex format");
+        }
+        if (!vertexData.isDirect() || !indexData.isDirect()) {
+            throw new IllegalArgumentException("Mesh data has to be in direct buffers");
+        }
+        return new MeshFile(format, vertexCount, indexType, bounds.clone(), lods(indexType, indexData, lods),
+                vertexData.slice().order(ByteOrder.nativeOrder()), indexData.slice().order(ByteOrder.nativeOrder()));
+    }
+
+    private static Lod[] lods(int indexType, ByteBuffer indexData, Lod[] lods) {
+        return lods.length == 0 ? new Lod[] {new Lod(0, indexData.remaining() / MeshOptimizer.indexSize(indexType), 0)} : lods;
+    }
+
+    /**
+     * Writes mesh file to temporary file and moves it over target, so readers never see a partial file
+     * @param file path of mesh file
+     * @param format layout of vertex data
+     * @param vertexCount number of vertices
+     * @param vertexData vertices from position to limit, laid out as in vertex buffer
+     * @param indexData unsigned int indices of all LODs from position to limit
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions
+     * @param lods LODs from the most detailed, if none are given one LOD covers all indices
+     * @throws IOException if file can not be written
+     */
+    public static void write(Path file, VertexFormat format, int vertexCount, ByteBuffer vertexData,
+                             ByteBuffer indexData, float[] bounds, Lod... lods) throws IOException {
+        write(file, format, vertexCount, vertexData, GL11.GL_UNSIGNED_INT, indexData, bounds, lods);
+    }
+
+    /**
+     * Writes mesh file to temporary file and moves it over target, so readers never see a partial file
+     * @param file path of mesh file
+     * @param format layout of vertex data
+     * @param vertexCount number of vertices
+     * @param vertexData vertices from position to limit, laid out as in vertex buffer
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+     * @param indexData indices of all LODs from position to limit
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions
+     * @param lods LODs from the most detailed, if none are given one LOD covers all indices
+     * @throws IOException if file can not be written
+     */
+    public static void write(Path file, VertexFormat format, int vertexCount, ByteBuffer vertexData, int indexType,
+                             ByteBuffer indexData, float[] bounds, Lod... lods) throws IOException {
+        if (vertexData.remaining() != (long) vertexCount * format.getVertexSize()) {
+            throw new IllegalArgumentException("Vertex data does not match vertex format");
+        }
+        lods = lods(indexType, indexData, lods);
+        int tableEnd = HEADER_BYTES + format.getElementCount() * ELEMENT_BYTES + lods.length * LOD_BYTES;
+        long vertexOffset = align(tableEnd);
+        long indexOffset = align(vertexOffset + vertexData.remaining());
+
+        ByteBuffer header = ByteBuffer.allocate((int) vertexOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, format.isInterleaved() ? FLAG_INTERLEAVED : 0)
+                .putInt(12, format.getElementCount()).putInt(16, vertexCount).putInt(20, indexType)
+                .putInt(24, lods.length);
+        for (int i = 0; i < 6; i++) {
+            header.putFloat(32 + i * 4, bounds[i]);
+        }
+        header.putLong(56, vertexOffset).putLong(64, vertexData.remaining())
+                .putLong(72, indexOffset).putLong(80, indexData.remaining());
+        int position = HEADER_BYTES;
+        for (int i = 0; i < format.getElementCount(); i++, position += ELEMENT_BYTES) {
+            VertexFormat.Element element = format.getElement(i);
+            header.put(position, (byte) element.getAttribute().ordinal()).put(position + 1, (byte) element.getComponents())
+                    .put(position + 2, (byte) (element.isNormalized() ? 1 : 0)).putInt(position + 4, element.getType());
+        }
+        for (Lod lod : lods) {
+            header.putInt(position, lod.firstIndex).putInt(position + 4, lod.indexCount).putFloat(position + 8, lod.screenSize);
+            position += LOD_BYTES;
+        }
+        ByteBuffer padding = ByteBuffer.allocate((int) (indexOffset - vertexOffset - vertexData.remaining()));
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            if (Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                // temporary files are private, mesh files are readable like any other asset
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer[] parts = {header, vertexData.duplicate(), padding, indexData.duplicate()};
+                long total = indexOffset + indexData.remaining();
+                long written = 0;
+                while (written < total) {
+                    written += channel.write(parts);
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Uploads vertex and index data of all LODs straight from the mapping, called on GL thread.
+     * {@link Mesh#getSize()} of created mesh is index count of LOD 0 and all LODs are set with {@link Mesh#setLods}
+     * @return created mesh
+     */
+    public Mesh createMesh() {
+        Mesh mesh = Mesh.create(format, vertexCount, vertexData, indexType, indexData, lods[0].indexCount, bounds);
+        if (lods.length > 1) {
+            int[] firstIndices = new int[lods.length];
+            int[] indexCounts = new int[lods.length];
+            float[] screenSizes = new float[lods.length];
+            for (int i = 0; i < lods.length; i++) {
+                firstIndices[i] = lods[i].firstIndex;
+                indexCounts[i] = lods[i].indexCount;
+                screenSizes[i] = lods[i].screenSize;
+            }
+            mesh.setLods(firstIndices, indexCounts, screenSizes);
+        }
+        return mesh;
+    }
+
+    /**
+     * Writes this mesh with all its LODs to file, see {@link #write(Path, VertexFormat, int, ByteBuffer, ByteBuffer, float[], Lod...)}
+     * @param file path of mesh file
+     * @throws IOException if file can not be written
+     */
+    public void write(Path file) throws IOException {
+        write(file, format, vertexCount, vertexData, indexType, indexData, bounds, lods);
+    }
+
+    /**
+     * Reorders triangles of every LOD for vertex cache and vertices for fetch locality, see {@link MeshOptimizer}.
+     * Vertices no LOD uses are dropped and indices become 16-bit when the vertex count allows
+     * @param acmr if not null, receives ACMR of LOD 0 before and after optimization
+     * @return optimized mesh in memory
+     */
+    public MeshFile optimize(float[] acmr) {
+        int[][] lists = new int[lods.length][];
+        int total = 0;
+        for (int i = 0; i < lods.length; i++) {
+            lists[i] = getIndices(i);
+            total += lists[i].length;
+        }
+        if (acmr != null) {
+            acmr[0] = MeshOptimizer.acmr(lists[0], 0, lists[0].length, vertexCount, MeshOptimizer.CACHE_SIZE);
+        }
+        int[] all = new int[total];
+        Lod[] optimized = new Lod[lods.length];
+        for (int i = 0, first = 0; i < lods.length; i++) {
+            int[] list = MeshOptimizer.optimizeVertexCache(lists[i], vertexCount, MeshOptimizer.CACHE_SIZE);
+            System.arraycopy(list, 0, all, first, list.length);
+            optimized[i] = new Lod(first, list.length, lods[i].screenSize);
+            first += list.length;
+        }
+        // LOD 0 comes first, so vertices are ordered for the most detailed level
+        int[] remap = new int[vertexCount];
+        int used = MeshOptimizer.optimizeVertexFetch(all, vertexCount, remap);
+        if (acmr != null) {
+            acmr[1] = MeshOptimizer.acmr(all, 0, optimized[0].indexCount, used, MeshOptimizer.CACHE_SIZE);
+        }
+
+        ByteBuffer vertices = ByteBuffer.allocateDirect(used * format.getVertexSize()).order(ByteOrder.nativeOrder());
+        if (format.isInterleaved()) {
+            MeshOptimizer.remapVertices(vertexData, vertices, format.getVertexSize(), vertexCount, remap);
+        } else {
+            for (int i = 0; i < format.getElementCount(); i++) {
+                int size = format.getElement(i).getSize();
+                ByteBuffer src = vertexData.slice((int) format.getOffset(i, vertexCount), vertexCount * size);
+                ByteBuffer dest = vertices.slice((int) format.getOffset(i, used), used * size);
+                MeshOptimizer.remapVertices(src, dest, size, vertexCount, remap);
+            }
+        }
+        int type = MeshOptimizer.indexType(used);
+        ByteBuffer indices = ByteBuffer.allocateDirect(total * MeshOptimizer.indexSize(type)).order(ByteOrder.nativeOrder());
+        if (type == GL11.GL_UNSIGNED_SHORT) {
+            ShortBuffer shorts = indices.asShortBuffer();
+            for (int i = 0; i < total; i++) {
+                shorts.put(i, (short) all[i]);
+            }
+        } else {
+            indices.asIntBuffer().put(0, all);
+        }
+        return new MeshFile(format, used, type, bounds, optimized, vertices, indices);
+    }
+
+    /**
+     * Reads indices of LOD
+     * @param lod index of LOD
+     * @return indices as ints
+     */
+    public int[] getIndices(int lod) {
+        Lod range = lods[lod];
+        int[] indices = new int[range.indexCount];
+        if (indexType == GL11.GL_UNSIGNED_SHORT) {
+            ShortBuffer shorts = indexData.asShortBuffer();
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = Short.toUnsignedInt(shorts.get(range.firstIndex + i));
+            }
+        } else {
+            indexData.asIntBuffer().get(range.firstIndex, indices);
+        }
+        return indices;
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return GL type of indices
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @return minX, minY, minZ, maxX, maxY, maxZ of positions, should not be modified
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    public int getLodCount() {
+        return lods.length;
+    }
+
+    public Lod getLod(int index) {
+        return lods[index];
+    }
+
+    /**
+     * @return vertex data in the mapping, laid out as in vertex buffer
+     */
+    public ByteBuffer getVertexData() {
+        return vertexData.duplicate().order(vertexData.order());
+    }
+
+    /**
+     * @return indices of all LODs in the mapping
+     */
+    public ByteBuffer getIndexData() {
+        return indexData.duplicate().order(indexData.order());
+    }
+}
@@ -0,0 +1,276 @@
+package assets;
+
+import render.MeshBuilder;
+import render.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ObjReader class ObjReader.java parses Wavefront OBJ positions, texture coordinates, normals and faces
+ * into a {@link MeshBuilder}. Polygons are triangulated as fans and equal position/uv/normal triples share a vertex.
+ * Materials, groups and other statements are ignored. Does not call GL, so it can run on loader threads
+ */
+public final class ObjReader {
+
+    private ObjReader() {
+    }
+
+    /**
+     * Parses OBJ data
+     * @param data content of .obj file from position to limit
+     * @param format layout of vertices
+     * @return builder with parsed vertices and indices, caller builds or frees it
+     * @throws IllegalArgumentException if data is not valid OBJ
+     */
+    public static MeshBuilder read(ByteBuffer data, VertexFormat format) {
+        FloatList positions = new FloatList();
+        FloatList uvs = new FloatList();
+        FloatList normals = new FloatList();
+        Map<Corner, Integer> vertices = new HashMap<>();
+        int[] face = new int[3 * 8];
+        MeshBuilder builder = new MeshBuilder(format, 1024, 3072);
+        Cursor cursor = new Cursor(data);
+        try {
+            while (cursor.hasLine()) {
+                String keyword = cursor.word();
+                if (keyword == null) {
+                    // empty line
+                } else if (keyword.equals("v")) {
+                    positions.add(cursor.number(), cursor.number(), cursor.number());
+                } else if (keyword.equals("vt")) {
+                    float u = cursor.number();
+                    float v = cursor.hasValue() ? cursor.number() : 0;
+                    uvs.add(u, v, 0);
+                } else if (keyword.equals("vn")) {
+                    normals.add(cursor.number(), cursor.number(), cursor.number());
+                } else if (keyword.equals("f")) {
+                    int corners = 0;
+                    while (cursor.hasValue()) {
+                        if (corners * 3 + 3 > face.length) {
+                            face = Arrays.copyOf(face, face.length * 2);
+                        }
+                        cursor.corner(face, corners * 3, positions.size(), uvs.size(), normals.size());
+                        corners++;
+                    }
+                    if (corners < 3) {
+                        throw new IllegalArgumentException("Face with " + corners + " vertices at line " + cursor.line);
+                    }
+                    int first = vertex(builder, vertices, face, 0, positions, uvs, normals);
+                    int previous = vertex(builder, vertices, face, 3, positions, uvs, normals);
+                    for (int i = 2; i < corners; i++) {
+                        int current = vertex(builder, vertices, face, i * 3, positions, uvs, normals);
+                        builder.triangle(first, previous, current);
+                        previous = current;
+                    }
+                }
+                cursor.nextLine();
+            }
+            return builder;
+        } catch (RuntimeException e) {
+            builder.free();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns index of vertex with given position, uv and normal, writing it to builder if it is new
+     */
+    private static int vertex(MeshBuilder builder, Map<Corner, Integer> vertices, int[] face, int off,
+                              FloatList positions, FloatList uvs, FloatList normals) {
+        int p = face[off], t = face[off + 1], n = face[off + 2];
+        Corner key = new Corner(p, t, n);
+        Integer index = vertices.get(key);
+        if (index != null) {
+            return index;
+        }
+        float[] v = positions.values;
+        builder.position(v[p * 3], v[p * 3 + 1], v[p * 3 + 2]);
+        if (t >= 0) {
+            builder.uv(uvs.values[t * 3], uvs.values[t * 3 + 1]);
+        }
+        if (n >= 0) {
+            float[] normal = normals.values;
+            builder.normal(normal[n * 3], normal[n * 3 + 1], normal[n * 3 + 2]);
+        }
+        int created = builder.getVertexCount();
+        builder.endVertex();
+        vertices.put(key, created);
+        return created;
+    }
+
+    /**
+     * Position, uv and normal index of a face corner, key of vertices which are shared
+     */
+    private static final class Corner {
+        final int position, uv, normal;
+
+        Corner(int position, int uv, int normal) {
+            this.position = position;
+            this.uv = uv;
+            this.normal = normal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Corner)) {
+                return false;
+            }
+            Corner corner = (Corner) o;
+            return position == corner.position && uv == corner.uv && normal == corner.normal;
+        }
+
+        @Override
+        public int hashCode() {
+            return (position * 31 + uv) * 31 + normal;
+        }
+    }
+
+    private static final class FloatList {
+        float[] values = new float[3 * 256];
+        int count;
+
+        void add(float x, float y, float z) {
+            if (count + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = x;
+            values[count++] = y;
+            values[count++] = z;
+        }
+
+        int size() {
+            return count / 3;
+        }
+    }
+
+    /**
+     * Reads tokens of ASCII lines straight from buffer
+     */
+    private static final class Cursor {
+        private final ByteBuffer data;
+        private final StringBuilder token = new StringBuilder();
+        private int position;
+        private int line = 1;
+
+        Cursor(ByteBuffer data) {
+            this.data = data;
+            this.position = data.position();
+        }
+
+        boolean hasLine() {
+            return position < data.limit();
+        }
+
+        void nextLine() {
+            while (position < data.limit() && data.get(position) != '\n') {
+                position++;
+            }
+            position++;
+            line++;
+        }
+
+        private void skipSpaces() {
+            while (position < data.limit()) {
+                byte b = data.get(position);
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * @return true if there is another token on current line which is not a comment
+         */
+        boolean hasValue() {
+            skipSpaces();
+            return position < data.limit() && data.get(position) != '\n' && data.get(position) != '#';
+        }
+
+        /**
+         * @return first token of line or null if line is empty or a comment
+         */
+        String word() {
+            if (!hasValue()) {
+                return null;
+            }
+            token.setLength(0);
+            while (position < data.limit()) {
+                byte b = data.get(position);
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    break;
+                }
+                token.append((char) b);
+                position++;
+            }
+            return token.toString();
+        }
+
+        float number() {
+            if (!hasValue()) {
+                throw new IllegalArgumentException("Missing number at line " + line);
+            }
+            token.setLength(0);
+            while (position < data.limit()) {
+                byte b = data.get(position);
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    break;
+                }
+                token.append((char) b);
+                position++;
+            }
+            try {
+                return Float.parseFloat(token.toString());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number " + token + " at line " + line, e);
+            }
+        }
+
+        /**
+         * Parses face corner v, v/t, v//n or v/t/n into zero based indices, missing indices are -1
+         */
+        void corner(int[] dest, int off, int positionCount, int uvCount, int normalCount) {
+            dest[off] = index(positionCount);
+            dest[off + 1] = -1;
+            dest[off + 2] = -1;
+            if (position < data.limit() && data.get(position) == '/') {
+                position++;
+                if (position < data.limit() && data.get(position) != '/') {
+                    dest[off + 1] = index(uvCount);
+                }
+                if (position < data.limit() && data.get(position) == '/') {
+                    position++;
+                    dest[off + 2] = index(normalCount);
+                }
+            }
+        }
+
+        /**
+         * Parses one based or negative relative index
+         */
+        private int index(int count) {
+            int sign = 1, value = 0, digits = 0;
+            if (position < data.limit() && data.get(position) == '-') {
+                sign = -1;
+                position++;
+            }
+            while (position < data.limit()) {
+                byte b = data.get(position);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                value = value * 10 + (b - '0');
+                digits++;
+                position++;
+            }
+            int index = sign > 0 ? value - 1 : count - value;
+            if (digits == 0 || index < 0 || index >= count) {
+                throw new IllegalArgumentException("Invalid face index at line " + line);
+            }
+            return index;
+        }
+    }
+}
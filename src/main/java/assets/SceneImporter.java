@@ -0,0 +1,455 @@
+package assets;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIColor4D;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.assimp.Assimp;
+import render.MeshBuilder;
+import render.VertexFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * SceneImporter class SceneImporter.java imports FBX, glTF, OBJ and other formats Assimp reads into
+ * {@link MeshFile} meshes. Assimp loads the scene on calling thread, then meshes of the scene are converted
+ * to engine vertex and index data in parallel and optimized with {@link MeshFile#optimize(float[])}.
+ * Converted meshes are cached as mesh files; key of a scene is SHA-256 of file content, import flags and
+ * vertex format, so later imports of the same file map cached meshes
+ * and skip Assimp entirely. Only the imported file is hashed, files it references (.mtl, .bin) are not.
+ * Default cache directory is given by -Dengine.meshCache, "false" disables it. Can be used from several threads
+ */
+public class SceneImporter {
+
+    /**
+     * vertex format of {@link #importFile(Path)}, quantized to half the size of float attributes
+     */
+    public static final VertexFormat DEFAULT_FORMAT = VertexFormat.POSITION_NORMAL_UV_QUANTIZED;
+
+    /**
+     * flags used by {@link #importFile(Path, VertexFormat)}, node transforms are baked into vertices
+     * because imported meshes have no hierarchy
+     */
+    public static final int DEFAULT_FLAGS = Assimp.aiProcess_Triangulate | Assimp.aiProcess_JoinIdenticalVertices
+            | Assimp.aiProcess_GenSmoothNormals | Assimp.aiProcess_SortByPType | Assimp.aiProcess_PreTransformVertices;
+
+    private static final String SCENE_EXTENSION = ".scene";
+    private static final String SCENE_HEADER = "scene " + MeshFile.VERSION;
+    /**
+     * part of cache key, changed when conversion produces different meshes
+     */
+    private static final int CONVERSION_VERSION = 2;
+
+    private static SceneImporter defaultImporter;
+
+    private final Path directory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger writeFailures = new AtomicInteger();
+    private final AtomicLong hitNanos = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+    private final ConcurrentLinkedQueue<Imported> history = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Result of one import
+     */
+    public static class Imported {
+        private final Path file;
+        private final List<String> names;
+        private final List<MeshFile> meshes;
+        private final boolean cached;
+        private final long nanos;
+
+        Imported(Path file, List<String> names, List<MeshFile> meshes, boolean cached, long nanos) {
+            this.file = file;
+            this.names = Collections.unmodifiableList(names);
+            this.meshes = Collections.unmodifiableList(meshes);
+            this.cached = cached;
+            this.nanos = nanos;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return names of meshes in the same order as {@link #getMeshes()}
+         */
+        public List<String> getNames() {
+            return names;
+        }
+
+        /**
+         * @return meshes with triangles, meshes of points and lines are skipped
+         */
+        public List<MeshFile> getMeshes() {
+            return meshes;
+        }
+
+        /**
+         * @return true if meshes were mapped from cache and Assimp was not used
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        /**
+         * Reads all pages of mapped meshes into memory, called on loader thread
+         * @return this object
+         */
+        public Imported load() {
+            for (MeshFile mesh : meshes) {
+                mesh.load();
+            }
+            return this;
+        }
+
+        /**
+         * @return time import took including hashing, conversion and writing cache, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * Constructor of scene importer
+     * @param directory cache directory created when the first scene is written, or null to disable caching
+     */
+    public SceneImporter(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns importer used by {@link AssetLoader#loadScene(String, VertexFormat)}, created from -Dengine.meshCache
+     * on first call
+     * @return default importer
+     */
+    public static synchronized SceneImporter getDefault() {
+        if (defaultImporter == null) {
+            String path = System.getProperty("engine.meshCache", "cache/meshes");
+            defaultImporter = new SceneImporter("false".equalsIgnoreCase(path) ? null : Paths.get(path));
+        }
+        return defaultImporter;
+    }
+
+    /**
+     * Replaces importer used by {@link AssetLoader#loadScene(String, VertexFormat)}
+     * @param importer importer
+     */
+    public static synchronized void setDefault(SceneImporter importer) {
+        defaultImporter = importer;
+    }
+
+    /**
+     * Imports file with {@link #DEFAULT_FORMAT} and {@link #DEFAULT_FLAGS}
+     * @param file path of model file
+     * @return imported meshes
+     * @throws IOException if file can not be read
+     * @throws IllegalArgumentException if Assimp can not import file
+     */
+    public Imported importFile(Path file) throws IOException {
+        return importFile(file, DEFAULT_FORMAT, DEFAULT_FLAGS);
+    }
+
+    /**
+     * Imports file with {@link #DEFAULT_FLAGS}
+     * @param file path of model file
+     * @param format layout of vertices, attributes the model does not have are zero
+     * @return imported meshes
+     * @throws IOException if file can not be read
+     * @throws IllegalArgumentException if Assimp can not import file
+     */
+    public Imported importFile(Path file, VertexFormat format) throws IOException {
+        return importFile(file, format, DEFAULT_FLAGS);
+    }
+
+    /**
+     * Maps cached meshes of file or imports it with Assimp and caches the result, does not call GL
+     * @param file path of model file
+     * @param format layout of vertices, attributes the model does not have are zero
+     * @param flags aiProcess flags, aiProcess_Triangulate is always added
+     * @return imported meshes
+     * @throws IOException if file can not be read
+     * @throws IllegalArgumentException if Assimp can not import file
+     */
+    public Imported importFile(Path file, VertexFormat format, int flags) throws IOException {
+        long start = System.nanoTime();
+        flags |= Assimp.aiProcess_Triangulate;
+        String key = directory != null ? key(file, format, flags) : null;
+        Imported imported = key != null ? readCache(file, key, start) : null;
+        if (imported != null) {
+            hits.incrementAndGet();
+            hitNanos.addAndGet(imported.nanos);
+        } else {
+            imported = convert(file, format, flags, key, start);
+            misses.incrementAndGet();
+            missNanos.addAndGet(imported.nanos);
+        }
+        history.add(imported);
+        return imported;
+    }
+
+    private Imported convert(Path file, VertexFormat format, int flags, String key, long start) {
+        AIScene scene = Assimp.aiImportFile(file.toString(), flags);
+        if (scene == null) {
+            throw new IllegalArgumentException("Couldn't import " + file + ": " + Assimp.aiGetErrorString());
+        }
+        List<String> names = new ArrayList<>();
+        List<MeshFile> meshes = new ArrayList<>();
+        try {
+            PointerBuffer pointers = scene.mMeshes();
+            int count = pointers != null ? scene.mNumMeshes() : 0;
+            // the scene is only read, so its meshes can be converted at the same time
+            MeshFile[] converted = IntStream.range(0, count).parallel()
+                    .mapToObj(i -> convert(AIMesh.create(pointers.get(i)), format))
+                    .toArray(MeshFile[]::new);
+            for (int i = 0; i < count; i++) {
+                if (converted[i] != null) {
+                    names.add(AIMesh.create(pointers.get(i)).mName().dataString().replace('\n', ' '));
+                    meshes.add(converted[i]);
+                }
+            }
+        } finally {
+            Assimp.aiReleaseImport(scene);
+        }
+        if (key != null) {
+            writeCache(key, names, meshes);
+        }
+        return new Imported(file, names, meshes, false, System.nanoTime() - start);
+    }
+
+    /**
+     * Converts triangles of Assimp mesh
+     * @return converted mesh or null if mesh has no triangles
+     */
+    private static MeshFile convert(AIMesh mesh, VertexFormat format) {
+        if ((mesh.mPrimitiveTypes() & Assimp.aiPrimitiveType_TRIANGLE) == 0 || mesh.mNumVertices() == 0) {
+            return null;
+        }
+        int vertexCount = mesh.mNumVertices();
+        MeshBuilder builder = new MeshBuilder(format, vertexCount + 1, mesh.mNumFaces() * 3);
+        try {
+            AIVector3D.Buffer positions = mesh.mVertices();
+            AIVector3D.Buffer normals = mesh.mNormals();
+            AIVector3D.Buffer uvs = mesh.mTextureCoords(0);
+            AIColor4D.Buffer colors = mesh.mColors(0);
+            for (int i = 0; i < vertexCount; i++) {
+                AIVector3D position = positions.get(i);
+                builder.position(position.x(), position.y(), position.z());
+                if (normals != null) {
+                    AIVector3D normal = normals.get(i);
+                    builder.normal(normal.x(), normal.y(), normal.z());
+                }
+                if (uvs != null) {
+                    AIVector3D uv = uvs.get(i);
+                    builder.uv(uv.x(), uv.y());
+                }
+                if (colors != null) {
+                    AIColor4D color = colors.get(i);
+                    builder.color(color.r(), color.g(), color.b(), color.a());
+                }
+                builder.endVertex();
+            }
+            AIFace.Buffer faces = mesh.mFaces();
+            for (int i = 0; i < mesh.mNumFaces(); i++) {
+                AIFace face = faces.get(i);
+                if (face.mNumIndices() == 3) {
+                    IntBuffer indices = face.mIndices();
+                    builder.triangle(indices.get(0), indices.get(1), indices.get(2));
+                }
+            }
+            if (builder.getIndexCount() == 0) {
+                return null;
+            }
+            ByteBuffer vertexData = ByteBuffer.allocateDirect(vertexCount * format.getVertexSize()).order(ByteOrder.nativeOrder());
+            ByteBuffer indexData = ByteBuffer.allocateDirect(builder.getIndexCount() * Integer.BYTES).order(ByteOrder.nativeOrder());
+            builder.copyVertexData(vertexData);
+            builder.copyIndexData(indexData.asIntBuffer());
+            return MeshFile.wrap(format, vertexCount, vertexData, indexData, builder.getBounds(new float[6])).optimize(null);
+        } finally {
+            builder.free();
+        }
+    }
+
+    /**
+     * Computes key of file for given format and flags
+     * @return hex SHA-256 key
+     */
+    private static String key(Path file, VertexFormat format, int flags) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        buffer.clear();
+        buffer.putInt(MeshFile.VERSION).putInt(CONVERSION_VERSION).putInt(flags).put((byte) (format.isInterleaved() ? 1 : 0));
+        for (int i = 0; i < format.getElementCount(); i++) {
+            VertexFormat.Element element = format.getElement(i);
+            buffer.put((byte) element.getAttribute().ordinal()).put((byte) element.getComponents())
+                    .put((byte) (element.isNormalized() ? 1 : 0)).putInt(element.getType());
+        }
+        digest.update(buffer.flip());
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Maps cached meshes of key
+     * @return imported meshes or null if cache does not have key or its files are corrupt
+     */
+    private Imported readCache(Path file, String key, long start) {
+        Path index = directory.resolve(key + SCENE_EXTENSION);
+        try {
+            List<String> lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(SCENE_HEADER)) {
+                System.err.println("Mesh cache: ignoring corrupt " + index);
+                return null;
+            }
+            List<String> names = new ArrayList<>(lines.subList(1, lines.size()));
+            List<MeshFile> meshes = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                meshes.add(MeshFile.open(meshPath(key, i)));
+            }
+            return new Imported(file, names, meshes, true, System.nanoTime() - start);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Mesh cache: ignoring " + index + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes meshes and then the scene index, so a scene is only found once all its meshes are written.
+     * Failures are logged and do not affect the import
+     */
+    private void writeCache(String key, List<String> names, List<MeshFile> meshes) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            for (int i = 0; i < meshes.size(); i++) {
+                meshes.get(i).write(meshPath(key, i));
+            }
+            List<String> lines = new ArrayList<>(names.size() + 1);
+            lines.add(SCENE_HEADER);
+            lines.addAll(names);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Path index = directory.resolve(key + SCENE_EXTENSION);
+            try {
+                Files.move(temp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            writeFailures.incrementAndGet();
+            System.err.println("Mesh cache: couldn't write " + key + ": " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // temporary file is left behind, it is never read
+                }
+            }
+        }
+    }
+
+    private Path meshPath(String key, int mesh) {
+        return directory.resolve(key + '-' + mesh + MeshFile.EXTENSION);
+    }
+
+    /**
+     * Prints import time of every imported file, hit rate and total time of hits and misses
+     */
+    public void printStats() {
+        for (Imported imported : history) {
+            System.out.printf("Import %s: %d meshes, %s, %.2f ms%n", imported.file, imported.meshes.size(),
+                    imported.cached ? "cached" : "assimp", imported.nanos / 1e6);
+        }
+        int total = hits.get() + misses.get();
+        System.out.printf("Mesh cache: %d hits, %d misses (%.0f%% hit rate), %d write failures, "
+                        + "hits took %.1f ms, misses took %.1f ms%n", hits.get(), misses.get(),
+                total > 0 ? 100.0 * hits.get() / total : 0.0, writeFailures.get(), hitNanos.get() / 1e6, missNanos.get() / 1e6);
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return fraction of imports served from cache, 0 if nothing was imported
+     */
+    public double getHitRate() {
+        int total = hits.get() + misses.get();
+        return total > 0 ? (double) hits.get() / total : 0;
+    }
+
+    /**
+     * @return total time of imports served from cache in nanoseconds
+     */
+    public long getHitNanos() {
+        return hitNanos.get();
+    }
+
+    /**
+     * @return total time of imports done by Assimp in nanoseconds
+     */
+    public long getMissNanos() {
+        return missNanos.get();
+    }
+
+    /**
+     * @return results of all imports in the order they finished
+     */
+    public List<Imported> getHistory() {
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * @return cache directory or null if caching is disabled
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+}
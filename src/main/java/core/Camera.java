@@ -1,9 +1,12 @@
 package core;
 
+import math.Quaternion;
 import math.Vector3f;
 
 /**
- * Camera class Camera.java to create instance of camera and by inputs move or rotate it
+ * Camera class Camera.java to create instance of camera and by inputs move or rotate it.
+ * Rotation of camera is kept in orientation quaternion, forward and up vectors are updated from it in place,
+ * so moving and rotating camera does not allocate objects
  */
 public class Camera {
     /**
@@ -11,9 +14,14 @@ public class Camera {
      */
     public static final Vector3f yAxis = new Vector3f(0, 1, 0);
 
+    private static final Vector3f zAxis = new Vector3f(0, 0, 1);
+
     private Vector3f position;
     private Vector3f forward;
     private Vector3f up;
+    private int version;
+    private final Quaternion orientation = new Quaternion();
+    private final Quaternion rotation = new Quaternion();
 
     /**
      * Initialises camera
@@ -35,6 +43,7 @@ public class Camera {
 
         forward.normalize();
         up.normalize();
+        orientation.lookAlong(forward, up);
     }
 
     /**
@@ -43,8 +52,10 @@ public class Camera {
      * @param amount amount of movement
      */
     public void move(Vector3f direction, float amount) {
-        Vector3f vector = new Vector3f(direction.getX() * amount, direction.getY() * amount, direction.getZ() * amount);
-        position.add(vector);
+        position.set(position.getX() + direction.getX() * amount,
+                position.getY() + direction.getY() * amount,
+                position.getZ() + direction.getZ() * amount);
+        version++;
     }
 
     /**
@@ -52,7 +63,16 @@ public class Camera {
      * @return left direction of camera
      */
     public Vector3f getLeft() {
-        return up.cross(forward).normalize();
+        return getLeft(new Vector3f(0, 0, 0));
+    }
+
+    /**
+     * Getter for left direction of camera related to current position without allocation
+     * @param dest vector to store result into
+     * @return dest vector
+     */
+    public Vector3f getLeft(Vector3f dest) {
+        return up.crossInto(forward, dest).normalize();
     }
 
     /**
@@ -60,27 +80,58 @@ public class Camera {
      * @return right direction of camera
      */
     public Vector3f getRight() {
-        return forward.cross(up).normalize();
+        return getRight(new Vector3f(0, 0, 0));
+    }
+
+    /**
+     * Getter for right direction of camera related to current position without allocation
+     * @param dest vector to store result into
+     * @return dest vector
+     */
+    public Vector3f getRight(Vector3f dest) {
+        return forward.crossInto(up, dest).normalize();
     }
 
     /**
-     * This function rotates camera on X axis
+     * This function rotates camera on X axis, around horizontal axis of camera
      * @param angle angle of rotation
      */
     public void rotateX(float angle) {
-        Vector3f horizontalAxis = yAxis.cross(forward).normalize();
-        forward.rotate(angle, horizontalAxis).normalize();
-        up = forward.cross(horizontalAxis).normalize();
+        // post-multiplication rotates around axis in camera space, (1, 0, 0) is horizontal axis of camera
+        orientation.mulInPlace(rotation.fromAxisAngle(angle, 1, 0, 0)).normalize();
+        updateDirections();
     }
 
     /**
-     * This function rotates camera on Y axis
+     * This function rotates camera on Y axis, around vertical axis of the world
      * @param angle angle of rotation
      */
     public void rotateY(float angle) {
-        Vector3f horizontalAxis = yAxis.cross(forward).normalize();
-        forward.rotate(angle, yAxis).normalize();
-        up = forward.cross(horizontalAxis).normalize();
+        Quaternion.mulInto(rotation.fromAxisAngle(angle, yAxis), orientation, orientation).normalize();
+        updateDirections();
+    }
+
+    /**
+     * Sets rotation of camera
+     * @param orientation normalized quaternion which rotates (0, 0, 1) to forward direction
+     */
+    public void setOrientation(Quaternion orientation) {
+        this.orientation.set(orientation);
+        updateDirections();
+    }
+
+    /**
+     * Getter for rotation of camera, returned object must not be modified
+     * @return orientation quaternion of camera
+     */
+    public Quaternion getOrientation() {
+        return orientation;
+    }
+
+    private void updateDirections() {
+        orientation.rotateVectorInto(zAxis, forward);
+        orientation.rotateVectorInto(yAxis, up);
+        version++;
     }
 
     /**
@@ -97,6 +148,7 @@ public class Camera {
      */
     public void setPosition(Vector3f position) {
         this.position = position;
+        version++;
     }
 
     /**
@@ -113,6 +165,8 @@ public class Camera {
      */
     public void setForward(Vector3f forward) {
         this.forward = forward;
+        orientation.lookAlong(forward, up);
+        version++;
     }
 
     /**
@@ -129,5 +183,24 @@ public class Camera {
      */
     public void setUp(Vector3f up) {
         this.up = up;
+        orientation.lookAlong(forward, up);
+        version++;
+    }
+
+    /**
+     * Counter which is incremented every time camera is moved or rotated.
+     * Used to recompute view matrix only when camera has changed
+     * @return version of camera
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Increments version of camera, has to be called after vectors returned by getters are modified directly
+     */
+    public void markChanged() {
+        orientation.lookAlong(forward, up);
+        version++;
     }
 }
@@ -1,28 +1,64 @@
 package core;
 
 
+import assets.AssetLoader;
+import assets.SceneImporter;
 import math.Transform;
 import org.lwjgl.glfw.GLFW;
+import render.FrameSnapshot;
+import render.ProgramCache;
+import render.ResourceManager;
+import render.TextureStreamer;
 import utils.TimeUtility;
+import utils.TripleBuffer;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Main class Engine.java for primary actions
+ * Main class Engine.java for primary actions.
+ * In pipelined mode the loop thread polls input and simulates while a separate render thread owns GL context
+ * and draws the previous frame from a {@link FrameSnapshot}. Snapshots are handed over through a lock-free
+ * {@link TripleBuffer}, latency from start of simulation of a frame to its swap is measured on render thread
  */
 public class Engine implements Runnable {
 
     private Thread loopthread;
-    private boolean running = false;
+    private volatile boolean running = false;
     private boolean isRendered = false;
     private TimeUtility time = new TimeUtility();
     private static Window frame = new Window((int) Transform.getWidth(), (int) Transform.getHeight(), "test frame");
     private Input input = new Input();
+    private final AssetLoader assets = new AssetLoader();
+    private final TextureStreamer textures = new TextureStreamer();
+    private final ResourceManager resources = new ResourceManager();
     private Game game;
+    private final boolean pipelined;
+    private TripleBuffer<FrameSnapshot> snapshots;
+    private Thread renderThread;
+    private volatile Throwable renderFailure;
+    private volatile long renderedFrames;
+    private volatile long latestLatency;
+    private volatile long totalLatency;
 
 
     public Engine(Game game) {
+        this(game, false);
+    }
+
+    /**
+     * Constructor of engine
+     * @param game game to run
+     * @param pipelined true to simulate and render on separate threads
+     * @throws IllegalArgumentException if pipelined mode is requested for game which is not {@link PipelinedGame}
+     */
+    public Engine(Game game, boolean pipelined) {
+        if (pipelined && !(game instanceof PipelinedGame)) {
+            throw new IllegalArgumentException("Pipelined mode needs PipelinedGame");
+        }
         this.game = game;
+        this.pipelined = pipelined;
     }
 
     /**
@@ -53,11 +89,16 @@ public class Engine implements Runnable {
     @Override
     public void run() {
         frame.create();
+        if (pipelined) {
+            runPipelined();
+            return;
+        }
         try {
             game.init();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        printShaderCacheStats();
         this.time.setPreviousTime((double) System.nanoTime());
         float DeltaTime = 0;
         while (this.running) {
@@ -79,7 +120,115 @@ public class Engine implements Runnable {
             }
             this.time.setPreviousTime(this.time.getCurrentTime());
         }
+        releaseGL();
+        clean();
+    }
+
+    /**
+     * Loop of simulation thread in pipelined mode, publishes one snapshot after every batch of updates
+     */
+    private void runPipelined() {
+        PipelinedGame pipelinedGame = (PipelinedGame) game;
+        snapshots = new TripleBuffer<>(FrameSnapshot::new);
+        CountDownLatch initialized = new CountDownLatch(1);
+        frame.makeContextCurrent(false);
+        renderThread = new Thread(() -> renderLoop(pipelinedGame, initialized), "render");
+        renderThread.start();
+        try {
+            initialized.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.running = false;
+        }
+
+        // running is false if init failed, the failure is rethrown after render thread is joined
+        this.time.setPreviousTime((double) System.nanoTime());
+        float DeltaTime = 0;
+        long frameNumber = 0;
+        while (this.running) {
+
+            this.time.setCurrentTime((double) System.nanoTime());
+            this.time.setDeltaTime(this.time.calculateDeltaTime());
+            DeltaTime += this.time.calculateDeltaTime();
+            Double TempGameRate = this.time.GameRate * 1000000000;
+            long updateStart = System.nanoTime();
+            while (DeltaTime >= TempGameRate) {
+                DeltaTime -= TempGameRate;
+                this.input.update();
+                this.frame.pollEvents();
+                this.game.update();
+                this.isRendered = false;
+            }
+            if (!isRendered) {
+                FrameSnapshot snapshot = snapshots.getWriteSlot();
+                snapshot.begin(++frameNumber, updateStart);
+                pipelinedGame.publish(snapshot);
+                snapshots.publish();
+                LockSupport.unpark(renderThread);
+                isRendered = true;
+            }
+            this.time.setPreviousTime(this.time.getCurrentTime());
+        }
 
+        LockSupport.unpark(renderThread);
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        clean();
+        if (renderFailure != null) {
+            throw new RuntimeException(renderFailure);
+        }
+    }
+
+    /**
+     * Loop of render thread in pipelined mode, draws the latest published snapshot and parks while there is none.
+     * A failure stops both loops, GL objects are released and the failure is rethrown on simulation thread
+     */
+    private void renderLoop(PipelinedGame pipelinedGame, CountDownLatch initialized) {
+        frame.makeContextCurrent(true);
+        try {
+            pipelinedGame.init();
+            printShaderCacheStats();
+        } catch (IOException | RuntimeException e) {
+            renderFailure = e;
+            this.running = false;
+        } finally {
+            initialized.countDown();
+        }
+        try {
+            while (this.running) {
+                FrameSnapshot snapshot = snapshots.acquire();
+                if (snapshot == null) {
+                    LockSupport.parkNanos(1_000_000);
+                    continue;
+                }
+                this.frame.beginFrame();
+                pipelinedGame.render(snapshot);
+                this.frame.swapBuffers();
+                this.assets.drain();
+                this.textures.update();
+                this.resources.update();
+                long latency = System.nanoTime() - snapshot.getUpdateNanos();
+                latestLatency = latency;
+                totalLatency += latency;
+                renderedFrames++;
+            }
+        } catch (RuntimeException | Error e) {
+            renderFailure = e;
+            this.running = false;
+        } finally {
+            releaseGL();
+            frame.makeContextCurrent(false);
+        }
+    }
+
+    private static void printShaderCacheStats() {
+        ProgramCache cache = ProgramCache.getDefault();
+        if (cache != null && cache.getHits() + cache.getMisses() > 0) {
+            cache.printStats();
+        }
     }
 
     private void update() {
@@ -92,9 +241,31 @@ public class Engine implements Runnable {
     private void render() throws InterruptedException {
         this.frame.swapBuffers();
         this.game.render();
+        this.assets.drain();
+        this.textures.update();
+        this.resources.update();
+    }
+
+    /**
+     * Deletes GL objects owned by engine, called on GL thread after the last frame
+     */
+    private void releaseGL() {
+        if (textures.getTextureCount() > 0) {
+            textures.printStats();
+        }
+        if (resources.getHits() + resources.getMisses() > 0) {
+            resources.printStats();
+        }
+        this.resources.destroy();
+        this.textures.destroy();
     }
 
     private void clean() {
+        this.assets.shutdown();
+        SceneImporter importer = SceneImporter.getDefault();
+        if (importer.getHits() + importer.getMisses() > 0) {
+            importer.printStats();
+        }
         this.frame.destroy();
     }
 
@@ -102,8 +273,65 @@ public class Engine implements Runnable {
         return this.running;
     }
 
+    /**
+     * @return asset loader whose GL work is executed on GL thread after every rendered frame
+     */
+    public AssetLoader getAssets() {
+        return this.assets;
+    }
+
+    /**
+     * @return texture streamer updated on GL thread after every rendered frame
+     */
+    public TextureStreamer getTextures() {
+        return this.textures;
+    }
+
+    /**
+     * @return resource manager updated on GL thread after every rendered frame, its resources are deleted at shutdown
+     */
+    public ResourceManager getResources() {
+        return this.resources;
+    }
+
     public Input getInput() {
         return this.input;
     }
 
+    /**
+     * @return true if simulation and rendering run on separate threads
+     */
+    public boolean isPipelined() {
+        return this.pipelined;
+    }
+
+    /**
+     * @return nanoseconds from start of simulation of the last rendered frame to its swap, 0 in serial mode
+     */
+    public long getLatestLatencyNanos() {
+        return latestLatency;
+    }
+
+    /**
+     * @return average of {@link #getLatestLatencyNanos()} over all rendered frames, 0 in serial mode
+     */
+    public long getAverageLatencyNanos() {
+        long frames = renderedFrames;
+        return frames == 0 ? 0 : totalLatency / frames;
+    }
+
+    /**
+     * @return number of frames drawn by render thread, 0 in serial mode
+     */
+    public long getRenderedFrames() {
+        return renderedFrames;
+    }
+
+    /**
+     * @return number of snapshots replaced before render thread took them, 0 in serial mode
+     */
+    public long getDroppedFrames() {
+        return snapshots == null ? 0 : snapshots.getDroppedCount();
+    }
+
 }
@@ -0,0 +1,24 @@
+package core;
+
+import render.FrameSnapshot;
+
+/**
+ * Interface of game which can run in pipelined mode of {@link Engine}. Simulation thread calls update() and
+ * publish(), render thread which owns GL context calls init() and render(FrameSnapshot), so render thread draws
+ * frame N while simulation computes frame N + 1. Render side should read only the snapshot, not the game state
+ */
+public interface PipelinedGame extends Game {
+
+    /**
+     * Writes state needed to draw the frame which was just simulated, called on simulation thread after update()
+     * @param snapshot cleared snapshot to fill
+     */
+    void publish(FrameSnapshot snapshot);
+
+    /**
+     * Draws frame from snapshot, called on render thread
+     * @param snapshot snapshot filled by publish()
+     */
+    void render(FrameSnapshot snapshot);
+
+}
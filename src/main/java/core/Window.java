@@ -21,7 +21,7 @@ public class Window {
     public Input input;
     private Vector3f background = new Vector3f(0, 0, 0);
     private GLFWWindowSizeCallback sizeCallback;
-    private boolean isResized;
+    private volatile boolean isResized;
     private boolean isFullscreen;
     private int[] windowPosX = new int[1], windowPosY = new int[1];
 
@@ -111,12 +111,26 @@ public class Window {
      * Updates window
      */
     public void update() {
+        beginFrame();
+        pollEvents();
+    }
+
+    /**
+     * Sets viewport after resize and clears frame, called on thread which owns GL context
+     */
+    public void beginFrame() {
         if(isResized){
             GL11.glViewport(0, 0, width, height);
             isResized = false;
         }
         GL11.glClearColor(background.getX(), background.getY(), background.getZ(), 1.0f);
         GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+    }
+
+    /**
+     * Processes input events and updates FPS in title, called on thread which created window
+     */
+    public void pollEvents() {
         GLFW.glfwPollEvents();
         frames++;
         if(System.currentTimeMillis() > time + 1000){
@@ -126,6 +140,18 @@ public class Window {
         }
     }
 
+    /**
+     * Makes GL context of window current on calling thread, or releases it.
+     * GL capabilities are per thread, so they are created again when context is made current
+     * @param current true to make context current, false to release it so another thread can take it
+     */
+    public void makeContextCurrent(boolean current) {
+        GLFW.glfwMakeContextCurrent(current ? window : 0);
+        if (current) {
+            GL.createCapabilities();
+        }
+    }
+
     /**
      * Renders window
      */
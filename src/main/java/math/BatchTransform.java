@@ -0,0 +1,162 @@
+package math;
+
+/**
+ * Math class BatchTransform.java for transforming large arrays of points, directions and bounding boxes by one matrix.
+ * Data is laid out as structure of arrays (separate x, y and z arrays), so the kernels can process several
+ * values at once with the JDK Vector API. When jdk.incubator.vector module is not available at runtime,
+ * or -Dengine.simd=false is given, the same operations are done by plain scalar loops.
+ * Matrix is treated as affine transformation, the last row is ignored.
+ */
+public final class BatchTransform {
+
+    /**
+     * true if operations are done by vector kernels
+     */
+    public static final boolean SIMD = isVectorApiAvailable();
+
+    private BatchTransform() {
+    }
+
+    private static boolean isVectorApiAvailable() {
+        if (!Boolean.parseBoolean(System.getProperty("engine.simd", "true"))) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorKernels.LANES > 1;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Transforms points by matrix, out = M * (x, y, z, 1). Output arrays may be the same as input arrays
+     * @param m transformation matrix
+     * @param x x coordinates of points
+     * @param y y coordinates of points
+     * @param z z coordinates of points
+     * @param outX array to store x coordinates of result
+     * @param outY array to store y coordinates of result
+     * @param outZ array to store z coordinates of result
+     * @param count number of points to transform
+     * @throws IllegalArgumentException if any array is shorter than count
+     */
+    public static void transformPoints(Matrix4f m, float[] x, float[] y, float[] z,
+                                       float[] outX, float[] outY, float[] outZ, int count) {
+        checkLength(count, x, y, z, outX, outY, outZ);
+        if (SIMD) {
+            VectorKernels.transformPoints(m, x, y, z, outX, outY, outZ, count);
+        } else {
+            transformPoints(m, x, y, z, outX, outY, outZ, 0, count);
+        }
+    }
+
+    /**
+     * Transforms directions by matrix, out = M * (x, y, z, 0). Translation is not applied.
+     * Output arrays may be the same as input arrays
+     * @param m transformation matrix
+     * @param x x coordinates of directions
+     * @param y y coordinates of directions
+     * @param z z coordinates of directions
+     * @param outX array to store x coordinates of result
+     * @param outY array to store y coordinates of result
+     * @param outZ array to store z coordinates of result
+     * @param count number of directions to transform
+     * @throws IllegalArgumentException if any array is shorter than count
+     */
+    public static void transformDirections(Matrix4f m, float[] x, float[] y, float[] z,
+                                           float[] outX, float[] outY, float[] outZ, int count) {
+        checkLength(count, x, y, z, outX, outY, outZ);
+        if (SIMD) {
+            VectorKernels.transformDirections(m, x, y, z, outX, outY, outZ, count);
+        } else {
+            transformDirections(m, x, y, z, outX, outY, outZ, 0, count);
+        }
+    }
+
+    /**
+     * Transforms axis aligned bounding boxes by matrix and stores axis aligned boxes which contain the results.
+     * min and max arrays are indexed as x, y, z arrays - box i is (min[0][i], min[1][i], min[2][i]) - (max[0][i], ...).
+     * Output arrays may be the same as input arrays
+     * @param m transformation matrix
+     * @param min three arrays with minimal x, y and z coordinates of boxes
+     * @param max three arrays with maximal x, y and z coordinates of boxes
+     * @param outMin three arrays to store minimal coordinates of result
+     * @param outMax three arrays to store maximal coordinates of result
+     * @param count number of boxes to transform
+     * @throws IllegalArgumentException if any array is shorter than count
+     */
+    public static void transformAABBs(Matrix4f m, float[][] min, float[][] max,
+                                      float[][] outMin, float[][] outMax, int count) {
+        checkLength(count, min[0], min[1], min[2], max[0], max[1], max[2]);
+        checkLength(count, outMin[0], outMin[1], outMin[2], outMax[0], outMax[1], outMax[2]);
+        if (SIMD) {
+            VectorKernels.transformAABBs(m, min, max, outMin, outMax, count);
+        } else {
+            transformAABBs(m, min, max, outMin, outMax, 0, count);
+        }
+    }
+
+    static void transformPoints(Matrix4f m, float[] x, float[] y, float[] z,
+                                float[] outX, float[] outY, float[] outZ, int from, int to) {
+        float m00 = m.getCellValue(0, 0), m01 = m.getCellValue(0, 1), m02 = m.getCellValue(0, 2), m03 = m.getCellValue(0, 3);
+        float m10 = m.getCellValue(1, 0), m11 = m.getCellValue(1, 1), m12 = m.getCellValue(1, 2), m13 = m.getCellValue(1, 3);
+        float m20 = m.getCellValue(2, 0), m21 = m.getCellValue(2, 1), m22 = m.getCellValue(2, 2), m23 = m.getCellValue(2, 3);
+        for (int i = from; i < to; i++) {
+            float px = x[i], py = y[i], pz = z[i];
+            outX[i] = m00 * px + m01 * py + m02 * pz + m03;
+            outY[i] = m10 * px + m11 * py + m12 * pz + m13;
+            outZ[i] = m20 * px + m21 * py + m22 * pz + m23;
+        }
+    }
+
+    static void transformDirections(Matrix4f m, float[] x, float[] y, float[] z,
+                                    float[] outX, float[] outY, float[] outZ, int from, int to) {
+        float m00 = m.getCellValue(0, 0), m01 = m.getCellValue(0, 1), m02 = m.getCellValue(0, 2);
+        float m10 = m.getCellValue(1, 0), m11 = m.getCellValue(1, 1), m12 = m.getCellValue(1, 2);
+        float m20 = m.getCellValue(2, 0), m21 = m.getCellValue(2, 1), m22 = m.getCellValue(2, 2);
+        for (int i = from; i < to; i++) {
+            float px = x[i], py = y[i], pz = z[i];
+            outX[i] = m00 * px + m01 * py + m02 * pz;
+            outY[i] = m10 * px + m11 * py + m12 * pz;
+            outZ[i] = m20 * px + m21 * py + m22 * pz;
+        }
+    }
+
+    static void transformAABBs(Matrix4f m, float[][] min, float[][] max,
+                               float[][] outMin, float[][] outMax, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float minX = min[0][i], minY = min[1][i], minZ = min[2][i];
+            float maxX = max[0][i], maxY = max[1][i], maxZ = max[2][i];
+            for (int row = 0; row < 3; row++) {
+                float lo = m.getCellValue(row, 3), hi = lo;
+                float a = m.getCellValue(row, 0) * minX, b = m.getCellValue(row, 0) * maxX;
+                lo += Math.min(a, b);
+                hi += Math.max(a, b);
+                a = m.getCellValue(row, 1) * minY;
+                b = m.getCellValue(row, 1) * maxY;
+                lo += Math.min(a, b);
+                hi += Math.max(a, b);
+                a = m.getCellValue(row, 2) * minZ;
+                b = m.getCellValue(row, 2) * maxZ;
+                lo += Math.min(a, b);
+                hi += Math.max(a, b);
+                outMin[row][i] = lo;
+                outMax[row][i] = hi;
+            }
+        }
+    }
+
+    private static void checkLength(int count, float[]... arrays) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Argument 'count' is negative");
+        }
+        for (float[] array : arrays) {
+            if (array.length < count) {
+                throw new IllegalArgumentException("Array length " + array.length + " is less than count " + count);
+            }
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package math;
 
+import java.nio.FloatBuffer;
+
 /**
- * Math class Matrix4f.java for simple mathematical operations on 4-dimensional matrix
+ * Math class Matrix4f.java for simple mathematical operations on 4-dimensional matrix.
+ * Values are stored in a single column-major float[16] so the matrix can be handed to OpenGL as is,
+ * and every in-place operation works without allocating new arrays.
  */
 public class Matrix4f {
 
@@ -9,36 +13,72 @@ public class Matrix4f {
      * immutable variable for matrix length
      */
     public static final short MATRIX_LEN = 4;
-    private float[][] matrix;
+
+    /**
+     * immutable variable for number of floats in matrix
+     */
+    public static final int SIZE = MATRIX_LEN * MATRIX_LEN;
+
+    /**
+     * cell (i, j) - row i, column j - is stored at index j * 4 + i
+     */
+    private final float[] m = new float[SIZE];
+
+    /**
+     * Creates 4x4 identity matrix
+     */
+    public Matrix4f() {
+        setIdentity();
+    }
 
     /**
      * 4-dimensional matrix constructor
-     * @param matrix value of matrix
+     * @param matrix value of matrix in row-major [row][column] order
+     */
+    public Matrix4f(float[][] matrix) {
+        setMatrix(matrix);
+    }
+
+    /**
+     * Copy constructor
+     * @param other matrix to copy values from
      */
-    public Matrix4f(float [][] matrix){
-        this.matrix = matrix;
+    public Matrix4f(Matrix4f other) {
+        set(other);
     }
 
     /**
+     * Creates copy of the matrix in row-major [row][column] order.
+     * Allocates new array, so per-frame code should use {@link #getCellValue(int, int)} or {@link #get(FloatBuffer)}
      * @return value of matrix
      */
-    public float[][] getMatrix(){
-        return this.matrix;
+    public float[][] getMatrix() {
+        float[][] result = new float[MATRIX_LEN][MATRIX_LEN];
+        for (int i = 0; i < MATRIX_LEN; i++) {
+            for (int j = 0; j < MATRIX_LEN; j++) {
+                result[i][j] = m[j * MATRIX_LEN + i];
+            }
+        }
+        return result;
     }
 
     /**
      * @return separate cell of the 4x4 matrix
      */
-    public float getCellValue(int i, int j){
-        return this.matrix[i][j];
+    public float getCellValue(int i, int j) {
+        return this.m[j * MATRIX_LEN + i];
     }
 
     /**
-     * @param matrix value to be set
+     * @param matrix value to be set in row-major [row][column] order
      * @return this object
      */
-    public Matrix4f setMatrix(float[][] matrix){
-        this.matrix = matrix;
+    public Matrix4f setMatrix(float[][] matrix) {
+        for (int i = 0; i < MATRIX_LEN; i++) {
+            for (int j = 0; j < MATRIX_LEN; j++) {
+                m[j * MATRIX_LEN + i] = matrix[i][j];
+            }
+        }
         return this;
     }
 
@@ -46,24 +86,98 @@ public class Matrix4f {
      * @param entry value to be set on separate cell in 4x4 matrix
      * @return this object
      */
-    public Matrix4f setSeparateCell(int i, int j, float entry){
-        this.matrix[i][j] = entry;
+    public Matrix4f setSeparateCell(int i, int j, float entry) {
+        this.m[j * MATRIX_LEN + i] = entry;
         return this;
     }
 
+    /**
+     * Copies values of argument matrix to this matrix
+     * @param other matrix to copy values from
+     * @return this object
+     */
+    public Matrix4f set(Matrix4f other) {
+        System.arraycopy(other.m, 0, this.m, 0, SIZE);
+        return this;
+    }
+
+    /**
+     * Sets values of this matrix from column-major array
+     * @param src array to read values from
+     * @param offset index of the first value in array
+     * @return this object
+     */
+    public Matrix4f set(float[] src, int offset) {
+        System.arraycopy(src, offset, this.m, 0, SIZE);
+        return this;
+    }
+
+    /**
+     * Sets every cell of this matrix, arguments are given in row-major order as they are written on paper
+     * @return this object
+     */
+    public Matrix4f set(float m00, float m01, float m02, float m03,
+                        float m10, float m11, float m12, float m13,
+                        float m20, float m21, float m22, float m23,
+                        float m30, float m31, float m32, float m33) {
+        m[0] = m00; m[4] = m01; m[8] = m02; m[12] = m03;
+        m[1] = m10; m[5] = m11; m[9] = m12; m[13] = m13;
+        m[2] = m20; m[6] = m21; m[10] = m22; m[14] = m23;
+        m[3] = m30; m[7] = m31; m[11] = m32; m[15] = m33;
+        return this;
+    }
+
+    /**
+     * Resets this matrix to identity
+     * @return this object
+     */
+    public Matrix4f setIdentity() {
+        return set(1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1);
+    }
+
     /**
      * Creates identity matrix
      * @return 4x4 identity matrix
      */
-    public static Matrix4f identity(){
-        float[][] idMat = new float[MATRIX_LEN][MATRIX_LEN];
+    public static Matrix4f identity() {
+        return new Matrix4f();
+    }
 
-        for(int i = 0; i < MATRIX_LEN; i++){
-            for(int j = 0; j < MATRIX_LEN; j++){
-                idMat[i][j] = (i == j) ? 1 : 0;
-            }
+    /**
+     * Writes this matrix in column-major order to buffer starting at its current position.
+     * Position of the buffer is not changed, so it can be passed to glUniformMatrix4fv right away
+     * @param dest buffer to write to
+     * @return dest buffer
+     */
+    public FloatBuffer get(FloatBuffer dest) {
+        return get(dest.position(), dest);
+    }
+
+    /**
+     * Writes this matrix in column-major order to buffer starting at given absolute index
+     * @param index index of the first value in buffer
+     * @param dest buffer to write to
+     * @return dest buffer
+     */
+    public FloatBuffer get(int index, FloatBuffer dest) {
+        for (int i = 0; i < SIZE; i++) {
+            dest.put(index + i, m[i]);
         }
-        return new Matrix4f(idMat);
+        return dest;
+    }
+
+    /**
+     * Writes this matrix in column-major order to array
+     * @param dest array to write to
+     * @param offset index of the first value in array
+     * @return dest array
+     */
+    public float[] get(float[] dest, int offset) {
+        System.arraycopy(m, 0, dest, offset, SIZE);
+        return dest;
     }
 
     /**
@@ -71,21 +185,271 @@ public class Matrix4f {
      * @param other matrix value to multiply this by
      * @return this object
      */
-    public Matrix4f multiply(Matrix4f other){
+    public Matrix4f multiply(Matrix4f other) {
+        return mulInto(this, other, this);
+    }
 
-        float[][] tempMat = new float[MATRIX_LEN][MATRIX_LEN];
+    /**
+     * Multiplies two matrices and stores result in dest, dest = a * b.
+     * dest may be the same object as a or b.
+     * @param a left matrix
+     * @param b right matrix
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public static Matrix4f mulInto(Matrix4f a, Matrix4f b, Matrix4f dest) {
+        float[] l = a.m, r = b.m, d = dest.m;
+        float a00 = l[0], a10 = l[1], a20 = l[2], a30 = l[3];
+        float a01 = l[4], a11 = l[5], a21 = l[6], a31 = l[7];
+        float a02 = l[8], a12 = l[9], a22 = l[10], a32 = l[11];
+        float a03 = l[12], a13 = l[13], a23 = l[14], a33 = l[15];
 
-        for(int i = 0; i< MATRIX_LEN; i++){
-            for(int j = 0; j < MATRIX_LEN; j++){
-                tempMat[i][j] = 0;
-                for(int k = 0; k < MATRIX_LEN; k++){
-                    tempMat[i][j] += getMatrix()[i][k] * other.getMatrix()[k][j];
-                }
-            }
+        for (int j = 0; j < SIZE; j += MATRIX_LEN) {
+            float b0 = r[j], b1 = r[j + 1], b2 = r[j + 2], b3 = r[j + 3];
+            d[j] = a00 * b0 + a01 * b1 + a02 * b2 + a03 * b3;
+            d[j + 1] = a10 * b0 + a11 * b1 + a12 * b2 + a13 * b3;
+            d[j + 2] = a20 * b0 + a21 * b1 + a22 * b2 + a23 * b3;
+            d[j + 3] = a30 * b0 + a31 * b1 + a32 * b2 + a33 * b3;
+        }
+        return dest;
+    }
+
+    /**
+     * Sets this matrix to translation matrix
+     * @param x translation on x-axis
+     * @param y translation on y-axis
+     * @param z translation on z-axis
+     * @return this object
+     */
+    public Matrix4f setTranslation(float x, float y, float z) {
+        return set(1, 0, 0, x,
+                0, 1, 0, y,
+                0, 0, 1, z,
+                0, 0, 0, 1);
+    }
+
+    /**
+     * Sets this matrix to scale matrix
+     * @param x scale on x-axis
+     * @param y scale on y-axis
+     * @param z scale on z-axis
+     * @return this object
+     */
+    public Matrix4f setScale(float x, float y, float z) {
+        return set(x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0,
+                0, 0, 0, 1);
+    }
+
+    /**
+     * Sets this matrix to rotation matrix Rz * Ry * Rx, angles are given in degrees
+     * @param x angle of rotation around x-axis
+     * @param y angle of rotation around y-axis
+     * @param z angle of rotation around z-axis
+     * @return this object
+     */
+    public Matrix4f setRotation(float x, float y, float z) {
+        return setTransformation(0, 0, 0, x, y, z, 1, 1, 1);
+    }
+
+    /**
+     * Sets this matrix to translation * rotation * scale matrix, rotation is Rz * Ry * Rx with angles in degrees
+     * @return this object
+     */
+    public Matrix4f setTransformation(float tx, float ty, float tz,
+                                      float rx, float ry, float rz,
+                                      float sx, float sy, float sz) {
+        composeTRS(m, 0, tx, ty, tz, rx, ry, rz, sx, sy, sz);
+        return this;
+    }
+
+    /**
+     * Sets this matrix to rotation matrix of normalized quaternion
+     * @param q rotation quaternion
+     * @return this object
+     */
+    public Matrix4f setRotation(Quaternion q) {
+        return setTransformation(0, 0, 0, q, 1, 1, 1);
+    }
+
+    /**
+     * Sets this matrix to translation * rotation * scale matrix with rotation given by normalized quaternion
+     * @return this object
+     */
+    public Matrix4f setTransformation(float tx, float ty, float tz, Quaternion q, float sx, float sy, float sz) {
+        composeTRS(m, 0, tx, ty, tz, q.getA(), q.getB(), q.getC(), q.getD(), sx, sy, sz);
+        return this;
+    }
+
+    /**
+     * Writes translation * rotation * scale matrix in column-major order to array
+     * @param d array to write to
+     * @param off index of the first value in array
+     */
+    static void composeTRS(float[] d, int off,
+                           float tx, float ty, float tz,
+                           float rx, float ry, float rz,
+                           float sx, float sy, float sz) {
+        // destination is used as scratch for sine and cosine values before it is filled
+        FastTrig.sinCosDeg(rx, d, off);
+        FastTrig.sinCosDeg(ry, d, off + 2);
+        FastTrig.sinCosDeg(rz, d, off + 4);
+        float sinX = d[off], cosX = d[off + 1];
+        float sinY = d[off + 2], cosY = d[off + 3];
+        float sinZ = d[off + 4], cosZ = d[off + 5];
+
+        d[off] = cosZ * cosY * sx;
+        d[off + 1] = sinZ * cosY * sx;
+        d[off + 2] = -sinY * sx;
+        d[off + 3] = 0;
+        d[off + 4] = (cosZ * sinY * sinX - sinZ * cosX) * sy;
+        d[off + 5] = (sinZ * sinY * sinX + cosZ * cosX) * sy;
+        d[off + 6] = cosY * sinX * sy;
+        d[off + 7] = 0;
+        d[off + 8] = (cosZ * sinY * cosX + sinZ * sinX) * sz;
+        d[off + 9] = (sinZ * sinY * cosX - cosZ * sinX) * sz;
+        d[off + 10] = cosY * cosX * sz;
+        d[off + 11] = 0;
+        d[off + 12] = tx;
+        d[off + 13] = ty;
+        d[off + 14] = tz;
+        d[off + 15] = 1;
+    }
+
+    /**
+     * Writes translation * rotation * scale matrix with rotation given by normalized quaternion (x, y, z, w)
+     * in column-major order to array
+     * @param d array to write to
+     * @param off index of the first value in array
+     */
+    static void composeTRS(float[] d, int off,
+                           float tx, float ty, float tz,
+                           float x, float y, float z, float w,
+                           float sx, float sy, float sz) {
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+        d[off] = (1 - 2 * (yy + zz)) * sx;
+        d[off + 1] = 2 * (xy + wz) * sx;
+        d[off + 2] = 2 * (xz - wy) * sx;
+        d[off + 3] = 0;
+        d[off + 4] = 2 * (xy - wz) * sy;
+        d[off + 5] = (1 - 2 * (xx + zz)) * sy;
+        d[off + 6] = 2 * (yz + wx) * sy;
+        d[off + 7] = 0;
+        d[off + 8] = 2 * (xz + wy) * sz;
+        d[off + 9] = 2 * (yz - wx) * sz;
+        d[off + 10] = (1 - 2 * (xx + yy)) * sz;
+        d[off + 11] = 0;
+        d[off + 12] = tx;
+        d[off + 13] = ty;
+        d[off + 14] = tz;
+        d[off + 15] = 1;
+    }
+
+    /**
+     * Sets this matrix to perspective projection matrix
+     * @param fieldOfView vertical field of view in degrees
+     * @param width width of window
+     * @param height height of window
+     * @param zNear minimal range in which object is visible
+     * @param zFar max range in which object is visible
+     * @return this object
+     */
+    public Matrix4f setPerspective(float fieldOfView, float width, float height, float zNear, float zFar) {
+        float tanFOV = (float) Math.tan(Math.toRadians(fieldOfView / 2));
+        float aspectRatio = width / height;
+        float zRange = zNear - zFar;
+        return set(1 / (tanFOV * aspectRatio), 0, 0, 0,
+                0, 1 / tanFOV, 0, 0,
+                0, 0, (-zNear - zFar) / zRange, 2 * zFar * zNear / zRange,
+                0, 0, 1, 0);
+    }
+
+    /**
+     * Sets this matrix to camera rotation matrix built from forward and up directions.
+     * Argument vectors are not modified
+     * @param forward forward direction of camera
+     * @param up up direction of camera
+     * @return this object
+     */
+    public Matrix4f setCamera(Vector3f forward, Vector3f up) {
+        float fx = forward.getX(), fy = forward.getY(), fz = forward.getZ();
+        float fl = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx /= fl; fy /= fl; fz /= fl;
+
+        float ux = up.getX(), uy = up.getY(), uz = up.getZ();
+        float rx = uy * fz - uz * fy, ry = uz * fx - ux * fz, rz = ux * fy - uy * fx;
+        float rl = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+        rx /= rl; ry /= rl; rz /= rl;
+
+        ux = fy * rz - fz * ry;
+        uy = fz * rx - fx * rz;
+        uz = fx * ry - fy * rx;
+        return set(rx, ry, rz, 0,
+                ux, uy, uz, 0,
+                fx, fy, fz, 0,
+                0, 0, 0, 1);
+    }
+
+    /**
+     * Multiplies this matrix by translation matrix, this = this * T
+     * @param x translation on x-axis
+     * @param y translation on y-axis
+     * @param z translation on z-axis
+     * @return this object
+     */
+    public Matrix4f translate(float x, float y, float z) {
+        for (int i = 0; i < MATRIX_LEN; i++) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
         }
-        setMatrix(tempMat);
         return this;
     }
 
+    /**
+     * Multiplies this matrix by scale matrix, this = this * S
+     * @param x scale on x-axis
+     * @param y scale on y-axis
+     * @param z scale on z-axis
+     * @return this object
+     */
+    public Matrix4f scale(float x, float y, float z) {
+        for (int i = 0; i < MATRIX_LEN; i++) {
+            m[i] *= x;
+            m[4 + i] *= y;
+            m[8 + i] *= z;
+        }
+        return this;
+    }
+
+    /**
+     * Multiplies this matrix by rotation matrix around given axis, this = this * R
+     * @param angle angle of rotation in degrees
+     * @param axisX x coordinate of rotation axis
+     * @param axisY y coordinate of rotation axis
+     * @param axisZ z coordinate of rotation axis
+     * @return this object
+     */
+    public Matrix4f rotate(float angle, float axisX, float axisY, float axisZ) {
+        float l = (float) Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+        if (l == 0) {
+            throw new IllegalArgumentException("Argument 'divisor' is 0");
+        }
+        float x = axisX / l, y = axisY / l, z = axisZ / l;
+        float s = FastTrig.sinDeg(angle), c = FastTrig.cosDeg(angle), t = 1 - c;
+
+        float r00 = t * x * x + c, r01 = t * x * y - s * z, r02 = t * x * z + s * y;
+        float r10 = t * x * y + s * z, r11 = t * y * y + c, r12 = t * y * z - s * x;
+        float r20 = t * x * z - s * y, r21 = t * y * z + s * x, r22 = t * z * z + c;
+
+        for (int i = 0; i < MATRIX_LEN; i++) {
+            float c0 = m[i], c1 = m[4 + i], c2 = m[8 + i];
+            m[i] = c0 * r00 + c1 * r10 + c2 * r20;
+            m[4 + i] = c0 * r01 + c1 * r11 + c2 * r21;
+            m[8 + i] = c0 * r02 + c1 * r12 + c2 * r22;
+        }
+        return this;
+    }
 
 }
@@ -1,7 +1,9 @@
 package math;
 
 /**
- * Quaternion class Quaternion.java for rotation in three dimension and operations on them
+ * Quaternion class Quaternion.java for rotation in three dimension and operations on them.
+ * a, b and c are vector part (x, y, z) and d is scalar part (w) of quaternion.
+ * Methods which end with InPlace or Into and from/set methods change existing objects and do not allocate
  */
 public class Quaternion {
 
@@ -12,6 +14,13 @@ public class Quaternion {
 
     private float length = -1;
 
+    /**
+     * Constructor of identity quaternion, rotation by zero angle
+     */
+    public Quaternion() {
+        this(0, 0, 0, 1);
+    }
+
     /**
      * Constructor of quaternions
      * @param a first value of quaternion
@@ -84,6 +93,255 @@ public class Quaternion {
         return new Quaternion(a_, b_, c_, d_);
     }
 
+    /**
+     * Sets all four values of this quaternion
+     * @return this object
+     */
+    public Quaternion set(float a, float b, float c, float d) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        length = -1;
+        return this;
+    }
+
+    /**
+     * Copies values of argument quaternion to this quaternion
+     * @param other quaternion to copy values from
+     * @return this object
+     */
+    public Quaternion set(Quaternion other) {
+        return set(other.a, other.b, other.c, other.d);
+    }
+
+    /**
+     * Resets this quaternion to identity
+     * @return this object
+     */
+    public Quaternion setIdentity() {
+        return set(0, 0, 0, 1);
+    }
+
+    /**
+     * Sets this quaternion to rotation by angle in degrees about axis. Axis does not have to be normalized
+     * @param angle angle of rotation in degrees
+     * @param axisX x coordinate of axis
+     * @param axisY y coordinate of axis
+     * @param axisZ z coordinate of axis
+     * @return this object
+     * @throws IllegalArgumentException if length of axis is zero
+     */
+    public Quaternion fromAxisAngle(float angle, float axisX, float axisY, float axisZ) {
+        float l = (float) Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+        if (l == 0) {
+            throw new IllegalArgumentException("Argument 'divisor' is 0");
+        }
+        float sinHalfAngle = FastTrig.sinDeg(angle / 2) / l;
+        return set(axisX * sinHalfAngle, axisY * sinHalfAngle, axisZ * sinHalfAngle, FastTrig.cosDeg(angle / 2));
+    }
+
+    /**
+     * Sets this quaternion to rotation by angle in degrees about axis
+     * @param angle angle of rotation in degrees
+     * @param axis axis to rotate about
+     * @return this object
+     */
+    public Quaternion fromAxisAngle(float angle, Vector3f axis) {
+        return fromAxisAngle(angle, axis.getX(), axis.getY(), axis.getZ());
+    }
+
+    /**
+     * Sets this quaternion to rotation Rz * Ry * Rx, same as {@link Matrix4f#setRotation(float, float, float)}
+     * @param x angle of rotation around x-axis in degrees
+     * @param y angle of rotation around y-axis in degrees
+     * @param z angle of rotation around z-axis in degrees
+     * @return this object
+     */
+    public Quaternion fromEuler(float x, float y, float z) {
+        float sx = FastTrig.sinDeg(x / 2), cx = FastTrig.cosDeg(x / 2);
+        float sy = FastTrig.sinDeg(y / 2), cy = FastTrig.cosDeg(y / 2);
+        float sz = FastTrig.sinDeg(z / 2), cz = FastTrig.cosDeg(z / 2);
+        return set(cz * cy * sx - sz * sy * cx,
+                cz * sy * cx + sz * cy * sx,
+                sz * cy * cx - cz * sy * sx,
+                cz * cy * cx + sz * sy * sx);
+    }
+
+    /**
+     * Writes angles in degrees of rotation Rz * Ry * Rx equal to this quaternion to dest, inverse of
+     * {@link #fromEuler(float, float, float)}. This quaternion has to be normalized. Angle around y-axis is in
+     * [-90, 90], when it is +-90 rotation around x-axis is folded into angle around z-axis and x is 0
+     * @param dest vector to store x, y and z angles into
+     * @return dest vector
+     */
+    public Vector3f toEuler(Vector3f dest) {
+        // elements of rotation matrix, column 0 is (cosZ * cosY, sinZ * cosY, -sinY)
+        float m00 = 1 - 2 * (b * b + c * c), m10 = 2 * (a * b + d * c), m20 = 2 * (a * c - d * b);
+        // atan2 keeps y accurate near +-90 degrees where asin of -m20 is not
+        float cosY = (float) Math.sqrt(m00 * m00 + m10 * m10);
+        float y = (float) Math.toDegrees(Math.atan2(-m20, cosY));
+        if (cosY < 1e-6f) {
+            float m01 = 2 * (a * b - d * c), m11 = 1 - 2 * (a * a + c * c);
+            dest.set(0, y, (float) Math.toDegrees(Math.atan2(-m01, m11)));
+            return dest;
+        }
+        float m21 = 2 * (b * c + d * a), m22 = 1 - 2 * (a * a + b * b);
+        dest.set((float) Math.toDegrees(Math.atan2(m21, m22)), y, (float) Math.toDegrees(Math.atan2(m10, m00)));
+        return dest;
+    }
+
+    /**
+     * Sets this quaternion to rotation which turns (0, 0, 1) to forward and (0, 1, 0) as close as possible to up.
+     * Arguments are not modified
+     * @param forward forward direction
+     * @param up up direction
+     * @return this object
+     */
+    public Quaternion lookAlong(Vector3f forward, Vector3f up) {
+        float zx = forward.getX(), zy = forward.getY(), zz = forward.getZ();
+        float zl = (float) Math.sqrt(zx * zx + zy * zy + zz * zz);
+        zx /= zl; zy /= zl; zz /= zl;
+
+        float ux = up.getX(), uy = up.getY(), uz = up.getZ();
+        float xx = uy * zz - uz * zy, xy = uz * zx - ux * zz, xz = ux * zy - uy * zx;
+        float xl = (float) Math.sqrt(xx * xx + xy * xy + xz * xz);
+        xx /= xl; xy /= xl; xz /= xl;
+
+        float yx = zy * xz - zz * xy, yy = zz * xx - zx * xz, yz = zx * xy - zy * xx;
+
+        // rotation matrix has columns x, y, z
+        float trace = xx + yy + zz;
+        if (trace > 0) {
+            float t = (float) Math.sqrt(trace + 1) * 2;
+            return set((yz - zy) / t, (zx - xz) / t, (xy - yx) / t, t / 4);
+        } else if (xx > yy && xx > zz) {
+            float t = (float) Math.sqrt(1 + xx - yy - zz) * 2;
+            return set(t / 4, (yx + xy) / t, (zx + xz) / t, (yz - zy) / t);
+        } else if (yy > zz) {
+            float t = (float) Math.sqrt(1 + yy - xx - zz) * 2;
+            return set((yx + xy) / t, t / 4, (zy + yz) / t, (zx - xz) / t);
+        } else {
+            float t = (float) Math.sqrt(1 + zz - xx - yy) * 2;
+            return set((zx + xz) / t, (zy + yz) / t, t / 4, (xy - yx) / t);
+        }
+    }
+
+    /**
+     * Multiplies this quaternion by argument quaternion, this = this * r
+     * @param r quaternion to multiply this quaternion
+     * @return this object
+     */
+    public Quaternion mulInPlace(Quaternion r) {
+        return mulInto(this, r, this);
+    }
+
+    /**
+     * Multiplies two quaternions and stores result in dest, dest = l * r. dest may be the same object as l or r
+     * @param l left quaternion
+     * @param r right quaternion
+     * @param dest quaternion to store result into
+     * @return dest quaternion
+     */
+    public static Quaternion mulInto(Quaternion l, Quaternion r, Quaternion dest) {
+        float d_ = l.d * r.d - l.a * r.a - l.b * r.b - l.c * r.c;
+        float a_ = l.a * r.d + l.d * r.a + l.b * r.c - l.c * r.b;
+        float b_ = l.b * r.d + l.d * r.b + l.c * r.a - l.a * r.c;
+        float c_ = l.c * r.d + l.d * r.c + l.a * r.b - l.b * r.a;
+        return dest.set(a_, b_, c_, d_);
+    }
+
+    /**
+     * Conjugates this quaternion without creating new object
+     * @return this object
+     */
+    public Quaternion conjugateInPlace() {
+        return set(-a, -b, -c, d);
+    }
+
+    /**
+     * Computes dot product of this and argument quaternion
+     * @param other other quaternion
+     * @return dot product
+     */
+    public float dot(Quaternion other) {
+        return a * other.a + b * other.b + c * other.c + d * other.d;
+    }
+
+    /**
+     * Rotates vector by this quaternion, dest = q * v * conjugate(q). This quaternion has to be normalized.
+     * dest may be the same object as v
+     * @param v vector to rotate
+     * @param dest vector to store result into
+     * @return dest vector
+     */
+    public Vector3f rotateVectorInto(Vector3f v, Vector3f dest) {
+        return rotate(a, b, c, d, v.getX(), v.getY(), v.getZ(), dest);
+    }
+
+    /**
+     * Rotates point (x, y, z) by normalized quaternion (qx, qy, qz, qw) and stores result in dest
+     * @return dest vector
+     */
+    static Vector3f rotate(float qx, float qy, float qz, float qw, float x, float y, float z, Vector3f dest) {
+        // v' = v + w * t + q x t, where t = 2 * (q x v)
+        float tx = 2 * (qy * z - qz * y);
+        float ty = 2 * (qz * x - qx * z);
+        float tz = 2 * (qx * y - qy * x);
+        dest.set(x + qw * tx + qy * tz - qz * ty,
+                y + qw * ty + qz * tx - qx * tz,
+                z + qw * tz + qx * ty - qy * tx);
+        return dest;
+    }
+
+    /**
+     * Spherical linear interpolation from this quaternion to target, result is stored in this quaternion.
+     * Both quaternions have to be normalized, interpolation follows the shortest path
+     * @param target quaternion to interpolate to
+     * @param alpha interpolation factor, 0 gives this quaternion and 1 gives target
+     * @return this object
+     */
+    public Quaternion slerp(Quaternion target, float alpha) {
+        float cosOmega = dot(target);
+        float sign = 1;
+        if (cosOmega < 0) {
+            cosOmega = -cosOmega;
+            sign = -1;
+        }
+        if (cosOmega > 0.9995f) {
+            return nlerp(target, alpha);
+        }
+        double omega = Math.acos(cosOmega);
+        float sinOmega = (float) Math.sin(omega);
+        float s0 = (float) Math.sin((1 - alpha) * omega) / sinOmega;
+        float s1 = sign * (float) Math.sin(alpha * omega) / sinOmega;
+        return set(s0 * a + s1 * target.a, s0 * b + s1 * target.b, s0 * c + s1 * target.c, s0 * d + s1 * target.d);
+    }
+
+    /**
+     * Normalized linear interpolation from this quaternion to target, result is stored in this quaternion.
+     * Cheaper than {@link #slerp(Quaternion, float)} but angular speed is not constant.
+     * Interpolation follows the shortest path
+     * @param target quaternion to interpolate to
+     * @param alpha interpolation factor, 0 gives this quaternion and 1 gives target
+     * @return this object
+     */
+    public Quaternion nlerp(Quaternion target, float alpha) {
+        float s1 = dot(target) < 0 ? -alpha : alpha;
+        float s0 = 1 - alpha;
+        return set(s0 * a + s1 * target.a, s0 * b + s1 * target.b, s0 * c + s1 * target.c, s0 * d + s1 * target.d)
+                .normalize();
+    }
+
+    /**
+     * Writes rotation matrix of this quaternion to dest. This quaternion has to be normalized
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public Matrix4f get(Matrix4f dest) {
+        return dest.setRotation(this);
+    }
+
     /**
      * Getter for first vector value of quaternion
      * @return first vector value of quaternion
@@ -99,6 +357,7 @@ public class Quaternion {
      */
     public Quaternion setA(float a) {
         this.a = a;
+        length = -1;
         return this;
     }
 
@@ -117,6 +376,7 @@ public class Quaternion {
      */
     public Quaternion setB(float b) {
         this.b = b;
+        length = -1;
         return this;
     }
 
@@ -135,6 +395,7 @@ public class Quaternion {
      */
     public Quaternion setC(float c) {
         this.c = c;
+        length = -1;
         return this;
     }
 
@@ -153,6 +414,7 @@ public class Quaternion {
      */
     public Quaternion setD(float d) {
         this.d = d;
+        length = -1;
         return this;
     }
 }
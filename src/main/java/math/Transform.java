@@ -1,8 +1,6 @@
 package math;
 
 import core.Camera;
-import static java.lang.Math.cos;
-import static java.lang.Math.sin;
 
 /**
  * Math class Transform.java. Created to generate transformation matrices such as rotation, scale and translation for Vertexes.
@@ -12,12 +10,24 @@ public class Transform {
     private Vector3f translation;
     private Vector3f rotation;
     private Vector3f scale;
+    private Quaternion orientation;
     private static float zNear = 0.5f;
     private static float zFar = -0.5f;
     private static float width = 800;
     private static float height = 800;
     private static float fieldOfView = 90;
     private static Camera camera;
+    private static int projectionVersion;
+
+    private static final Matrix4f projectionMatrix = new Matrix4f();
+    private static final Matrix4f viewMatrix = new Matrix4f();
+    private static final Matrix4f viewProjectionMatrix = new Matrix4f();
+    private static int cachedProjectionVersion = -1;
+    private static Camera cachedCamera;
+    private static int cachedCameraVersion = -1;
+    private static int viewProjectionProjectionVersion = -1;
+    private static Camera viewProjectionCamera;
+    private static int viewProjectionCameraVersion = -1;
 
     /**
      * initializes Translation with translation, rotation, scale set to respective arguments
@@ -47,6 +57,7 @@ public class Transform {
      */
     public static void setFieldOfView(float other) {
         fieldOfView = other;
+        projectionVersion++;
     }
 
     /**
@@ -63,6 +74,7 @@ public class Transform {
      */
     public static void setzFar(float other) {
         zFar = other;
+        projectionVersion++;
     }
 
     /**
@@ -79,6 +91,7 @@ public class Transform {
      */
     public static void setzNear(float other) {
         zNear = other;
+        projectionVersion++;
     }
 
     /**
@@ -95,6 +108,7 @@ public class Transform {
      */
     public static void setHeight(float other) {
         height = other;
+        projectionVersion++;
     }
 
     /**
@@ -111,6 +125,7 @@ public class Transform {
      */
     public static void setWidth(float other) {
         width = other;
+        projectionVersion++;
     }
 
     /**
@@ -157,6 +172,24 @@ public class Transform {
         return this;
     }
 
+    /**
+     * getter for orientation
+     * @return orientation quaternion or null if rotation angles are used
+     */
+    public Quaternion getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * sets orientation to argument. When orientation is not null it is used instead of rotation angles
+     * @param other normalized quaternion to be set to orientation, or null to use rotation angles
+     * @return this object
+     */
+    public Transform setOrientation(Quaternion other) {
+        this.orientation = other;
+        return this;
+    }
+
     /**
      * getter for scale
      * @return scale
@@ -175,6 +208,14 @@ public class Transform {
         return this;
     }
 
+    /**
+     * counter which is incremented every time fieldOfView, width, height, zNear or zFar is changed
+     * @return version of projection parameters
+     */
+    public static int getProjectionVersion() {
+        return projectionVersion;
+    }
+
     /**
      * getter for camera
      * @return camera
@@ -201,16 +242,7 @@ public class Transform {
      * @return resulting matrix
      */
     public Matrix4f createProjectionMatrix(float fieldOfView, float width, float height, float zNear, float zFar) {
-        float tanFOV = (float) Math.tan(Math.toRadians(fieldOfView / 2));
-        float aspectRatio = width / height;
-        float zRange = zNear - zFar;
-
-        return new Matrix4f(
-                new float[][]{{1 / (tanFOV * aspectRatio), 0, 0, 0,},
-                        {0, 1 / tanFOV, 0, 0},
-                        {0, 0, (-zNear - zFar) / zRange, 2 * zFar * zNear / zRange},
-                        {0, 0, 1, 0}
-                });
+        return new Matrix4f().setPerspective(fieldOfView, width, height, zNear, zFar);
     }
 
     /**
@@ -220,17 +252,7 @@ public class Transform {
      * @return resulting matrix
      */
     public Matrix4f createCameraMatrix(Vector3f forward, Vector3f up) {
-        Vector3f f = new Vector3f(forward.getX(), forward.getY(), forward.getZ()).normalize();
-        Vector3f r = new Vector3f(up.getX(), up.getY(), up.getZ()).normalize();
-        r = r.cross(f);
-        Vector3f u = f.cross(r);
-        return new Matrix4f(
-                new float[][]{{r.getX(), r.getY(), r.getZ(), 0},
-                        {u.getX(), u.getY(), u.getZ(), 0},
-                        {f.getX(), f.getY(), f.getZ(), 0},
-                        {0, 0, 0, 1}
-                }
-        );
+        return new Matrix4f().setCamera(forward, up);
     }
 
     /**
@@ -252,12 +274,22 @@ public class Transform {
      * @return resulting matrix
      */
     public Matrix4f getTransformation() {
-        Matrix4f translationMatrix = getTranslationMatrix(this.translation.getX(), this.translation.getY(), this.translation.getZ());
-        Matrix4f rotationMatrix = getRotationMatrix(this.rotation.getX(), this.rotation.getY(), this.rotation.getZ());
-        Matrix4f scaleMatrix = getScaleMatrix(this.scale.getX(), this.scale.getY(), this.scale.getZ());
-        rotationMatrix.multiply(scaleMatrix);
-        translationMatrix.multiply(rotationMatrix);
-        return translationMatrix;
+        return getTransformation(new Matrix4f());
+    }
+
+    /**
+     * multiplying translation, rotation and scale matrices combining every operation in one without allocation.
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public Matrix4f getTransformation(Matrix4f dest) {
+        if (this.orientation != null) {
+            return dest.setTransformation(this.translation.getX(), this.translation.getY(), this.translation.getZ(),
+                    this.orientation, this.scale.getX(), this.scale.getY(), this.scale.getZ());
+        }
+        return dest.setTransformation(this.translation.getX(), this.translation.getY(), this.translation.getZ(),
+                this.rotation.getX(), this.rotation.getY(), this.rotation.getZ(),
+                this.scale.getX(), this.scale.getY(), this.scale.getZ());
     }
 
     /**
@@ -266,12 +298,73 @@ public class Transform {
      * @return resulting matrix
      */
     public Matrix4f getProjectedTransformation() {
-        Matrix4f transformationMatrix = getTransformation();
-        Matrix4f projectionMatrix = createProjectionMatrix(fieldOfView, width, height, zNear, zFar);
-        Matrix4f cameraRotation = createCameraMatrix(camera.getForward(), camera.getUp());
-        Matrix4f cameraTranslation = getTranslationMatrix(-camera.getPosition().getX(), -camera.getPosition().getY(), -camera.getPosition().getZ());
+        return getProjectedTransformation(new Matrix4f());
+    }
 
-        return projectionMatrix.multiply(cameraRotation.multiply(cameraTranslation.multiply(transformationMatrix)));
+    /**
+     * same as {@link #getProjectedTransformation()} but stores result into dest without allocation.
+     * Uses view-projection matrix cached by {@link #getViewProjectionMatrix()}
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public Matrix4f getProjectedTransformation(Matrix4f dest) {
+        return getProjectedTransformation(getViewProjectionMatrix(), dest);
+    }
+
+    /**
+     * multiplies transformation matrix by view-projection matrix which was computed once for the frame.
+     * Costs one matrix multiplication
+     * @param viewProjection view-projection matrix, usually {@link #getViewProjectionMatrix()}
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public Matrix4f getProjectedTransformation(Matrix4f viewProjection, Matrix4f dest) {
+        return Matrix4f.mulInto(viewProjection, getTransformation(dest), dest);
+    }
+
+    /**
+     * Returns projection matrix for current fieldOfView, width, height, zNear and zFar.
+     * Matrix is recomputed only when one of them has changed. Returned object is shared and must not be modified
+     * @return cached projection matrix
+     */
+    public static Matrix4f getProjectionMatrix() {
+        if (cachedProjectionVersion != projectionVersion) {
+            projectionMatrix.setPerspective(fieldOfView, width, height, zNear, zFar);
+            cachedProjectionVersion = projectionVersion;
+        }
+        return projectionMatrix;
+    }
+
+    /**
+     * Returns camera rotation * camera translation matrix for current camera.
+     * Matrix is recomputed only when camera or its version has changed. Returned object is shared and must not be modified
+     * @return cached view matrix
+     */
+    public static Matrix4f getViewMatrix() {
+        if (cachedCamera != camera || cachedCameraVersion != camera.getVersion()) {
+            Vector3f position = camera.getPosition();
+            viewMatrix.setCamera(camera.getForward(), camera.getUp())
+                    .translate(-position.getX(), -position.getY(), -position.getZ());
+            cachedCamera = camera;
+            cachedCameraVersion = camera.getVersion();
+        }
+        return viewMatrix;
+    }
+
+    /**
+     * Returns projection * view matrix. Matrix is recomputed only when projection parameters or camera have changed.
+     * Returned object is shared and must not be modified. Cache is not synchronized, so it is used from rendering thread
+     * @return cached view-projection matrix
+     */
+    public static Matrix4f getViewProjectionMatrix() {
+        if (viewProjectionProjectionVersion != projectionVersion
+                || viewProjectionCamera != camera || viewProjectionCameraVersion != camera.getVersion()) {
+            Matrix4f.mulInto(getProjectionMatrix(), getViewMatrix(), viewProjectionMatrix);
+            viewProjectionProjectionVersion = projectionVersion;
+            viewProjectionCamera = camera;
+            viewProjectionCameraVersion = camera.getVersion();
+        }
+        return viewProjectionMatrix;
     }
 
     /**
@@ -282,11 +375,7 @@ public class Transform {
      * @return resulting matrix
      */
     public static Matrix4f getTranslationMatrix(float x, float y, float z) {
-        return new Matrix4f(
-                new float[][]{{1, 0, 0, x}
-                        , {0, 1, 0, y}
-                        , {0, 0, 1, z}
-                        , {0, 0, 0, 1}});
+        return new Matrix4f().setTranslation(x, y, z);
     }
 
     /**
@@ -294,40 +383,10 @@ public class Transform {
      * @param x value responsible for degree of turn for x coordinate
      * @param y value responsible for degree of turn for z coordinate
      * @param z value responsible for degree of turn for y coordinate
-     * @return
+     * @return resulting matrix
      */
     public static Matrix4f getRotationMatrix(float x, float y, float z) {
-        x = (float) Math.toRadians(x);
-        y = (float) Math.toRadians(y);
-        z = (float) Math.toRadians(z);
-
-        Matrix4f rz = new Matrix4f(
-                new float[][]{
-                        {(float) cos(z), (float) -sin(z), 0, 0}
-                        , {(float) sin(z), (float) cos(z), 0, 0}
-                        , {0, 0, 1, 0}
-                        , {0, 0, 0, 1}});
-
-        Matrix4f rx = new Matrix4f(
-                new float[][]{
-                        {1, 0, 0, 0}
-                        , {0, (float) cos(x), (float) -sin(x), 0}
-                        , {0, (float) sin(x), (float) cos(x), 0}
-                        , {0, 0, 0, 1}});
-
-
-        Matrix4f ry =
-                new Matrix4f(
-                        new float[][]{
-                                {(float) cos(y), (float) -sin(y), 0, 0}
-                                , {0, 1, 0, 0}
-                                , {(float) sin(y), (float) cos(y), 1, 0}
-                                , {0, 0, 0, 1}});
-
-        ry.multiply(rx);
-        rz.multiply(ry);
-        return rz;
-
+        return new Matrix4f().setRotation(x, y, z);
     }
 
     /**
@@ -338,12 +397,7 @@ public class Transform {
      * @return resulting matrix
      */
     public static Matrix4f getScaleMatrix(float x, float y, float z) {
-        return new Matrix4f(
-                new float[][]{
-                        {x, 0, 0, 0},
-                        {0, y, 0, 0},
-                        {0, 0, z, 0},
-                        {0, 0, 0, 1}});
+        return new Matrix4f().setScale(x, y, z);
     }
 
-}
\ No newline at end of file
+}
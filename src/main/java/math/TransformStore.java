@@ -0,0 +1,429 @@
+package math;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Math class TransformStore.java keeps translation, rotation and scale of many entities in packed primitive arrays
+ * and computes their world matrices in one pass. It is the bulk counterpart of {@link Transform}:
+ * rotation is given in degrees and matrix of entity is translation * Rz * Ry * Rx * scale.
+ * Like {@link Transform#getOrientation()} an entity can have a quaternion orientation instead, which is kept in its own
+ * lanes and used instead of the angles until angles are set again.
+ * Above {@link #PARALLEL_THRESHOLD} entities computation is split across common ForkJoin pool.
+ */
+public class TransformStore {
+
+    /**
+     * number of entities from which world matrices are computed in parallel
+     */
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * number of entities computed by one ForkJoin task
+     */
+    private static final int TASK_SIZE = 1024;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int size;
+    private float[] tx, ty, tz;
+    private float[] rx, ry, rz;
+    private float[] sx, sy, sz;
+    private float[] qx, qy, qz, qw;
+    private boolean[] oriented;
+    private final Quaternion orientation = new Quaternion();
+
+    /**
+     * Initialises empty store with default capacity
+     */
+    public TransformStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initialises empty store
+     * @param capacity number of entities store can hold before growing
+     */
+    public TransformStore(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Argument 'capacity' is less than 1");
+        }
+        tx = new float[capacity];
+        ty = new float[capacity];
+        tz = new float[capacity];
+        rx = new float[capacity];
+        ry = new float[capacity];
+        rz = new float[capacity];
+        sx = new float[capacity];
+        sy = new float[capacity];
+        sz = new float[capacity];
+        qx = new float[capacity];
+        qy = new float[capacity];
+        qz = new float[capacity];
+        qw = new float[capacity];
+        oriented = new boolean[capacity];
+    }
+
+    /**
+     * Adds entity with zero translation and rotation and scale (1, 1, 1)
+     * @return index of added entity
+     */
+    public int add() {
+        if (size == tx.length) {
+            grow(size * 2);
+        }
+        int index = size++;
+        setTranslation(index, 0, 0, 0);
+        setRotation(index, 0, 0, 0);
+        setScale(index, 1, 1, 1);
+        return index;
+    }
+
+    /**
+     * Adds entity with values copied from transform
+     * @param transform transform to copy values from
+     * @return index of added entity
+     */
+    public int add(Transform transform) {
+        int index = add();
+        set(index, transform);
+        return index;
+    }
+
+    /**
+     * Removes entity by moving the last entity to its place
+     * @param index index of entity to remove
+     * @return previous index of entity which now has given index, or -1 if removed entity was the last one
+     */
+    public int remove(int index) {
+        checkIndex(index);
+        int last = --size;
+        if (index == last) {
+            return -1;
+        }
+        tx[index] = tx[last];
+        ty[index] = ty[last];
+        tz[index] = tz[last];
+        rx[index] = rx[last];
+        ry[index] = ry[last];
+        rz[index] = rz[last];
+        sx[index] = sx[last];
+        sy[index] = sy[last];
+        sz[index] = sz[last];
+        qx[index] = qx[last];
+        qy[index] = qy[last];
+        qz[index] = qz[last];
+        qw[index] = qw[last];
+        oriented[index] = oriented[last];
+        return last;
+    }
+
+    /**
+     * Removes all entities, capacity stays the same
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies translation, rotation and scale of transform to entity. Orientation of transform is used
+     * instead of its rotation angles when it is set, like {@link Transform#getTransformation()} does
+     * @param index index of entity
+     * @param transform transform to copy values from
+     */
+    public void set(int index, Transform transform) {
+        Vector3f t = transform.getTranslation(), r = transform.getRotation(), s = transform.getScale();
+        setTranslation(index, t.getX(), t.getY(), t.getZ());
+        if (transform.getOrientation() != null) {
+            setOrientation(index, transform.getOrientation());
+        } else {
+            setRotation(index, r.getX(), r.getY(), r.getZ());
+        }
+        setScale(index, s.getX(), s.getY(), s.getZ());
+    }
+
+    /**
+     * setter for translation of entity
+     */
+    public void setTranslation(int index, float x, float y, float z) {
+        checkIndex(index);
+        tx[index] = x;
+        ty[index] = y;
+        tz[index] = z;
+    }
+
+    /**
+     * setter for rotation of entity, angles are in degrees. Orientation of entity is dropped
+     */
+    public void setRotation(int index, float x, float y, float z) {
+        checkIndex(index);
+        rx[index] = x;
+        ry[index] = y;
+        rz[index] = z;
+        oriented[index] = false;
+    }
+
+    /**
+     * setter for orientation of entity, it is used instead of rotation angles until they are set
+     * @param orientation normalized quaternion, values are copied
+     */
+    public void setOrientation(int index, Quaternion orientation) {
+        checkIndex(index);
+        qx[index] = orientation.getA();
+        qy[index] = orientation.getB();
+        qz[index] = orientation.getC();
+        qw[index] = orientation.getD();
+        oriented[index] = true;
+    }
+
+    /**
+     * setter for scale of entity
+     */
+    public void setScale(int index, float x, float y, float z) {
+        checkIndex(index);
+        sx[index] = x;
+        sy[index] = y;
+        sz[index] = z;
+    }
+
+    /**
+     * Adds argument values to translation of entity
+     */
+    public void translate(int index, float x, float y, float z) {
+        checkIndex(index);
+        tx[index] += x;
+        ty[index] += y;
+        tz[index] += z;
+    }
+
+    /**
+     * Adds argument angles in degrees to rotation of entity. Orientation of entity is converted to angles first
+     */
+    public void rotate(int index, float x, float y, float z) {
+        checkIndex(index);
+        if (oriented[index]) {
+            toAngles(index);
+        }
+        rx[index] += x;
+        ry[index] += y;
+        rz[index] += z;
+    }
+
+    /**
+     * Copies translation of entity to dest
+     * @return dest vector
+     */
+    public Vector3f getTranslation(int index, Vector3f dest) {
+        checkIndex(index);
+        dest.set(tx[index], ty[index], tz[index]);
+        return dest;
+    }
+
+    /**
+     * Copies rotation of entity to dest, orientation of entity is converted by {@link Quaternion#toEuler(Vector3f)}
+     * @return dest vector
+     */
+    public Vector3f getRotation(int index, Vector3f dest) {
+        checkIndex(index);
+        if (oriented[index]) {
+            return orientation.set(qx[index], qy[index], qz[index], qw[index]).toEuler(dest);
+        }
+        dest.set(rx[index], ry[index], rz[index]);
+        return dest;
+    }
+
+    /**
+     * Copies orientation of entity to dest, rotation angles are converted by
+     * {@link Quaternion#fromEuler(float, float, float)} if entity has no orientation
+     * @return dest quaternion
+     */
+    public Quaternion getOrientation(int index, Quaternion dest) {
+        checkIndex(index);
+        if (oriented[index]) {
+            return dest.set(qx[index], qy[index], qz[index], qw[index]);
+        }
+        return dest.fromEuler(rx[index], ry[index], rz[index]);
+    }
+
+    /**
+     * @return true if entity has orientation which is used instead of rotation angles
+     */
+    public boolean hasOrientation(int index) {
+        checkIndex(index);
+        return oriented[index];
+    }
+
+    private void toAngles(int index) {
+        Vector3f angles = orientation.set(qx[index], qy[index], qz[index], qw[index]).toEuler(new Vector3f(0, 0, 0));
+        rx[index] = angles.getX();
+        ry[index] = angles.getY();
+        rz[index] = angles.getZ();
+        oriented[index] = false;
+    }
+
+    /**
+     * Copies scale of entity to dest
+     * @return dest vector
+     */
+    public Vector3f getScale(int index, Vector3f dest) {
+        checkIndex(index);
+        dest.set(sx[index], sy[index], sz[index]);
+        return dest;
+    }
+
+    /**
+     * Computes world matrix of entity
+     * @param index index of entity
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public Matrix4f getWorldMatrix(int index, Matrix4f dest) {
+        checkIndex(index);
+        if (oriented[index]) {
+            return dest.setTransformation(tx[index], ty[index], tz[index],
+                    orientation.set(qx[index], qy[index], qz[index], qw[index]), sx[index], sy[index], sz[index]);
+        }
+        return dest.setTransformation(tx[index], ty[index], tz[index],
+                rx[index], ry[index], rz[index],
+                sx[index], sy[index], sz[index]);
+    }
+
+    /**
+     * Computes world matrices of all entities. Matrix of entity i is written in column-major order
+     * to dest[i * 16] - dest[i * 16 + 15]
+     * @param dest array to write to
+     * @throws IllegalArgumentException if dest is shorter than size * 16
+     */
+    public void computeWorldMatrices(float[] dest) {
+        checkCapacity(dest.length);
+        if (size < PARALLEL_THRESHOLD) {
+            compute(dest, 0, size);
+        } else {
+            ForkJoinPool.commonPool().invoke(new ArrayTask(dest, 0, size));
+        }
+    }
+
+    /**
+     * Computes world matrices of all entities. Matrix of entity i is written in column-major order
+     * starting at absolute index i * 16 of buffer, position of the buffer is not changed
+     * @param dest buffer to write to
+     * @throws IllegalArgumentException if dest is shorter than size * 16
+     */
+    public void computeWorldMatrices(FloatBuffer dest) {
+        checkCapacity(dest.limit());
+        if (size < PARALLEL_THRESHOLD) {
+            compute(dest, 0, size);
+        } else {
+            ForkJoinPool.commonPool().invoke(new BufferTask(dest, 0, size));
+        }
+    }
+
+    private void compute(float[] dest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            compose(dest, i * Matrix4f.SIZE, i);
+        }
+    }
+
+    private void compute(FloatBuffer dest, int from, int to) {
+        float[] matrix = new float[Matrix4f.SIZE];
+        for (int i = from; i < to; i++) {
+            compose(matrix, 0, i);
+            dest.put(i * Matrix4f.SIZE, matrix);
+        }
+    }
+
+    private void compose(float[] dest, int offset, int i) {
+        if (oriented[i]) {
+            Matrix4f.composeTRS(dest, offset, tx[i], ty[i], tz[i], qx[i], qy[i], qz[i], qw[i], sx[i], sy[i], sz[i]);
+        } else {
+            Matrix4f.composeTRS(dest, offset, tx[i], ty[i], tz[i], rx[i], ry[i], rz[i], sx[i], sy[i], sz[i]);
+        }
+    }
+
+    /**
+     * @return number of entities in store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of entities store can hold before growing
+     */
+    public int capacity() {
+        return tx.length;
+    }
+
+    private void grow(int capacity) {
+        tx = Arrays.copyOf(tx, capacity);
+        ty = Arrays.copyOf(ty, capacity);
+        tz = Arrays.copyOf(tz, capacity);
+        rx = Arrays.copyOf(rx, capacity);
+        ry = Arrays.copyOf(ry, capacity);
+        rz = Arrays.copyOf(rz, capacity);
+        sx = Arrays.copyOf(sx, capacity);
+        sy = Arrays.copyOf(sy, capacity);
+        sz = Arrays.copyOf(sz, capacity);
+        qx = Arrays.copyOf(qx, capacity);
+        qy = Arrays.copyOf(qy, capacity);
+        qz = Arrays.copyOf(qz, capacity);
+        qw = Arrays.copyOf(qw, capacity);
+        oriented = Arrays.copyOf(oriented, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    private void checkCapacity(int length) {
+        if (length < size * Matrix4f.SIZE) {
+            throw new IllegalArgumentException("Destination length " + length + " is less than " + size * Matrix4f.SIZE);
+        }
+    }
+
+    private class ArrayTask extends RecursiveAction {
+        private final float[] dest;
+        private final int from, to;
+
+        ArrayTask(float[] dest, int from, int to) {
+            this.dest = dest;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                TransformStore.this.compute(dest, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ArrayTask(dest, from, middle), new ArrayTask(dest, middle, to));
+        }
+    }
+
+    private class BufferTask extends RecursiveAction {
+        private final FloatBuffer dest;
+        private final int from, to;
+
+        BufferTask(FloatBuffer dest, int from, int to) {
+            this.dest = dest;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                TransformStore.this.compute(dest, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BufferTask(dest, from, middle), new BufferTask(dest, middle, to));
+        }
+    }
+}
@@ -42,10 +42,21 @@ public class Vector3f {
      * @return this object
      */
     public Vector3f cross(Vector3f other) {
-        this.x = this.y * other.z - this.z * other.y;
-        this.y = this.z * other.x - this.x * other.z;
-        this.y = this.x * other.y - this.y * other.x;
-        return this;
+        return crossInto(other, this);
+    }
+
+    /**
+     * Calculate cross product of this and argument vector and store it in dest. dest may be this or other
+     * @param other vector to cross product this with
+     * @param dest vector to store result into
+     * @return dest vector
+     */
+    public Vector3f crossInto(Vector3f other, Vector3f dest) {
+        float x1 = this.y * other.z - this.z * other.y;
+        float y1 = this.z * other.x - this.x * other.z;
+        float z1 = this.x * other.y - this.y * other.x;
+        dest.set(x1, y1, z1);
+        return dest;
     }
 
     /**
@@ -84,27 +95,26 @@ public class Vector3f {
 
 
     /**
-     * Rotates this vector by angle in degrees about some axis which is also a vector.
+     * Rotates this vector by angle in degrees about some axis which is also a vector. Axis has to be normalized
      * @param angle angle in which vector will be rotated
      * @param axis axis to rotate this vector about
      * @return this object
      */
     public Vector3f rotate(float angle, Vector3f axis) {
-        float sinHalfAngle = (float) Math.sin(Math.toRadians(angle / 2));
-        float cosHalfAngle = (float) Math.cos(Math.toRadians(angle / 2));
+        float sinHalfAngle = FastTrig.sinDeg(angle / 2);
+        float cosHalfAngle = FastTrig.cosDeg(angle / 2);
 
-        float rX = axis.getX() * sinHalfAngle;
-        float rY = axis.getY() * sinHalfAngle;
-        float rZ = axis.getY() * sinHalfAngle;
-        float rW = cosHalfAngle;
-
-        Quaternion rotation = new Quaternion(rX, rY, rZ, rW);
-        Quaternion rotationCopy = new Quaternion(rX, rY, rZ, rW);
-        Quaternion conjugate = rotationCopy.conjugate();
+        return Quaternion.rotate(axis.getX() * sinHalfAngle, axis.getY() * sinHalfAngle, axis.getZ() * sinHalfAngle,
+                cosHalfAngle, this.x, this.y, this.z, this);
+    }
 
-        Quaternion result = rotation.mult(this).mult(conjugate);
-        set(result.getA(), result.getB(), result.getC());
-        return this;
+    /**
+     * Rotates this vector by normalized quaternion
+     * @param rotation quaternion to rotate this vector by
+     * @return this object
+     */
+    public Vector3f rotate(Quaternion rotation) {
+        return rotation.rotateVectorInto(this, this);
     }
 
     /**
@@ -0,0 +1,96 @@
+package math;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementations of {@link BatchTransform} operations.
+ * This class is loaded only when jdk.incubator.vector module is present, values which do not fill
+ * whole vector are handled by scalar code of {@link BatchTransform}.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * number of floats processed at once
+     */
+    static final int LANES = SPECIES.length();
+
+    private VectorKernels() {
+    }
+
+    static void transformPoints(Matrix4f m, float[] x, float[] y, float[] z,
+                                float[] outX, float[] outY, float[] outZ, int count) {
+        FloatVector m00 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 0));
+        FloatVector m01 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 1));
+        FloatVector m02 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 2));
+        FloatVector m03 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 3));
+        FloatVector m10 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 0));
+        FloatVector m11 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 1));
+        FloatVector m12 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 2));
+        FloatVector m13 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 3));
+        FloatVector m20 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 0));
+        FloatVector m21 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 1));
+        FloatVector m22 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 2));
+        FloatVector m23 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 3));
+
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector px = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector py = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector pz = FloatVector.fromArray(SPECIES, z, i);
+            px.fma(m00, pz.fma(m02, py.fma(m01, m03))).intoArray(outX, i);
+            px.fma(m10, pz.fma(m12, py.fma(m11, m13))).intoArray(outY, i);
+            px.fma(m20, pz.fma(m22, py.fma(m21, m23))).intoArray(outZ, i);
+        }
+        BatchTransform.transformPoints(m, x, y, z, outX, outY, outZ, bound, count);
+    }
+
+    static void transformDirections(Matrix4f m, float[] x, float[] y, float[] z,
+                                    float[] outX, float[] outY, float[] outZ, int count) {
+        FloatVector m00 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 0));
+        FloatVector m01 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 1));
+        FloatVector m02 = FloatVector.broadcast(SPECIES, m.getCellValue(0, 2));
+        FloatVector m10 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 0));
+        FloatVector m11 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 1));
+        FloatVector m12 = FloatVector.broadcast(SPECIES, m.getCellValue(1, 2));
+        FloatVector m20 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 0));
+        FloatVector m21 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 1));
+        FloatVector m22 = FloatVector.broadcast(SPECIES, m.getCellValue(2, 2));
+
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector px = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector py = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector pz = FloatVector.fromArray(SPECIES, z, i);
+            px.fma(m00, pz.fma(m02, py.mul(m01))).intoArray(outX, i);
+            px.fma(m10, pz.fma(m12, py.mul(m11))).intoArray(outY, i);
+            px.fma(m20, pz.fma(m22, py.mul(m21))).intoArray(outZ, i);
+        }
+        BatchTransform.transformDirections(m, x, y, z, outX, outY, outZ, bound, count);
+    }
+
+    static void transformAABBs(Matrix4f m, float[][] min, float[][] max,
+                               float[][] outMin, float[][] outMax, int count) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector minX = FloatVector.fromArray(SPECIES, min[0], i);
+            FloatVector minY = FloatVector.fromArray(SPECIES, min[1], i);
+            FloatVector minZ = FloatVector.fromArray(SPECIES, min[2], i);
+            FloatVector maxX = FloatVector.fromArray(SPECIES, max[0], i);
+            FloatVector maxY = FloatVector.fromArray(SPECIES, max[1], i);
+            FloatVector maxZ = FloatVector.fromArray(SPECIES, max[2], i);
+            for (int row = 0; row < 3; row++) {
+                float c0 = m.getCellValue(row, 0), c1 = m.getCellValue(row, 1), c2 = m.getCellValue(row, 2);
+                FloatVector ax = minX.mul(c0), bx = maxX.mul(c0);
+                FloatVector ay = minY.mul(c1), by = maxY.mul(c1);
+                FloatVector az = minZ.mul(c2), bz = maxZ.mul(c2);
+                FloatVector translation = FloatVector.broadcast(SPECIES, m.getCellValue(row, 3));
+                translation.add(ax.min(bx)).add(ay.min(by)).add(az.min(bz)).intoArray(outMin[row], i);
+                translation.add(ax.max(bx)).add(ay.max(by)).add(az.max(bz)).intoArray(outMax[row], i);
+            }
+        }
+        BatchTransform.transformAABBs(m, min, max, outMin, outMax, bound, count);
+    }
+}
@@ -0,0 +1,89 @@
+package render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL43;
+import utils.Utils;
+
+/**
+ * ComputeShader class ComputeShader.java for programs made of one compute shader, needs GL 4.3
+ */
+public class ComputeShader implements GpuResource {
+    private String computeFile;
+    private int computeID, programID;
+
+    public ComputeShader(String computePath) {
+        computeFile = Utils.loadAsString(computePath);
+    }
+
+    private ComputeShader() {
+    }
+
+    /**
+     * Creates compute shader from source which is already loaded, program is compiled by {@link #create()}
+     * @param computeSource source of compute shader
+     * @return new shader
+     */
+    public static ComputeShader fromSource(String computeSource) {
+        ComputeShader shader = new ComputeShader();
+        shader.computeFile = computeSource;
+        return shader;
+    }
+
+    /**
+     * Compiles and links program
+     * @throws IllegalStateException if shader does not compile or program does not link
+     */
+    public void create() {
+        programID = GL20.glCreateProgram();
+        computeID = GL20.glCreateShader(GL43.GL_COMPUTE_SHADER);
+
+        GL20.glShaderSource(computeID, computeFile);
+        GL20.glCompileShader(computeID);
+
+        if (GL20.glGetShaderi(computeID, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
+            throw new IllegalStateException("Compute Shader: " + GL20.glGetShaderInfoLog(computeID));
+        }
+
+        GL20.glAttachShader(programID, computeID);
+        GL20.glLinkProgram(programID);
+        if (GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+            throw new IllegalStateException("Program Linking: " + GL20.glGetProgramInfoLog(programID));
+        }
+
+        GL20.glDeleteShader(computeID);
+    }
+
+    /**
+     * Runs bound program
+     * @param groupsX number of work groups in x
+     */
+    public void dispatch(int groupsX) {
+        GL43.glDispatchCompute(groupsX, 1, 1);
+    }
+
+    public void bind() {
+        GL20.glUseProgram(programID);
+    }
+
+    public void unbind() {
+        GL20.glUseProgram(0);
+    }
+
+    @Override
+    public void destroy() {
+        GL20.glDeleteProgram(programID);
+    }
+
+    /**
+     * @return 0, driver memory of programs is not visible
+     */
+    @Override
+    public long getGpuBytes() {
+        return 0;
+    }
+
+    public int getProgramID() {
+        return programID;
+    }
+}
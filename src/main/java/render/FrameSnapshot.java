@@ -0,0 +1,155 @@
+package render;
+
+import math.Matrix4f;
+import math.TransformStore;
+
+import java.util.Arrays;
+
+/**
+ * FrameSnapshot class FrameSnapshot.java holds everything render thread needs to draw one simulated frame:
+ * camera matrix, world matrices of entities and the list of draws. Simulation thread fills it and publishes it,
+ * afterwards it is only read by render thread until it is handed back for reuse, so arrays are reused
+ * and a steady frame does not allocate
+ */
+public class FrameSnapshot {
+
+    private long frame;
+    private long updateNanos;
+    private final Matrix4f viewProjection = new Matrix4f();
+    private float[] worldMatrices = new float[Matrix4f.SIZE * 64];
+    private int transformCount;
+
+    private int drawCount;
+    private Mesh[] meshes = new Mesh[64];
+    private int[] materials = new int[64];
+    private float[] depths = new float[64];
+    private int[] transforms = new int[64];
+
+    /**
+     * Clears snapshot before it is filled for a new frame
+     * @param frame number of simulated frame
+     * @param updateNanos System.nanoTime() when simulation of frame started
+     */
+    public void begin(long frame, long updateNanos) {
+        this.frame = frame;
+        this.updateNanos = updateNanos;
+        this.transformCount = 0;
+        Arrays.fill(meshes, 0, drawCount, null);
+        this.drawCount = 0;
+    }
+
+    /**
+     * Copies camera matrix
+     * @param viewProjection view projection matrix of frame
+     */
+    public void setViewProjection(Matrix4f viewProjection) {
+        this.viewProjection.set(viewProjection);
+    }
+
+    /**
+     * Computes world matrices of all entities of store into snapshot, index of entity is index of its matrix
+     * @param store packed transforms
+     */
+    public void setTransforms(TransformStore store) {
+        int count = store.size();
+        if (worldMatrices.length < count * Matrix4f.SIZE) {
+            worldMatrices = new float[Math.max(count, worldMatrices.length / Matrix4f.SIZE * 2) * Matrix4f.SIZE];
+        }
+        store.computeWorldMatrices(worldMatrices);
+        transformCount = count;
+    }
+
+    /**
+     * Adds draw to snapshot
+     * @param mesh created mesh
+     * @param material id of material
+     * @param depth distance from camera
+     * @param transform index of world matrix set by {@link #setTransforms(TransformStore)}
+     */
+    public void addDraw(Mesh mesh, int material, float depth, int transform) {
+        if (drawCount == meshes.length) {
+            int capacity = drawCount * 2;
+            meshes = Arrays.copyOf(meshes, capacity);
+            materials = Arrays.copyOf(materials, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            transforms = Arrays.copyOf(transforms, capacity);
+        }
+        meshes[drawCount] = mesh;
+        materials[drawCount] = material;
+        depths[drawCount] = depth;
+        transforms[drawCount] = transform;
+        drawCount++;
+    }
+
+    /**
+     * @return number of simulated frame
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return System.nanoTime() when simulation of frame started
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * @return view projection matrix of frame, should not be modified
+     */
+    public Matrix4f getViewProjection() {
+        return viewProjection;
+    }
+
+    /**
+     * @return number of world matrices
+     */
+    public int getTransformCount() {
+        return transformCount;
+    }
+
+    /**
+     * Column-major world matrices, matrix of entity i starts at index i * 16. Should not be modified
+     * @return array of world matrices
+     */
+    public float[] getWorldMatrices() {
+        return worldMatrices;
+    }
+
+    /**
+     * Copies world matrix of entity
+     * @param transform index of entity
+     * @param dest matrix to store result
+     * @return dest matrix
+     */
+    public Matrix4f getWorldMatrix(int transform, Matrix4f dest) {
+        return dest.set(worldMatrices, transform * Matrix4f.SIZE);
+    }
+
+    /**
+     * @return number of draws
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public Mesh getMesh(int draw) {
+        return meshes[draw];
+    }
+
+    public int getMaterial(int draw) {
+        return materials[draw];
+    }
+
+    public float getDepth(int draw) {
+        return depths[draw];
+    }
+
+    /**
+     * @return index of world matrix of draw
+     */
+    public int getTransform(int draw) {
+        return transforms[draw];
+    }
+}
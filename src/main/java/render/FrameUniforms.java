@@ -0,0 +1,129 @@
+package render;
+
+import core.Camera;
+import math.Matrix4f;
+import math.Transform;
+import math.Vector3f;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameUniforms class FrameUniforms.java is a std140 uniform buffer with data which is the same for all draws
+ * of a frame. It is uploaded and bound to {@link #BINDING} once per frame and every {@link Shader} which declares
+ * the block reads it without per-program uniform calls:
+ * <pre>
+ * layout(std140) uniform Frame {
+ *     mat4 view;
+ *     mat4 projection;
+ *     mat4 viewProjection;
+ *     vec4 cameraPosition;
+ *     float time;
+ * };
+ * </pre>
+ */
+public class FrameUniforms {
+
+    /**
+     * name of uniform block in shaders
+     */
+    public static final String BLOCK_NAME = "Frame";
+
+    /**
+     * uniform buffer binding point of block
+     */
+    public static final int BINDING = 0;
+
+    private static final int MATRIX_BYTES = Matrix4f.SIZE * Float.BYTES;
+    private static final int VIEW_OFFSET = 0;
+    private static final int PROJECTION_OFFSET = VIEW_OFFSET + MATRIX_BYTES;
+    private static final int VIEW_PROJECTION_OFFSET = PROJECTION_OFFSET + MATRIX_BYTES;
+    private static final int CAMERA_OFFSET = VIEW_PROJECTION_OFFSET + MATRIX_BYTES;
+    private static final int TIME_OFFSET = CAMERA_OFFSET + 4 * Float.BYTES;
+    /**
+     * size of block, std140 rounds it up to multiple of vec4
+     */
+    public static final int SIZE = TIME_OFFSET + 4 * Float.BYTES;
+
+    private final int ubo;
+    private final ByteBuffer data = MemoryUtil.memCalloc(SIZE);
+    private final float[] matrix = new float[Matrix4f.SIZE];
+
+    public FrameUniforms() {
+        ubo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+        GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+    }
+
+    /**
+     * Uploads matrices of {@link Transform} and position of its camera and binds buffer
+     * @param time time in seconds
+     * @throws IllegalStateException if camera of {@link Transform} is not set
+     */
+    public void update(float time) {
+        Camera camera = Transform.getCamera();
+        if (camera == null) {
+            throw new IllegalStateException("Camera is not set");
+        }
+        Vector3f position = camera.getPosition();
+        update(Transform.getViewMatrix(), Transform.getProjectionMatrix(), Transform.getViewProjectionMatrix(),
+                position.getX(), position.getY(), position.getZ(), time);
+    }
+
+    /**
+     * Uploads frame data and binds buffer
+     * @param view view matrix
+     * @param projection projection matrix
+     * @param viewProjection projection * view
+     * @param cameraX x of camera position
+     * @param cameraY y of camera position
+     * @param cameraZ z of camera position
+     * @param time time in seconds
+     */
+    public void update(Matrix4f view, Matrix4f projection, Matrix4f viewProjection,
+                       float cameraX, float cameraY, float cameraZ, float time) {
+        putMatrix(VIEW_OFFSET, view);
+        putMatrix(PROJECTION_OFFSET, projection);
+        putMatrix(VIEW_PROJECTION_OFFSET, viewProjection);
+        data.putFloat(CAMERA_OFFSET, cameraX).putFloat(CAMERA_OFFSET + 4, cameraY)
+                .putFloat(CAMERA_OFFSET + 8, cameraZ).putFloat(CAMERA_OFFSET + 12, 1);
+        data.putFloat(TIME_OFFSET, time);
+
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+        // orphaning keeps draws of previous frame reading the old data
+        GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.nglBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, SIZE, MemoryUtil.memAddress(data));
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+        bind();
+    }
+
+    private void putMatrix(int offset, Matrix4f m) {
+        m.get(matrix, 0);
+        for (int i = 0; i < Matrix4f.SIZE; i++) {
+            data.putFloat(offset + i * Float.BYTES, matrix[i]);
+        }
+    }
+
+    /**
+     * Binds buffer to {@link #BINDING}
+     */
+    public void bind() {
+        GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, BINDING, ubo);
+    }
+
+    /**
+     * Deletes buffer and frees staging memory
+     */
+    public void destroy() {
+        GL15.glDeleteBuffers(ubo);
+        MemoryUtil.memFree(data);
+    }
+
+    public int getUBO() {
+        return ubo;
+    }
+}
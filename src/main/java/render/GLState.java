@@ -0,0 +1,108 @@
+package render;
+
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * GLState class GLState.java shadows GL bindings which are changed while drawing and skips calls
+ * which would bind the object that is already bound. Counters show how many calls were issued and skipped.
+ * Code which changes bindings without this class has to call {@link #invalidate()} afterwards
+ */
+public class GLState {
+
+    private static final int UNKNOWN = -1;
+
+    private int program = UNKNOWN;
+    private int vertexArray = UNKNOWN;
+    private int material = UNKNOWN;
+
+    private int issued;
+    private int skipped;
+
+    /**
+     * Binds shader program if it is not bound already
+     * @param programID program to use, 0 for none
+     * @return true if GL call was issued
+     */
+    public boolean useProgram(int programID) {
+        if (program == programID) {
+            skipped++;
+            return false;
+        }
+        GL20.glUseProgram(programID);
+        program = programID;
+        issued++;
+        return true;
+    }
+
+    /**
+     * Binds vertex array if it is not bound already
+     * @param vao vertex array to bind, 0 for none
+     * @return true if GL call was issued
+     */
+    public boolean bindVertexArray(int vao) {
+        if (vertexArray == vao) {
+            skipped++;
+            return false;
+        }
+        GL30.glBindVertexArray(vao);
+        vertexArray = vao;
+        issued++;
+        return true;
+    }
+
+    /**
+     * Records material change, material state itself is set by caller
+     * @param id material to use
+     * @return true if material differs from current one and has to be applied
+     */
+    public boolean changeMaterial(int id) {
+        if (material == id) {
+            skipped++;
+            return false;
+        }
+        material = id;
+        issued++;
+        return true;
+    }
+
+    /**
+     * Forgets shadowed bindings, next bind of every kind is issued
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        material = UNKNOWN;
+    }
+
+    /**
+     * Unbinds program and vertex array so code which does not use this class starts from clean state
+     */
+    public void reset() {
+        useProgram(0);
+        bindVertexArray(0);
+        material = UNKNOWN;
+    }
+
+    /**
+     * Sets counters to zero, usually called once per frame
+     */
+    public void resetCounters() {
+        issued = 0;
+        skipped = 0;
+    }
+
+    /**
+     * @return number of state changes issued since counters were reset
+     */
+    public int getIssuedCount() {
+        return issued;
+    }
+
+    /**
+     * @return number of state changes skipped as redundant since counters were reset
+     */
+    public int getSkippedCount() {
+        return skipped;
+    }
+}
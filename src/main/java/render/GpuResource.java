@@ -0,0 +1,17 @@
+package render;
+
+/**
+ * Interface of objects which own GL objects, so {@link ResourceManager} can account and delete them
+ */
+public interface GpuResource {
+
+    /**
+     * Deletes GL objects of resource, called on GL thread. Resource can not be used afterwards
+     */
+    void destroy();
+
+    /**
+     * @return GPU memory of resource in bytes as far as it is known, 0 if it is not
+     */
+    long getGpuBytes();
+}
@@ -0,0 +1,337 @@
+package render;
+
+import math.Matrix4f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * IndirectBatch class IndirectBatch.java draws many objects which reference ranges of a {@link StaticBatch}
+ * with culling done on GPU. Bounds, draw ranges and model matrices of objects are kept in shader storage buffers,
+ * compute shader (recources/cullCompute.glsl) tests every object against view frustum and writes
+ * DrawElementsIndirectCommand records, then the whole batch is drawn with one glMultiDrawElementsIndirect.
+ * Model matrix of object is read by vertex shader from mat4 at {@link InstanceBuffer#MATRIX_LOCATION},
+ * like in instanced drawing. Needs GL 4.3, see {@link #isSupported()}
+ */
+public class IndirectBatch implements GpuResource {
+
+    private static final int OBJECT_BYTES = 12 * Integer.BYTES;
+    private static final int MATRIX_BYTES = Matrix4f.SIZE * Float.BYTES;
+    private static final int COMMAND_BYTES = 5 * Integer.BYTES;
+    private static final int GROUP_SIZE = 64;
+
+    private final StaticBatch batch;
+    private final ComputeShader culling;
+    private final int planesLocation, countLocation;
+    private final int vao;
+    private final int objectBuffer, matrixBuffer, commandBuffer, counterBuffer;
+    private final int[] readbackBuffers = new int[StreamBuffer.REGIONS];
+    private final long[] readbackFences = new long[StreamBuffer.REGIONS];
+    private int readbackIndex;
+    private final float[] bounds = new float[6];
+    private final float[] planes = new float[24];
+    private final IntBuffer counter = MemoryUtil.memAllocInt(1);
+    private ByteBuffer objects;
+    private FloatBuffer matrices;
+    private int capacity;
+    private int count;
+    private boolean objectsChanged, matricesChanged;
+    private boolean culled;
+    private int visibleCount;
+
+    /**
+     * Returns true if current context has compute shaders, shader storage buffers and multi draw indirect
+     */
+    public static boolean isSupported() {
+        GLCapabilities capabilities = GL.getCapabilities();
+        return capabilities.OpenGL43;
+    }
+
+    /**
+     * Constructor of indirect batch
+     * @param batch built static batch which holds geometry of objects
+     * @param culling created culling compute shader, can be shared by batches
+     * @param capacity expected number of objects, batch grows if more are added
+     * @throws IllegalStateException if GL 4.3 is not available
+     */
+    public IndirectBatch(StaticBatch batch, ComputeShader culling, int capacity) {
+        if (!isSupported()) {
+            throw new IllegalStateException("IndirectBatch needs GL 4.3");
+        }
+        this.batch = batch;
+        this.culling = culling;
+        this.planesLocation = GL20.glGetUniformLocation(culling.getProgramID(), "planes");
+        this.countLocation = GL20.glGetUniformLocation(culling.getProgramID(), "objectCount");
+        this.capacity = Math.max(capacity, 1);
+        this.objects = MemoryUtil.memAlloc(this.capacity * OBJECT_BYTES);
+        this.matrices = MemoryUtil.memAllocFloat(this.capacity * Matrix4f.SIZE);
+
+        objectBuffer = GL15.glGenBuffers();
+        matrixBuffer = GL15.glGenBuffers();
+        commandBuffer = GL15.glGenBuffers();
+        counterBuffer = GL15.glGenBuffers();
+        allocateBuffers();
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, counterBuffer);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, Integer.BYTES, GL15.GL_DYNAMIC_COPY);
+        for (int i = 0; i < readbackBuffers.length; i++) {
+            readbackBuffers[i] = GL15.glGenBuffers();
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, readbackBuffers[i]);
+            GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, Integer.BYTES, GL15.GL_STREAM_READ);
+        }
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+
+        // own vertex array shares vertex and index buffers of static batch and adds per-object matrices
+        vao = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(vao);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, batch.getVBO());
+        batch.getFormat().enableAttributes(batch.getVertexCount());
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, batch.getIBO());
+        InstanceBuffer.enableMatrixAttributes(matrixBuffer);
+        GL30.glBindVertexArray(0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Adds object which draws range of static batch
+     * @param range index returned by {@link StaticBatch#add(Mesh)}
+     * @param model world matrix of object
+     * @return index of object
+     */
+    public int add(int range, Matrix4f model) {
+        batch.getBounds(range, bounds, 0);
+        if (count == capacity) {
+            grow(capacity * 2);
+        }
+        int offset = count * OBJECT_BYTES;
+        for (int i = 0; i < 3; i++) {
+            objects.putFloat(offset + i * 4, bounds[i]);
+            objects.putFloat(offset + 16 + i * 4, bounds[3 + i]);
+        }
+        objects.putFloat(offset + 12, 1).putFloat(offset + 28, 1);
+        objects.putInt(offset + 32, batch.getCount(range));
+        objects.putInt(offset + 36, batch.getFirstIndex(range));
+        objects.putInt(offset + 40, batch.getBaseVertex(range));
+        objects.putInt(offset + 44, 0);
+        count++;
+        objectsChanged = true;
+        setTransform(count - 1, model);
+        return count - 1;
+    }
+
+    /**
+     * Changes world matrix of object, matrices are uploaded on next {@link #cull(Matrix4f)}
+     * @param object index returned by {@link #add(int, Matrix4f)}
+     * @param model world matrix of object
+     */
+    public void setTransform(int object, Matrix4f model) {
+        if (object < 0 || object >= count) {
+            throw new IllegalArgumentException("Object " + object + " is not in batch");
+        }
+        model.get(object * Matrix4f.SIZE, matrices);
+        matricesChanged = true;
+    }
+
+    /**
+     * Removes all objects
+     */
+    public void clear() {
+        count = 0;
+        visibleCount = 0;
+        culled = false;
+    }
+
+    /**
+     * Uploads changed objects and runs culling compute shader. Visible count is copied to a readback buffer
+     * guarded by fence and read only when GPU has finished it, so {@link #getVisibleCount()} lags a few frames
+     * behind but reading it never waits for GPU
+     * @param viewProjection matrix whose frustum objects are tested against
+     */
+    public void cull(Matrix4f viewProjection) {
+        pollVisibleCount();
+        upload();
+        extractPlanes(viewProjection, planes);
+
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, counterBuffer);
+        counter.put(0, 0);
+        GL15.glBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, counter);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 0, objectBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 1, matrixBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 2, commandBuffer);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 3, counterBuffer);
+        culling.bind();
+        GL20.glUniform4fv(planesLocation, planes);
+        GL30.glUniform1ui(countLocation, count);
+        culling.dispatch((count + GROUP_SIZE - 1) / GROUP_SIZE);
+        culling.unbind();
+        GL42.glMemoryBarrier(GL42.GL_COMMAND_BARRIER_BIT | GL42.GL_BUFFER_UPDATE_BARRIER_BIT);
+
+        // when GPU is more than REGIONS frames behind the count of this frame is not read back
+        int slot = readbackIndex % readbackBuffers.length;
+        if (readbackFences[slot] == 0) {
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, counterBuffer);
+            GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, readbackBuffers[slot]);
+            GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0, Integer.BYTES);
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+            GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+            readbackFences[slot] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            readbackIndex++;
+        }
+        culled = true;
+    }
+
+    /**
+     * Reads visible counts whose fences are signaled, oldest first
+     */
+    private void pollVisibleCount() {
+        for (int i = 0; i < readbackBuffers.length; i++) {
+            int slot = (readbackIndex + i) % readbackBuffers.length;
+            long fence = readbackFences[slot];
+            if (fence == 0) {
+                continue;
+            }
+            int status = GL32.glClientWaitSync(fence, 0, 0);
+            if (status != GL32.GL_ALREADY_SIGNALED && status != GL32.GL_CONDITION_SATISFIED) {
+                return;
+            }
+            GL32.glDeleteSync(fence);
+            readbackFences[slot] = 0;
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, readbackBuffers[slot]);
+            GL15.glGetBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, counter);
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+            visibleCount = counter.get(0);
+        }
+    }
+
+    /**
+     * Draws objects left by last {@link #cull(Matrix4f)} with one call, shader has to be bound by caller
+     */
+    public void draw() {
+        if (!culled) {
+            throw new IllegalStateException("IndirectBatch has to be culled before drawing");
+        }
+        GL30.glBindVertexArray(vao);
+        GL15.glBindBuffer(GL43.GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+        GL43.glMultiDrawElementsIndirect(GL11.GL_TRIANGLES, batch.getIndexType(), 0, count, 0);
+        GL15.glBindBuffer(GL43.GL_DRAW_INDIRECT_BUFFER, 0);
+        GL30.glBindVertexArray(0);
+    }
+
+    /**
+     * Extracts frustum planes (a, b, c, d) from rows of view projection matrix,
+     * point p is inside plane if a * x + b * y + c * z + d is not negative
+     * @param m view projection matrix
+     * @param dest array of 24 floats, left, right, bottom, top, near and far planes
+     */
+    static void extractPlanes(Matrix4f m, float[] dest) {
+        for (int plane = 0; plane < 6; plane++) {
+            int row = plane / 2;
+            float sign = (plane & 1) == 0 ? 1 : -1;
+            for (int j = 0; j < 4; j++) {
+                dest[plane * 4 + j] = m.getCellValue(3, j) + sign * m.getCellValue(row, j);
+            }
+        }
+    }
+
+    private void upload() {
+        if (objectsChanged) {
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, objectBuffer);
+            GL15.nglBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, (long) count * OBJECT_BYTES, MemoryUtil.memAddress0(objects));
+            objectsChanged = false;
+        }
+        if (matricesChanged) {
+            // orphaning keeps draws of previous frame reading the old matrices
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, matrixBuffer);
+            GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) capacity * MATRIX_BYTES, GL15.GL_STREAM_DRAW);
+            GL15.nglBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, 0, (long) count * MATRIX_BYTES, MemoryUtil.memAddress0(matrices));
+            matricesChanged = false;
+        }
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    private void grow(int newCapacity) {
+        capacity = newCapacity;
+        objects = MemoryUtil.memRealloc(objects, capacity * OBJECT_BYTES);
+        matrices = MemoryUtil.memRealloc(matrices, capacity * Matrix4f.SIZE);
+        allocateBuffers();
+        objectsChanged = true;
+        matricesChanged = true;
+    }
+
+    private void allocateBuffers() {
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, objectBuffer);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) capacity * OBJECT_BYTES, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, matrixBuffer);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) capacity * MATRIX_BYTES, GL15.GL_STREAM_DRAW);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, commandBuffer);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, (long) capacity * COMMAND_BYTES, GL15.GL_DYNAMIC_COPY);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    /**
+     * Deletes buffers and vertex array and frees staging memory, static batch is not destroyed
+     */
+    @Override
+    public void destroy() {
+        GL30.glDeleteVertexArrays(vao);
+        GL15.glDeleteBuffers(objectBuffer);
+        GL15.glDeleteBuffers(matrixBuffer);
+        GL15.glDeleteBuffers(commandBuffer);
+        GL15.glDeleteBuffers(counterBuffer);
+        for (int i = 0; i < readbackBuffers.length; i++) {
+            if (readbackFences[i] != 0) {
+                GL32.glDeleteSync(readbackFences[i]);
+            }
+            GL15.glDeleteBuffers(readbackBuffers[i]);
+        }
+        MemoryUtil.memFree(objects);
+        MemoryUtil.memFree(matrices);
+        MemoryUtil.memFree(counter);
+    }
+
+    /**
+     * @return size of object, matrix, command, counter and readback buffers in bytes, static batch is not included
+     */
+    @Override
+    public long getGpuBytes() {
+        return (long) capacity * (OBJECT_BYTES + MATRIX_BYTES + COMMAND_BYTES) + (1L + readbackBuffers.length) * Integer.BYTES;
+    }
+
+    /**
+     * @return number of objects
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of objects which passed culling in the latest frame read back from GPU
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @return number of objects which were culled in the latest frame read back from GPU
+     */
+    public int getCulledCount() {
+        return Math.max(count - visibleCount, 0);
+    }
+
+    public StaticBatch getBatch() {
+        return batch;
+    }
+}
@@ -0,0 +1,169 @@
+package render;
+
+import math.Matrix4f;
+import math.TransformStore;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+
+/**
+ * InstanceBuffer class InstanceBuffer.java holds per-instance model matrices for instanced drawing.
+ * Matrices are column-major mat4 read by shader at locations {@link #MATRIX_LOCATION} - {@link #MATRIX_LOCATION} + 3
+ * with attribute divisor 1. Buffer is filled from packed data such as {@link TransformStore},
+ * the previous contents are orphaned on every update so GL does not wait for draws which still read them
+ */
+public class InstanceBuffer implements GpuResource {
+
+    /**
+     * first attribute location of model matrix, mat4 takes four locations
+     */
+    public static final int MATRIX_LOCATION = VertexFormat.Attribute.values().length;
+
+    /**
+     * name of mat4 uniform of instanced shaders which maps positions read from vertex buffer to local space of mesh,
+     * see {@link Mesh#getDequantization(Matrix4f)}
+     */
+    public static final String DEQUANTIZATION_UNIFORM = "dequantization";
+
+    private static final int MATRIX_BYTES = Matrix4f.SIZE * Float.BYTES;
+
+    private final int vbo;
+    private FloatBuffer staging;
+    private int capacity;
+    private int count;
+
+    /**
+     * Constructor of instance buffer
+     * @param capacity expected number of instances, buffer grows if more are uploaded
+     */
+    public InstanceBuffer(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.staging = MemoryUtil.memAllocFloat(this.capacity * Matrix4f.SIZE);
+        this.vbo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) this.capacity * MATRIX_BYTES, GL15.GL_STREAM_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Computes world matrices of all entities of store straight into staging memory and uploads them
+     * @param store packed transforms
+     */
+    public void update(TransformStore store) {
+        ensureCapacity(store.size());
+        store.computeWorldMatrices(staging);
+        upload(store.size());
+    }
+
+    /**
+     * Uploads column-major matrices from array
+     * @param matrices array with count * 16 floats
+     * @param count number of instances
+     */
+    public void update(float[] matrices, int count) {
+        ensureCapacity(count);
+        staging.put(0, matrices, 0, count * Matrix4f.SIZE);
+        upload(count);
+    }
+
+    /**
+     * Uploads column-major matrices from buffer starting at its position
+     * @param matrices buffer with count * 16 floats
+     * @param count number of instances
+     */
+    public void update(FloatBuffer matrices, int count) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        orphan(count);
+        GL15.nglBufferSubData(GL15.GL_ARRAY_BUFFER, 0, (long) count * MATRIX_BYTES, MemoryUtil.memAddress(matrices));
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        this.count = count;
+    }
+
+    private void upload(int count) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        orphan(count);
+        GL15.nglBufferSubData(GL15.GL_ARRAY_BUFFER, 0, (long) count * MATRIX_BYTES, MemoryUtil.memAddress0(staging));
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        this.count = count;
+    }
+
+    /**
+     * Re-specifies storage of bound buffer, growing it if needed
+     */
+    private void orphan(int count) {
+        if (count > capacity) {
+            capacity = Math.max(count, capacity * 2);
+        }
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) capacity * MATRIX_BYTES, GL15.GL_STREAM_DRAW);
+    }
+
+    private void ensureCapacity(int count) {
+        if (staging.capacity() < count * Matrix4f.SIZE) {
+            staging = MemoryUtil.memRealloc(staging, Math.max(count, capacity * 2) * Matrix4f.SIZE);
+        }
+    }
+
+    /**
+     * Sets matrix attributes with divisor 1 in bound vertex array
+     */
+    public void enableAttributes() {
+        enableMatrixAttributes(vbo);
+    }
+
+    /**
+     * Sets matrix attributes with divisor 1 read from buffer in bound vertex array
+     * @param buffer buffer of column-major matrices
+     */
+    static void enableMatrixAttributes(int buffer) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, buffer);
+        for (int column = 0; column < 4; column++) {
+            int location = MATRIX_LOCATION + column;
+            GL20.glVertexAttribPointer(location, 4, GL11.GL_FLOAT, false, MATRIX_BYTES, (long) column * 4 * Float.BYTES);
+            GL33.glVertexAttribDivisor(location, 1);
+            GL20.glEnableVertexAttribArray(location);
+        }
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Disables matrix attributes in bound vertex array so it can be drawn without instances again
+     */
+    public void disableAttributes() {
+        for (int column = 0; column < 4; column++) {
+            GL33.glVertexAttribDivisor(MATRIX_LOCATION + column, 0);
+            GL20.glDisableVertexAttribArray(MATRIX_LOCATION + column);
+        }
+    }
+
+    /**
+     * Deletes buffer and frees staging memory
+     */
+    @Override
+    public void destroy() {
+        GL15.glDeleteBuffers(vbo);
+        MemoryUtil.memFree(staging);
+    }
+
+    /**
+     * @return size of buffer in bytes
+     */
+    @Override
+    public long getGpuBytes() {
+        return (long) capacity * MATRIX_BYTES;
+    }
+
+    /**
+     * @return number of instances uploaded by last update
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getVBO() {
+        return vbo;
+    }
+}
@@ -0,0 +1,149 @@
+package render;
+
+import core.Camera;
+import math.Matrix4f;
+import math.Transform;
+import math.Vector3f;
+
+/**
+ * LodSelector class LodSelector.java picks level of detail of mesh from its projected size. Screen size is diameter
+ * of bounding sphere divided by height of view frustum at its distance, computed from {@link Transform#getCamera()}
+ * and {@link Transform#getFieldOfView()}; 1 means the sphere fills screen height.
+ * To avoid popping when an object stays near a switch distance, LOD only changes once screen size is past the
+ * threshold by hysteresis fraction, so the caller keeps current LOD of every object and passes it back.
+ * Uses scratch objects, so one selector is used by one thread
+ */
+public class LodSelector {
+
+    private float hysteresis = 0.1f;
+    private float bias = 1;
+    private int switches;
+    private final Matrix4f world = new Matrix4f();
+
+    /**
+     * Computes screen size of sphere
+     * @param x x of center in world space
+     * @param y y of center in world space
+     * @param z z of center in world space
+     * @param radius radius in world space
+     * @return screen size of sphere, infinite if camera is inside it
+     * @throws IllegalStateException if camera of {@link Transform} is not set
+     */
+    public float getScreenSize(float x, float y, float z, float radius) {
+        Camera camera = Transform.getCamera();
+        if (camera == null) {
+            throw new IllegalStateException("Camera is not set");
+        }
+        Vector3f eye = camera.getPosition();
+        float dx = x - eye.getX(), dy = y - eye.getY(), dz = z - eye.getZ();
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance <= radius) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float tanHalfFov = (float) Math.tan(Math.toRadians(Transform.getFieldOfView() / 2));
+        return radius / (distance * tanHalfFov);
+    }
+
+    /**
+     * Computes screen size of bounding sphere of mesh placed by transform
+     * @param mesh mesh with bounds
+     * @param transform transform of mesh
+     * @return screen size of mesh
+     */
+    public float getScreenSize(Mesh mesh, Transform transform) {
+        Vector3f min = mesh.getBoundsMin(), max = mesh.getBoundsMax();
+        float cx = (min.getX() + max.getX()) * 0.5f, cy = (min.getY() + max.getY()) * 0.5f, cz = (min.getZ() + max.getZ()) * 0.5f;
+        float ex = max.getX() - cx, ey = max.getY() - cy, ez = max.getZ() - cz;
+        Vector3f scale = transform.getScale();
+        float maxScale = Math.max(Math.abs(scale.getX()), Math.max(Math.abs(scale.getY()), Math.abs(scale.getZ())));
+        float radius = (float) Math.sqrt(ex * ex + ey * ey + ez * ez) * maxScale;
+        Matrix4f m = transform.getTransformation(world);
+        float x = m.getCellValue(0, 0) * cx + m.getCellValue(0, 1) * cy + m.getCellValue(0, 2) * cz + m.getCellValue(0, 3);
+        float y = m.getCellValue(1, 0) * cx + m.getCellValue(1, 1) * cy + m.getCellValue(1, 2) * cz + m.getCellValue(1, 3);
+        float z = m.getCellValue(2, 0) * cx + m.getCellValue(2, 1) * cy + m.getCellValue(2, 2) * cz + m.getCellValue(2, 3);
+        return getScreenSize(x, y, z, radius);
+    }
+
+    /**
+     * Selects LOD for screen size with hysteresis
+     * @param mesh mesh with LODs
+     * @param current LOD drawn in the previous frame, or -1 if there is none
+     * @param screenSize screen size from {@link #getScreenSize(Mesh, Transform)}
+     * @return LOD to draw
+     */
+    public int select(Mesh mesh, int current, float screenSize) {
+        int last = mesh.getLodCount() - 1;
+        float size = screenSize * bias;
+        int target = 0;
+        while (target < last && size < mesh.getLodScreenSize(target)) {
+            target++;
+        }
+        if (current < 0 || current > last || target == current) {
+            return target;
+        }
+        int selected = current;
+        if (target > current) {
+            // coarser only once the mesh is clearly smaller than the threshold of current LOD
+            while (selected < last && size < mesh.getLodScreenSize(selected) * (1 - hysteresis)) {
+                selected++;
+            }
+        } else {
+            // finer only once the mesh is clearly larger than the threshold of the finer LOD
+            while (selected > 0 && size >= mesh.getLodScreenSize(selected - 1) * (1 + hysteresis)) {
+                selected--;
+            }
+        }
+        if (selected != current) {
+            switches++;
+        }
+        return selected;
+    }
+
+    /**
+     * Selects LOD of mesh placed by transform with hysteresis
+     * @param mesh mesh with LODs and bounds
+     * @param current LOD drawn in the previous frame, or -1 if there is none
+     * @param transform transform of mesh
+     * @return LOD to draw
+     */
+    public int select(Mesh mesh, int current, Transform transform) {
+        if (mesh.getLodCount() == 1) {
+            return 0;
+        }
+        return select(mesh, current, getScreenSize(mesh, transform));
+    }
+
+    /**
+     * sets fraction screen size has to pass a threshold by before LOD changes, 0 disables hysteresis
+     * @param hysteresis fraction in [0, 1)
+     */
+    public void setHysteresis(float hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 1) {
+            throw new IllegalArgumentException("Hysteresis must be in [0, 1)");
+        }
+        this.hysteresis = hysteresis;
+    }
+
+    public float getHysteresis() {
+        return hysteresis;
+    }
+
+    /**
+     * sets multiplier of screen size, larger values select more detailed LODs
+     * @param bias positive multiplier, 1 by default
+     */
+    public void setBias(float bias) {
+        this.bias = bias;
+    }
+
+    public float getBias() {
+        return bias;
+    }
+
+    /**
+     * @return number of times {@link #select(Mesh, int, float)} changed LOD of an object
+     */
+    public int getSwitchCount() {
+        return switches;
+    }
+}
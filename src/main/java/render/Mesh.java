@@ -1,33 +1,38 @@
 package render;
 
 import math.Matrix4f;
+import math.Vector3f;
 import org.lwjgl.BufferUtils;
-import org.lwjgl.opengl.GL15;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
-import org.lwjgl.system.MemoryUtil;
 import static org.lwjgl.opengl.GL20.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL20.GL_ELEMENT_ARRAY_BUFFER;
-import static org.lwjgl.opengl.GL20.GL_FLOAT;
 import static org.lwjgl.opengl.GL20.GL_STATIC_DRAW;
 import static org.lwjgl.opengl.GL20.GL_TRIANGLES;
 import static org.lwjgl.opengl.GL20.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL20.glBindBuffer;
 import static org.lwjgl.opengl.GL20.glBufferData;
-import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glDrawElements;
-import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL20.glGenBuffers;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
 /**
  * Mesh class Mesh.java to 3D geometric surface
  */
-public class Mesh {
+public class Mesh implements GpuResource {
     private Vertex[] vertices;
     private  int[] indices;
+    private final VertexFormat format;
     private int vao, pbo, ibo;
+    private int vertexCount;
+    private int indexType = GL_UNSIGNED_INT;
+    private long gpuBytes;
+    private final Vector3f boundsMin = new Vector3f(0, 0, 0);
+    private final Vector3f boundsMax = new Vector3f(0, 0, 0);
+    private int[] lodFirstIndices;
+    private int[] lodIndexCounts;
+    private float[] lodScreenSizes;
 
     //    private final int vbo; // vertex buffer object
 //    private final int ibo; // index buffer object
@@ -39,34 +44,181 @@ public class Mesh {
     public Mesh(Vertex[] vertices, int[] indices) {
         this.vertices = vertices;
         this.indices = indices;
+        this.format = VertexFormat.POSITION;
     }
 
+    /**
+     * Constructor of mesh which receives its buffers from {@link MeshBuilder}
+     */
+    Mesh(VertexFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Uploads vertices and indices given to constructor, staging memory is freed after upload
+     */
     public void create() {
-        vao = GL30.glGenVertexArrays();
+        MeshBuilder builder = new MeshBuilder(format, vertices.length, indices.length);
+        for (Vertex vertex : vertices) {
+            builder.position(vertex.getPos()).endVertex();
+        }
+        builder.indices(indices).upload(this);
+    }
+
+    /**
+     * Creates mesh from vertex and index data which is already laid out for GL, e.g. slices of a mapped file.
+     * Buffers are passed to glBufferData as they are, so direct buffers are not copied on the Java side
+     * @param format layout of vertex data
+     * @param vertexCount number of vertices
+     * @param vertexData vertices from position to limit, laid out as {@link VertexFormat#getOffset(int, int)} says
+     * @param indexData unsigned int indices from position to limit
+     * @param indexCount number of indices drawn by {@link #getSize()}, may be less than indices in indexData
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions or null
+     * @return created mesh
+     */
+    public static Mesh create(VertexFormat format, int vertexCount, ByteBuffer vertexData,
+                              ByteBuffer indexData, int indexCount, float[] bounds) {
+        return create(format, vertexCount, vertexData, GL_UNSIGNED_INT, indexData, indexCount, bounds);
+    }
+
+    /**
+     * Creates mesh from vertex and index data which is already laid out for GL, e.g. slices of a mapped file.
+     * Buffers are passed to glBufferData as they are, so direct buffers are not copied on the Java side
+     * @param format layout of vertex data
+     * @param vertexCount number of vertices
+     * @param vertexData vertices from position to limit, laid out as {@link VertexFormat#getOffset(int, int)} says
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+     * @param indexData indices of index type from position to limit
+     * @param indexCount number of indices drawn by {@link #getSize()}, may be less than indices in indexData
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions or null
+     * @return created mesh
+     */
+    public static Mesh create(VertexFormat format, int vertexCount, ByteBuffer vertexData, int indexType,
+                              ByteBuffer indexData, int indexCount, float[] bounds) {
+        Mesh mesh = new Mesh(format);
+        mesh.indexType = indexType;
+        int vao = GL30.glGenVertexArrays();
         GL30.glBindVertexArray(vao);
+        int vbo = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
+        format.enableAttributes(vertexCount);
+        int ibo = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        GL30.glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        mesh.setBuffers(vao, vbo, ibo, vertexCount, indexCount);
+        mesh.gpuBytes = vertexData.remaining() + (long) indexData.remaining();
+        if (bounds != null) {
+            mesh.setBounds(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+        }
+        return mesh;
+    }
 
-        FloatBuffer positionBuffer = MemoryUtil.memAllocFloat(vertices.length * 3);
-        float[] positionData = new float[vertices.length * 3];
-        for (int i = 0; i < vertices.length; i++){
-            positionData[i * 3] = vertices[i].getPos().getX();
-            positionData[i * 3 + 1] = vertices[i].getPos().getY();
-            positionData[i * 3 + 2] = vertices[i].getPos().getZ();
+    /**
+     * Sets type of indices uploaded by {@link MeshBuilder}
+     */
+    void setIndexType(int indexType) {
+        this.indexType = indexType;
+    }
+
+    /**
+     * Sets size of buffers uploaded by {@link MeshBuilder}
+     */
+    void setGpuBytes(long gpuBytes) {
+        this.gpuBytes = gpuBytes;
+    }
+
+    /**
+     * Deletes vertex array, vertex buffer and index buffer, mesh can not be drawn afterwards
+     */
+    @Override
+    public void destroy() {
+        if (vao == 0) {
+            return;
         }
-        positionBuffer.put(positionData).flip();
+        GL30.glDeleteVertexArrays(vao);
+        GL30.glDeleteBuffers(pbo);
+        GL30.glDeleteBuffers(ibo);
+        vao = pbo = ibo = 0;
+        gpuBytes = 0;
+    }
+
+    /**
+     * @return size of vertex and index buffers in bytes, all LODs included
+     */
+    @Override
+    public long getGpuBytes() {
+        return gpuBytes;
+    }
+
+    /**
+     * Sets GL objects created by {@link MeshBuilder}
+     */
+    void setBuffers(int vao, int pbo, int ibo, int vertexCount, int indexCount) {
+        this.vao = vao;
+        this.pbo = pbo;
+        this.ibo = ibo;
+        this.vertexCount = vertexCount;
+        this.size = indexCount;
+    }
+
+    /**
+     * Sets local bounding box of positions written by {@link MeshBuilder}
+     */
+    void setBounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        boundsMin.setX(minX);
+        boundsMin.setY(minY);
+        boundsMin.setZ(minZ);
+        boundsMax.setX(maxX);
+        boundsMax.setY(maxY);
+        boundsMax.setZ(maxZ);
+    }
 
-        pbo = GL15.glGenBuffers();
-        GL15.glBindBuffer(GL_ARRAY_BUFFER, pbo);
-        GL15.glBufferData(GL_ARRAY_BUFFER, positionBuffer, GL15.GL_STATIC_DRAW);
-        GL20.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-        GL15.glBindBuffer(GL_ARRAY_BUFFER, 0);
+    /**
+     * Sets levels of detail, ranges of the index buffer which draw the same vertices with fewer triangles
+     * @param firstIndices first index of every LOD from the most detailed
+     * @param indexCounts index count of every LOD
+     * @param screenSizes screen size of every LOD, LOD is drawn when mesh covers at least its screen size,
+     *                    see {@link LodSelector}
+     */
+    public void setLods(int[] firstIndices, int[] indexCounts, float[] screenSizes) {
+        if (firstIndices.length == 0 || firstIndices.length != indexCounts.length || firstIndices.length != screenSizes.length) {
+            throw new IllegalArgumentException("LOD arrays must have the same, non-zero length");
+        }
+        this.lodFirstIndices = firstIndices.clone();
+        this.lodIndexCounts = indexCounts.clone();
+        this.lodScreenSizes = screenSizes.clone();
+    }
 
-        IntBuffer indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-        indicesBuffer.put(indices).flip();
+    /**
+     * @return number of levels of detail, 1 if no LODs were set
+     */
+    public int getLodCount() {
+        return lodFirstIndices != null ? lodFirstIndices.length : 1;
+    }
 
-        ibo = GL15.glGenBuffers();
-        GL15.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
-        GL15.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-        GL15.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    /**
+     * @return first index of LOD in index buffer
+     */
+    public int getLodFirstIndex(int lod) {
+        return lodFirstIndices != null ? lodFirstIndices[lod] : 0;
+    }
+
+    /**
+     * @return number of indices of LOD
+     */
+    public int getLodIndexCount(int lod) {
+        return lodIndexCounts != null ? lodIndexCounts[lod] : size;
+    }
+
+    /**
+     * @return smallest screen size at which LOD is drawn
+     */
+    public float getLodScreenSize(int lod) {
+        return lodScreenSizes != null ? lodScreenSizes[lod] : 0;
     }
 
     /**
@@ -95,18 +247,12 @@ public class Mesh {
     }
 
     /**
-     * This method uses gl to draw mesh
+     * This method uses gl to draw mesh, its vertex array holds enabled attributes and index buffer
      */
     public void draw() {
-        glEnableVertexAttribArray(0);
-
-        glBindBuffer(GL_ARRAY_BUFFER, vao);
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, Vertex.SIZE * 4, 0);
-
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
-        glDrawElements(GL_TRIANGLES, this.size, GL_UNSIGNED_INT, 0);
-
-        glDisableVertexAttribArray(0);
+        GL30.glBindVertexArray(vao);
+        glDrawElements(GL_TRIANGLES, this.size, indexType, 0);
+        GL30.glBindVertexArray(0);
     }
 
     /**
@@ -158,14 +304,102 @@ public class Mesh {
     }
 
 
+    /**
+     * @return vertices given to constructor, null for meshes created by {@link MeshBuilder}
+     */
     public Vertex[] getVertices(){
         return  vertices;
     }
 
+    /**
+     * @return indices given to constructor, null for meshes created by {@link MeshBuilder}
+     */
     public int[] getIndices(){
         return indices;
     }
 
+    /**
+     * @return layout of vertices in vertex buffer
+     */
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return number of vertices in vertex buffer
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return GL type of indices in index buffer, GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @return size of one index in bytes
+     */
+    public int getIndexSize() {
+        return MeshOptimizer.indexSize(indexType);
+    }
+
+    /**
+     * @return true if positions are quantized relative to bounding box and have to be drawn with
+     * {@link #getModelMatrix(Matrix4f, Matrix4f)} or {@link #getDequantization(Matrix4f)}
+     */
+    public boolean hasQuantizedPositions() {
+        return VertexQuantizer.hasBoundsRelativePositions(format);
+    }
+
+    /**
+     * Matrix which maps positions GL reads from vertex buffer to local space of mesh. Positions quantized relative to
+     * bounding box are in [0, 1] and are scaled and moved onto the bounding box, other positions are not changed
+     * @param dest matrix to store result into
+     * @return dest matrix
+     */
+    public Matrix4f getDequantization(Matrix4f dest) {
+        if (!VertexQuantizer.hasBoundsRelativePositions(format)) {
+            return dest.setIdentity();
+        }
+        return dest.set(boundsMax.getX() - boundsMin.getX(), 0, 0, boundsMin.getX(),
+                0, boundsMax.getY() - boundsMin.getY(), 0, boundsMin.getY(),
+                0, 0, boundsMax.getZ() - boundsMin.getZ(), boundsMin.getZ(),
+                0, 0, 0, 1);
+    }
+
+    /**
+     * Folds dequantization of positions into model matrix, so quantized meshes cost nothing extra in vertex shader.
+     * The result is meant for positions only, normals are transformed by model matrix itself
+     * @param model world matrix of mesh, e.g. from {@link math.Transform#getTransformation(Matrix4f)}
+     * @param dest matrix to store model * dequantization into, may be the same object as model
+     * @return dest matrix
+     */
+    public Matrix4f getModelMatrix(Matrix4f model, Matrix4f dest) {
+        if (!VertexQuantizer.hasBoundsRelativePositions(format)) {
+            return dest.set(model);
+        }
+        return dest.set(model).translate(boundsMin.getX(), boundsMin.getY(), boundsMin.getZ())
+                .scale(boundsMax.getX() - boundsMin.getX(), boundsMax.getY() - boundsMin.getY(),
+                        boundsMax.getZ() - boundsMin.getZ());
+    }
+
+    /**
+     * @return minimum corner of local bounding box of positions, should not be modified
+     */
+    public Vector3f getBoundsMin() {
+        return boundsMin;
+    }
+
+    /**
+     * @return maximum corner of local bounding box of positions, should not be modified
+     */
+    public Vector3f getBoundsMax() {
+        return boundsMax;
+    }
+
     /**
      * Getter for vertex buffer object
      * @return vertex buffer object
@@ -189,7 +423,7 @@ public class Mesh {
 
     /**
      * Getter for mesh size
-     * @return size of mesh
+     * @return number of indices to draw
      */
     public int getSize() {
         return size;
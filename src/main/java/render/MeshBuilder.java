@@ -0,0 +1,374 @@
+package render;
+
+import math.Vector3f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * MeshBuilder class MeshBuilder.java writes vertices and indices straight into off-heap staging memory
+ * laid out by {@link VertexFormat}, uploads it to GL once and frees the staging memory.
+ * Usage: builder.position(x, y, z).uv(u, v).endVertex(); ... builder.triangle(0, 1, 2); Mesh mesh = builder.build();
+ * Attributes which are not written for a vertex are zero. Attributes are encoded by {@link VertexQuantizer};
+ * positions quantized relative to bounding box are kept as floats until the bounding box is known on upload
+ */
+public class MeshBuilder {
+
+    private final VertexFormat format;
+    /**
+     * layout of staging memory, format with float positions if positions of format are quantized
+     */
+    private final VertexFormat staging;
+    private final int[] elementIndex = new int[VertexFormat.Attribute.values().length];
+    /**
+     * one stream for interleaved format, one stream per element otherwise
+     */
+    private final ByteBuffer[] streams;
+    private IntBuffer indices;
+    private int vertexCapacity;
+    private int vertexCount;
+    private float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+    private float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor of mesh builder
+     * @param format layout of vertices
+     * @param vertexCapacity expected number of vertices, builder grows if more are written
+     * @param indexCapacity expected number of indices, builder grows if more are written
+     */
+    public MeshBuilder(VertexFormat format, int vertexCapacity, int indexCapacity) {
+        this.format = format;
+        this.staging = VertexQuantizer.withFloatPositions(format);
+        this.vertexCapacity = Math.max(vertexCapacity, 1);
+        for (VertexFormat.Attribute attribute : VertexFormat.Attribute.values()) {
+            elementIndex[attribute.ordinal()] = staging.indexOf(attribute);
+        }
+        this.streams = new ByteBuffer[format.isInterleaved() ? 1 : format.getElementCount()];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = MemoryUtil.memCalloc(this.vertexCapacity * streamStride(i));
+        }
+        this.indices = MemoryUtil.memAllocInt(Math.max(indexCapacity, 3));
+    }
+
+    /**
+     * Writes position of current vertex
+     * @return this object
+     */
+    public MeshBuilder position(float x, float y, float z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+        return put(VertexFormat.Attribute.POSITION, x, y, z, 0);
+    }
+
+    /**
+     * Writes position of current vertex
+     * @return this object
+     */
+    public MeshBuilder position(Vector3f position) {
+        return position(position.getX(), position.getY(), position.getZ());
+    }
+
+    /**
+     * Writes normal of current vertex
+     * @return this object
+     */
+    public MeshBuilder normal(float x, float y, float z) {
+        return put(VertexFormat.Attribute.NORMAL, x, y, z, 0);
+    }
+
+    /**
+     * Writes texture coordinates of current vertex
+     * @return this object
+     */
+    public MeshBuilder uv(float u, float v) {
+        return put(VertexFormat.Attribute.UV, u, v, 0, 0);
+    }
+
+    /**
+     * Writes color of current vertex, components are in [0, 1]
+     * @return this object
+     */
+    public MeshBuilder color(float r, float g, float b, float a) {
+        return put(VertexFormat.Attribute.COLOR, r, g, b, a);
+    }
+
+    /**
+     * Finishes current vertex, following attribute calls write the next one
+     * @return this object
+     */
+    public MeshBuilder endVertex() {
+        checkOpen();
+        vertexCount++;
+        if (vertexCount == vertexCapacity) {
+            growVertices(vertexCapacity * 2);
+        }
+        return this;
+    }
+
+    /**
+     * Adds one index
+     * @return this object
+     */
+    public MeshBuilder index(int index) {
+        checkOpen();
+        if (!indices.hasRemaining()) {
+            indices = MemoryUtil.memRealloc(indices, indices.capacity() * 2);
+        }
+        indices.put(index);
+        return this;
+    }
+
+    /**
+     * Adds indices of triangle
+     * @return this object
+     */
+    public MeshBuilder triangle(int a, int b, int c) {
+        return index(a).index(b).index(c);
+    }
+
+    /**
+     * Adds all indices from array
+     * @return this object
+     */
+    public MeshBuilder indices(int[] values) {
+        checkOpen();
+        if (indices.remaining() < values.length) {
+            indices = MemoryUtil.memRealloc(indices, Math.max(indices.capacity() * 2, indices.position() + values.length));
+        }
+        indices.put(values);
+        return this;
+    }
+
+    /**
+     * Reorders triangles for post-transform vertex cache and vertices for fetch locality, see {@link MeshOptimizer}.
+     * Vertices which no triangle uses are dropped, so vertex numbers change; called after all vertices and indices are added
+     * @return this object
+     */
+    public MeshBuilder optimize() {
+        checkOpen();
+        int[] list = new int[indices.position()];
+        indices.get(0, list);
+        list = MeshOptimizer.optimizeVertexCache(list, vertexCount, MeshOptimizer.CACHE_SIZE);
+        int[] remap = new int[vertexCount];
+        int used = MeshOptimizer.optimizeVertexFetch(list, vertexCount, remap);
+        for (int i = 0; i < streams.length; i++) {
+            ByteBuffer reordered = MemoryUtil.memCalloc(vertexCapacity * streamStride(i));
+            MeshOptimizer.remapVertices(streams[i], reordered, streamStride(i), vertexCount, remap);
+            MemoryUtil.memFree(streams[i]);
+            streams[i] = reordered;
+        }
+        vertexCount = used;
+        indices.put(0, list);
+        return this;
+    }
+
+    /**
+     * Uploads vertices and indices to new mesh and frees staging memory, builder can not be used afterwards
+     * @return created mesh
+     */
+    public Mesh build() {
+        Mesh mesh = new Mesh(format);
+        upload(mesh);
+        return mesh;
+    }
+
+    /**
+     * Uploads vertices and indices to GL buffers of mesh and frees staging memory
+     * @param mesh mesh which receives the buffers
+     */
+    void upload(Mesh mesh) {
+        checkOpen();
+        int indexCount = indices.position();
+
+        int vao = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(vao);
+
+        int vbo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        if (staging != format) {
+            ByteBuffer encoded = MemoryUtil.memAlloc(Math.max(vertexCount * format.getVertexSize(), 1));
+            copyVertexData(encoded);
+            GL15.nglBufferData(GL15.GL_ARRAY_BUFFER, (long) vertexCount * format.getVertexSize(),
+                    MemoryUtil.memAddress(encoded), GL15.GL_STATIC_DRAW);
+            MemoryUtil.memFree(encoded);
+        } else if (streams.length == 1) {
+            GL15.nglBufferData(GL15.GL_ARRAY_BUFFER, (long) vertexCount * format.getVertexSize(),
+                    MemoryUtil.memAddress(streams[0]), GL15.GL_STATIC_DRAW);
+        } else {
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) vertexCount * format.getVertexSize(), GL15.GL_STATIC_DRAW);
+            for (int i = 0; i < streams.length; i++) {
+                GL15.nglBufferSubData(GL15.GL_ARRAY_BUFFER, format.getOffset(i, vertexCount),
+                        (long) vertexCount * streamStride(i), MemoryUtil.memAddress(streams[i]));
+            }
+        }
+        format.enableAttributes(vertexCount);
+
+        int ibo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        int indexType = MeshOptimizer.indexType(vertexCount);
+        if (indexType == GL11.GL_UNSIGNED_SHORT) {
+            // indices fit 16 bits, so index buffer takes half the memory and bandwidth
+            ShortBuffer shorts = MemoryUtil.memAllocShort(Math.max(indexCount, 1));
+            for (int i = 0; i < indexCount; i++) {
+                shorts.put(i, (short) indices.get(i));
+            }
+            GL15.nglBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, (long) indexCount * Short.BYTES,
+                    MemoryUtil.memAddress0(shorts), GL15.GL_STATIC_DRAW);
+            MemoryUtil.memFree(shorts);
+        } else {
+            GL15.nglBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, (long) indexCount * Integer.BYTES,
+                    MemoryUtil.memAddress0(indices), GL15.GL_STATIC_DRAW);
+        }
+
+        // element array binding is part of vertex array state, so vertex array is unbound first
+        GL30.glBindVertexArray(0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        mesh.setBuffers(vao, vbo, ibo, vertexCount, indexCount);
+        mesh.setIndexType(indexType);
+        mesh.setGpuBytes((long) vertexCount * format.getVertexSize() + (long) indexCount * MeshOptimizer.indexSize(indexType));
+        if (minX <= maxX) {
+            mesh.setBounds(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+        free();
+    }
+
+    /**
+     * Frees staging memory without uploading, builder can not be used afterwards
+     */
+    public void free() {
+        if (indices == null) {
+            return;
+        }
+        for (int i = 0; i < streams.length; i++) {
+            MemoryUtil.memFree(streams[i]);
+            streams[i] = null;
+        }
+        MemoryUtil.memFree(indices);
+        indices = null;
+    }
+
+    /**
+     * @return number of finished vertices
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return number of added indices
+     */
+    public int getIndexCount() {
+        return indices == null ? 0 : indices.position();
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Copies finished vertices laid out as in vertex buffer, see {@link VertexFormat#getOffset(int, int)}.
+     * Quantized positions are encoded relative to bounding box of all finished vertices
+     * @param dest buffer with at least vertex count * vertex size bytes remaining, its position is not changed
+     */
+    public void copyVertexData(ByteBuffer dest) {
+        checkOpen();
+        if (staging != format) {
+            ByteBuffer floats = MemoryUtil.memAlloc(Math.max(vertexCount * staging.getVertexSize(), 1));
+            try {
+                copyStreams(floats);
+                VertexQuantizer.convert(staging, floats, format, dest, vertexCount, getBounds(new float[6]));
+            } finally {
+                MemoryUtil.memFree(floats);
+            }
+            return;
+        }
+        copyStreams(dest);
+    }
+
+    /**
+     * Copies staging streams laid out as in vertex buffer of staging format
+     */
+    private void copyStreams(ByteBuffer dest) {
+        for (int i = 0; i < streams.length; i++) {
+            long offset = streams.length == 1 ? 0 : staging.getOffset(i, vertexCount);
+            MemoryUtil.memCopy(MemoryUtil.memAddress0(streams[i]), MemoryUtil.memAddress(dest) + offset,
+                    (long) vertexCount * streamStride(i));
+        }
+    }
+
+    /**
+     * Copies added indices
+     * @param dest buffer with at least index count ints remaining, its position is not changed
+     */
+    public void copyIndexData(IntBuffer dest) {
+        checkOpen();
+        MemoryUtil.memCopy(MemoryUtil.memAddress0(indices), MemoryUtil.memAddress(dest), (long) indices.position() * Integer.BYTES);
+    }
+
+    /**
+     * Bounding box of written positions
+     * @param dest array to store minX, minY, minZ, maxX, maxY, maxZ, zeros if no position was written
+     * @return dest array
+     */
+    public float[] getBounds(float[] dest) {
+        boolean empty = minX > maxX;
+        dest[0] = empty ? 0 : minX;
+        dest[1] = empty ? 0 : minY;
+        dest[2] = empty ? 0 : minZ;
+        dest[3] = empty ? 0 : maxX;
+        dest[4] = empty ? 0 : maxY;
+        dest[5] = empty ? 0 : maxZ;
+        return dest;
+    }
+
+    private MeshBuilder put(VertexFormat.Attribute attribute, float x, float y, float z, float w) {
+        checkOpen();
+        int element = elementIndex[attribute.ordinal()];
+        if (element < 0) {
+            return this;
+        }
+        VertexFormat.Element e = staging.getElement(element);
+        ByteBuffer stream;
+        int offset;
+        if (streams.length == 1) {
+            stream = streams[0];
+            offset = vertexCount * staging.getVertexSize() + staging.getElementOffset(element);
+        } else {
+            stream = streams[element];
+            offset = vertexCount * e.getSize();
+        }
+        VertexQuantizer.write(e, stream, offset, x, y, z, w, null);
+        return this;
+    }
+
+    private int streamStride(int stream) {
+        return streams.length == 1 ? staging.getVertexSize() : staging.getElement(stream).getSize();
+    }
+
+    private void growVertices(int capacity) {
+        for (int i = 0; i < streams.length; i++) {
+            int oldSize = vertexCapacity * streamStride(i);
+            int newSize = capacity * streamStride(i);
+            streams[i] = MemoryUtil.memRealloc(streams[i], newSize);
+            MemoryUtil.memSet(MemoryUtil.memAddress0(streams[i]) + oldSize, 0, newSize - oldSize);
+        }
+        vertexCapacity = capacity;
+    }
+
+    private void checkOpen() {
+        if (indices == null) {
+            throw new IllegalStateException("MeshBuilder was already built or freed");
+        }
+    }
+}
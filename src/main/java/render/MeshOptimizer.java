@@ -0,0 +1,198 @@
+package render;
+
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MeshOptimizer class MeshOptimizer.java reorders indexed triangle lists for the GPU. Triangles are reordered for
+ * post-transform vertex cache with Tipsify (Sander, Nehab and Barczak), so fewer vertices are shaded more than once,
+ * and vertices are reordered in the order triangles first use them, so vertex fetch reads memory sequentially.
+ * Quality is measured by ACMR, average number of cache misses per triangle: 3 is the worst case, 0.5 is ideal
+ * for large regular meshes. Does not call GL, so it can run on loader threads
+ */
+public final class MeshOptimizer {
+
+    /**
+     * cache size used by optimization and ACMR, FIFO of 16 entries is close to what current GPUs reuse
+     */
+    public static final int CACHE_SIZE = 16;
+
+    /**
+     * the largest vertex count whose indices fit GL_UNSIGNED_SHORT
+     */
+    public static final int MAX_SHORT_VERTICES = 1 << 16;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Reorders triangles for vertex cache, winding of triangles is kept
+     * @param indices triangle list
+     * @param vertexCount number of vertices indices refer to
+     * @param cacheSize size of vertex cache to optimize for, e.g. {@link #CACHE_SIZE}
+     * @return reordered triangle list
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount, int cacheSize) {
+        int triangleCount = indices.length / 3;
+        int[] start = new int[vertexCount + 1];
+        for (int index : indices) {
+            start[index + 1]++;
+        }
+        for (int i = 1; i <= vertexCount; i++) {
+            start[i] += start[i - 1];
+        }
+        // live triangle count of every vertex and triangles around it
+        int[] live = new int[vertexCount];
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(start, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            live[indices[i]]++;
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] timestamps = new int[vertexCount];
+        boolean[] emitted = new boolean[triangleCount];
+        int[] deadEnd = new int[indices.length];
+        int deadEndSize = 0;
+        int[] candidates = new int[indices.length];
+        int[] result = new int[indices.length];
+        int written = 0;
+        int time = cacheSize + 1;
+        int cursor = 0;
+        int fanning = vertexCount > 0 ? 0 : -1;
+
+        while (fanning >= 0) {
+            int candidateCount = 0;
+            for (int k = start[fanning]; k < start[fanning + 1]; k++) {
+                int t = adjacency[k];
+                if (emitted[t]) {
+                    continue;
+                }
+                emitted[t] = true;
+                for (int c = 0; c < 3; c++) {
+                    int v = indices[t * 3 + c];
+                    result[written++] = v;
+                    deadEnd[deadEndSize++] = v;
+                    candidates[candidateCount++] = v;
+                    live[v]--;
+                    if (time - timestamps[v] > cacheSize) {
+                        timestamps[v] = time++;
+                    }
+                }
+            }
+
+            // next fanning vertex is the candidate which stays in cache longest and has live triangles
+            fanning = -1;
+            int best = -1;
+            for (int c = 0; c < candidateCount; c++) {
+                int v = candidates[c];
+                if (live[v] > 0) {
+                    int priority = 0;
+                    if (time - timestamps[v] + 2 * live[v] <= cacheSize) {
+                        priority = time - timestamps[v];
+                    }
+                    if (priority > best) {
+                        best = priority;
+                        fanning = v;
+                    }
+                }
+            }
+            if (fanning < 0) {
+                while (deadEndSize > 0) {
+                    int v = deadEnd[--deadEndSize];
+                    if (live[v] > 0) {
+                        fanning = v;
+                        break;
+                    }
+                }
+            }
+            if (fanning < 0) {
+                while (cursor < vertexCount && live[cursor] == 0) {
+                    cursor++;
+                }
+                fanning = cursor < vertexCount ? cursor : -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renumbers vertices in the order indices first use them, vertices which are not used are dropped
+     * @param indices triangle list, rewritten to new vertex numbers
+     * @param vertexCount number of vertices
+     * @param remap receives new number of every old vertex or -1 if vertex is not used, at least vertex count long
+     * @return number of used vertices
+     */
+    public static int optimizeVertexFetch(int[] indices, int vertexCount, int[] remap) {
+        Arrays.fill(remap, 0, vertexCount, -1);
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) {
+                remap[v] = next++;
+            }
+            indices[i] = remap[v];
+        }
+        return next;
+    }
+
+    /**
+     * Copies vertices of one stream to their new places
+     * @param src stream with vertex count vertices from its position
+     * @param dest stream for new vertex count vertices from its position
+     * @param stride bytes per vertex in both streams
+     * @param vertexCount number of vertices in src
+     * @param remap new number of every vertex or -1, from {@link #optimizeVertexFetch(int[], int, int[])}
+     */
+    public static void remapVertices(ByteBuffer src, ByteBuffer dest, int stride, int vertexCount, int[] remap) {
+        int srcBase = src.position(), destBase = dest.position();
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] >= 0) {
+                dest.put(destBase + remap[v] * stride, src, srcBase + v * stride, stride);
+            }
+        }
+    }
+
+    /**
+     * Simulates FIFO vertex cache
+     * @param indices triangle list
+     * @param first first index to measure
+     * @param count number of indices to measure
+     * @param vertexCount number of vertices indices refer to
+     * @param cacheSize size of FIFO cache, e.g. {@link #CACHE_SIZE}
+     * @return average cache misses per triangle, 0 if there are no triangles
+     */
+    public static float acmr(int[] indices, int first, int count, int vertexCount, int cacheSize) {
+        if (count < 3) {
+            return 0;
+        }
+        // vertex is in cache while fewer than cacheSize misses happened since it was loaded
+        int[] loaded = new int[vertexCount];
+        Arrays.fill(loaded, Integer.MIN_VALUE / 2);
+        int misses = 0;
+        for (int i = first; i < first + count; i++) {
+            int v = indices[i];
+            if (misses - loaded[v] >= cacheSize) {
+                loaded[v] = misses;
+                misses++;
+            }
+        }
+        return misses / (float) (count / 3);
+    }
+
+    /**
+     * @return GL_UNSIGNED_SHORT if indices of vertex count vertices fit 16 bits, GL_UNSIGNED_INT otherwise
+     */
+    public static int indexType(int vertexCount) {
+        return vertexCount <= MAX_SHORT_VERTICES ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+    }
+
+    /**
+     * @return size in bytes of one index of GL type
+     */
+    public static int indexSize(int indexType) {
+        return indexType == GL11.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    }
+}
@@ -0,0 +1,327 @@
+package render;
+
+import java.util.Arrays;
+
+/**
+ * MeshSimplifier class MeshSimplifier.java reduces triangle count of indexed mesh by collapsing edges in the order
+ * of quadric error metric (Garland and Heckbert). Edges collapse onto existing vertices, so simplified index lists
+ * reference the same vertex buffer as the original one. Vertices with equal positions are treated as one vertex;
+ * such seam vertices and vertices on open borders are never moved, so seams and borders keep their shape.
+ * Does not call GL, so it can run on loader threads
+ */
+public final class MeshSimplifier {
+
+    /**
+     * number of doubles per quadric: upper triangle of 3x3 matrix, vector, constant and weight
+     */
+    private static final int QUADRIC = 11;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * Simplifies triangle list
+     * @param positions x, y, z of every vertex
+     * @param indices triangle list
+     * @param targetIndexCount number of indices to reduce to, result can have more if error limit is reached first
+     * @param targetError largest allowed error relative to the largest side of bounding box, e.g. 0.01 for 1%
+     * @param resultError if not null, element 0 receives error of result relative to the largest side of bounding box
+     * @return simplified triangle list referencing the same vertices
+     */
+    public static int[] simplify(float[] positions, int[] indices, int targetIndexCount, float targetError, float[] resultError) {
+        if (indices.length % 3 != 0) {
+            throw new IllegalArgumentException("Index count " + indices.length + " is not a multiple of 3");
+        }
+        int vertexCount = positions.length / 3;
+        int[] weld = weld(positions, vertexCount);
+        int[] copies = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            copies[weld[i]]++;
+        }
+        boolean[] locked = new boolean[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            // a vertex with several copies lies on an attribute seam
+            locked[i] = copies[i] > 1;
+        }
+        lockBorders(indices, weld, locked);
+
+        float extent = extent(positions, vertexCount);
+        double errorLimit = (double) targetError * extent * targetError * extent;
+        double[] quadrics = quadrics(positions, indices, weld, vertexCount);
+
+        int[] result = indices.clone();
+        int count = result.length;
+        int[] collapse = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            collapse[i] = i;
+        }
+        boolean[] touched = new boolean[vertexCount];
+        int[] adjacencyStart = new int[vertexCount + 1];
+        int[] adjacency = new int[count];
+        double maxError = 0;
+
+        while (count > targetIndexCount) {
+            int triangles = count / 3;
+            buildAdjacency(result, count, weld, adjacencyStart, adjacency);
+
+            // candidate c collapses canonical vertex from[c] onto original vertex to[c]
+            int[] from = new int[triangles * 6];
+            int[] to = new int[triangles * 6];
+            double[] costs = new double[triangles * 6];
+            long[] order = new long[triangles * 6];
+            int candidates = 0;
+            for (int t = 0; t < count; t += 3) {
+                for (int e = 0; e < 3; e++) {
+                    int a = result[t + e], b = result[t + (e + 1) % 3];
+                    for (int d = 0; d < 2; d++) {
+                        int u = weld[d == 0 ? a : b], v = d == 0 ? b : a;
+                        if (locked[u] || u == weld[v]) {
+                            continue;
+                        }
+                        double cost = error(quadrics, u, weld[v], positions, weld[v]);
+                        if (cost > errorLimit) {
+                            continue;
+                        }
+                        from[candidates] = u;
+                        to[candidates] = v;
+                        costs[candidates] = cost;
+                        // non-negative floats sort like their bits, so cost and candidate pack into one long
+                        order[candidates] = ((long) Float.floatToIntBits((float) cost) << 32) | candidates;
+                        candidates++;
+                    }
+                }
+            }
+            if (candidates == 0) {
+                break;
+            }
+            Arrays.sort(order, 0, candidates);
+
+            Arrays.fill(touched, false);
+            int removed = 0;
+            int needed = (count - targetIndexCount + 2) / 3;
+            int collapses = 0;
+            for (int i = 0; i < candidates && removed < needed; i++) {
+                int c = (int) order[i];
+                int u = from[c], v = weld[to[c]];
+                if (touched[u] || touched[v] || flips(positions, result, weld, adjacencyStart, adjacency, u, v)) {
+                    continue;
+                }
+                // u has no copies, so its only original vertex is u itself
+                collapse[u] = to[c];
+                for (int q = 0; q < QUADRIC; q++) {
+                    quadrics[v * QUADRIC + q] += quadrics[u * QUADRIC + q];
+                }
+                maxError = Math.max(maxError, costs[c]);
+                for (int k = adjacencyStart[u]; k < adjacencyStart[u + 1]; k++) {
+                    int t = adjacency[k];
+                    int a = weld[result[t]], b = weld[result[t + 1]], d = weld[result[t + 2]];
+                    touched[a] = touched[b] = touched[d] = true;
+                    if (a == v || b == v || d == v) {
+                        removed++;
+                    }
+                }
+                collapses++;
+            }
+            if (collapses == 0) {
+                break;
+            }
+
+            int written = 0;
+            for (int t = 0; t < count; t += 3) {
+                int a = resolve(collapse, result[t]), b = resolve(collapse, result[t + 1]), d = resolve(collapse, result[t + 2]);
+                if (weld[a] != weld[b] && weld[b] != weld[d] && weld[a] != weld[d]) {
+                    result[written++] = a;
+                    result[written++] = b;
+                    result[written++] = d;
+                }
+            }
+            count = written;
+        }
+        if (resultError != null) {
+            resultError[0] = extent > 0 ? (float) (Math.sqrt(maxError) / extent) : 0;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Maps every vertex to the first vertex with the same position
+     */
+    private static int[] weld(float[] positions, int vertexCount) {
+        int capacity = Integer.highestOneBit(Math.max(vertexCount, 1) * 2) * 2;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        int[] weld = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            int hash = Float.floatToIntBits(positions[i * 3]) * 73856093
+                    ^ Float.floatToIntBits(positions[i * 3 + 1]) * 19349663
+                    ^ Float.floatToIntBits(positions[i * 3 + 2]) * 83492791;
+            int slot = (hash ^ (hash >>> 16)) & (capacity - 1);
+            while (true) {
+                int other = table[slot];
+                if (other < 0) {
+                    table[slot] = i;
+                    weld[i] = i;
+                    break;
+                }
+                if (positions[other * 3] == positions[i * 3] && positions[other * 3 + 1] == positions[i * 3 + 1]
+                        && positions[other * 3 + 2] == positions[i * 3 + 2]) {
+                    weld[i] = other;
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+        return weld;
+    }
+
+    /**
+     * Locks vertices of edges which belong to one triangle only
+     */
+    private static void lockBorders(int[] indices, int[] weld, boolean[] locked) {
+        int capacity = Integer.highestOneBit(Math.max(indices.length, 1) * 2) * 2;
+        long[] keys = new long[capacity];
+        int[] counts = new int[capacity];
+        Arrays.fill(keys, -1);
+        for (int t = 0; t < indices.length; t += 3) {
+            for (int e = 0; e < 3; e++) {
+                int a = weld[indices[t + e]], b = weld[indices[t + (e + 1) % 3]];
+                long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+                int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & (capacity - 1);
+                while (keys[slot] != -1 && keys[slot] != key) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = key;
+                counts[slot]++;
+            }
+        }
+        for (int i = 0; i < capacity; i++) {
+            if (counts[i] == 1) {
+                locked[(int) (keys[i] >>> 32)] = true;
+                locked[(int) keys[i]] = true;
+            }
+        }
+    }
+
+    private static float extent(float[] positions, int vertexCount) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < vertexCount; i++) {
+            minX = Math.min(minX, positions[i * 3]);
+            minY = Math.min(minY, positions[i * 3 + 1]);
+            minZ = Math.min(minZ, positions[i * 3 + 2]);
+            maxX = Math.max(maxX, positions[i * 3]);
+            maxY = Math.max(maxY, positions[i * 3 + 1]);
+            maxZ = Math.max(maxZ, positions[i * 3 + 2]);
+        }
+        return vertexCount > 0 ? Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) : 0;
+    }
+
+    /**
+     * Sums area weighted plane quadrics of triangles into their canonical vertices
+     */
+    private static double[] quadrics(float[] positions, int[] indices, int[] weld, int vertexCount) {
+        double[] quadrics = new double[vertexCount * QUADRIC];
+        for (int t = 0; t < indices.length; t += 3) {
+            int a = indices[t] * 3, b = indices[t + 1] * 3, c = indices[t + 2] * 3;
+            double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+            double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+            double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                continue;
+            }
+            double weight = length * 0.5;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx * positions[a] + ny * positions[a + 1] + nz * positions[a + 2]);
+            for (int k = 0; k < 3; k++) {
+                int q = weld[indices[t + k]] * QUADRIC;
+                quadrics[q] += weight * nx * nx;
+                quadrics[q + 1] += weight * nx * ny;
+                quadrics[q + 2] += weight * nx * nz;
+                quadrics[q + 3] += weight * ny * ny;
+                quadrics[q + 4] += weight * ny * nz;
+                quadrics[q + 5] += weight * nz * nz;
+                quadrics[q + 6] += weight * nx * d;
+                quadrics[q + 7] += weight * ny * d;
+                quadrics[q + 8] += weight * nz * d;
+                quadrics[q + 9] += weight * d * d;
+                quadrics[q + 10] += weight;
+            }
+        }
+        return quadrics;
+    }
+
+    /**
+     * Squared distance of position of vertex p to planes of quadrics of u and v, averaged by area
+     */
+    private static double error(double[] quadrics, int u, int v, float[] positions, int p) {
+        double x = positions[p * 3], y = positions[p * 3 + 1], z = positions[p * 3 + 2];
+        int a = u * QUADRIC, b = v * QUADRIC;
+        double[] q = quadrics;
+        double sum = (q[a] + q[b]) * x * x + 2 * (q[a + 1] + q[b + 1]) * x * y + 2 * (q[a + 2] + q[b + 2]) * x * z
+                + (q[a + 3] + q[b + 3]) * y * y + 2 * (q[a + 4] + q[b + 4]) * y * z + (q[a + 5] + q[b + 5]) * z * z
+                + 2 * ((q[a + 6] + q[b + 6]) * x + (q[a + 7] + q[b + 7]) * y + (q[a + 8] + q[b + 8]) * z)
+                + q[a + 9] + q[b + 9];
+        double weight = q[a + 10] + q[b + 10];
+        return weight > 0 ? Math.max(sum / weight, 0) : 0;
+    }
+
+    /**
+     * Lists triangles around every canonical vertex
+     */
+    private static void buildAdjacency(int[] indices, int count, int[] weld, int[] start, int[] adjacency) {
+        Arrays.fill(start, 0);
+        for (int i = 0; i < count; i++) {
+            start[weld[indices[i]] + 1]++;
+        }
+        for (int i = 1; i < start.length; i++) {
+            start[i] += start[i - 1];
+        }
+        int[] fill = Arrays.copyOf(start, start.length - 1);
+        for (int i = 0; i < count; i++) {
+            adjacency[fill[weld[indices[i]]]++] = i - i % 3;
+        }
+    }
+
+    /**
+     * Returns true if moving u onto v turns a remaining triangle around u over or nearly over
+     */
+    private static boolean flips(float[] positions, int[] indices, int[] weld, int[] start, int[] adjacency, int u, int v) {
+        for (int k = start[u]; k < start[u + 1]; k++) {
+            int t = adjacency[k];
+            int a = indices[t], b = indices[t + 1], c = indices[t + 2];
+            if (weld[a] == v || weld[b] == v || weld[c] == v) {
+                continue;
+            }
+            // rotate so that u is first
+            if (weld[b] == u) {
+                int s = a; a = b; b = c; c = s;
+            } else if (weld[c] == u) {
+                int s = c; c = b; b = a; a = s;
+            }
+            float bx = positions[b * 3], by = positions[b * 3 + 1], bz = positions[b * 3 + 2];
+            float cx = positions[c * 3], cy = positions[c * 3 + 1], cz = positions[c * 3 + 2];
+            float ex = cx - bx, ey = cy - by, ez = cz - bz;
+            float ox = positions[a * 3] - bx, oy = positions[a * 3 + 1] - by, oz = positions[a * 3 + 2] - bz;
+            float nx = oy * ez - oz * ey, ny = oz * ex - ox * ez, nz = ox * ey - oy * ex;
+            float px = positions[v * 3] - bx, py = positions[v * 3 + 1] - by, pz = positions[v * 3 + 2] - bz;
+            float mx = py * ez - pz * ey, my = pz * ex - px * ez, mz = px * ey - py * ex;
+            // rotating a triangle by more than 60 degrees is treated as a flip, thin triangles turn over easily
+            float dot = nx * mx + ny * my + nz * mz;
+            if (dot <= 0.5f * (float) Math.sqrt((nx * nx + ny * ny + nz * nz) * (mx * mx + my * my + mz * mz))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int resolve(int[] collapse, int vertex) {
+        while (collapse[vertex] != vertex) {
+            collapse[vertex] = collapse[collapse[vertex]];
+            vertex = collapse[vertex];
+        }
+        return vertex;
+    }
+}
@@ -0,0 +1,187 @@
+package render;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MipChain class MipChain.java holds all mip levels of an RGBA8 image in off-heap memory, level 0 is the full image
+ * and every next level halves width and height down to 1x1. Levels are made with a 2x2 box filter on raw values.
+ * Does not call GL, so chains are built on loader threads and kept as the source {@link TextureStreamer} uploads
+ * and re-uploads levels from. The whole chain takes about 4/3 of the size of level 0 in host memory, single levels
+ * are released with {@link #freeLevel(int)} once GPU has them. Memory has to be freed with {@link #free()}
+ */
+public class MipChain {
+
+    /**
+     * bytes of one RGBA8 pixel
+     */
+    public static final int PIXEL_BYTES = 4;
+
+    private final int width, height;
+    private final ByteBuffer[] levels;
+
+    private MipChain(int width, int height, ByteBuffer[] levels) {
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * Copies image and builds its mip levels
+     * @param pixels RGBA8 pixels row by row from position, position is not changed
+     * @param width width of image
+     * @param height height of image
+     * @return chain with {@link #levelCount(int, int)} levels
+     * @throws IllegalArgumentException if size is not positive or pixels are too few
+     */
+    public static MipChain generate(ByteBuffer pixels, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        if (pixels.remaining() < (long) width * height * PIXEL_BYTES) {
+            throw new IllegalArgumentException("Image has fewer pixels than its size");
+        }
+        ByteBuffer[] levels = new ByteBuffer[levelCount(width, height)];
+        levels[0] = MemoryUtil.memAlloc(width * height * PIXEL_BYTES);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(pixels), MemoryUtil.memAddress(levels[0]), levels[0].capacity());
+        for (int level = 1; level < levels.length; level++) {
+            levels[level] = downsample(levels[level - 1], levelSize(width, level - 1), levelSize(height, level - 1));
+        }
+        return new MipChain(width, height, levels);
+    }
+
+    /**
+     * Averages 2x2 blocks, the last row or column of odd sizes is repeated
+     */
+    private static ByteBuffer downsample(ByteBuffer src, int srcWidth, int srcHeight) {
+        int width = Math.max(1, srcWidth >> 1), height = Math.max(1, srcHeight >> 1);
+        ByteBuffer dest = MemoryUtil.memAlloc(width * height * PIXEL_BYTES);
+        int srcRow = srcWidth * PIXEL_BYTES;
+        for (int y = 0; y < height; y++) {
+            int row0 = Math.min(y * 2, srcHeight - 1) * srcRow;
+            int row1 = Math.min(y * 2 + 1, srcHeight - 1) * srcRow;
+            for (int x = 0; x < width; x++) {
+                int column0 = Math.min(x * 2, srcWidth - 1) * PIXEL_BYTES;
+                int column1 = Math.min(x * 2 + 1, srcWidth - 1) * PIXEL_BYTES;
+                int out = (y * width + x) * PIXEL_BYTES;
+                for (int c = 0; c < PIXEL_BYTES; c++) {
+                    int sum = Byte.toUnsignedInt(src.get(row0 + column0 + c)) + Byte.toUnsignedInt(src.get(row0 + column1 + c))
+                            + Byte.toUnsignedInt(src.get(row1 + column0 + c)) + Byte.toUnsignedInt(src.get(row1 + column1 + c));
+                    dest.put(out + c, (byte) ((sum + 2) >> 2));
+                }
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * @return number of levels of a full mip chain of image, down to 1x1
+     */
+    public static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * @return width or height of level of image with given full size
+     */
+    public static int levelSize(int size, int level) {
+        return Math.max(1, size >> level);
+    }
+
+    /**
+     * Frees memory of all levels, chain can not be used afterwards
+     */
+    public void free() {
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] != null) {
+                MemoryUtil.memFree(levels[i]);
+                levels[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Frees memory of one level, {@link #getLevel(int)} returns null for it afterwards
+     */
+    public void freeLevel(int level) {
+        if (levels[level] != null) {
+            MemoryUtil.memFree(levels[level]);
+            levels[level] = null;
+        }
+    }
+
+    /**
+     * Takes levels before end which this chain has freed over from chain read again from the same image
+     * and frees the rest of that chain
+     * @param chain chain of image with the same size, can not be used afterwards
+     * @param end first level which is not taken over
+     * @throws IllegalArgumentException if size of chain differs, chain is freed anyway
+     */
+    public void takeLevels(MipChain chain, int end) {
+        try {
+            if (chain.width != width || chain.height != height) {
+                throw new IllegalArgumentException("Image size changed from " + width + "x" + height + " to "
+                        + chain.width + "x" + chain.height);
+            }
+            for (int level = 0; level < end; level++) {
+                if (levels[level] == null) {
+                    levels[level] = chain.levels[level];
+                    chain.levels[level] = null;
+                }
+            }
+        } finally {
+            chain.free();
+        }
+    }
+
+    /**
+     * @return pixels of level, null after {@link #free()} or {@link #freeLevel(int)}
+     */
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * @return size of level in bytes
+     */
+    public int getLevelBytes(int level) {
+        return getWidth(level) * getHeight(level) * PIXEL_BYTES;
+    }
+
+    /**
+     * @return size of all levels in bytes
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (int level = 0; level < levels.length; level++) {
+            bytes += getLevelBytes(level);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return host memory of levels which are not freed in bytes
+     */
+    public long getLoadedBytes() {
+        long bytes = 0;
+        for (ByteBuffer level : levels) {
+            if (level != null) {
+                bytes += level.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getWidth(int level) {
+        return levelSize(width, level);
+    }
+
+    public int getHeight(int level) {
+        return levelSize(height, level);
+    }
+}
@@ -0,0 +1,271 @@
+package render;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ProgramCache class ProgramCache.java stores linked shader programs on disk with glGetProgramBinary and
+ * loads them with glProgramBinary, so programs are not compiled from source on every launch.
+ * Key of a program is SHA-256 of its sources and of GL vendor, renderer and version, so driver updates
+ * invalidate the cache. Files are written to a temporary file and moved into place, so a crash never leaves
+ * a partial binary. Binaries rejected by driver are deleted and the program is compiled from source.
+ * Default cache directory is given by -Dengine.shaderCache, "false" disables it
+ */
+public class ProgramCache {
+
+    private static final int MAGIC = 0x50524731;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+
+    private static ProgramCache defaultCache;
+    private static boolean defaultCreated;
+
+    private final Path directory;
+    private String driver;
+    private int hits, misses, rejected, writeFailures;
+    private long savedNanos;
+
+    /**
+     * Constructor of program cache
+     * @param directory directory for binaries, created when the first binary is written
+     */
+    public ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns cache used by {@link Shader#create()}, created from -Dengine.shaderCache on first call
+     * @return default cache or null if it is disabled
+     */
+    public static ProgramCache getDefault() {
+        if (!defaultCreated) {
+            String path = System.getProperty("engine.shaderCache", "cache/shaders");
+            defaultCache = "false".equalsIgnoreCase(path) ? null : new ProgramCache(Paths.get(path));
+            defaultCreated = true;
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Replaces cache used by {@link Shader#create()}
+     * @param cache cache or null to disable caching
+     */
+    public static void setDefault(ProgramCache cache) {
+        defaultCache = cache;
+        defaultCreated = true;
+    }
+
+    /**
+     * Returns true if current context can get and load program binaries
+     */
+    public static boolean isSupported() {
+        GLCapabilities capabilities = GL.getCapabilities();
+        return (capabilities.OpenGL41 || capabilities.GL_ARB_get_program_binary)
+                && GL11.glGetInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+    }
+
+    /**
+     * Computes key of program for current context
+     * @param sources sources of all shader stages
+     * @return hex SHA-256 key
+     */
+    public String key(String... sources) {
+        if (driver == null) {
+            driver = GL11.glGetString(GL11.GL_VENDOR) + '\n' + GL11.glGetString(GL11.GL_RENDERER) + '\n'
+                    + GL11.glGetString(GL11.GL_VERSION);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String source : sources) {
+                digest.update(source.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update(driver.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads binary of key into program and counts hit or miss
+     * @param programID created program without attached shaders
+     * @param key key from {@link #key(String...)}
+     * @return true if program was loaded and linked, false if it has to be compiled from source
+     */
+    public boolean load(int programID, String key) {
+        long start = System.nanoTime();
+        Path file = file(key);
+        ByteBuffer data = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return reject(file);
+            }
+            data = MemoryUtil.memAlloc((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // read whole file
+            }
+            data.flip();
+            if (data.remaining() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+                return reject(file);
+            }
+            int format = data.getInt(4);
+            int length = data.getInt(8);
+            long compileNanos = data.getLong(12);
+            if (length != data.remaining() - HEADER_BYTES) {
+                return reject(file);
+            }
+            data.position(HEADER_BYTES);
+            GL41.glProgramBinary(programID, format, data);
+            if (GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+                return reject(file);
+            }
+            hits++;
+            savedNanos += compileNanos - (System.nanoTime() - start);
+            return true;
+        } catch (NoSuchFileException e) {
+            misses++;
+            return false;
+        } catch (IOException e) {
+            System.err.println("Shader cache: couldn't read " + file + ": " + e.getMessage());
+            misses++;
+            return false;
+        } finally {
+            if (data != null) {
+                MemoryUtil.memFree(data);
+            }
+        }
+    }
+
+    private boolean reject(Path file) {
+        rejected++;
+        misses++;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Shader cache: couldn't delete " + file + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Asks driver to keep binary of program, called before linking
+     * @param programID program which will be linked
+     */
+    public void prepare(int programID) {
+        GL41.glProgramParameteri(programID, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+    }
+
+    /**
+     * Writes binary of linked program atomically, failures are logged and do not affect the program
+     * @param programID linked program
+     * @param key key from {@link #key(String...)}
+     * @param compileNanos time it took to compile and link program from source
+     */
+    public void store(int programID, String key, long compileNanos) {
+        int length = GL20.glGetProgrami(programID, GL41.GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) {
+            return;
+        }
+        ByteBuffer data = MemoryUtil.memAlloc(HEADER_BYTES + length).order(ByteOrder.LITTLE_ENDIAN);
+        Path temp = null;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+            data.position(HEADER_BYTES);
+            GL41.glGetProgramBinary(programID, written, format, data);
+            data.putInt(0, MAGIC).putInt(4, format.get(0)).putInt(8, written.get(0)).putLong(12, compileNanos);
+            data.position(0).limit(HEADER_BYTES + written.get(0));
+
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Path file = file(key);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            writeFailures++;
+            System.err.println("Shader cache: couldn't write " + key + ": " + e.getMessage());
+        } finally {
+            MemoryUtil.memFree(data);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // temporary file is left behind, it is never read
+                }
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + ".bin");
+    }
+
+    /**
+     * Prints hit and miss counts and time saved by loaded binaries
+     */
+    public void printStats() {
+        System.out.println("Shader cache: " + hits + " hits, " + misses + " misses (" + rejected + " rejected), "
+                + writeFailures + " write failures, saved " + savedNanos / 1_000_000 + " ms");
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of binaries which were corrupt or rejected by driver, they are counted as misses too
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return compile time of loaded programs minus time spent loading them, in nanoseconds
+     */
+    public long getSavedNanos() {
+        return savedNanos;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,255 @@
+package render;
+
+import math.Matrix4f;
+import org.lwjgl.opengl.GL11;
+
+import java.util.Arrays;
+
+/**
+ * RenderQueue class RenderQueue.java collects draw submissions of a frame, sorts them by 64-bit key
+ * (shader program, vertex array, material, depth) with radix sort and executes them through {@link GLState},
+ * so meshes which share state are drawn without rebinding it. A draw submitted with model matrix uploads it to
+ * uniform {@link #MODEL_UNIFORM} of its shader, the uniform cache of {@link Shader} skips uploads of equal matrices.
+ * Dequantization of meshes with quantized positions is folded into the uploaded matrix, a quantized mesh submitted
+ * without model matrix gets its dequantization alone.
+ * Key layout from the most significant bits: program 16 bits, vertex array 16 bits, material 16 bits, depth 16 bits
+ */
+public class RenderQueue {
+
+    /**
+     * name of mat4 uniform which receives model matrix of draw
+     */
+    public static final String MODEL_UNIFORM = "model";
+
+    /**
+     * Applies material when it changes between two draws
+     */
+    public interface MaterialBinder {
+        /**
+         * @param material id of material given to {@link #submit(Shader, Mesh, int, float)}
+         */
+        void bind(int material);
+    }
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private final GLState state;
+    private MaterialBinder materialBinder;
+
+    private int count;
+    private long[] keys = new long[256];
+    private int[] order = new int[256];
+    private long[] tempKeys = new long[256];
+    private int[] tempOrder = new int[256];
+    private final int[] histogram = new int[RADIX];
+    private Shader[] shaders = new Shader[256];
+    private Mesh[] meshes = new Mesh[256];
+    private int[] materials = new int[256];
+    private int[] lods = new int[256];
+    private float[] models = new float[256 * Matrix4f.SIZE];
+    private boolean[] hasModel = new boolean[256];
+    private final Matrix4f matrix = new Matrix4f();
+
+    private int drawCount;
+
+    /**
+     * Constructor of render queue
+     * @param state GL state shadow used to execute the queue
+     */
+    public RenderQueue(GLState state) {
+        this.state = state;
+    }
+
+    /**
+     * Adds draw of mesh to queue
+     * @param shader shader to draw mesh with
+     * @param mesh created mesh
+     * @param material id of material in [0, 65535], 0 if material is not used
+     * @param depth distance from camera, not negative; equal state is drawn front to back
+     */
+    public void submit(Shader shader, Mesh mesh, int material, float depth) {
+        submit(shader, mesh, 0, material, depth);
+    }
+
+    /**
+     * Adds draw of one level of detail of mesh to queue
+     * @param shader shader to draw mesh with
+     * @param mesh created mesh
+     * @param lod level of detail in [0, {@link Mesh#getLodCount()}), e.g. from {@link LodSelector}
+     * @param material id of material in [0, 65535], 0 if material is not used
+     * @param depth distance from camera, not negative; equal state is drawn front to back
+     */
+    public void submit(Shader shader, Mesh mesh, int lod, int material, float depth) {
+        add(shader, mesh, lod, material, depth);
+        hasModel[count] = mesh.hasQuantizedPositions();
+        if (hasModel[count]) {
+            mesh.getDequantization(matrix).get(models, count * Matrix4f.SIZE);
+        }
+        count++;
+    }
+
+    /**
+     * Adds draw of mesh with its own model matrix to queue
+     * @param shader shader with mat4 uniform {@link #MODEL_UNIFORM}
+     * @param mesh created mesh
+     * @param model world matrix of mesh, it is copied so the object can be reused right away
+     * @param material id of material in [0, 65535], 0 if material is not used
+     * @param depth distance from camera, not negative; equal state is drawn front to back
+     */
+    public void submit(Shader shader, Mesh mesh, Matrix4f model, int material, float depth) {
+        submit(shader, mesh, model, 0, material, depth);
+    }
+
+    /**
+     * Adds draw of one level of detail of mesh with its own model matrix to queue
+     * @param shader shader with mat4 uniform {@link #MODEL_UNIFORM}
+     * @param mesh created mesh
+     * @param model world matrix of mesh, it is copied so the object can be reused right away
+     * @param lod level of detail in [0, {@link Mesh#getLodCount()}), e.g. from {@link LodSelector}
+     * @param material id of material in [0, 65535], 0 if material is not used
+     * @param depth distance from camera, not negative; equal state is drawn front to back
+     */
+    public void submit(Shader shader, Mesh mesh, Matrix4f model, int lod, int material, float depth) {
+        add(shader, mesh, lod, material, depth);
+        mesh.getModelMatrix(model, matrix).get(models, count * Matrix4f.SIZE);
+        hasModel[count] = true;
+        count++;
+    }
+
+    private void add(Shader shader, Mesh mesh, int lod, int material, float depth) {
+        if (count == keys.length) {
+            grow(count * 2);
+        }
+        shaders[count] = shader;
+        meshes[count] = mesh;
+        materials[count] = material;
+        lods[count] = lod;
+        keys[count] = key(shader.getProgramID(), mesh.getVAO(), material, depth);
+        order[count] = count;
+    }
+
+    /**
+     * Packs sort key
+     */
+    static long key(int program, int vao, int material, float depth) {
+        // bits of non-negative floats grow with the value, top 16 bits keep exponent and 7 bits of mantissa
+        long depthBits = (Float.floatToIntBits(Math.max(depth, 0)) >>> 16) & 0xFFFF;
+        return ((long) (program & 0xFFFF) << 48) | ((long) (vao & 0xFFFF) << 32)
+                | ((long) (material & 0xFFFF) << 16) | depthBits;
+    }
+
+    /**
+     * Sorts queued draws, executes them and clears the queue. Leaves program and vertex array unbound
+     */
+    public void flush() {
+        sort();
+        drawCount = 0;
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            Mesh mesh = meshes[index];
+            state.useProgram(shaders[index].getProgramID());
+            if (state.changeMaterial(materials[index]) && materialBinder != null) {
+                materialBinder.bind(materials[index]);
+            }
+            if (hasModel[index]) {
+                shaders[index].setUniform(MODEL_UNIFORM, matrix.set(models, index * Matrix4f.SIZE));
+            }
+            state.bindVertexArray(mesh.getVAO());
+            int lod = lods[index];
+            GL11.glDrawElements(GL11.GL_TRIANGLES, mesh.getLodIndexCount(lod), mesh.getIndexType(),
+                    (long) mesh.getLodFirstIndex(lod) * mesh.getIndexSize());
+            drawCount++;
+        }
+        state.reset();
+        clear();
+    }
+
+    /**
+     * Removes queued draws without executing them
+     */
+    public void clear() {
+        Arrays.fill(shaders, 0, count, null);
+        Arrays.fill(meshes, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * LSD radix sort of keys carrying submission indices, passes where all keys have the same byte are skipped
+     */
+    void sort() {
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < count; i++) {
+                histogram[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            if (count == 0 || histogram[(int) (keys[0] >>> shift) & (RADIX - 1)] == count) {
+                continue;
+            }
+            for (int i = 0, sum = 0; i < RADIX; i++) {
+                int c = histogram[i];
+                histogram[i] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < count; i++) {
+                int bucket = (int) (keys[i] >>> shift) & (RADIX - 1);
+                int position = histogram[bucket]++;
+                tempKeys[position] = keys[i];
+                tempOrder[position] = order[i];
+            }
+            long[] k = keys;
+            keys = tempKeys;
+            tempKeys = k;
+            int[] o = order;
+            order = tempOrder;
+            tempOrder = o;
+        }
+    }
+
+    /**
+     * @param position position in draw order after {@link #sort()}
+     * @return index of submission drawn at position
+     */
+    int getSortedIndex(int position) {
+        return order[position];
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        order = Arrays.copyOf(order, capacity);
+        tempKeys = new long[capacity];
+        tempOrder = new int[capacity];
+        shaders = Arrays.copyOf(shaders, capacity);
+        meshes = Arrays.copyOf(meshes, capacity);
+        materials = Arrays.copyOf(materials, capacity);
+        lods = Arrays.copyOf(lods, capacity);
+        models = Arrays.copyOf(models, capacity * Matrix4f.SIZE);
+        hasModel = Arrays.copyOf(hasModel, capacity);
+    }
+
+    /**
+     * sets listener which applies material when it changes
+     * @param materialBinder listener or null
+     */
+    public void setMaterialBinder(MaterialBinder materialBinder) {
+        this.materialBinder = materialBinder;
+    }
+
+    /**
+     * @return number of queued draws
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return number of draws executed by last flush
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public GLState getState() {
+        return state;
+    }
+}
@@ -1,25 +1,177 @@
 package render;
 
+import math.Matrix4f;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
 
 public class Renderer {
     private Shader shader;
+    private final GLState state = new GLState();
+    private final RenderQueue queue = new RenderQueue(state);
+    private final Matrix4f matrix = new Matrix4f();
 
     public  Renderer(Shader shader){
         this.shader = shader;
     }
 
+    /**
+     * Queues mesh to be drawn with renderer's shader on next {@link #flush()}
+     * @param mesh created mesh
+     * @param material id of material in [0, 65535]
+     * @param depth distance from camera
+     */
+    public void submit(Mesh mesh, int material, float depth) {
+        queue.submit(shader, mesh, material, depth);
+    }
+
+    /**
+     * Queues mesh to be drawn with given shader on next {@link #flush()}
+     */
+    public void submit(Shader shader, Mesh mesh, int material, float depth) {
+        queue.submit(shader, mesh, material, depth);
+    }
+
+    /**
+     * Queues level of detail of mesh to be drawn with renderer's shader on next {@link #flush()}
+     * @param mesh created mesh
+     * @param lod level of detail, e.g. from {@link LodSelector}
+     * @param material id of material in [0, 65535]
+     * @param depth distance from camera
+     */
+    public void submit(Mesh mesh, int lod, int material, float depth) {
+        queue.submit(shader, mesh, lod, material, depth);
+    }
+
+    /**
+     * Queues mesh to be drawn with renderer's shader and its own model matrix on next {@link #flush()}
+     * @param mesh created mesh
+     * @param model world matrix of mesh, uploaded to uniform {@link RenderQueue#MODEL_UNIFORM}
+     * @param material id of material in [0, 65535]
+     * @param depth distance from camera
+     */
+    public void submit(Mesh mesh, Matrix4f model, int material, float depth) {
+        queue.submit(shader, mesh, model, material, depth);
+    }
+
+    /**
+     * Queues mesh to be drawn with given shader and its own model matrix on next {@link #flush()}
+     */
+    public void submit(Shader shader, Mesh mesh, Matrix4f model, int material, float depth) {
+        queue.submit(shader, mesh, model, material, depth);
+    }
+
+    /**
+     * Queues level of detail of mesh to be drawn with renderer's shader and its own model matrix on next {@link #flush()}
+     * @param mesh created mesh
+     * @param model world matrix of mesh, uploaded to uniform {@link RenderQueue#MODEL_UNIFORM}
+     * @param lod level of detail, e.g. from {@link LodSelector}
+     * @param material id of material in [0, 65535]
+     * @param depth distance from camera
+     */
+    public void submit(Mesh mesh, Matrix4f model, int lod, int material, float depth) {
+        queue.submit(shader, mesh, model, lod, material, depth);
+    }
+
+    /**
+     * Sorts and draws everything submitted since last flush, called once at the end of Game.render().
+     * State change counters of {@link #getState()} describe the last flushed frame
+     */
+    public void flush() {
+        state.resetCounters();
+        queue.flush();
+    }
+
+    /**
+     * @return GL state shadow with counters of issued and skipped state changes
+     */
+    public GLState getState() {
+        return state;
+    }
+
+    /**
+     * @return queue of submitted draws
+     */
+    public RenderQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Draws mesh right away, quantized positions are dequantized through uniform {@link RenderQueue#MODEL_UNIFORM}
+     * @param mesh created mesh
+     */
     public void renderMesh(Mesh mesh){
+        if (mesh.hasQuantizedPositions()) {
+            renderMesh(mesh, matrix.setIdentity());
+            return;
+        }
+        draw(mesh);
+    }
+
+    /**
+     * Draws mesh right away with model matrix uploaded to uniform {@link RenderQueue#MODEL_UNIFORM},
+     * dequantization of quantized positions is folded into it
+     * @param mesh created mesh
+     * @param model world matrix of mesh
+     */
+    public void renderMesh(Mesh mesh, Matrix4f model) {
+        shader.bind();
+        shader.setUniform(RenderQueue.MODEL_UNIFORM, mesh.getModelMatrix(model, matrix));
+        draw(mesh);
+    }
+
+    /**
+     * Vertex array of mesh holds enabled attributes and index buffer, so only it is bound
+     */
+    private void draw(Mesh mesh) {
+        GL30.glBindVertexArray(mesh.getVAO());
+        shader.bind();
+        GL11.glDrawElements(GL11.GL_TRIANGLES, mesh.getSize(), mesh.getIndexType(), 0);
+        shader.unbind();
+        GL30.glBindVertexArray(0);
+    }
+
+    /**
+     * Draws all meshes of static batch with one shader bind and one draw call
+     * @param batch built static batch
+     */
+    public void renderBatch(StaticBatch batch) {
+        shader.bind();
+        shader.setUniform(InstanceBuffer.DEQUANTIZATION_UNIFORM, matrix.setIdentity());
+        batch.draw();
+        shader.unbind();
+    }
+
+    /**
+     * Draws mesh count times with one call, model matrix of each instance is read from instance buffer.
+     * Shader has to read mat4 at {@link InstanceBuffer#MATRIX_LOCATION} and multiply positions by uniform
+     * {@link InstanceBuffer#DEQUANTIZATION_UNIFORM}, which is identity unless positions of mesh are quantized
+     * @param mesh created mesh
+     * @param instances buffer with at least count matrices
+     * @param count number of instances to draw
+     */
+    public void renderInstanced(Mesh mesh, InstanceBuffer instances, int count) {
         GL30.glBindVertexArray(mesh.getVAO());
-        GL30.glEnableVertexAttribArray(0);
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, mesh.getIBO());
+        instances.enableAttributes();
         shader.bind();
-        GL11.glDrawElements(GL11.GL_TRIANGLES, mesh.getIndices().length,GL11.GL_UNSIGNED_INT, 0);
+        shader.setUniform(InstanceBuffer.DEQUANTIZATION_UNIFORM, mesh.getDequantization(matrix));
+        GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, mesh.getSize(), mesh.getIndexType(), 0, count);
         shader.unbind();
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
-        GL30.glDisableVertexAttribArray(0);
+        instances.disableAttributes();
         GL30.glBindVertexArray(0);
     }
+
+    /**
+     * Culls objects of indirect batch on GPU and draws the visible ones with one call.
+     * Shader has to read mat4 at {@link InstanceBuffer#MATRIX_LOCATION}
+     * @param batch indirect batch
+     * @param viewProjection matrix whose frustum objects are tested against
+     */
+    public void renderIndirect(IndirectBatch batch, Matrix4f viewProjection) {
+        batch.cull(viewProjection);
+        shader.bind();
+        shader.setUniform(InstanceBuffer.DEQUANTIZATION_UNIFORM, matrix.setIdentity());
+        batch.draw();
+        shader.unbind();
+    }
 }
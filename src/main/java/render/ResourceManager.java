@@ -0,0 +1,363 @@
+package render;
+
+import org.lwjgl.opengl.GL32;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * ResourceManager class ResourceManager.java owns {@link GpuResource} objects by asset key and hands them out
+ * behind reference counted {@link Handle} handles. Acquiring a key which is already loaded returns the same resource,
+ * so meshes, shaders and buffers are created once however many objects use them.
+ * When the last handle is released the resource is kept as unreferenced, so loading it again is free, until
+ * unreferenced resources take more than the budget; then the least recently released ones are evicted.
+ * Evicted resources are deleted only after a fence inserted in the frame of eviction is signaled, so GL objects
+ * are never deleted while queued draws still use them. Used on GL thread, {@link #update()} once per frame
+ */
+public class ResourceManager {
+
+    /**
+     * default budget of unreferenced resources, -Dengine.resourceCacheMB changes it
+     */
+    public static final long DEFAULT_BUDGET_BYTES = Long.getLong("engine.resourceCacheMB", 256) << 20;
+
+    /**
+     * Reference to resource, every handle holds one reference until it is released
+     */
+    public final class Handle<T extends GpuResource> {
+
+        private final Entry entry;
+        private boolean released;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * @return resource of handle
+         * @throws IllegalStateException if handle was released
+         */
+        @SuppressWarnings("unchecked")
+        public T get() {
+            if (released) {
+                throw new IllegalStateException("Handle of " + entry.key + " was released");
+            }
+            return (T) entry.resource;
+        }
+
+        /**
+         * Releases reference of this handle, further calls do nothing
+         */
+        public void release() {
+            if (!released) {
+                released = true;
+                ResourceManager.this.release(entry);
+            }
+        }
+
+        /**
+         * @return another handle to the same resource with its own reference
+         */
+        public Handle<T> share() {
+            get();
+            entry.references++;
+            return new Handle<>(entry);
+        }
+
+        public String getKey() {
+            return entry.key;
+        }
+
+        public boolean isReleased() {
+            return released;
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final GpuResource resource;
+        private int references;
+
+        private Entry(String key, GpuResource resource) {
+            this.key = key;
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * resources evicted in the same frame and fence after which they can be deleted
+     */
+    private static final class Pending {
+        private final long fence;
+        private final List<GpuResource> resources;
+
+        private Pending(long fence, List<GpuResource> resources) {
+            this.fence = fence;
+            this.resources = resources;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    /**
+     * unreferenced entries from the least recently released
+     */
+    private final LinkedHashMap<String, Entry> unreferenced = new LinkedHashMap<>();
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private List<GpuResource> evicted = new ArrayList<>();
+    private long budgetBytes;
+    private int hits, misses, evictions, deletions;
+
+    public ResourceManager() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * Constructor of resource manager, does not call GL
+     * @param budgetBytes GPU memory unreferenced resources may keep, 0 evicts them as soon as they are released
+     */
+    public ResourceManager(long budgetBytes) {
+        setBudgetBytes(budgetBytes);
+    }
+
+    /**
+     * Returns handle to resource of key, creating the resource if the key is not loaded
+     * @param key asset key, e.g. path of file the resource is made from
+     * @param type class of resource
+     * @param create creates resource on GL thread, called only if key is not loaded
+     * @return new handle with its own reference
+     * @throws IllegalArgumentException if key is loaded with resource of another type
+     */
+    public <T extends GpuResource> Handle<T> acquire(String key, Class<T> type, Supplier<? extends T> create) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (!type.isInstance(entry.resource)) {
+                throw new IllegalArgumentException(key + " is loaded as " + entry.resource.getClass().getSimpleName());
+            }
+            hits++;
+        } else {
+            entry = new Entry(key, create.get());
+            entries.put(key, entry);
+            misses++;
+        }
+        return reference(entry);
+    }
+
+    /**
+     * Takes ownership of created resource
+     * @param key asset key
+     * @param resource resource which is not owned by another manager
+     * @return new handle with its own reference
+     * @throws IllegalArgumentException if key is already loaded
+     */
+    public <T extends GpuResource> Handle<T> add(String key, T resource) {
+        if (entries.containsKey(key)) {
+            throw new IllegalArgumentException(key + " is already loaded");
+        }
+        Entry entry = new Entry(key, resource);
+        entries.put(key, entry);
+        return reference(entry);
+    }
+
+    private <T extends GpuResource> Handle<T> reference(Entry entry) {
+        if (entry.references++ == 0) {
+            unreferenced.remove(entry.key);
+        }
+        return new Handle<>(entry);
+    }
+
+    private void release(Entry entry) {
+        if (--entry.references == 0) {
+            unreferenced.put(entry.key, entry);
+            evictOver(budgetBytes);
+        }
+    }
+
+    /**
+     * Evicts the least recently released resources until unreferenced ones take at most given bytes,
+     * all of them if budget is 0
+     */
+    private void evictOver(long budget) {
+        long bytes = getUnreferencedBytes();
+        Iterator<Entry> iterator = unreferenced.values().iterator();
+        while ((bytes > budget || budget == 0) && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entries.remove(entry.key);
+            bytes -= entry.resource.getGpuBytes();
+            evicted.add(entry.resource);
+            evictions++;
+        }
+    }
+
+    /**
+     * Evicts all unreferenced resources, e.g. when a level is unloaded
+     */
+    public void evictUnreferenced() {
+        evictOver(0);
+    }
+
+    /**
+     * Fences resources evicted since the previous update and deletes resources whose fence is signaled,
+     * called once per frame after drawing
+     */
+    public void update() {
+        if (!evicted.isEmpty()) {
+            pending.add(new Pending(GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0), evicted));
+            evicted = new ArrayList<>();
+        }
+        while (!pending.isEmpty()) {
+            Pending oldest = pending.peek();
+            int status = GL32.glClientWaitSync(oldest.fence, 0, 0);
+            if (status != GL32.GL_ALREADY_SIGNALED && status != GL32.GL_CONDITION_SATISFIED) {
+                break;
+            }
+            pending.poll();
+            GL32.glDeleteSync(oldest.fence);
+            for (GpuResource resource : oldest.resources) {
+                resource.destroy();
+                deletions++;
+            }
+        }
+    }
+
+    /**
+     * Deletes all resources, referenced ones included, and waiting fences. Called at shutdown on GL thread
+     */
+    public void destroy() {
+        for (Pending waiting : pending) {
+            GL32.glDeleteSync(waiting.fence);
+            waiting.resources.forEach(GpuResource::destroy);
+        }
+        pending.clear();
+        evicted.forEach(GpuResource::destroy);
+        evicted.clear();
+        for (Entry entry : entries.values()) {
+            entry.resource.destroy();
+        }
+        entries.clear();
+        unreferenced.clear();
+    }
+
+    /**
+     * Prints memory per resource type and cache counters
+     */
+    public void printStats() {
+        StringBuilder types = new StringBuilder();
+        for (Map.Entry<String, Long> type : getBytesByType().entrySet()) {
+            types.append(String.format(", %s %.1f MB", type.getKey(), type.getValue() / 1048576.0));
+        }
+        System.out.printf("Resources: %d loaded, %d unreferenced %.1f of %.1f MB%s; %d hits, %d misses, %d evicted, %d deleted%n",
+                entries.size(), unreferenced.size(), getUnreferencedBytes() / 1048576.0, budgetBytes / 1048576.0,
+                types, hits, misses, evictions, deletions);
+    }
+
+    /**
+     * @return GPU memory of loaded resources by simple class name of resource
+     */
+    public Map<String, Long> getBytesByType() {
+        Map<String, Long> bytes = new TreeMap<>();
+        for (Entry entry : entries.values()) {
+            bytes.merge(entry.resource.getClass().getSimpleName(), entry.resource.getGpuBytes(), Long::sum);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return GPU memory of loaded resources in bytes, unreferenced ones included
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            bytes += entry.resource.getGpuBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return GPU memory of unreferenced resources in bytes
+     */
+    public long getUnreferencedBytes() {
+        long bytes = 0;
+        for (Entry entry : unreferenced.values()) {
+            bytes += entry.resource.getGpuBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * sets GPU memory unreferenced resources may keep, resources over it are evicted at once
+     * @param budgetBytes budget in bytes, not negative
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Resource budget must not be negative");
+        }
+        this.budgetBytes = budgetBytes;
+        evictOver(budgetBytes);
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @param key asset key
+     * @return true if resource of key is loaded, referenced or not
+     */
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return number of loaded resources
+     */
+    public int getResourceCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of acquires which found the key loaded
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of acquires which created the resource
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of resources evicted over budget or by {@link #evictUnreferenced()}
+     */
+    public int getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return number of evicted resources deleted after their fence
+     */
+    public int getDeletionCount() {
+        return deletions;
+    }
+
+    /**
+     * @return number of evicted resources waiting for GPU
+     */
+    public int getPendingCount() {
+        int count = evicted.size();
+        for (Pending waiting : pending) {
+            count += waiting.resources.size();
+        }
+        return count;
+    }
+}
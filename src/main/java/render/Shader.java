@@ -1,21 +1,87 @@
 package render;
 
+import math.Matrix4f;
+import math.Vector3f;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryStack;
+import utils.StringIntMap;
 import utils.Utils;
 
+import java.nio.IntBuffer;
+
+/**
+ * Shader class Shader.java for programs made of vertex and fragment shader.
+ * Locations of active uniforms are looked up once after linking, typed setters use the cached locations and
+ * remember uploaded values, so setting the value uniform already has does not call GL. A setter whose number of
+ * components differs from the declared type of uniform is rejected, so it can not corrupt cached values of others.
+ * Uniform block {@link FrameUniforms#BLOCK_NAME} is bound to {@link FrameUniforms#BINDING} if program declares it.
+ * Linked programs are stored in {@link ProgramCache}
+ */
+public class Shader implements GpuResource {
+
+    /**
+     * true if programs are validated after linking, validation result depends on GL state, so it is off by default
+     */
+    public static final boolean VALIDATE = Boolean.getBoolean("engine.validateShaders");
 
-public class Shader {
     private String vertexFile, fragmentFile;
     private int vertexID, fragmentID, programID;
 
+    private final StringIntMap uniforms = new StringIntMap();
+    private int[] locations = new int[0];
+    private int[] valueOffsets = new int[0];
+    private int[] componentCounts = new int[0];
+    private boolean[] known = new boolean[0];
+    private int[] values = new int[0];
+    private final float[] matrix = new float[Matrix4f.SIZE];
+    private int uploadCount, skippedCount;
+
     public Shader(String vertexPath, String fragmentPath) {
         vertexFile = Utils.loadAsString(vertexPath);
         fragmentFile = Utils.loadAsString(fragmentPath);
     }
 
+    private Shader() {
+    }
+
+    /**
+     * Creates shader from sources which are already loaded, program is compiled by {@link #create()}
+     * @param vertexSource source of vertex shader
+     * @param fragmentSource source of fragment shader
+     * @return new shader
+     */
+    public static Shader fromSource(String vertexSource, String fragmentSource) {
+        Shader shader = new Shader();
+        shader.vertexFile = vertexSource;
+        shader.fragmentFile = fragmentSource;
+        return shader;
+    }
+
+    /**
+     * Loads program from {@link ProgramCache#getDefault()} or compiles and links it from source and caches it.
+     * Program is validated only with -Dengine.validateShaders=true
+     */
     public void create() {
         programID = GL20.glCreateProgram();
+        ProgramCache cache = ProgramCache.getDefault();
+        if (cache != null && !ProgramCache.isSupported()) {
+            cache = null;
+        }
+        String key = null;
+        if (cache != null) {
+            key = cache.key(vertexFile, fragmentFile);
+            if (cache.load(programID, key)) {
+                linked();
+                return;
+            }
+            cache.prepare(programID);
+        }
+        long start = System.nanoTime();
+
         vertexID = GL20.glCreateShader(GL20.GL_VERTEX_SHADER);
 
         GL20.glShaderSource(vertexID, vertexFile);
@@ -45,16 +111,33 @@ public class Shader {
             return;
         }
 
-        GL20.glValidateProgram(programID);
-        if (GL20.glGetProgrami(programID, GL20.GL_VALIDATE_STATUS) == GL11.GL_FALSE) {
-            System.err.println("Program Validation: " + GL20.glGetProgramInfoLog(programID));
-            return;
+        if (cache != null) {
+            cache.store(programID, key, System.nanoTime() - start);
+        }
+        linked();
+
+        if (VALIDATE) {
+            GL20.glValidateProgram(programID);
+            if (GL20.glGetProgrami(programID, GL20.GL_VALIDATE_STATUS) == GL11.GL_FALSE) {
+                System.err.println("Program Validation: " + GL20.glGetProgramInfoLog(programID));
+            }
         }
 
         GL20.glDeleteShader(vertexID);
         GL20.glDeleteShader(fragmentID);
     }
 
+    /**
+     * Caches uniforms and binds frame uniform block of linked program
+     */
+    private void linked() {
+        cacheUniforms();
+        int frameBlock = GL31.glGetUniformBlockIndex(programID, FrameUniforms.BLOCK_NAME);
+        if (frameBlock != GL31.GL_INVALID_INDEX) {
+            GL31.glUniformBlockBinding(programID, frameBlock, FrameUniforms.BINDING);
+        }
+    }
+
     public void bind() {
         GL20.glUseProgram(programID);
     }
@@ -63,7 +146,272 @@ public class Shader {
         GL20.glUseProgram(0);
     }
 
+    @Override
     public void destroy() {
         GL20.glDeleteProgram(programID);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return 0, driver memory of programs is not visible
+     */
+    @Override
+    public long getGpuBytes() {
+        return 0;
+    }
+
+    public int getProgramID() {
+        return programID;
+    }
+
+    /**
+     * Looks up locations of all active uniforms outside of uniform blocks, array uniforms are stored without [0]
+     */
+    private void cacheUniforms() {
+        int count = GL20.glGetProgrami(programID, GL20.GL_ACTIVE_UNIFORMS);
+        uniforms.clear();
+        locations = new int[count];
+        valueOffsets = new int[count];
+        componentCounts = new int[count];
+        known = new boolean[count];
+        int slots = 0, valueCount = 0;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) {
+                String name = GL20.glGetActiveUniform(programID, i, size, type);
+                int location = GL20.glGetUniformLocation(programID, name);
+                if (location < 0) {
+                    continue;
+                }
+                if (name.endsWith("[0]")) {
+                    name = name.substring(0, name.length() - 3);
+                }
+                uniforms.put(name, slots);
+                locations[slots] = location;
+                valueOffsets[slots] = valueCount;
+                componentCounts[slots] = componentCount(type.get(0));
+                valueCount += componentCounts[slots];
+                slots++;
+            }
+        }
+        values = new int[valueCount];
+    }
+
+    private static int componentCount(int type) {
+        switch (type) {
+            case GL20.GL_FLOAT_VEC2:
+            case GL20.GL_INT_VEC2:
+            case GL20.GL_BOOL_VEC2:
+            case GL30.GL_UNSIGNED_INT_VEC2:
+                return 2;
+            case GL20.GL_FLOAT_VEC3:
+            case GL20.GL_INT_VEC3:
+            case GL20.GL_BOOL_VEC3:
+            case GL30.GL_UNSIGNED_INT_VEC3:
+                return 3;
+            case GL20.GL_FLOAT_VEC4:
+            case GL20.GL_INT_VEC4:
+            case GL20.GL_BOOL_VEC4:
+            case GL30.GL_UNSIGNED_INT_VEC4:
+            case GL20.GL_FLOAT_MAT2:
+                return 4;
+            case GL21.GL_FLOAT_MAT2x3:
+            case GL21.GL_FLOAT_MAT3x2:
+                return 6;
+            case GL21.GL_FLOAT_MAT2x4:
+            case GL21.GL_FLOAT_MAT4x2:
+                return 8;
+            case GL20.GL_FLOAT_MAT3:
+                return 9;
+            case GL21.GL_FLOAT_MAT3x4:
+            case GL21.GL_FLOAT_MAT4x3:
+                return 12;
+            case GL20.GL_FLOAT_MAT4:
+                return 16;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Returns cached location of uniform
+     * @param name name of uniform
+     * @return location or -1 if program has no such active uniform
+     */
+    public int getUniformLocation(String name) {
+        int slot = uniforms.get(name, -1);
+        return slot < 0 ? -1 : locations[slot];
+    }
+
+    /**
+     * Sets float uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, float value) {
+        int slot = slot(name, 1);
+        if (slot < 0) {
+            return;
+        }
+        if (changed(slot, 0, Float.floatToRawIntBits(value)) | unknown(slot)) {
+            GL20.glUniform1f(locations[slot], value);
+            uploadCount++;
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * Sets int or sampler uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, int value) {
+        int slot = slot(name, 1);
+        if (slot < 0) {
+            return;
+        }
+        if (changed(slot, 0, value) | unknown(slot)) {
+            GL20.glUniform1i(locations[slot], value);
+            uploadCount++;
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * Sets bool uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, boolean value) {
+        setUniform(name, value ? 1 : 0);
+    }
+
+    /**
+     * Sets vec2 uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, float x, float y) {
+        int slot = slot(name, 2);
+        if (slot < 0) {
+            return;
+        }
+        if (changed(slot, 0, Float.floatToRawIntBits(x)) | changed(slot, 1, Float.floatToRawIntBits(y)) | unknown(slot)) {
+            GL20.glUniform2f(locations[slot], x, y);
+            uploadCount++;
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * Sets vec3 uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, float x, float y, float z) {
+        int slot = slot(name, 3);
+        if (slot < 0) {
+            return;
+        }
+        if (changed(slot, 0, Float.floatToRawIntBits(x)) | changed(slot, 1, Float.floatToRawIntBits(y))
+                | changed(slot, 2, Float.floatToRawIntBits(z)) | unknown(slot)) {
+            GL20.glUniform3f(locations[slot], x, y, z);
+            uploadCount++;
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * Sets vec3 uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, Vector3f value) {
+        setUniform(name, value.getX(), value.getY(), value.getZ());
+    }
+
+    /**
+     * Sets vec4 uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, float x, float y, float z, float w) {
+        int slot = slot(name, 4);
+        if (slot < 0) {
+            return;
+        }
+        if (changed(slot, 0, Float.floatToRawIntBits(x)) | changed(slot, 1, Float.floatToRawIntBits(y))
+                | changed(slot, 2, Float.floatToRawIntBits(z)) | changed(slot, 3, Float.floatToRawIntBits(w))
+                | unknown(slot)) {
+            GL20.glUniform4f(locations[slot], x, y, z, w);
+            uploadCount++;
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * Sets mat4 uniform of bound program, uniforms which are not active are ignored
+     */
+    public void setUniform(String name, Matrix4f value) {
+        int slot = slot(name, Matrix4f.SIZE);
+        if (slot < 0) {
+            return;
+        }
+        value.get(matrix, 0);
+        boolean changed = unknown(slot);
+        for (int i = 0; i < Matrix4f.SIZE; i++) {
+            changed |= changed(slot, i, Float.floatToRawIntBits(matrix[i]));
+        }
+        if (changed) {
+            GL20.glUniformMatrix4fv(locations[slot], false, matrix);
+            uploadCount++;
+        } else {
+            skippedCount++;
+        }
+    }
+
+    /**
+     * Finds slot of active uniform and checks that setter matches its type
+     * @param components number of components setter uploads
+     * @return slot or -1 if program has no such active uniform
+     * @throws IllegalArgumentException if uniform has another number of components
+     */
+    private int slot(String name, int components) {
+        int slot = uniforms.get(name, -1);
+        if (slot >= 0 && componentCounts[slot] != components) {
+            throw new IllegalArgumentException("Uniform " + name + " has " + componentCounts[slot]
+                    + " components, not " + components);
+        }
+        return slot;
+    }
+
+    /**
+     * Stores component of uniform value, bits are compared so -0 and NaN values are handled exactly
+     * @return true if component differs from the stored one
+     */
+    private boolean changed(int slot, int component, int bits) {
+        int index = valueOffsets[slot] + component;
+        if (values[index] == bits) {
+            return false;
+        }
+        values[index] = bits;
+        return true;
+    }
+
+    /**
+     * Marks uniform as uploaded
+     * @return true if uniform was never uploaded through this class
+     */
+    private boolean unknown(int slot) {
+        if (known[slot]) {
+            return false;
+        }
+        known[slot] = true;
+        return true;
+    }
+
+    /**
+     * @return number of uniform uploads issued by setters
+     */
+    public int getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * @return number of setter calls skipped because uniform already had the value
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+}
@@ -0,0 +1,409 @@
+package render;
+
+import math.Matrix4f;
+import math.Vector3f;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StaticBatch class StaticBatch.java merges many non-moving meshes with the same interleaved {@link VertexFormat}
+ * into one shared vertex buffer and one shared index buffer. Data is copied on GPU with glCopyBufferSubData,
+ * indices are kept as they are and each mesh is drawn as a range with base vertex,
+ * so the whole batch costs one vertex array bind and one glMultiDrawElementsBaseVertex call.
+ * Indices stay 16-bit when all meshes have 16-bit indices, otherwise 16-bit ones are widened while copying
+ */
+public class StaticBatch implements GpuResource {
+
+    private final VertexFormat format;
+    private final List<Mesh> meshes = new ArrayList<>();
+    private final List<Matrix4f> transforms = new ArrayList<>();
+    private int vao, vbo, ibo;
+    private int vertexCount, indexCount;
+    private int indexType = GL11.GL_UNSIGNED_SHORT;
+    /**
+     * world bounding box of every range, minX, minY, minZ, maxX, maxY, maxZ
+     */
+    private float[] bounds = new float[6 * 16];
+    private IntBuffer counts, baseVertices;
+    private PointerBuffer offsets;
+    private boolean built;
+
+    /**
+     * Constructor of static batch
+     * @param format interleaved vertex format of all meshes in batch
+     * @throws IllegalArgumentException if format is not interleaved or its positions are quantized,
+     * meshes quantized to different bounding boxes can not share one draw
+     */
+    public StaticBatch(VertexFormat format) {
+        if (!format.isInterleaved()) {
+            throw new IllegalArgumentException("StaticBatch needs interleaved vertex format");
+        }
+        if (VertexQuantizer.hasBoundsRelativePositions(format)) {
+            throw new IllegalArgumentException("StaticBatch needs unquantized positions");
+        }
+        this.format = format;
+    }
+
+    /**
+     * Adds mesh whose vertices are already in world space
+     * @param mesh created mesh with the same vertex format
+     * @return index of range which draws this mesh
+     */
+    public int add(Mesh mesh) {
+        return add(mesh, null);
+    }
+
+    /**
+     * Adds mesh whose vertices are transformed by matrix while batch is built.
+     * Positions are transformed as points and normals as directions
+     * @param mesh created mesh with the same vertex format
+     * @param transform world matrix of mesh or null if vertices are already in world space
+     * @return index of range which draws this mesh
+     * @throws IllegalArgumentException if format of mesh differs from format of batch
+     */
+    public int add(Mesh mesh, Matrix4f transform) {
+        if (built) {
+            throw new IllegalStateException("StaticBatch is already built");
+        }
+        if (!mesh.getFormat().equals(format)) {
+            throw new IllegalArgumentException("Mesh vertex format differs from batch vertex format");
+        }
+        int range = meshes.size();
+        if (bounds.length < (range + 1) * 6) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        transformBounds(mesh.getBoundsMin(), mesh.getBoundsMax(), transform, bounds, range * 6);
+        meshes.add(mesh);
+        transforms.add(transform == null ? null : new Matrix4f(transform));
+        vertexCount += mesh.getVertexCount();
+        indexCount += mesh.getSize();
+        if (mesh.getIndexType() != GL11.GL_UNSIGNED_SHORT) {
+            indexType = GL11.GL_UNSIGNED_INT;
+        }
+        return meshes.size() - 1;
+    }
+
+    /**
+     * Stores box which contains local box transformed by matrix
+     */
+    private static void transformBounds(Vector3f min, Vector3f max, Matrix4f m, float[] dest, int off) {
+        if (m == null) {
+            dest[off] = min.getX();
+            dest[off + 1] = min.getY();
+            dest[off + 2] = min.getZ();
+            dest[off + 3] = max.getX();
+            dest[off + 4] = max.getY();
+            dest[off + 5] = max.getZ();
+            return;
+        }
+        float cx = (min.getX() + max.getX()) * 0.5f, ex = (max.getX() - min.getX()) * 0.5f;
+        float cy = (min.getY() + max.getY()) * 0.5f, ey = (max.getY() - min.getY()) * 0.5f;
+        float cz = (min.getZ() + max.getZ()) * 0.5f, ez = (max.getZ() - min.getZ()) * 0.5f;
+        for (int i = 0; i < 3; i++) {
+            float c = m.getCellValue(i, 0) * cx + m.getCellValue(i, 1) * cy + m.getCellValue(i, 2) * cz + m.getCellValue(i, 3);
+            float e = Math.abs(m.getCellValue(i, 0)) * ex + Math.abs(m.getCellValue(i, 1)) * ey + Math.abs(m.getCellValue(i, 2)) * ez;
+            dest[off + i] = c - e;
+            dest[off + 3 + i] = c + e;
+        }
+    }
+
+    /**
+     * Creates shared buffers and copies data of all added meshes into them.
+     * Meshes themselves are not changed and can be destroyed afterwards
+     */
+    public void build() {
+        if (built) {
+            throw new IllegalStateException("StaticBatch is already built");
+        }
+        int vertexSize = format.getVertexSize();
+        int indexSize = MeshOptimizer.indexSize(indexType);
+        counts = MemoryUtil.memAllocInt(meshes.size());
+        baseVertices = MemoryUtil.memAllocInt(meshes.size());
+        offsets = MemoryUtil.memAllocPointer(meshes.size());
+
+        vao = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(vao);
+        vbo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) vertexCount * vertexSize, GL15.GL_STATIC_DRAW);
+        format.enableAttributes(vertexCount);
+        ibo = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, (long) indexCount * indexSize, GL15.GL_STATIC_DRAW);
+        GL30.glBindVertexArray(0);
+
+        int vertexOffset = 0, indexOffset = 0;
+        for (int i = 0; i < meshes.size(); i++) {
+            Mesh mesh = meshes.get(i);
+            long vertexBytes = (long) mesh.getVertexCount() * vertexSize;
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, mesh.getPBO());
+            GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, vbo);
+            if (transforms.get(i) == null) {
+                GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, (long) vertexOffset * vertexSize, vertexBytes);
+            } else {
+                bakeVertices(mesh, transforms.get(i), (long) vertexOffset * vertexSize);
+            }
+
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, mesh.getIBO());
+            GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, ibo);
+            if (mesh.getIndexType() == indexType) {
+                GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0,
+                        (long) indexOffset * indexSize, (long) mesh.getSize() * indexSize);
+            } else {
+                widenIndices(mesh, (long) indexOffset * indexSize);
+            }
+
+            counts.put(i, mesh.getSize());
+            baseVertices.put(i, vertexOffset);
+            offsets.put(i, (long) indexOffset * indexSize);
+            vertexOffset += mesh.getVertexCount();
+            indexOffset += mesh.getSize();
+        }
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+        meshes.clear();
+        transforms.clear();
+        built = true;
+    }
+
+    /**
+     * Reads vertices of mesh back, transforms positions and normals and writes them to batch vertex buffer.
+     * Normals are transformed by inverse transpose of upper 3x3 of transform, so they stay perpendicular to
+     * surfaces under non-uniform scale.
+     * Expects mesh buffer bound to GL_COPY_READ_BUFFER and batch buffer bound to GL_COPY_WRITE_BUFFER
+     */
+    private void bakeVertices(Mesh mesh, Matrix4f transform, long writeOffset) {
+        int vertexSize = format.getVertexSize();
+        ByteBuffer data = MemoryUtil.memAlloc(mesh.getVertexCount() * vertexSize);
+        try {
+            GL15.glGetBufferSubData(GL31.GL_COPY_READ_BUFFER, 0, data);
+            transformElement(data, mesh.getVertexCount(), VertexFormat.Attribute.POSITION, transform, 1);
+            transformElement(data, mesh.getVertexCount(), VertexFormat.Attribute.NORMAL,
+                    normalMatrix(transform, new Matrix4f()), 0);
+            GL15.glBufferSubData(GL31.GL_COPY_WRITE_BUFFER, writeOffset, data);
+        } finally {
+            MemoryUtil.memFree(data);
+        }
+    }
+
+    /**
+     * Reads 16-bit indices of mesh back and writes them to batch index buffer as 32-bit indices.
+     * Expects mesh buffer bound to GL_COPY_READ_BUFFER and batch buffer bound to GL_COPY_WRITE_BUFFER
+     */
+    private void widenIndices(Mesh mesh, long writeOffset) {
+        ShortBuffer shorts = MemoryUtil.memAllocShort(mesh.getSize());
+        IntBuffer ints = MemoryUtil.memAllocInt(mesh.getSize());
+        try {
+            GL15.glGetBufferSubData(GL31.GL_COPY_READ_BUFFER, 0, shorts);
+            for (int i = 0; i < mesh.getSize(); i++) {
+                ints.put(i, Short.toUnsignedInt(shorts.get(i)));
+            }
+            GL15.glBufferSubData(GL31.GL_COPY_WRITE_BUFFER, writeOffset, ints);
+        } finally {
+            MemoryUtil.memFree(shorts);
+            MemoryUtil.memFree(ints);
+        }
+    }
+
+    /**
+     * Writes cofactor matrix of upper 3x3 of m to dest, it is inverse transpose scaled by determinant, so normals
+     * transformed by it only need to be normalized. Sign of determinant is kept, so mirroring does not flip normals
+     * @return dest
+     */
+    private static Matrix4f normalMatrix(Matrix4f m, Matrix4f dest) {
+        float a = m.getCellValue(0, 0), b = m.getCellValue(0, 1), c = m.getCellValue(0, 2);
+        float d = m.getCellValue(1, 0), e = m.getCellValue(1, 1), f = m.getCellValue(1, 2);
+        float g = m.getCellValue(2, 0), h = m.getCellValue(2, 1), i = m.getCellValue(2, 2);
+        // rows of cofactor matrix are cross products of the other two rows
+        float c00 = e * i - f * h, c01 = f * g - d * i, c02 = d * h - e * g;
+        float c10 = c * h - b * i, c11 = a * i - c * g, c12 = b * g - a * h;
+        float c20 = b * f - c * e, c21 = c * d - a * f, c22 = a * e - b * d;
+        float sign = a * c00 + b * c01 + c * c02 < 0 ? -1 : 1;
+        return dest.set(c00 * sign, c01 * sign, c02 * sign, 0,
+                c10 * sign, c11 * sign, c12 * sign, 0,
+                c20 * sign, c21 * sign, c22 * sign, 0,
+                0, 0, 0, 1);
+    }
+
+    private void transformElement(ByteBuffer data, int count, VertexFormat.Attribute attribute, Matrix4f m, float w) {
+        int element = format.indexOf(attribute);
+        if (element < 0) {
+            return;
+        }
+        VertexFormat.Element e = format.getElement(element);
+        if (e.getType() != GL11.GL_FLOAT || e.getComponents() != 3) {
+            throw new IllegalStateException("StaticBatch can transform only three float " + attribute);
+        }
+        int stride = format.getVertexSize();
+        for (int i = 0, offset = format.getElementOffset(element); i < count; i++, offset += stride) {
+            float x = data.getFloat(offset), y = data.getFloat(offset + 4), z = data.getFloat(offset + 8);
+            float tx = m.getCellValue(0, 0) * x + m.getCellValue(0, 1) * y + m.getCellValue(0, 2) * z + m.getCellValue(0, 3) * w;
+            float ty = m.getCellValue(1, 0) * x + m.getCellValue(1, 1) * y + m.getCellValue(1, 2) * z + m.getCellValue(1, 3) * w;
+            float tz = m.getCellValue(2, 0) * x + m.getCellValue(2, 1) * y + m.getCellValue(2, 2) * z + m.getCellValue(2, 3) * w;
+            if (w == 0) {
+                float l = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+                if (l != 0) {
+                    tx /= l;
+                    ty /= l;
+                    tz /= l;
+                }
+            }
+            data.putFloat(offset, tx).putFloat(offset + 4, ty).putFloat(offset + 8, tz);
+        }
+    }
+
+    /**
+     * Draws all meshes of batch with one call, shader has to be bound by caller
+     */
+    public void draw() {
+        checkBuilt();
+        GL30.glBindVertexArray(vao);
+        GL32.glMultiDrawElementsBaseVertex(GL11.GL_TRIANGLES, counts, indexType, offsets, baseVertices);
+        GL30.glBindVertexArray(0);
+    }
+
+    /**
+     * Draws one mesh of batch. Vertex array of batch has to be bound by caller, see {@link #getVAO()}
+     * @param range index returned by {@link #add(Mesh)}
+     */
+    public void drawRange(int range) {
+        checkBuilt();
+        GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, counts.get(range), indexType,
+                offsets.get(range), baseVertices.get(range));
+    }
+
+    /**
+     * Deletes shared buffers and frees draw range arrays
+     */
+    @Override
+    public void destroy() {
+        if (!built) {
+            return;
+        }
+        GL30.glDeleteVertexArrays(vao);
+        GL15.glDeleteBuffers(vbo);
+        GL15.glDeleteBuffers(ibo);
+        MemoryUtil.memFree(counts);
+        MemoryUtil.memFree(baseVertices);
+        MemoryUtil.memFree(offsets);
+        built = false;
+    }
+
+    /**
+     * @return size of shared vertex and index buffers in bytes, 0 before build
+     */
+    @Override
+    public long getGpuBytes() {
+        return built ? (long) vertexCount * format.getVertexSize() + (long) indexCount * MeshOptimizer.indexSize(indexType) : 0;
+    }
+
+    private void checkBuilt() {
+        if (!built) {
+            throw new IllegalStateException("StaticBatch is not built");
+        }
+    }
+
+    /**
+     * @return number of meshes in batch
+     */
+    public int getRangeCount() {
+        return built ? counts.capacity() : meshes.size();
+    }
+
+    /**
+     * @param range index returned by {@link #add(Mesh)}
+     * @return number of indices of range
+     */
+    int getCount(int range) {
+        return counts.get(range);
+    }
+
+    /**
+     * @param range index returned by {@link #add(Mesh)}
+     * @return index of the first index of range in shared index buffer
+     */
+    int getFirstIndex(int range) {
+        return (int) (offsets.get(range) / MeshOptimizer.indexSize(indexType));
+    }
+
+    /**
+     * @return GL type of indices in shared index buffer, decided by meshes added before {@link #build()}
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @param range index returned by {@link #add(Mesh)}
+     * @return index of the first vertex of range in shared vertex buffer
+     */
+    int getBaseVertex(int range) {
+        return baseVertices.get(range);
+    }
+
+    /**
+     * Bounding box of range in space of batch vertices, including transform given to {@link #add(Mesh, Matrix4f)}
+     * @param range index returned by {@link #add(Mesh)}
+     * @param dest array to store minX, minY, minZ, maxX, maxY, maxZ
+     * @param off index of first value in dest
+     */
+    public void getBounds(int range, float[] dest, int off) {
+        if (range < 0 || range >= getRangeCount()) {
+            throw new IllegalArgumentException("Range " + range + " is not in batch");
+        }
+        System.arraycopy(bounds, range * 6, dest, off, 6);
+    }
+
+    /**
+     * @return shared vertex buffer object
+     */
+    public int getVBO() {
+        return vbo;
+    }
+
+    /**
+     * @return shared vertex array object
+     */
+    public int getVAO() {
+        return vao;
+    }
+
+    /**
+     * @return shared index buffer object
+     */
+    public int getIBO() {
+        return ibo;
+    }
+
+    /**
+     * @return total number of vertices in batch
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return total number of indices in batch
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+}
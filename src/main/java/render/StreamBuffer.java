@@ -0,0 +1,228 @@
+package render;
+
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * StreamBuffer class StreamBuffer.java is a ring allocator for data which is written by CPU every frame
+ * (particles, instance data, debug lines). Buffer is split into {@link #REGIONS} regions, one per frame in flight.
+ * With ARB_buffer_storage buffer is mapped once persistently and coherently, CPU writes straight into it and
+ * a fence after each frame tells when its region can be written again. Without it buffer is orphaned and mapped
+ * every frame. Usage per frame: begin(), allocate() and write to getBuffer(), flush(), draw, end()
+ */
+public class StreamBuffer implements GpuResource {
+
+    /**
+     * number of frames CPU may write ahead of GPU
+     */
+    public static final int REGIONS = 3;
+
+    private final int target;
+    private final int regionSize;
+    private final int bufferID;
+    private final boolean persistent;
+    private final long[] fences = new long[REGIONS];
+    private ByteBuffer mapped;
+    /**
+     * wrapper of the last mapping of orphaning fallback, LWJGL returns it again instead of allocating a new one
+     * when the driver maps storage at the same address
+     */
+    private ByteBuffer lastMapped;
+    private int region;
+    private long head;
+    private long regionEnd;
+    private boolean writing;
+
+    private int stallCount;
+    private long stallNanos;
+
+    /**
+     * Constructor of stream buffer, buffer stays bound to target
+     * @param target GL buffer target, e.g. GL_ARRAY_BUFFER
+     * @param regionSize number of bytes which can be allocated in one frame
+     */
+    public StreamBuffer(int target, int regionSize) {
+        this.target = target;
+        this.regionSize = regionSize;
+        this.bufferID = GL15.glGenBuffers();
+        GLCapabilities capabilities = GL.getCapabilities();
+        this.persistent = capabilities.OpenGL44 || capabilities.GL_ARB_buffer_storage;
+
+        GL15.glBindBuffer(target, bufferID);
+        if (persistent) {
+            int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+            long size = (long) regionSize * REGIONS;
+            if (capabilities.OpenGL44) {
+                GL44.glBufferStorage(target, size, flags);
+            } else {
+                ARBBufferStorage.glBufferStorage(target, size, flags);
+            }
+            mapped = GL30.glMapBufferRange(target, 0, size, flags);
+        } else {
+            GL15.glBufferData(target, regionSize, GL15.GL_STREAM_DRAW);
+        }
+    }
+
+    /**
+     * Starts writing of a frame. Waits for GPU only if it is still reading the region written {@link #REGIONS} frames ago
+     */
+    public void begin() {
+        if (writing) {
+            throw new IllegalStateException("StreamBuffer frame is already started");
+        }
+        GL15.glBindBuffer(target, bufferID);
+        if (persistent) {
+            waitFence(region);
+            head = (long) region * regionSize;
+            regionEnd = head + regionSize;
+        } else {
+            // orphaning gives new storage, draws of previous frame keep reading the old one
+            GL15.glBufferData(target, regionSize, GL15.GL_STREAM_DRAW);
+            mapped = GL30.glMapBufferRange(target, 0, regionSize,
+                    GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_BUFFER_BIT, lastMapped);
+            lastMapped = mapped;
+            head = 0;
+            regionEnd = regionSize;
+        }
+        writing = true;
+    }
+
+    private void waitFence(int index) {
+        long fence = fences[index];
+        if (fence == 0) {
+            return;
+        }
+        int status = GL32.glClientWaitSync(fence, 0, 0);
+        if (status == GL32.GL_TIMEOUT_EXPIRED) {
+            long start = System.nanoTime();
+            do {
+                status = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000);
+            } while (status == GL32.GL_TIMEOUT_EXPIRED);
+            stallCount++;
+            stallNanos += System.nanoTime() - start;
+        }
+        GL32.glDeleteSync(fence);
+        fences[index] = 0;
+    }
+
+    /**
+     * Reserves bytes in region of current frame
+     * @param bytes number of bytes
+     * @param alignment alignment of returned offset in bytes, power of two
+     * @return offset of reserved bytes in GL buffer and in {@link #getBuffer()}
+     * @throws IllegalStateException if frame is not started or region has no space left
+     */
+    public long allocate(int bytes, int alignment) {
+        if (!writing) {
+            throw new IllegalStateException("StreamBuffer frame is not started");
+        }
+        long offset = (head + alignment - 1) & -alignment;
+        if (offset + bytes > regionEnd) {
+            throw new IllegalStateException("StreamBuffer region of " + regionSize + " bytes is full");
+        }
+        head = offset + bytes;
+        return offset;
+    }
+
+    /**
+     * Makes written data visible to GL, has to be called before draws which read the buffer
+     */
+    public void flush() {
+        if (!persistent && mapped != null) {
+            GL15.glBindBuffer(target, bufferID);
+            GL15.glUnmapBuffer(target);
+            mapped = null;
+        }
+    }
+
+    /**
+     * Finishes frame after all draws which read the buffer were issued
+     */
+    public void end() {
+        if (!writing) {
+            throw new IllegalStateException("StreamBuffer frame is not started");
+        }
+        if (persistent) {
+            fences[region] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            region = (region + 1) % REGIONS;
+        }
+        writing = false;
+    }
+
+    /**
+     * Deletes fences and buffer
+     */
+    @Override
+    public void destroy() {
+        for (int i = 0; i < REGIONS; i++) {
+            if (fences[i] != 0) {
+                GL32.glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        GL15.glBindBuffer(target, bufferID);
+        if (mapped != null) {
+            GL15.glUnmapBuffer(target);
+        }
+        GL15.glBindBuffer(target, 0);
+        GL15.glDeleteBuffers(bufferID);
+        mapped = null;
+        lastMapped = null;
+    }
+
+    /**
+     * Mapped memory of buffer, offsets returned by {@link #allocate(int, int)} index into it.
+     * Valid between begin() and flush()
+     * @return mapped buffer
+     */
+    public ByteBuffer getBuffer() {
+        return mapped;
+    }
+
+    public int getBufferID() {
+        return bufferID;
+    }
+
+    /**
+     * @return true if buffer is persistently mapped, false if orphaning fallback is used
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * @return size of buffer in bytes, all regions included
+     */
+    @Override
+    public long getGpuBytes() {
+        return persistent ? (long) regionSize * REGIONS : regionSize;
+    }
+
+    /**
+     * @return number of bytes which can be allocated in one frame
+     */
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * @return number of frames in which begin() had to wait for GPU
+     */
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * @return total time in nanoseconds spent waiting for GPU in begin()
+     */
+    public long getStallNanos() {
+        return stallNanos;
+    }
+}
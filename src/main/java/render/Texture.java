@@ -0,0 +1,224 @@
+package render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL13;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Texture class Texture.java is an RGBA8 2D texture whose mip levels are streamed by {@link TextureStreamer}.
+ * Resident levels are always the coarse end of the chain, from base level down to 1x1, and GL_TEXTURE_BASE_LEVEL
+ * keeps sampling inside them, so a texture is drawn at lower resolution while finer levels are missing.
+ * A texture with a reloader frees CPU copy of every level once it is uploaded and reads the chain again when an
+ * evicted level is needed, one without keeps the whole chain in host memory until it is destroyed.
+ * Created by {@link TextureStreamer#add(MipChain)} on GL thread
+ */
+public class Texture implements GpuResource {
+
+    private final int id;
+    private final TextureStreamer streamer;
+    private final int width, height, levelCount;
+    private MipChain source;
+    private Supplier<CompletableFuture<MipChain>> reloader;
+    private CompletableFuture<MipChain> reload;
+    private int baseLevel;
+    private long residentBytes;
+    private long lastUsed;
+
+    /**
+     * Creates GL texture without storage, levels are specified by {@link TextureStreamer}
+     */
+    Texture(TextureStreamer streamer, MipChain source, Supplier<CompletableFuture<MipChain>> reloader) {
+        this.streamer = streamer;
+        this.source = source;
+        this.reloader = reloader;
+        this.width = source.getWidth(0);
+        this.height = source.getHeight(0);
+        this.levelCount = source.getLevelCount();
+        this.baseLevel = levelCount;
+        this.id = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levelCount - 1);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Binds texture to texture unit and marks it as used in current frame, used textures keep their finer levels
+     * longer when memory of {@link TextureStreamer} is full
+     * @param unit texture unit, 0 for GL_TEXTURE0
+     */
+    public void bind(int unit) {
+        lastUsed = streamer.getFrame();
+        GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
+    }
+
+    /**
+     * Checks that CPU copy of level is in memory. Otherwise starts reading the chain again, or takes levels over
+     * from the chain once it is read. If reading fails the texture stays at its current resolution
+     * @return true if level can be uploaded now
+     */
+    boolean loadLevel(int level) {
+        if (source.getLevel(level) != null) {
+            return true;
+        }
+        if (reloader == null) {
+            return false;
+        }
+        if (reload == null) {
+            reload = reloader.get();
+        }
+        if (!reload.isDone()) {
+            return false;
+        }
+        try {
+            source.takeLevels(reload.join(), baseLevel);
+        } catch (CompletionException | IllegalArgumentException e) {
+            System.err.println("Couldn't read levels of texture " + id + " again, it stays at level " + baseLevel
+                    + ": " + (e instanceof CompletionException ? e.getCause() : e));
+            reloader = null;
+        } catch (CancellationException e) {
+            // loader was shut down
+            reloader = null;
+        }
+        reload = null;
+        return source.getLevel(level) != null;
+    }
+
+    /**
+     * Specifies level from pixel data and makes it the base level, level has to be base level - 1.
+     * CPU copy of level is freed afterwards if the texture can read it again
+     * @param pixels address of pixels in client memory, or offset in bound GL_PIXEL_UNPACK_BUFFER
+     */
+    void upload(int level, long pixels) {
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, GL11.GL_RGBA8, source.getWidth(level), source.getHeight(level), 0,
+                GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_BASE_LEVEL, level);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+        baseLevel = level;
+        residentBytes += source.getLevelBytes(level);
+        if (reloader != null) {
+            // client memory and pixel buffer are both copied by glTexImage2D
+            source.freeLevel(level);
+        }
+    }
+
+    /**
+     * Drops base level, storage of the level is released by respecifying it with zero size
+     */
+    void evictBaseLevel() {
+        int level = baseLevel;
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_BASE_LEVEL, level + 1);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, GL11.GL_RGBA8, 0, 0, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0L);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+        baseLevel = level + 1;
+        residentBytes -= source.getLevelBytes(level);
+    }
+
+    /**
+     * Removes texture from its streamer, deletes GL texture and frees its mip chain
+     */
+    @Override
+    public void destroy() {
+        streamer.remove(this);
+    }
+
+    /**
+     * @return GPU memory of resident levels in bytes
+     */
+    @Override
+    public long getGpuBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Deletes GL texture and frees its mip chain, called by {@link TextureStreamer}
+     */
+    void free() {
+        GL11.glDeleteTextures(id);
+        source.free();
+        source = null;
+        if (reload != null) {
+            reload.thenAccept(MipChain::free);
+            reload = null;
+        }
+        reloader = null;
+        residentBytes = 0;
+        baseLevel = levelCount;
+    }
+
+    /**
+     * @return CPU copy of levels, null after texture is removed
+     */
+    MipChain getSource() {
+        return source;
+    }
+
+    /**
+     * @param frame frame of {@link TextureStreamer} in which texture was used
+     */
+    void setLastUsed(long frame) {
+        lastUsed = frame;
+    }
+
+    /**
+     * @return frame of {@link TextureStreamer} in which texture was last bound, or added if it was never bound
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of levels of full chain
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @return the finest resident level, level count if no level is resident yet
+     */
+    public int getBaseLevel() {
+        return baseLevel;
+    }
+
+    /**
+     * @return true if at least one level is resident and the texture can be sampled
+     */
+    public boolean isResident() {
+        return baseLevel < levelCount;
+    }
+
+    /**
+     * @return true if all levels are resident
+     */
+    public boolean isComplete() {
+        return baseLevel == 0;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+}
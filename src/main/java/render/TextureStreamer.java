@@ -0,0 +1,337 @@
+package render;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * TextureStreamer class TextureStreamer.java uploads mip levels of {@link Texture} textures within a per-frame byte
+ * budget and keeps their GPU memory under a cap. Every texture streams from its coarsest level up and at each update
+ * the smallest missing levels of all textures go first, so new textures become visible at low resolution quickly
+ * and every texture gets coarse levels before any gets fine ones. Levels are written to a {@link StreamBuffer}
+ * bound as GL_PIXEL_UNPACK_BUFFER, so glTexImage2D copies from GPU-visible memory and does not block on the CPU copy.
+ * A level larger than the whole per-frame budget is uploaded alone from client memory.
+ * When the cap would be exceeded the finest levels of least recently used textures are evicted, but only of
+ * textures used less recently than the one which needs memory, so when the working set of a frame is larger than
+ * the cap textures stay at lower resolution instead of evicting each other every frame.
+ * Host memory: a texture added with a reloader keeps only levels which are not uploaded yet, the whole chain
+ * (about 4/3 of level 0) while it streams in and nothing once complete, an evicted level is read again through
+ * the reloader before it is uploaded. A texture added without one keeps its whole chain until it is removed.
+ * All methods are called on GL thread, {@link #update()} once per frame
+ */
+public class TextureStreamer {
+
+    /**
+     * default cap of texture memory, -Dengine.textureMemoryMB changes it
+     */
+    public static final long DEFAULT_MEMORY_BYTES = Long.getLong("engine.textureMemoryMB", 512) << 20;
+
+    /**
+     * default number of bytes uploaded per frame, -Dengine.textureUploadMB changes it
+     */
+    public static final int DEFAULT_UPLOAD_BYTES = Integer.getInteger("engine.textureUploadMB", 8) << 20;
+
+    private static final Comparator<Texture> UPLOAD_ORDER = Comparator
+            .comparingInt((Texture texture) -> texture.getSource().getLevelBytes(texture.getBaseLevel() - 1))
+            .thenComparing(Comparator.comparingLong(Texture::getLastUsed).reversed());
+
+    private final List<Texture> textures = new ArrayList<>();
+    private final List<Texture> missing = new ArrayList<>();
+    /**
+     * textures whose next level was copied to pixel buffer in this update, they are not evicted until it is uploaded
+     */
+    private final List<Texture> staged = new ArrayList<>();
+    private final List<Long> stagedOffsets = new ArrayList<>();
+    private final int uploadBytes;
+    private long memoryBytes;
+    private StreamBuffer pixels;
+    private long frame;
+    private long residentBytes;
+    private long uploadedBytes;
+    private int lastUploadBytes;
+    private int uploadedLevels;
+    private int evictedLevels;
+
+    public TextureStreamer() {
+        this(DEFAULT_MEMORY_BYTES, DEFAULT_UPLOAD_BYTES);
+    }
+
+    /**
+     * Constructor of texture streamer, does not call GL
+     * @param memoryBytes cap of GPU memory of all textures
+     * @param uploadBytes bytes uploaded per frame
+     */
+    public TextureStreamer(long memoryBytes, int uploadBytes) {
+        if (memoryBytes <= 0 || uploadBytes <= 0) {
+            throw new IllegalArgumentException("Texture memory and upload budget must be positive");
+        }
+        this.memoryBytes = memoryBytes;
+        this.uploadBytes = uploadBytes;
+    }
+
+    /**
+     * Creates texture whose levels are streamed from chain by later updates, streamer owns chain afterwards and
+     * keeps all its levels in host memory, so evicted levels can be uploaded again
+     * @param chain all levels of image
+     * @return texture without resident levels
+     */
+    public Texture add(MipChain chain) {
+        return add(chain, null);
+    }
+
+    /**
+     * Creates texture whose levels are streamed from chain by later updates, streamer owns chain afterwards.
+     * CPU copy of a level is freed once it is uploaded, evicted levels are read again with reloader
+     * @param chain all levels of image
+     * @param reloader starts reading the same chain again off the GL thread, null keeps all levels in host memory
+     * @return texture without resident levels
+     */
+    public Texture add(MipChain chain, Supplier<CompletableFuture<MipChain>> reloader) {
+        Texture texture = new Texture(this, chain, reloader);
+        texture.setLastUsed(frame);
+        textures.add(texture);
+        return texture;
+    }
+
+    /**
+     * Deletes texture and frees its memory
+     * @param texture texture created by this streamer
+     */
+    public void remove(Texture texture) {
+        if (textures.remove(texture)) {
+            residentBytes -= texture.getResidentBytes();
+            texture.free();
+        }
+    }
+
+    /**
+     * Evicts levels over the cap and uploads missing levels within the per-frame budget, called once per frame
+     * after drawing
+     */
+    public void update() {
+        frame++;
+        lastUploadBytes = 0;
+        while (residentBytes > memoryBytes && evictLeastRecentlyUsed(Long.MAX_VALUE)) {
+            // cap was lowered
+        }
+
+        missing.clear();
+        for (Texture texture : textures) {
+            // evicted levels freed on CPU are skipped until they are read again
+            if (texture.getBaseLevel() > 0 && texture.loadLevel(texture.getBaseLevel() - 1)) {
+                missing.add(texture);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        missing.sort(UPLOAD_ORDER);
+
+        if (pixels == null) {
+            pixels = new StreamBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, uploadBytes);
+        }
+        pixels.begin();
+        ByteBuffer mapped = pixels.getBuffer();
+        Texture direct = null;
+        int budget = uploadBytes;
+        for (Texture texture : missing) {
+            int level = texture.getBaseLevel() - 1;
+            if (!texture.loadLevel(level)) {
+                // its finest level was evicted for an earlier texture of this update and has to be read again
+                continue;
+            }
+            int bytes = texture.getSource().getLevelBytes(level);
+            boolean alone = bytes > uploadBytes && budget == uploadBytes;
+            if (bytes > budget && !alone) {
+                // textures are sorted by size of their next level, so no later one fits either
+                break;
+            }
+            if (!makeRoom(bytes, texture)) {
+                continue;
+            }
+            // memory is reserved now, so levels staged later in this update see it
+            residentBytes += bytes;
+            if (alone) {
+                direct = texture;
+                budget = 0;
+                break;
+            }
+            long offset = pixels.allocate(bytes, MipChain.PIXEL_BYTES);
+            MemoryUtil.memCopy(MemoryUtil.memAddress0(texture.getSource().getLevel(level)),
+                    MemoryUtil.memAddress0(mapped) + offset, bytes);
+            staged.add(texture);
+            stagedOffsets.add(offset);
+            budget -= bytes;
+        }
+        pixels.flush();
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, pixels.getBufferID());
+        for (int i = 0; i < staged.size(); i++) {
+            upload(staged.get(i), stagedOffsets.get(i));
+        }
+        staged.clear();
+        stagedOffsets.clear();
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        if (direct != null) {
+            upload(direct, MemoryUtil.memAddress0(direct.getSource().getLevel(direct.getBaseLevel() - 1)));
+        }
+        pixels.end();
+    }
+
+    private void upload(Texture texture, long pixels) {
+        int level = texture.getBaseLevel() - 1;
+        int bytes = texture.getSource().getLevelBytes(level);
+        texture.upload(level, pixels);
+        uploadedBytes += bytes;
+        lastUploadBytes += bytes;
+        uploadedLevels++;
+    }
+
+    /**
+     * Evicts finest levels of textures used less recently than requester until bytes fit under the cap
+     * @return false if not enough memory can be freed
+     */
+    private boolean makeRoom(long bytes, Texture requester) {
+        while (residentBytes + bytes > memoryBytes) {
+            if (!evictLeastRecentlyUsed(requester.getLastUsed())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evicts finest level of the least recently used texture which was used before given frame and has more than
+     * one resident level, so every texture which was ever resident can still be sampled
+     * @return false if there is no such texture
+     */
+    private boolean evictLeastRecentlyUsed(long before) {
+        Texture victim = null;
+        for (Texture texture : textures) {
+            if (texture.getLastUsed() < before && texture.getBaseLevel() < texture.getLevelCount() - 1
+                    && !staged.contains(texture) && (victim == null || texture.getLastUsed() < victim.getLastUsed())) {
+                victim = texture;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        residentBytes -= victim.getSource().getLevelBytes(victim.getBaseLevel());
+        victim.evictBaseLevel();
+        evictedLevels++;
+        return true;
+    }
+
+    /**
+     * Deletes all textures and the pixel buffer
+     */
+    public void destroy() {
+        for (Texture texture : textures) {
+            texture.free();
+        }
+        textures.clear();
+        residentBytes = 0;
+        if (pixels != null) {
+            pixels.destroy();
+            pixels = null;
+        }
+    }
+
+    /**
+     * Prints texture memory and streaming counters
+     */
+    public void printStats() {
+        int complete = 0;
+        for (Texture texture : textures) {
+            if (texture.isComplete()) {
+                complete++;
+            }
+        }
+        System.out.printf("Textures: %d, %d at full resolution, %.1f of %.1f MB resident, %.1f MB on host, %.1f MB in %d levels uploaded, %d levels evicted%n",
+                textures.size(), complete, residentBytes / 1048576.0, memoryBytes / 1048576.0, getHostBytes() / 1048576.0,
+                uploadedBytes / 1048576.0, uploadedLevels, evictedLevels);
+    }
+
+    /**
+     * sets cap of GPU memory of all textures, levels over the cap are evicted by next {@link #update()}
+     * @param memoryBytes positive number of bytes
+     */
+    public void setMemoryBytes(long memoryBytes) {
+        if (memoryBytes <= 0) {
+            throw new IllegalArgumentException("Texture memory must be positive");
+        }
+        this.memoryBytes = memoryBytes;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return number of bytes uploaded per frame
+     */
+    public int getUploadBytes() {
+        return uploadBytes;
+    }
+
+    /**
+     * @return GPU memory of resident levels of all textures in bytes
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return host memory of CPU copies of levels of all textures in bytes
+     */
+    public long getHostBytes() {
+        long bytes = 0;
+        for (Texture texture : textures) {
+            bytes += texture.getSource().getLoadedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of bytes uploaded by the last {@link #update()}
+     */
+    public int getLastUploadBytes() {
+        return lastUploadBytes;
+    }
+
+    /**
+     * @return number of bytes uploaded since streamer was created
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public int getUploadedLevels() {
+        return uploadedLevels;
+    }
+
+    public int getEvictedLevels() {
+        return evictedLevels;
+    }
+
+    /**
+     * @return number of textures
+     */
+    public int getTextureCount() {
+        return textures.size();
+    }
+
+    /**
+     * @return number of {@link #update()} calls, textures bound in the current frame are marked with it
+     */
+    public long getFrame() {
+        return frame;
+    }
+}
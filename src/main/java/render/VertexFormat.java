@@ -0,0 +1,302 @@
+package render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import java.util.Arrays;
+
+/**
+ * VertexFormat class VertexFormat.java describes which attributes vertex has and how they are laid out in vertex buffer.
+ * Interleaved format stores all attributes of a vertex next to each other, non-interleaved format stores
+ * every attribute of all vertices in its own block of the same buffer
+ */
+public class VertexFormat {
+
+    /**
+     * Vertex attribute, ordinal is attribute location in shader
+     */
+    public enum Attribute {
+        POSITION, NORMAL, UV, COLOR;
+
+        /**
+         * @return attribute location used in glVertexAttribPointer and layout(location = ...) in shaders
+         */
+        public int getLocation() {
+            return ordinal();
+        }
+    }
+
+    /**
+     * One attribute of vertex with its component count and GL type
+     */
+    public static class Element {
+
+        /**
+         * three floats of position
+         */
+        public static final Element POSITION = new Element(Attribute.POSITION, 3, GL11.GL_FLOAT, false);
+
+        /**
+         * three floats of normal
+         */
+        public static final Element NORMAL = new Element(Attribute.NORMAL, 3, GL11.GL_FLOAT, false);
+
+        /**
+         * two floats of texture coordinates
+         */
+        public static final Element UV = new Element(Attribute.UV, 2, GL11.GL_FLOAT, false);
+
+        /**
+         * four normalized unsigned bytes of color
+         */
+        public static final Element COLOR = new Element(Attribute.COLOR, 4, GL11.GL_UNSIGNED_BYTE, true);
+
+        /**
+         * four normalized unsigned shorts of position relative to bounding box of mesh, w is always 1,
+         * see {@link VertexQuantizer}
+         */
+        public static final Element POSITION_QUANTIZED = new Element(Attribute.POSITION, 4, GL11.GL_UNSIGNED_SHORT, true);
+
+        /**
+         * two normalized shorts of octahedral encoded normal, see {@link VertexQuantizer}
+         */
+        public static final Element NORMAL_OCTAHEDRAL = new Element(Attribute.NORMAL, 2, GL11.GL_SHORT, true);
+
+        /**
+         * two half floats of texture coordinates
+         */
+        public static final Element UV_HALF = new Element(Attribute.UV, 2, GL30.GL_HALF_FLOAT, false);
+
+        private final Attribute attribute;
+        private final int components;
+        private final int type;
+        private final boolean normalized;
+
+        /**
+         * Constructor of element
+         * @param attribute attribute of vertex
+         * @param components number of components
+         * @param type GL type of one component
+         * @param normalized whether integer values are normalized to [0, 1] or [-1, 1] by GL
+         */
+        public Element(Attribute attribute, int components, int type, boolean normalized) {
+            this.attribute = attribute;
+            this.components = components;
+            this.type = type;
+            this.normalized = normalized;
+        }
+
+        /**
+         * @return size of element in bytes
+         */
+        public int getSize() {
+            return components * typeSize(type);
+        }
+
+        public Attribute getAttribute() {
+            return attribute;
+        }
+
+        public int getComponents() {
+            return components;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public boolean isNormalized() {
+            return normalized;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Element)) {
+                return false;
+            }
+            Element element = (Element) other;
+            return attribute == element.attribute && components == element.components
+                    && type == element.type && normalized == element.normalized;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((attribute.ordinal() * 31 + components) * 31 + type) * 2 + (normalized ? 1 : 0);
+        }
+    }
+
+    /**
+     * Positions only, same layout as {@link Vertex}
+     */
+    public static final VertexFormat POSITION = new VertexFormat(true, Element.POSITION);
+
+    /**
+     * Interleaved position, normal and texture coordinates
+     */
+    public static final VertexFormat POSITION_NORMAL_UV = new VertexFormat(true, Element.POSITION, Element.NORMAL, Element.UV);
+
+    /**
+     * Interleaved quantized position, octahedral normal and half float texture coordinates, 16 bytes per vertex
+     * instead of 32 of {@link #POSITION_NORMAL_UV}. Meshes of this format draw with {@link Mesh#getModelMatrix}
+     */
+    public static final VertexFormat POSITION_NORMAL_UV_QUANTIZED = new VertexFormat(true,
+            Element.POSITION_QUANTIZED, Element.NORMAL_OCTAHEDRAL, Element.UV_HALF);
+
+    private final boolean interleaved;
+    private final Element[] elements;
+    private final int[] offsets;
+    private final Element[] byAttribute = new Element[Attribute.values().length];
+    private final int vertexSize;
+
+    /**
+     * Constructor of vertex format
+     * @param interleaved whether attributes of a vertex are stored next to each other
+     * @param elements attributes of vertex in order they are stored
+     * @throws IllegalArgumentException if there are no elements or an attribute is repeated
+     */
+    public VertexFormat(boolean interleaved, Element... elements) {
+        if (elements.length == 0) {
+            throw new IllegalArgumentException("Vertex format has no elements");
+        }
+        this.interleaved = interleaved;
+        this.elements = elements.clone();
+        this.offsets = new int[elements.length];
+        int size = 0;
+        for (int i = 0; i < elements.length; i++) {
+            Element element = elements[i];
+            if (byAttribute[element.attribute.ordinal()] != null) {
+                throw new IllegalArgumentException("Attribute " + element.attribute + " is repeated");
+            }
+            byAttribute[element.attribute.ordinal()] = element;
+            offsets[i] = size;
+            size += element.getSize();
+        }
+        this.vertexSize = size;
+    }
+
+    /**
+     * Sets vertex attribute pointers for buffer bound to GL_ARRAY_BUFFER and enables them in bound vertex array
+     * @param vertexCount number of vertices in buffer, used for non-interleaved layout
+     */
+    public void enableAttributes(int vertexCount) {
+        for (int i = 0; i < elements.length; i++) {
+            Element element = elements[i];
+            int location = element.attribute.getLocation();
+            GL20.glVertexAttribPointer(location, element.components, element.type, element.normalized,
+                    getStride(i), getOffset(i, vertexCount));
+            GL20.glEnableVertexAttribArray(location);
+        }
+    }
+
+    /**
+     * @param index index of element
+     * @return distance in bytes between the same element of two neighbouring vertices
+     */
+    public int getStride(int index) {
+        return interleaved ? vertexSize : elements[index].getSize();
+    }
+
+    /**
+     * @param index index of element
+     * @param vertexCount number of vertices in buffer
+     * @return offset in bytes of element of the first vertex
+     */
+    public long getOffset(int index, int vertexCount) {
+        return interleaved ? offsets[index] : (long) offsets[index] * vertexCount;
+    }
+
+    /**
+     * @param index index of element
+     * @return offset in bytes of element inside interleaved vertex, or sum of sizes of previous elements
+     */
+    public int getElementOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @param attribute attribute of vertex
+     * @return element of attribute or null if format does not have it
+     */
+    public Element getElement(Attribute attribute) {
+        return byAttribute[attribute.ordinal()];
+    }
+
+    /**
+     * @param attribute attribute of vertex
+     * @return index of attribute's element or -1 if format does not have it
+     */
+    public int indexOf(Attribute attribute) {
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i].attribute == attribute) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of elements
+     */
+    public int getElementCount() {
+        return elements.length;
+    }
+
+    /**
+     * @param index index of element
+     * @return element at index
+     */
+    public Element getElement(int index) {
+        return elements[index];
+    }
+
+    /**
+     * @return size of one vertex in bytes
+     */
+    public int getVertexSize() {
+        return vertexSize;
+    }
+
+    public boolean isInterleaved() {
+        return interleaved;
+    }
+
+    /**
+     * Formats are equal if they have equal elements in the same order and the same layout
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof VertexFormat)) {
+            return false;
+        }
+        VertexFormat format = (VertexFormat) other;
+        return interleaved == format.interleaved && Arrays.equals(elements, format.elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(elements) * 2 + (interleaved ? 1 : 0);
+    }
+
+    /**
+     * @param type GL type
+     * @return size of type in bytes
+     */
+    static int typeSize(int type) {
+        switch (type) {
+            case GL11.GL_BYTE:
+            case GL11.GL_UNSIGNED_BYTE:
+                return 1;
+            case GL11.GL_SHORT:
+            case GL11.GL_UNSIGNED_SHORT:
+            case GL30.GL_HALF_FLOAT:
+                return 2;
+            case GL11.GL_INT:
+            case GL11.GL_UNSIGNED_INT:
+            case GL11.GL_FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported vertex attribute type " + type);
+        }
+    }
+}
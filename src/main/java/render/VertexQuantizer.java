@@ -0,0 +1,292 @@
+package render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.ByteBuffer;
+
+/**
+ * VertexQuantizer class VertexQuantizer.java encodes and decodes vertex attributes of any {@link VertexFormat.Element}.
+ * Normalized unsigned integer positions are relative to bounding box of mesh, 0 is minimum and the largest value is
+ * maximum, so GL gives the shader positions in [0, 1] and {@link Mesh#getDequantization(math.Matrix4f)} scales them back
+ * as part of model matrix. Normals with two components are octahedral encoded, GLSL decoding of attribute e is
+ * <pre>
+ * vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+ * float t = max(-n.z, 0.0);
+ * n.xy += vec2(n.x &gt;= 0.0 ? -t : t, n.y &gt;= 0.0 ? -t : t);
+ * n = normalize(n);
+ * </pre>
+ * Other normalized integers are in [0, 1] or [-1, 1], half floats are read by GL as they are.
+ * Does not call GL, so it can run on loader threads
+ */
+public final class VertexQuantizer {
+
+    private VertexQuantizer() {
+    }
+
+    /**
+     * @param element element of vertex format
+     * @return whether element is position stored relative to bounding box of mesh
+     */
+    public static boolean isBoundsRelative(VertexFormat.Element element) {
+        return element.getAttribute() == VertexFormat.Attribute.POSITION && element.isNormalized()
+                && (element.getType() == GL11.GL_UNSIGNED_SHORT || element.getType() == GL11.GL_UNSIGNED_BYTE);
+    }
+
+    /**
+     * @param format vertex format
+     * @return whether positions of format are stored relative to bounding box of mesh
+     */
+    public static boolean hasBoundsRelativePositions(VertexFormat format) {
+        VertexFormat.Element position = format.getElement(VertexFormat.Attribute.POSITION);
+        return position != null && isBoundsRelative(position);
+    }
+
+    /**
+     * @param format vertex format
+     * @return format with the same layout where bounds relative positions are replaced by three floats,
+     * the format itself if its positions are not bounds relative
+     */
+    public static VertexFormat withFloatPositions(VertexFormat format) {
+        if (!hasBoundsRelativePositions(format)) {
+            return format;
+        }
+        VertexFormat.Element[] elements = new VertexFormat.Element[format.getElementCount()];
+        for (int i = 0; i < elements.length; i++) {
+            VertexFormat.Element element = format.getElement(i);
+            elements[i] = isBoundsRelative(element) ? VertexFormat.Element.POSITION : element;
+        }
+        return new VertexFormat(format.isInterleaved(), elements);
+    }
+
+    /**
+     * Encodes one attribute, components which element does not have are ignored
+     * @param element element to write
+     * @param data destination buffer
+     * @param offset absolute offset of element in data
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of mesh, used by bounds relative positions
+     * @throws IllegalStateException if type of element can not be written
+     */
+    public static void write(VertexFormat.Element element, ByteBuffer data, int offset, float x, float y, float z, float w,
+                             float[] bounds) {
+        int components = element.getComponents();
+        if (element.getAttribute() == VertexFormat.Attribute.NORMAL && components == 2) {
+            // octahedral: project onto |x| + |y| + |z| = 1 and fold the lower half over the diagonals
+            float l = Math.abs(x) + Math.abs(y) + Math.abs(z);
+            float u = l > 0 ? x / l : 0, v = l > 0 ? y / l : 0;
+            if (z < 0) {
+                float fu = (1 - Math.abs(v)) * sign(u), fv = (1 - Math.abs(u)) * sign(v);
+                u = fu;
+                v = fv;
+            }
+            x = u;
+            y = v;
+        } else if (isBoundsRelative(element)) {
+            x = relative(x, bounds[0], bounds[3]);
+            y = relative(y, bounds[1], bounds[4]);
+            z = relative(z, bounds[2], bounds[5]);
+            w = 1;
+        }
+        int size = VertexFormat.typeSize(element.getType());
+        putComponent(element, data, offset, x);
+        if (components > 1) putComponent(element, data, offset + size, y);
+        if (components > 2) putComponent(element, data, offset + size * 2, z);
+        if (components > 3) putComponent(element, data, offset + size * 3, w);
+    }
+
+    /**
+     * Decodes one attribute, components which element does not have are 0
+     * @param element element to read
+     * @param data source buffer
+     * @param offset absolute offset of element in data
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of mesh, used by bounds relative positions
+     * @param dest array of at least 4 floats for the decoded components
+     * @return dest array
+     * @throws IllegalStateException if type of element can not be read
+     */
+    public static float[] read(VertexFormat.Element element, ByteBuffer data, int offset, float[] bounds, float[] dest) {
+        int components = element.getComponents();
+        int size = VertexFormat.typeSize(element.getType());
+        for (int c = 0; c < 4; c++) {
+            dest[c] = c < components ? getComponent(element, data, offset + size * c) : 0;
+        }
+        if (element.getAttribute() == VertexFormat.Attribute.NORMAL && components == 2) {
+            float x = dest[0], y = dest[1], z = 1 - Math.abs(x) - Math.abs(y);
+            if (z < 0) {
+                float fx = (1 - Math.abs(y)) * sign(x), fy = (1 - Math.abs(x)) * sign(y);
+                x = fx;
+                y = fy;
+            }
+            float l = (float) Math.sqrt(x * x + y * y + z * z);
+            dest[0] = x / l;
+            dest[1] = y / l;
+            dest[2] = z / l;
+        } else if (isBoundsRelative(element)) {
+            for (int c = 0; c < 3; c++) {
+                dest[c] = bounds[c] + dest[c] * (bounds[c + 3] - bounds[c]);
+            }
+            dest[3] = 0;
+        }
+        return dest;
+    }
+
+    /**
+     * Converts vertices from one format to another, attributes which source format does not have are zero
+     * @param srcFormat format of source vertices
+     * @param src vertices laid out as {@link VertexFormat#getOffset(int, int)} says from position, position is not changed
+     * @param destFormat format of converted vertices
+     * @param dest buffer with vertex count * vertex size of dest format bytes from position, position is not changed
+     * @param vertexCount number of vertices
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ of positions
+     */
+    public static void convert(VertexFormat srcFormat, ByteBuffer src, VertexFormat destFormat, ByteBuffer dest,
+                               int vertexCount, float[] bounds) {
+        float[] value = new float[4];
+        for (int i = 0; i < destFormat.getElementCount(); i++) {
+            VertexFormat.Element element = destFormat.getElement(i);
+            int j = srcFormat.indexOf(element.getAttribute());
+            int destOffset = dest.position() + (int) destFormat.getOffset(i, vertexCount);
+            int destStride = destFormat.getStride(i);
+            int srcOffset = j < 0 ? 0 : src.position() + (int) srcFormat.getOffset(j, vertexCount);
+            int srcStride = j < 0 ? 0 : srcFormat.getStride(j);
+            for (int v = 0; v < vertexCount; v++, destOffset += destStride, srcOffset += srcStride) {
+                if (j < 0) {
+                    value[0] = value[1] = value[2] = value[3] = 0;
+                } else {
+                    read(srcFormat.getElement(j), src, srcOffset, bounds, value);
+                }
+                write(element, dest, destOffset, value[0], value[1], value[2], value[3], bounds);
+            }
+        }
+    }
+
+    /**
+     * Converts float to IEEE 754 half float, rounding to nearest even
+     * @param value float value
+     * @return bits of half float
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        int shift, half;
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            // subnormal half, implicit leading bit becomes explicit
+            mantissa |= 0x800000;
+            shift = 14 - halfExponent;
+            half = mantissa >> shift;
+        } else {
+            shift = 13;
+            half = (halfExponent << 10) | (mantissa >> shift);
+        }
+        int rest = mantissa & ((1 << shift) - 1), halfway = 1 << (shift - 1);
+        // carry out of mantissa correctly increments exponent, up to infinity
+        if (rest > halfway || (rest == halfway && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * Converts IEEE 754 half float to float
+     * @param half bits of half float
+     * @return float value
+     */
+    public static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    private static void putComponent(VertexFormat.Element element, ByteBuffer data, int offset, float value) {
+        switch (element.getType()) {
+            case GL11.GL_FLOAT:
+                data.putFloat(offset, value);
+                return;
+            case GL30.GL_HALF_FLOAT:
+                data.putShort(offset, toHalf(value));
+                return;
+            default:
+                break;
+        }
+        if (!element.isNormalized()) {
+            throw new IllegalStateException("Can not write attribute type " + element.getType() + " which is not normalized");
+        }
+        switch (element.getType()) {
+            case GL11.GL_UNSIGNED_BYTE:
+                data.put(offset, (byte) Math.round(clamp(value, 0) * 0xff));
+                break;
+            case GL11.GL_BYTE:
+                data.put(offset, (byte) Math.round(clamp(value, -1) * 0x7f));
+                break;
+            case GL11.GL_UNSIGNED_SHORT:
+                data.putShort(offset, (short) Math.round(clamp(value, 0) * 0xffff));
+                break;
+            case GL11.GL_SHORT:
+                data.putShort(offset, (short) Math.round(clamp(value, -1) * 0x7fff));
+                break;
+            default:
+                throw new IllegalStateException("Can not write attribute type " + element.getType());
+        }
+    }
+
+    private static float getComponent(VertexFormat.Element element, ByteBuffer data, int offset) {
+        switch (element.getType()) {
+            case GL11.GL_FLOAT:
+                return data.getFloat(offset);
+            case GL30.GL_HALF_FLOAT:
+                return fromHalf(data.getShort(offset));
+            default:
+                break;
+        }
+        if (!element.isNormalized()) {
+            throw new IllegalStateException("Can not read attribute type " + element.getType() + " which is not normalized");
+        }
+        switch (element.getType()) {
+            case GL11.GL_UNSIGNED_BYTE:
+                return Byte.toUnsignedInt(data.get(offset)) / (float) 0xff;
+            case GL11.GL_BYTE:
+                return Math.max(data.get(offset) / (float) 0x7f, -1);
+            case GL11.GL_UNSIGNED_SHORT:
+                return Short.toUnsignedInt(data.getShort(offset)) / (float) 0xffff;
+            case GL11.GL_SHORT:
+                return Math.max(data.getShort(offset) / (float) 0x7fff, -1);
+            default:
+                throw new IllegalStateException("Can not read attribute type " + element.getType());
+        }
+    }
+
+    /**
+     * @return value mapped from [min, max] to [0, 1], 0 if the range is empty
+     */
+    private static float relative(float value, float min, float max) {
+        return max > min ? (value - min) / (max - min) : 0;
+    }
+
+    private static float clamp(float value, float min) {
+        return Math.max(min, Math.min(1, value));
+    }
+
+    private static float sign(float value) {
+        return value >= 0 ? 1 : -1;
+    }
+}
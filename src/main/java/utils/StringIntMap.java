@@ -0,0 +1,105 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Utils class StringIntMap.java maps strings to int values with open addressing and linear probing.
+ * Values are stored in a primitive array, so lookups do not box and do not allocate
+ */
+public final class StringIntMap {
+
+    private String[] keys;
+    private int[] values;
+    private int size;
+
+    public StringIntMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor of map
+     * @param expectedSize number of keys which fit without resizing
+     */
+    public StringIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new String[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Associates value with key, replacing previous value
+     * @param key key, not null
+     * @param value value
+     */
+    public void put(String key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @param key key, not null
+     * @param defaultValue value returned if key is not in map
+     * @return value of key or defaultValue
+     */
+    public int get(String key, int defaultValue) {
+        int slot = slot(key);
+        return keys[slot] == null ? defaultValue : values[slot];
+    }
+
+    /**
+     * @param key key, not null
+     * @return true if key is in map
+     */
+    public boolean containsKey(String key) {
+        return keys[slot(key)] != null;
+    }
+
+    /**
+     * Removes all keys
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /**
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds slot which holds key or the empty slot where it belongs
+     */
+    private int slot(String key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
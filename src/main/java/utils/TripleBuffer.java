@@ -0,0 +1,86 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Utils class TripleBuffer.java hands objects from one producer thread to one consumer thread without locks.
+ * Producer fills its write slot and publishes it, consumer takes the latest published slot. Three slots are
+ * exchanged through one atomic index, so neither side ever waits for the other and the slot consumer reads
+ * is never written at the same time. If producer publishes twice before consumer takes a slot,
+ * the older one is dropped and counted
+ * @param <T> type of slot, slots are reused and not copied
+ */
+public final class TripleBuffer<T> {
+
+    private static final int INDEX = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] slots = new Object[3];
+    /**
+     * index of slot in the middle, FRESH bit is set if it was published and not taken yet
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+    private volatile long dropped;
+
+    /**
+     * Constructor of triple buffer
+     * @param factory creates the three slots
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    /**
+     * Called by producer only
+     * @return slot which producer may write
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteSlot() {
+        return (T) slots[back];
+    }
+
+    /**
+     * Makes write slot available to consumer and gives producer another slot to write. Called by producer only
+     */
+    public void publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        if ((previous & FRESH) != 0) {
+            dropped++;
+        }
+        back = previous & INDEX;
+    }
+
+    /**
+     * Takes the latest published slot. Called by consumer only
+     * @return published slot or null if nothing was published since the last call
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & INDEX;
+        return (T) slots[front];
+    }
+
+    /**
+     * Called by consumer only
+     * @return slot returned by the last {@link #acquire()}
+     */
+    @SuppressWarnings("unchecked")
+    public T getReadSlot() {
+        return (T) slots[front];
+    }
+
+    /**
+     * @return number of published slots which were replaced before consumer took them
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+}
@@ -1,30 +1,37 @@
 package utils;
 
-import java.io.BufferedReader;
+import assets.AssetPack;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class Utils {
 
     /**
-     * This function return content of given file
+     * This function return content of given file, default {@link AssetPack} is looked up before classpath
      * @param path file to be read
      * @return content of file
      */
     public static String loadAsString(String path) {
 
-        StringBuilder result = new StringBuilder();
+        ByteBuffer packed = AssetPack.findDefault(path);
+        if (packed != null) {
+            return StandardCharsets.UTF_8.decode(packed).toString();
+        }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Class.class.getResourceAsStream(path)))) {
-            String line = "";
-            while ((line = reader.readLine()) != null) {
-                result.append(line).append("\n");
+        try (InputStream input = Utils.class.getResourceAsStream(path)) {
+            if (input == null) {
+                System.err.println("Couldn't find the file at " + path);
+                return "";
             }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
         } catch (IOException e) {
             System.err.println("Couldn't find the file at " + path);
         }
 
-        return result.toString();
+        return "";
 
     }
 
@@ -0,0 +1,83 @@
+package assets;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetLoaderTest {
+
+    @Test
+    void drainRunsGlStage() throws Exception {
+        AssetLoader loader = new AssetLoader();
+        CompletableFuture<Integer> future = loader.load(() -> "payload", String::length);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!future.isDone() && System.nanoTime() < deadline) {
+            loader.drain();
+        }
+        assertEquals(7, future.get(0, TimeUnit.SECONDS));
+        assertEquals(0, loader.getPendingCount());
+        loader.shutdown();
+    }
+
+    @Test
+    void shutdownCancelsQueuedGlStagesAndFreesPayloads() throws Exception {
+        AssetLoader loader = new AssetLoader();
+        AtomicInteger disposed = new AtomicInteger();
+        CountDownLatch worked = new CountDownLatch(1);
+        CompletableFuture<String> future = loader.load(() -> {
+            worked.countDown();
+            return "payload";
+        }, value -> value, value -> disposed.incrementAndGet());
+        assertTrue(worked.await(5, TimeUnit.SECONDS));
+
+        // GL stage is queued or about to be, it is never drained
+        loader.shutdown();
+        assertThrows(CancellationException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, disposed.get());
+        assertEquals(0, loader.getPendingCount());
+    }
+
+    @Test
+    void shutdownCompletesLoadsWhichDidNotStart() throws InterruptedException {
+        AssetLoader loader = new AssetLoader();
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        // more loads than loader threads, so some of them wait in the executor queue
+        int count = Runtime.getRuntime().availableProcessors() * 2 + 4;
+        for (int i = 0; i < count; i++) {
+            futures.add(loader.load(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("interrupted", e);
+                }
+                return "payload";
+            }, value -> value));
+        }
+        loader.shutdown();
+        for (CompletableFuture<String> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+            } catch (CancellationException | ExecutionException expected) {
+                // cancelled in queue, or interrupted while running
+            } catch (TimeoutException e) {
+                throw new AssertionError("Load did not complete after shutdown", e);
+            }
+            assertTrue(future.isCompletedExceptionally());
+        }
+        assertEquals(0, loader.getPendingCount());
+        blocker.countDown();
+    }
+}
@@ -0,0 +1,166 @@
+package assets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetPackTest {
+
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 32;
+
+    @TempDir
+    Path directory;
+
+    private Map<String, Path> createFiles(int count) throws IOException {
+        Random random = new Random(5);
+        Map<String, Path> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            Path file = directory.resolve("file" + i + ".txt");
+            Files.writeString(file, ("line " + i % 7 + " of asset " + i + "\n").repeat(i % 50 + 1));
+            entries.put((i % 2 == 0 ? "a/" : "a/b/") + file.getFileName(), file);
+        }
+        byte[] noise = new byte[100_000];
+        random.nextBytes(noise);
+        entries.put("random.bin", Files.write(directory.resolve("random.bin"), noise));
+        entries.put("empty.txt", Files.write(directory.resolve("empty.txt"), new byte[0]));
+        entries.put("meshes/zero" + MeshFile.EXTENSION, Files.write(directory.resolve("zero.mesh"), new byte[5000]));
+        return entries;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void roundTripsEveryEntry() throws IOException {
+        Map<String, Path> entries = createFiles(3000);
+        Path file = directory.resolve("test" + AssetPack.EXTENSION);
+        AssetPack.write(file, entries, name -> !name.endsWith(MeshFile.EXTENSION));
+
+        AssetPack pack = AssetPack.open(file);
+        assertEquals(entries.size(), pack.getEntryCount());
+        assertEquals(entries.size(), pack.getNames().size());
+        for (Map.Entry<String, Path> entry : entries.entrySet()) {
+            ByteBuffer data = pack.find(entry.getKey());
+            assertNotNull(data, entry.getKey());
+            assertArrayEquals(Files.readAllBytes(entry.getValue()), bytes(data), entry.getKey());
+        }
+    }
+
+    @Test
+    void normalizesNames() throws IOException {
+        Path file = directory.resolve("test" + AssetPack.EXTENSION);
+        Path shader = Files.writeString(directory.resolve("main.glsl"), "#version 330 core\n");
+        AssetPack.write(file, Map.of("shaders/main.glsl", shader), name -> true);
+
+        AssetPack pack = AssetPack.open(file);
+        assertTrue(pack.contains("shaders/main.glsl"));
+        assertTrue(pack.contains("/shaders/main.glsl"));
+        assertTrue(pack.contains("shaders\\main.glsl"));
+        assertFalse(pack.contains("main.glsl"));
+        assertNull(pack.find("shaders/other.glsl"));
+        assertEquals("#version 330 core\n", StandardCharsets.UTF_8.decode(pack.find("/shaders/main.glsl")).toString());
+    }
+
+    @Test
+    void storesUncompressedEntriesAlignedInMapping() throws IOException {
+        Map<String, Path> entries = createFiles(200);
+        Path file = directory.resolve("test" + AssetPack.EXTENSION);
+        AssetPack.write(file, entries, name -> !name.endsWith(MeshFile.EXTENSION));
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        int count = data.getInt(8);
+        int stored = 0, compressed = 0;
+        for (int i = 0, entry = HEADER_BYTES; i < count; i++, entry += ENTRY_BYTES) {
+            if (i > 0) {
+                assertTrue(data.getLong(entry - ENTRY_BYTES) <= data.getLong(entry), "index is not sorted by hash");
+            }
+            if (data.getInt(entry + 16) == data.getInt(entry + 20)) {
+                assertEquals(0, data.getLong(entry + 8) % AssetPack.ALIGNMENT, "stored entry is not aligned");
+                stored++;
+            } else {
+                compressed++;
+            }
+        }
+        assertTrue(stored > 0 && compressed > 0);
+
+        AssetPack pack = AssetPack.open(file);
+        assertTrue(pack.find("meshes/zero" + MeshFile.EXTENSION).isDirect(), "mesh files are slices of the mapping");
+        assertTrue(pack.find("random.bin").isDirect(), "incompressible entries are stored");
+        assertFalse(pack.find("a/b/file49.txt").isDirect(), "text entries are compressed");
+    }
+
+    @Test
+    void rejectsNamesPackedTwice() throws IOException {
+        Path file = Files.writeString(directory.resolve("a.txt"), "a");
+        Map<String, Path> entries = new LinkedHashMap<>();
+        entries.put("a.txt", file);
+        entries.put("/a.txt", file);
+        assertThrows(IllegalArgumentException.class,
+                () -> AssetPack.write(directory.resolve("test" + AssetPack.EXTENSION), entries, name -> true));
+    }
+
+    @Test
+    void rejectsCorruptPacks() throws IOException {
+        Map<String, Path> entries = createFiles(10);
+        Path file = directory.resolve("test" + AssetPack.EXTENSION);
+        AssetPack.write(file, entries, name -> true);
+        byte[] valid = Files.readAllBytes(file);
+
+        ByteBuffer magic = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 0);
+        assertThrows(IllegalArgumentException.class, () -> AssetPack.read(magic, "magic"));
+
+        ByteBuffer truncated = ByteBuffer.wrap(valid, 0, HEADER_BYTES + ENTRY_BYTES);
+        assertThrows(IllegalArgumentException.class, () -> AssetPack.read(truncated, "truncated"));
+
+        ByteBuffer count = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN).putInt(8, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> AssetPack.read(count, "count"));
+
+        ByteBuffer offset = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(HEADER_BYTES + 8, Long.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> AssetPack.read(offset, "offset"));
+
+        // size of a compressed entry larger than LZ4 can expand its stored bytes
+        ByteBuffer size = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        int entry = HEADER_BYTES;
+        while (size.getInt(entry + 16) == size.getInt(entry + 20)) {
+            entry += ENTRY_BYTES;
+        }
+        size.putInt(entry + 16, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> AssetPack.read(size, "size"));
+    }
+
+    @Test
+    void corruptCompressedEntryFailsLookupWithIllegalArgument() throws IOException {
+        Path text = Files.writeString(directory.resolve("text.txt"), "compressible text\n".repeat(100));
+        Path file = directory.resolve("test" + AssetPack.EXTENSION);
+        AssetPack.write(file, Map.of("text.txt", text), name -> true);
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertTrue(data.getInt(HEADER_BYTES + 20) < data.getInt(HEADER_BYTES + 16), "entry is compressed");
+        // an uncompressed size one byte too large leaves the end of output unwritten
+        data.putInt(HEADER_BYTES + 16, data.getInt(HEADER_BYTES + 16) + 1);
+        AssetPack pack = AssetPack.read(data, "corrupt");
+        assertThrows(IllegalArgumentException.class, () -> pack.find("text.txt"));
+    }
+}
@@ -0,0 +1,134 @@
+package assets;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class Lz4Test {
+
+    private static byte[] roundTrip(byte[] source) {
+        byte[] compressed = Lz4.compress(source);
+        assertTrue(compressed.length <= Lz4.maxCompressedLength(source.length), "compressed size over bound");
+        // block is read at an offset inside a direct buffer, like entries of a mapped pack
+        ByteBuffer buffer = ByteBuffer.allocateDirect(compressed.length + 10);
+        buffer.position(5);
+        buffer.put(compressed);
+        byte[] decompressed = new byte[source.length];
+        Lz4.decompress(buffer, 5, compressed.length, decompressed);
+        assertArrayEquals(source, decompressed);
+        return compressed;
+    }
+
+    private static byte[] generate(Random random, int length, int mode) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            switch (mode) {
+                case 0:
+                    bytes[i] = (byte) random.nextInt(256);
+                    break;
+                case 1:
+                    bytes[i] = 7;
+                    break;
+                case 2:
+                    bytes[i] = (byte) (i % 3 + random.nextInt(2));
+                    break;
+                default:
+                    bytes[i] = (byte) "the quick brown fox ".charAt((i * 7 / 5) % 20);
+            }
+        }
+        return bytes;
+    }
+
+    @Test
+    void roundTripsShortBlocks() {
+        Random random = new Random(1);
+        for (int length = 0; length < 64; length++) {
+            for (int mode = 0; mode < 4; mode++) {
+                roundTrip(generate(random, length, mode));
+            }
+        }
+    }
+
+    @Test
+    void roundTripsRandomAndRepetitiveBlocks() {
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            int length = random.nextInt(i % 10 == 0 ? 300_000 : 5000);
+            roundTrip(generate(random, length, i % 4));
+        }
+    }
+
+    @Test
+    void roundTripsMatchesFartherThanMaxOffset() {
+        Random random = new Random(3);
+        byte[] block = generate(random, 1000, 0);
+        byte[] source = new byte[200_000];
+        for (int i = 0; i < source.length; i += 100_000) {
+            System.arraycopy(block, 0, source, i, block.length);
+        }
+        roundTrip(source);
+    }
+
+    @Test
+    void compressesRepetitiveData() {
+        byte[] source = "uniform mat4 viewProjection;\n".repeat(500).getBytes();
+        assertTrue(roundTrip(source).length < source.length / 20);
+    }
+
+    @Test
+    void corruptBlocksFailWithIllegalArgument() {
+        Random random = new Random(11);
+        byte[] source = "abcabcabcabcabcabc hello hello hello hello world world world".repeat(20).getBytes();
+        byte[] compressed = Lz4.compress(source);
+        for (int i = 0; i < 5000; i++) {
+            byte[] corrupt = compressed.clone();
+            int flips = 1 + random.nextInt(4);
+            for (int j = 0; j < flips; j++) {
+                corrupt[random.nextInt(corrupt.length)] ^= (byte) (1 << random.nextInt(8));
+            }
+            try {
+                Lz4.decompress(ByteBuffer.wrap(corrupt), 0, corrupt.length, new byte[source.length]);
+            } catch (IllegalArgumentException expected) {
+                // corrupt literal bytes decompress fine, anything else has to be rejected this way
+            } catch (RuntimeException e) {
+                fail("Corrupt block threw " + e);
+            }
+        }
+    }
+
+    @Test
+    void truncatedBlocksAreRejected() {
+        byte[] source = "0123456789".repeat(100).getBytes();
+        byte[] compressed = Lz4.compress(source);
+        for (int length = 0; length < compressed.length; length++) {
+            byte[] truncated = Arrays.copyOf(compressed, length);
+            assertThrows(IllegalArgumentException.class,
+                    () -> Lz4.decompress(ByteBuffer.wrap(truncated), 0, truncated.length, new byte[source.length]));
+        }
+    }
+
+    @Test
+    void wrongDecompressedSizeIsRejected() {
+        byte[] source = "0123456789".repeat(100).getBytes();
+        byte[] compressed = Lz4.compress(source);
+        assertThrows(IllegalArgumentException.class,
+                () -> Lz4.decompress(ByteBuffer.wrap(compressed), 0, compressed.length, new byte[source.length - 1]));
+        assertThrows(IllegalArgumentException.class,
+                () -> Lz4.decompress(ByteBuffer.wrap(compressed), 0, compressed.length, new byte[source.length + 1]));
+    }
+
+    @Test
+    void matchBeforeStartOfOutputIsRejected() {
+        // token with 1 literal and match, literal 'a', offset 2 points before the first byte
+        byte[] block = {0x10, 'a', 2, 0};
+        assertThrows(IllegalArgumentException.class,
+                () -> Lz4.decompress(ByteBuffer.wrap(block), 0, block.length, new byte[5]));
+    }
+}
@@ -0,0 +1,118 @@
+package assets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.opengl.GL11;
+import render.VertexFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeshFileTest {
+
+    private static final int VERTEX_COUNT = 4;
+    private static final int[] INDICES = {0, 1, 2, 0, 2, 3, 0, 1, 2};
+    private static final float[] BOUNDS = {-1, -2, -3, 1, 2, 3};
+
+    @TempDir
+    Path directory;
+
+    private static ByteBuffer vertices(VertexFormat format) {
+        ByteBuffer data = ByteBuffer.allocateDirect(VERTEX_COUNT * format.getVertexSize()).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < data.capacity(); i++) {
+            data.put(i, (byte) (i * 31 + 7));
+        }
+        return data;
+    }
+
+    private static ByteBuffer indices(int indexType) {
+        boolean shorts = indexType == GL11.GL_UNSIGNED_SHORT;
+        ByteBuffer data = ByteBuffer.allocateDirect(INDICES.length * (shorts ? 2 : 4)).order(ByteOrder.nativeOrder());
+        for (int index : INDICES) {
+            if (shorts) {
+                data.putShort((short) index);
+            } else {
+                data.putInt(index);
+            }
+        }
+        return data.flip();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private void roundTrip(VertexFormat format, int indexType) throws IOException {
+        Path file = directory.resolve("mesh" + MeshFile.EXTENSION);
+        ByteBuffer vertexData = vertices(format);
+        MeshFile.write(file, format, VERTEX_COUNT, vertexData, indexType, indices(indexType), BOUNDS,
+                new MeshFile.Lod(0, 6, 0.5f), new MeshFile.Lod(6, 3, 0));
+
+        MeshFile mesh = MeshFile.open(file);
+        assertSame(format, mesh.getFormat(), "built-in formats are read back as the same object");
+        assertEquals(VERTEX_COUNT, mesh.getVertexCount());
+        assertEquals(indexType, mesh.getIndexType());
+        assertArrayEquals(BOUNDS, mesh.getBounds());
+        assertArrayEquals(bytes(vertexData), bytes(mesh.getVertexData()));
+        assertEquals(2, mesh.getLodCount());
+        assertEquals(0.5f, mesh.getLod(0).getScreenSize());
+        assertArrayEquals(new int[] {0, 1, 2, 0, 2, 3}, mesh.getIndices(0));
+        assertArrayEquals(new int[] {0, 1, 2}, mesh.getIndices(1));
+        assertTrue(mesh.getVertexData().isDirect(), "vertex data stays in the mapping");
+    }
+
+    @Test
+    void roundTripsFloatFormatWithIntIndices() throws IOException {
+        roundTrip(VertexFormat.POSITION_NORMAL_UV, GL11.GL_UNSIGNED_INT);
+    }
+
+    @Test
+    void roundTripsQuantizedFormatWithShortIndices() throws IOException {
+        roundTrip(VertexFormat.POSITION_NORMAL_UV_QUANTIZED, GL11.GL_UNSIGNED_SHORT);
+    }
+
+    @Test
+    void readsMeshFromAssetPack() throws IOException {
+        Path file = directory.resolve("mesh" + MeshFile.EXTENSION);
+        ByteBuffer vertexData = vertices(VertexFormat.POSITION);
+        MeshFile.write(file, VertexFormat.POSITION, VERTEX_COUNT, vertexData, indices(GL11.GL_UNSIGNED_INT), BOUNDS);
+        Path packFile = directory.resolve("test" + AssetPack.EXTENSION);
+        AssetPack.write(packFile, Map.of("meshes/mesh" + MeshFile.EXTENSION, file), name -> false);
+
+        MeshFile mesh = MeshFile.read(AssetPack.open(packFile).find("/meshes/mesh" + MeshFile.EXTENSION), "packed");
+        assertArrayEquals(bytes(vertexData), bytes(mesh.getVertexData()));
+        assertArrayEquals(INDICES, mesh.getIndices(0));
+    }
+
+    @Test
+    void rejectsCorruptFiles() throws IOException {
+        Path file = directory.resolve("mesh" + MeshFile.EXTENSION);
+        MeshFile.write(file, VertexFormat.POSITION, VERTEX_COUNT, vertices(VertexFormat.POSITION),
+                indices(GL11.GL_UNSIGNED_INT), BOUNDS);
+        byte[] valid = Files.readAllBytes(file);
+
+        ByteBuffer magic = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 0);
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.read(magic, "magic"));
+
+        ByteBuffer version = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN).putInt(4, MeshFile.VERSION + 1);
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.read(version, "version"));
+
+        ByteBuffer truncated = ByteBuffer.wrap(valid, 0, valid.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.read(truncated, "truncated"));
+
+        ByteBuffer offset = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN).putLong(72, Long.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.read(offset, "offset"));
+    }
+}
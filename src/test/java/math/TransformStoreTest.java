@@ -0,0 +1,109 @@
+package math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransformStoreTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    private static void assertSameMatrix(Matrix4f expected, float[] actual, int offset, String message) {
+        float[] values = new float[Matrix4f.SIZE];
+        expected.get(values, 0);
+        for (int i = 0; i < Matrix4f.SIZE; i++) {
+            assertEquals(values[i], actual[offset + i], EPSILON, message + ", element " + i);
+        }
+    }
+
+    private static Transform transform(Quaternion orientation, Random random) {
+        Transform transform = new Transform(new Vector3f(random.nextFloat() * 10, -3, 2),
+                new Vector3f(random.nextFloat() * 360, 45, 10), new Vector3f(1, 2, 0.5f));
+        return transform.setOrientation(orientation);
+    }
+
+    @Test
+    void orientationOverridesRotationAngles() {
+        Random random = new Random(9);
+        TransformStore store = new TransformStore();
+        Transform[] transforms = new Transform[500];
+        for (int i = 0; i < transforms.length; i++) {
+            Quaternion orientation = new Quaternion(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1,
+                    random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1).normalize();
+            transforms[i] = transform(orientation, random);
+            store.add(transforms[i]);
+        }
+        float[] matrices = new float[store.size() * Matrix4f.SIZE];
+        store.computeWorldMatrices(matrices);
+        for (int i = 0; i < transforms.length; i++) {
+            assertSameMatrix(transforms[i].getTransformation(), matrices, i * Matrix4f.SIZE, "entity " + i);
+        }
+    }
+
+    @Test
+    void orientationWithPitchOfNinetyDegreesIsKept() {
+        Random random = new Random(4);
+        TransformStore store = new TransformStore();
+        float[] matrix = new float[Matrix4f.SIZE];
+        for (float pitch : new float[] {90, -90, 89.999f}) {
+            for (int i = 0; i < 20; i++) {
+                Quaternion orientation = new Quaternion().fromEuler(random.nextFloat() * 360 - 180, pitch,
+                        random.nextFloat() * 360 - 180);
+                Transform transform = transform(orientation, random);
+                int index = store.add(transform);
+                store.getWorldMatrix(index, new Matrix4f()).get(matrix, 0);
+                assertSameMatrix(transform.getTransformation(), matrix, 0, "pitch " + pitch);
+            }
+        }
+    }
+
+    @Test
+    void settingOrRotatingAnglesDropsOrientation() {
+        TransformStore store = new TransformStore();
+        Quaternion orientation = new Quaternion().fromAxisAngle(40, 1, 2, 3);
+        Vector3f angles = orientation.toEuler(new Vector3f(0, 0, 0));
+        int index = store.add();
+        store.setOrientation(index, orientation);
+        assertTrue(store.hasOrientation(index));
+        assertEquals(angles.getX(), store.getRotation(index, new Vector3f(0, 0, 0)).getX(), 1e-6f);
+
+        // orientation is converted to angles which rotate then adds to
+        store.rotate(index, 10, 0, 0);
+        assertFalse(store.hasOrientation(index));
+        Vector3f rotation = store.getRotation(index, new Vector3f(0, 0, 0));
+        assertEquals(angles.getX() + 10, rotation.getX(), 1e-4f);
+        assertEquals(angles.getY(), rotation.getY(), 1e-6f);
+        assertEquals(angles.getZ(), rotation.getZ(), 1e-6f);
+
+        store.setOrientation(index, orientation);
+        store.setRotation(index, 1, 2, 3);
+        assertFalse(store.hasOrientation(index));
+    }
+
+    @Test
+    void removeMovesOrientationOfLastEntity() {
+        TransformStore store = new TransformStore(1);
+        store.add();
+        store.add();
+        Quaternion orientation = new Quaternion().fromAxisAngle(30, 0, 1, 0);
+        store.setOrientation(1, orientation);
+        assertEquals(1, store.remove(0));
+        assertTrue(store.hasOrientation(0));
+        assertEquals(1, store.getOrientation(0, new Quaternion()).dot(orientation), 1e-6f);
+    }
+
+    @Test
+    void rotationAnglesAreUsedWithoutOrientation() {
+        Transform transform = new Transform(new Vector3f(1, 2, 3), new Vector3f(30, 60, 90), new Vector3f(1, 1, 1));
+        TransformStore store = new TransformStore();
+        int index = store.add(transform);
+        Vector3f rotation = store.getRotation(index, new Vector3f(0, 0, 0));
+        assertEquals(30, rotation.getX());
+        assertEquals(60, rotation.getY());
+        assertEquals(90, rotation.getZ());
+    }
+}
@@ -0,0 +1,187 @@
+package render;
+
+import math.Matrix4f;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * GPU culling test needs a GL 4.3 context and is skipped without one, on machines without GPU Mesa llvmpipe
+ * provides it: LIBGL_ALWAYS_SOFTWARE=1 xvfb-run gradle test
+ */
+class IndirectBatchTest {
+
+    private static final int OBJECTS = 2000;
+    /**
+     * objects closer to a plane than this are not generated, so rounding on GPU can not change the result
+     */
+    private static final float MARGIN = 0.05f;
+
+    private static Matrix4f viewProjection(float yaw) {
+        Matrix4f projection = new Matrix4f().setPerspective(60, 4, 3, 0.1f, 100);
+        return Matrix4f.mulInto(projection, new Matrix4f().setRotation(0, yaw, 0), new Matrix4f());
+    }
+
+    /**
+     * Signed distance of box to plane like recources/cullCompute.glsl computes it, negative if box is outside,
+     * scaled by length of plane normal
+     */
+    private static float distance(float[] planes, int plane, float[] bounds, Matrix4f model) {
+        float distance = planes[plane * 4 + 3], radius = 0, length = 0;
+        for (int row = 0; row < 3; row++) {
+            float normal = planes[plane * 4 + row], center = model.getCellValue(row, 3), extent = 0;
+            for (int column = 0; column < 3; column++) {
+                float half = (bounds[3 + column] - bounds[column]) * 0.5f;
+                center += model.getCellValue(row, column) * (bounds[column] + half);
+                extent += Math.abs(model.getCellValue(row, column)) * half;
+            }
+            distance += normal * center;
+            radius += Math.abs(normal) * extent;
+            length += normal * normal;
+        }
+        return (distance + radius) / (float) Math.sqrt(length);
+    }
+
+    private static Matrix4f randomModel(Random random) {
+        return new Matrix4f().setTransformation(random.nextFloat() * 160 - 80, random.nextFloat() * 120 - 60,
+                random.nextFloat() * 130 - 15, random.nextFloat() * 360, random.nextFloat() * 360,
+                random.nextFloat() * 360, 0.5f + random.nextFloat() * 2, 0.5f + random.nextFloat() * 2,
+                0.5f + random.nextFloat() * 2);
+    }
+
+    /**
+     * @return minimal distance of box to a frustum plane, negative if box is outside of frustum
+     */
+    private static float frustumDistance(float[] planes, float[] bounds, Matrix4f model) {
+        float min = Float.MAX_VALUE;
+        for (int plane = 0; plane < 6; plane++) {
+            min = Math.min(min, distance(planes, plane, bounds, model));
+        }
+        return min;
+    }
+
+    @Test
+    void planesContainExactlyPointsInsideClipVolume() {
+        Random random = new Random(3);
+        float[] planes = new float[24];
+        Matrix4f viewProjection = viewProjection(30);
+        IndirectBatch.extractPlanes(viewProjection, planes);
+        int inside = 0;
+        for (int i = 0; i < 100_000; i++) {
+            float x = random.nextFloat() * 200 - 100, y = random.nextFloat() * 200 - 100, z = random.nextFloat() * 200 - 100;
+            float[] clip = new float[4];
+            for (int row = 0; row < 4; row++) {
+                clip[row] = viewProjection.getCellValue(row, 0) * x + viewProjection.getCellValue(row, 1) * y
+                        + viewProjection.getCellValue(row, 2) * z + viewProjection.getCellValue(row, 3);
+            }
+            float w = clip[3];
+            boolean expected = Math.abs(clip[0]) <= w && Math.abs(clip[1]) <= w && Math.abs(clip[2]) <= w;
+            boolean actual = true;
+            float closest = Float.MAX_VALUE;
+            for (int plane = 0; plane < 6; plane++) {
+                float distance = planes[plane * 4] * x + planes[plane * 4 + 1] * y + planes[plane * 4 + 2] * z
+                        + planes[plane * 4 + 3];
+                actual &= distance >= 0;
+                closest = Math.min(closest, Math.abs(distance));
+            }
+            if (closest > 1e-3f) {
+                assertEquals(expected, actual, "point " + x + ", " + y + ", " + z);
+            }
+            if (actual) {
+                inside++;
+            }
+        }
+        assertTrue(inside > 100, "too few points inside frustum: " + inside);
+    }
+
+    @Test
+    void gpuCullingMatchesCpuFrustumTest() throws IOException {
+        assumeTrue(GLFW.glfwInit(), "GLFW could not be initialised");
+        GLFW.glfwDefaultWindowHints();
+        GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+        GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, 4);
+        GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, 3);
+        GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
+        GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_FORWARD_COMPAT, GLFW.GLFW_TRUE);
+        long window = GLFW.glfwCreateWindow(64, 64, "IndirectBatchTest", 0, 0);
+        try {
+            assumeTrue(window != 0, "GL 4.3 context could not be created");
+            GLFW.glfwMakeContextCurrent(window);
+            GL.createCapabilities();
+            System.out.println("IndirectBatchTest on " + GL11.glGetString(GL11.GL_RENDERER) + ", "
+                    + GL11.glGetString(GL11.GL_VERSION));
+            cullOnGpu();
+        } finally {
+            if (window != 0) {
+                GL.setCapabilities(null);
+                GLFW.glfwDestroyWindow(window);
+            }
+            GLFW.glfwTerminate();
+        }
+    }
+
+    private static void cullOnGpu() throws IOException {
+        MeshBuilder builder = new MeshBuilder(VertexFormat.POSITION, 8, 36);
+        for (int i = 0; i < 8; i++) {
+            builder.position((i & 1) - 0.5f, (i >> 1 & 1) - 0.5f, (i >> 2 & 1) - 0.5f).endVertex();
+        }
+        int[][] faces = {{0, 2, 3, 1}, {4, 5, 7, 6}, {0, 1, 5, 4}, {2, 6, 7, 3}, {0, 4, 6, 2}, {1, 3, 7, 5}};
+        for (int[] face : faces) {
+            builder.triangle(face[0], face[1], face[2]).triangle(face[0], face[2], face[3]);
+        }
+        Mesh cube = builder.build();
+        StaticBatch batch = new StaticBatch(VertexFormat.POSITION);
+        int range = batch.add(cube);
+        batch.build();
+        cube.destroy();
+        ComputeShader culling = ComputeShader.fromSource(Files.readString(Path.of("recources/cullCompute.glsl")));
+        culling.create();
+        IndirectBatch indirect = new IndirectBatch(batch, culling, 16);
+        try {
+            for (float yaw : new float[] {0, 30, -60}) {
+                Matrix4f viewProjection = viewProjection(yaw);
+                float[] planes = new float[24];
+                IndirectBatch.extractPlanes(viewProjection, planes);
+                float[] bounds = new float[6];
+                batch.getBounds(range, bounds, 0);
+
+                Random random = new Random(7);
+                indirect.clear();
+                int expected = 0;
+                while (indirect.getCount() < OBJECTS) {
+                    Matrix4f model = randomModel(random);
+                    float distance = frustumDistance(planes, bounds, model);
+                    if (Math.abs(distance) > MARGIN) {
+                        indirect.add(range, model);
+                        expected += distance > 0 ? 1 : 0;
+                    }
+                }
+                // count of a cull is read back by the next one once its fence is signaled
+                indirect.cull(viewProjection);
+                GL11.glFinish();
+                indirect.cull(viewProjection);
+                GL11.glFinish();
+                assertEquals(GL11.GL_NO_ERROR, GL11.glGetError());
+                System.out.printf("yaw %.0f: %d objects, GPU %d visible and %d culled, CPU %d visible%n", yaw,
+                        indirect.getCount(), indirect.getVisibleCount(), indirect.getCulledCount(), expected);
+                assertTrue(expected > 0 && expected < OBJECTS, "objects have to be both inside and outside");
+                assertEquals(expected, indirect.getVisibleCount(), "visible count, yaw " + yaw);
+                assertEquals(OBJECTS - expected, indirect.getCulledCount(), "culled count, yaw " + yaw);
+            }
+        } finally {
+            indirect.destroy();
+            batch.destroy();
+            culling.destroy();
+        }
+    }
+}
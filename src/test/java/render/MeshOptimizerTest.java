@@ -0,0 +1,122 @@
+package render;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeshOptimizerTest {
+
+    private static final int GRID = 64;
+
+    /**
+     * @return triangles of grid of quads in random order
+     */
+    private static int[] shuffledGrid(Random random) {
+        List<int[]> triangles = new ArrayList<>();
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                int v = y * (GRID + 1) + x;
+                triangles.add(new int[] {v, v + GRID + 1, v + 1});
+                triangles.add(new int[] {v + 1, v + GRID + 1, v + GRID + 2});
+            }
+        }
+        Collections.shuffle(triangles, random);
+        int[] indices = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(triangles.get(i), 0, indices, i * 3, 3);
+        }
+        return indices;
+    }
+
+    /**
+     * @return triangles as strings starting at their smallest vertex, so rotations with the same winding are equal
+     */
+    private static List<String> sortedTriangles(int[] indices) {
+        List<String> triangles = new ArrayList<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            int first = indices[i] < indices[i + 1] ? (indices[i] < indices[i + 2] ? 0 : 2)
+                    : (indices[i + 1] < indices[i + 2] ? 1 : 2);
+            triangles.add(indices[i + first] + " " + indices[i + (first + 1) % 3] + " " + indices[i + (first + 2) % 3]);
+        }
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    @Test
+    void vertexCacheOrderIsPermutationOfTriangles() {
+        int vertexCount = (GRID + 1) * (GRID + 1);
+        int[] indices = shuffledGrid(new Random(5));
+        int[] optimized = MeshOptimizer.optimizeVertexCache(indices, vertexCount, MeshOptimizer.CACHE_SIZE);
+        assertEquals(indices.length, optimized.length);
+        assertEquals(sortedTriangles(indices), sortedTriangles(optimized));
+
+        float before = MeshOptimizer.acmr(indices, 0, indices.length, vertexCount, MeshOptimizer.CACHE_SIZE);
+        float after = MeshOptimizer.acmr(optimized, 0, optimized.length, vertexCount, MeshOptimizer.CACHE_SIZE);
+        assertTrue(before > 2, "shuffled ACMR " + before);
+        assertTrue(after < 1, "optimized ACMR " + after);
+    }
+
+    @Test
+    void acmrCountsMissesOfFifoCache() {
+        assertEquals(3, MeshOptimizer.acmr(new int[] {0, 1, 2}, 0, 3, 3, 16));
+        assertEquals(2, MeshOptimizer.acmr(new int[] {0, 1, 2, 2, 1, 3}, 0, 6, 4, 16));
+        assertEquals(0, MeshOptimizer.acmr(new int[] {0, 1}, 0, 2, 2, 16));
+
+        // first triangle is pushed out of a cache of 3 by the second one
+        int[] indices = {0, 1, 2, 3, 4, 5, 0, 1, 2};
+        assertEquals(3, MeshOptimizer.acmr(indices, 0, 9, 6, 3));
+        assertEquals(2, MeshOptimizer.acmr(indices, 0, 9, 6, 16));
+        // range starts with an empty cache
+        assertEquals(3, MeshOptimizer.acmr(indices, 6, 3, 6, 16));
+    }
+
+    @Test
+    void vertexFetchNumbersVerticesInOrderOfFirstUse() {
+        int[] original = {7, 2, 5, 5, 2, 0, 7, 0, 3};
+        int[] indices = original.clone();
+        int[] remap = new int[9];
+        assertEquals(5, MeshOptimizer.optimizeVertexFetch(indices, 8, remap));
+        assertEquals(List.of(0, 1, 2, 2, 1, 3, 0, 3, 4), toList(indices));
+        for (int i = 0; i < original.length; i++) {
+            assertEquals(indices[i], remap[original[i]]);
+        }
+        for (int unused : new int[] {1, 4, 6}) {
+            assertEquals(-1, remap[unused]);
+        }
+
+        // vertices of 4 bytes hold their old number, so moved data shows where each vertex went
+        ByteBuffer src = ByteBuffer.allocate(8 * 4);
+        for (int v = 0; v < 8; v++) {
+            src.putInt(v * 4, v);
+        }
+        ByteBuffer dest = ByteBuffer.allocate(5 * 4);
+        MeshOptimizer.remapVertices(src, dest, 4, 8, remap);
+        for (int i = 0; i < original.length; i++) {
+            assertEquals(original[i], dest.getInt(indices[i] * 4));
+        }
+    }
+
+    @Test
+    void shortIndicesAreUsedUpToTheirRange() {
+        assertEquals(GL11.GL_UNSIGNED_SHORT, MeshOptimizer.indexType(MeshOptimizer.MAX_SHORT_VERTICES));
+        assertEquals(GL11.GL_UNSIGNED_INT, MeshOptimizer.indexType(MeshOptimizer.MAX_SHORT_VERTICES + 1));
+        assertEquals(2, MeshOptimizer.indexSize(GL11.GL_UNSIGNED_SHORT));
+        assertEquals(4, MeshOptimizer.indexSize(GL11.GL_UNSIGNED_INT));
+    }
+
+    private static List<Integer> toList(int[] values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,61 @@
+package render;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MipChainTest {
+
+    private static MipChain chain(int width, int height) {
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * MipChain.PIXEL_BYTES);
+        try {
+            for (int i = 0; i < pixels.capacity(); i++) {
+                pixels.put(i, (byte) (i * 13));
+            }
+            return MipChain.generate(pixels, width, height);
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
+    }
+
+    @Test
+    void freedLevelsAreTakenOverFromChainReadAgain() {
+        MipChain chain = chain(16, 8);
+        assertEquals(5, chain.getLevelCount());
+        assertEquals(chain.getBytes(), chain.getLoadedBytes());
+        byte[] level1 = new byte[chain.getLevelBytes(1)];
+        chain.getLevel(1).get(0, level1);
+
+        // levels 0 to 2 uploaded and freed, then level 2 and 1 evicted
+        for (int level = 0; level < 3; level++) {
+            chain.freeLevel(level);
+        }
+        assertEquals(chain.getLevelBytes(3) + chain.getLevelBytes(4), chain.getLoadedBytes());
+
+        chain.takeLevels(chain(16, 8), 3);
+        for (int level = 0; level < 3; level++) {
+            assertNotNull(chain.getLevel(level));
+        }
+        byte[] reread = new byte[chain.getLevelBytes(1)];
+        chain.getLevel(1).get(0, reread);
+        assertEquals(ByteBuffer.wrap(level1), ByteBuffer.wrap(reread));
+        assertEquals(chain.getBytes(), chain.getLoadedBytes());
+        chain.free();
+        assertNull(chain.getLevel(0));
+    }
+
+    @Test
+    void chainOfOtherSizeIsRejected() {
+        MipChain chain = chain(16, 8);
+        chain.freeLevel(0);
+        assertThrows(IllegalArgumentException.class, () -> chain.takeLevels(chain(8, 8), 1));
+        assertNull(chain.getLevel(0));
+        chain.free();
+    }
+}
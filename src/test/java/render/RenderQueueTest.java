@@ -0,0 +1,95 @@
+package render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderQueueTest {
+
+    private static Mesh mesh(int vao) {
+        Mesh mesh = new Mesh(VertexFormat.POSITION);
+        mesh.setBuffers(vao, 0, 0, 0, 0);
+        return mesh;
+    }
+
+    /**
+     * Checks that sorted order is the stable order of submitted keys
+     */
+    private static void assertStableOrder(RenderQueue queue, long[] keys) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < queue.size(); i++) {
+            expected.add(i);
+        }
+        expected.sort(Comparator.comparingLong(i -> keys[i]));
+        for (int i = 0; i < queue.size(); i++) {
+            assertEquals(expected.get(i), queue.getSortedIndex(i), "position " + i);
+        }
+    }
+
+    @Test
+    void keyOrdersProgramVertexArrayMaterialAndDepth() {
+        assertTrue(RenderQueue.key(1, 0, 0, 0) > RenderQueue.key(0, 0xFFFF, 0xFFFF, 1e30f));
+        assertTrue(RenderQueue.key(0, 1, 0, 0) > RenderQueue.key(0, 0, 0xFFFF, 1e30f));
+        assertTrue(RenderQueue.key(0, 0, 1, 0) > RenderQueue.key(0, 0, 0, 1e30f));
+        float previous = 0;
+        for (float depth : new float[] {0.01f, 0.5f, 1, 2.5f, 100, 1e6f}) {
+            assertTrue(RenderQueue.key(3, 4, 5, depth) > RenderQueue.key(3, 4, 5, previous), "depth " + depth);
+            previous = depth;
+        }
+        assertEquals(RenderQueue.key(3, 4, 5, 0), RenderQueue.key(3, 4, 5, -2));
+        assertEquals(RenderQueue.key(1, 2, 3, 1), RenderQueue.key(0x10001, 0x20002, 0x30003, 1));
+    }
+
+    @Test
+    void sortIsStableOrderOfKeys() {
+        Random random = new Random(11);
+        RenderQueue queue = new RenderQueue(new GLState());
+        Shader shader = Shader.fromSource("", "");
+        Mesh[] meshes = {mesh(3), mesh(700), mesh(12), mesh(0xFFFF)};
+        long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            Mesh mesh = meshes[random.nextInt(meshes.length)];
+            int material = random.nextInt(4) * 300;
+            // few distinct depths, so many draws have equal keys
+            float depth = random.nextInt(5) * 7.5f;
+            keys[i] = RenderQueue.key(shader.getProgramID(), mesh.getVAO(), material, depth);
+            queue.submit(shader, mesh, material, depth);
+        }
+        assertEquals(keys.length, queue.size());
+        queue.sort();
+        assertStableOrder(queue, keys);
+    }
+
+    @Test
+    void passesOfEqualBytesAreSkipped() {
+        RenderQueue queue = new RenderQueue(new GLState());
+        Shader shader = Shader.fromSource("", "");
+        Mesh mesh = mesh(5);
+
+        // all keys equal, every pass is skipped and submission order is kept
+        for (int i = 0; i < 10; i++) {
+            queue.submit(shader, mesh, 7, 1);
+        }
+        queue.sort();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, queue.getSortedIndex(i));
+        }
+        queue.clear();
+
+        // keys differ in low byte of material only, so one pass sorts them and its buffers have to be kept
+        int[] materials = {9, 2, 255, 2, 0, 9, 128};
+        long[] keys = new long[materials.length];
+        for (int i = 0; i < materials.length; i++) {
+            keys[i] = RenderQueue.key(shader.getProgramID(), mesh.getVAO(), materials[i], 1);
+            queue.submit(shader, mesh, materials[i], 1);
+        }
+        queue.sort();
+        assertStableOrder(queue, keys);
+    }
+}
@@ -0,0 +1,130 @@
+package render;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceManagerTest {
+
+    /**
+     * Resource without GL objects which records whether it was destroyed
+     */
+    private static final class FakeResource implements GpuResource {
+        private final long bytes;
+        private int destroyed;
+
+        FakeResource(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed++;
+        }
+
+        @Override
+        public long getGpuBytes() {
+            return bytes;
+        }
+    }
+
+    private static ResourceManager.Handle<FakeResource> acquire(ResourceManager resources, String key) {
+        return resources.acquire(key, FakeResource.class, () -> new FakeResource(100));
+    }
+
+    @Test
+    void resourceIsSharedUntilLastHandleIsReleased() {
+        ResourceManager resources = new ResourceManager(1000);
+        ResourceManager.Handle<FakeResource> first = acquire(resources, "a");
+        ResourceManager.Handle<FakeResource> second = acquire(resources, "a");
+        assertSame(first.get(), second.get());
+        assertEquals(1, resources.getMisses());
+        assertEquals(1, resources.getHits());
+
+        ResourceManager.Handle<FakeResource> shared = second.share();
+        first.release();
+        first.release();
+        second.release();
+        assertTrue(first.isReleased());
+        assertThrows(IllegalStateException.class, first::get);
+        assertEquals(0, resources.getUnreferencedBytes());
+
+        FakeResource resource = shared.get();
+        shared.release();
+        assertEquals(100, resources.getUnreferencedBytes());
+        assertTrue(resources.contains("a"));
+        assertEquals(0, resource.destroyed);
+
+        // unreferenced resource is found again without creating it
+        ResourceManager.Handle<FakeResource> again = acquire(resources, "a");
+        assertSame(resource, again.get());
+        assertEquals(0, resources.getUnreferencedBytes());
+        assertEquals(1, resources.getMisses());
+    }
+
+    @Test
+    void leastRecentlyReleasedResourcesAreEvictedOverBudget() {
+        ResourceManager resources = new ResourceManager(250);
+        ResourceManager.Handle<FakeResource> a = acquire(resources, "a");
+        ResourceManager.Handle<FakeResource> b = acquire(resources, "b");
+        ResourceManager.Handle<FakeResource> c = acquire(resources, "c");
+        ResourceManager.Handle<FakeResource> d = acquire(resources, "d");
+        FakeResource evicted = b.get();
+        b.release();
+        a.release();
+        c.release();
+        assertFalse(resources.contains("b"));
+        assertTrue(resources.contains("a") && resources.contains("c"));
+        assertEquals(1, resources.getEvictionCount());
+        assertEquals(1, resources.getPendingCount());
+        // deleted only after fence of the frame which evicted it
+        assertEquals(0, evicted.destroyed);
+
+        // acquiring and releasing a makes it the most recently released
+        acquire(resources, "a").release();
+        d.release();
+        assertFalse(resources.contains("c"));
+        assertTrue(resources.contains("a") && resources.contains("d"));
+        assertEquals(200, resources.getUnreferencedBytes());
+
+        resources.setBudgetBytes(150);
+        assertFalse(resources.contains("a"));
+        resources.evictUnreferenced();
+        assertEquals(0, resources.getResourceCount());
+        assertEquals(4, resources.getPendingCount());
+    }
+
+    @Test
+    void zeroBudgetEvictsOnRelease() {
+        ResourceManager resources = new ResourceManager(0);
+        ResourceManager.Handle<FakeResource> handle = resources.add("zero", new FakeResource(0));
+        handle.release();
+        assertFalse(resources.contains("zero"));
+        assertEquals(1, resources.getEvictionCount());
+    }
+
+    @Test
+    void destroyDeletesReferencedAndEvictedResources() {
+        ResourceManager resources = new ResourceManager(0);
+        FakeResource kept = new FakeResource(10), evicted = new FakeResource(20);
+        resources.add("kept", kept);
+        resources.add("evicted", evicted).release();
+        resources.destroy();
+        assertEquals(1, kept.destroyed);
+        assertEquals(1, evicted.destroyed);
+        assertEquals(0, resources.getResourceCount());
+    }
+
+    @Test
+    void keysAreUniqueAndTyped() {
+        ResourceManager resources = new ResourceManager(1000);
+        acquire(resources, "a");
+        assertThrows(IllegalArgumentException.class, () -> resources.acquire("a", Mesh.class, () -> null));
+        assertThrows(IllegalArgumentException.class, () -> resources.add("a", new FakeResource(1)));
+        assertThrows(IllegalArgumentException.class, () -> resources.setBudgetBytes(-1));
+    }
+}
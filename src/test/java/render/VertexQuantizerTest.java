@@ -0,0 +1,101 @@
+package render;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VertexQuantizerTest {
+
+    private static void assertHalf(int expected, float value) {
+        assertEquals(expected, VertexQuantizer.toHalf(value) & 0xFFFF, "half of " + value);
+    }
+
+    @Test
+    void everyHalfSurvivesRoundTrip() {
+        for (int bits = 0; bits <= 0xFFFF; bits++) {
+            float value = VertexQuantizer.fromHalf((short) bits);
+            if (Float.isNaN(value)) {
+                assertTrue(Float.isNaN(VertexQuantizer.fromHalf(VertexQuantizer.toHalf(value))));
+            } else {
+                assertHalf(bits, value);
+            }
+        }
+    }
+
+    @Test
+    void halfRoundsToNearestEven() {
+        // halfway between 1 and the next half goes to the even one
+        assertHalf(0x3C00, 1 + 0x1p-11f);
+        assertHalf(0x3C02, 1 + 3 * 0x1p-11f);
+        assertHalf(0x3C01, Math.nextUp(1 + 0x1p-11f));
+        assertHalf(0x7BFF, 65519);
+        assertHalf(0x7C00, 65520);
+        assertHalf(0xFC00, Float.NEGATIVE_INFINITY);
+        assertHalf(0x8000, -0f);
+
+        Random random = new Random(2);
+        for (int i = 0; i < 100_000; i++) {
+            float value = (random.nextFloat() * 2 - 1) * (float) Math.pow(2, random.nextInt(40) - 26);
+            short half = VertexQuantizer.toHalf(value);
+            float error = Math.abs(VertexQuantizer.fromHalf(half) - value);
+            assertTrue(error <= Math.abs(VertexQuantizer.fromHalf((short) (half + 1)) - value), "value " + value);
+            if ((half & 0x7FFF) != 0) {
+                assertTrue(error <= Math.abs(VertexQuantizer.fromHalf((short) (half - 1)) - value), "value " + value);
+            }
+        }
+    }
+
+    @Test
+    void subnormalHalvesAreRounded() {
+        assertHalf(0x0001, 0x1p-24f);
+        assertHalf(0x03FF, 1023 * 0x1p-24f);
+        assertHalf(0x0400, 0x1p-14f);
+        // halfway cases between subnormals and from the largest subnormal to the smallest normal
+        assertHalf(0x0000, 0x1p-25f);
+        assertHalf(0x0001, Math.nextUp(0x1p-25f));
+        assertHalf(0x0002, 3 * 0x1p-25f);
+        assertHalf(0x0400, 1023.5f * 0x1p-24f);
+        assertHalf(0x8001, -0x1p-24f);
+        assertHalf(0x0000, 0x1p-26f);
+        assertEquals(0x1p-24f, VertexQuantizer.fromHalf((short) 0x0001));
+        assertEquals(-1023 * 0x1p-24f, VertexQuantizer.fromHalf((short) 0x83FF));
+    }
+
+    @Test
+    void octahedralNormalsRoundTripWithSmallError() {
+        VertexFormat.Element element = VertexFormat.Element.NORMAL_OCTAHEDRAL;
+        ByteBuffer data = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+        float[] decoded = new float[4];
+        Random random = new Random(8);
+        float maxAngle = 0;
+        float[][] normals = new float[10_006][];
+        normals[0] = new float[] {0, 0, 1};
+        normals[1] = new float[] {0, 0, -1};
+        normals[2] = new float[] {1, 0, 0};
+        normals[3] = new float[] {0, -1, 0};
+        normals[4] = new float[] {0.6f, 0, -0.8f};
+        normals[5] = new float[] {-0.6f, 0.8f, 0};
+        for (int i = 6; i < normals.length; i++) {
+            float x = (float) random.nextGaussian(), y = (float) random.nextGaussian(), z = (float) random.nextGaussian();
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            normals[i] = new float[] {x / length, y / length, z / length};
+        }
+        for (float[] n : normals) {
+            VertexQuantizer.write(element, data, 0, n[0], n[1], n[2], 0, null);
+            VertexQuantizer.read(element, data, 0, null, decoded);
+            float length = (float) Math.sqrt(decoded[0] * decoded[0] + decoded[1] * decoded[1] + decoded[2] * decoded[2]);
+            assertEquals(1, length, 1e-5f);
+            // angle from chord, acos of a dot product close to 1 loses the small angles
+            double dx = n[0] - decoded[0], dy = n[1] - decoded[1], dz = n[2] - decoded[2];
+            double angle = 2 * Math.asin(Math.sqrt(dx * dx + dy * dy + dz * dz) / 2);
+            maxAngle = Math.max(maxAngle, (float) Math.toDegrees(angle));
+        }
+        System.out.println("largest octahedral error " + maxAngle + " degrees");
+        assertTrue(maxAngle < 0.005f, "largest error " + maxAngle + " degrees");
+    }
+}